@@ -0,0 +1,64 @@
+package com.hexabiblos.chatbot.batch;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Batch parameters, read from {@code --name=value} arguments or {@code -Dname=value}
+ * system properties (arguments win). Model settings such as {@code GEMINI_MODEL}
+ * or {@code CHAT_MODEL_PROVIDER} are read by the application itself, through the
+ * usual system properties, {@code CHATBOT_CONFIG_FILE} or environment.
+ */
+final class BatchConfig {
+
+    final Path input;
+    final Path output;
+    final int concurrency;
+    final int retries;
+    final Duration timeout;
+    final boolean resume;
+    final boolean retryFailed;
+
+    private BatchConfig(String[] args) {
+        String in = value(args, "input", null);
+        if (in == null) {
+            throw new IllegalArgumentException("Missing --input=<file.jsonl>");
+        }
+        input = Path.of(in);
+        String defaultOutput = in.endsWith(".jsonl")
+            ? in.substring(0, in.length() - ".jsonl".length()) + ".results.jsonl"
+            : in + ".results.jsonl";
+        output = Path.of(value(args, "output", defaultOutput));
+        concurrency = Math.max(1, Integer.parseInt(value(args, "concurrency", "8")));
+        retries = Math.max(0, Integer.parseInt(value(args, "retries", "3")));
+        timeout = Duration.ofSeconds(Long.parseLong(value(args, "timeoutSeconds", "60")));
+        resume = Boolean.parseBoolean(value(args, "resume", "true"));
+        retryFailed = Boolean.parseBoolean(value(args, "retryFailed", "false"));
+    }
+
+    static BatchConfig parse(String[] args) {
+        return new BatchConfig(args);
+    }
+
+    private static String value(String[] args, String name, String defaultValue) {
+        String prefix = "--" + name + "=";
+        for (String arg : args) {
+            if (arg.startsWith(prefix)) {
+                return arg.substring(prefix.length()).trim();
+            }
+        }
+        String property = System.getProperty(name);
+        return (property != null && !property.isBlank()) ? property.trim() : defaultValue;
+    }
+
+    @Override
+    public String toString() {
+        return "input=" + input
+            + " output=" + output
+            + " concurrency=" + concurrency
+            + " retries=" + retries
+            + " timeout=" + timeout.getSeconds() + "s"
+            + " resume=" + resume
+            + " retryFailed=" + retryFailed;
+    }
+}
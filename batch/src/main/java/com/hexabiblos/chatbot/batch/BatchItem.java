@@ -0,0 +1,63 @@
+package com.hexabiblos.chatbot.batch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hexabiblos.chatbot.model.ChatMessage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One input line: a conversation to reply to.
+ *
+ * <pre>
+ * {"id":"q1","prompt":"How do I renew a permit?"}
+ * {"id":"q2","messages":[{"role":"user","text":"Hi"},{"role":"assistant","text":"Hello!"},{"role":"user","text":"..."}]}
+ * </pre>
+ *
+ * The id defaults to the line number. Roles are {@code user} and {@code assistant}
+ * ({@code model} is accepted as well); a {@code prompt} is appended as the last user turn.
+ */
+final class BatchItem {
+
+    final String id;
+    final List<ChatMessage> messages;
+
+    private BatchItem(String id, List<ChatMessage> messages) {
+        this.id = id;
+        this.messages = messages;
+    }
+
+    /**
+     * Parses one line.
+     *
+     * @throws IOException if the line is not a JSON object or holds no user text
+     */
+    static BatchItem parse(ObjectMapper json, String line, long lineNumber) throws IOException {
+        JsonNode node = json.readTree(line);
+        if (node == null || !node.isObject()) {
+            throw new IOException("Line " + lineNumber + " is not a JSON object");
+        }
+        String id = node.hasNonNull("id") ? node.get("id").asText() : Long.toString(lineNumber);
+
+        List<ChatMessage> messages = new ArrayList<>();
+        for (JsonNode message : node.path("messages")) {
+            String text = message.path("text").asText("");
+            if (text.isBlank()) {
+                continue;
+            }
+            String role = message.path("role").asText("user");
+            boolean assistant = "assistant".equalsIgnoreCase(role) || "model".equalsIgnoreCase(role);
+            messages.add(new ChatMessage(assistant ? ChatMessage.Role.ASSISTANT : ChatMessage.Role.USER, text));
+        }
+        String prompt = node.path("prompt").asText("");
+        if (!prompt.isBlank()) {
+            messages.add(new ChatMessage(ChatMessage.Role.USER, prompt));
+        }
+        if (messages.stream().noneMatch(ChatMessage::isUser)) {
+            throw new IOException("Line " + lineNumber + " (id " + id + ") has no user text");
+        }
+        return new BatchItem(id, messages);
+    }
+}
@@ -0,0 +1,309 @@
+package com.hexabiblos.chatbot.batch;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.hexabiblos.chatbot.metrics.MetricsRegistry;
+import com.hexabiblos.chatbot.model.ChatMessage;
+import com.hexabiblos.chatbot.service.AppSettings;
+import com.hexabiblos.chatbot.service.ChatModelProvider;
+import com.hexabiblos.chatbot.service.ChatModelProviderProducer;
+import com.hexabiblos.chatbot.service.GeminiService;
+import com.hexabiblos.chatbot.service.ModelCallExecutor;
+import com.hexabiblos.chatbot.service.ModelMetrics;
+import com.hexabiblos.chatbot.service.StubModelProvider;
+import com.hexabiblos.chatbot.service.TokenUsage;
+import jakarta.enterprise.inject.se.SeContainer;
+import jakarta.enterprise.inject.se.SeContainerInitializer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs a JSONL file of conversations through the application's model backend and
+ * writes one JSONL result per item, with latency and token usage.
+ *
+ * The backend is the same {@link GeminiService} the web app uses (system instruction,
+ * model, turn limit and context budget included), or the {@link StubModelProvider}
+ * with {@code -DCHAT_MODEL_PROVIDER=stub}, started in an embedded CDI container.
+ * At most {@code concurrency} items are in flight; the input is read only as
+ * slots free up, and a busy or rate-limited backend pauses all workers before the
+ * retry. The output file is the checkpoint: rerunning the same command skips the
+ * items it already holds. See {@link BatchConfig} for all parameters and
+ * {@link BatchItem} for the input format.
+ *
+ * {@code java -jar batch/target/batch.jar --input=prompts.jsonl --concurrency=16}
+ */
+public final class BatchRunner {
+
+    private static final long PROGRESS_INTERVAL_MS = 10_000;
+    private static final long RETRY_BASE_DELAY_MS = 1_000;
+    private static final long RETRY_MAX_DELAY_MS = 60_000;
+
+    // Failures worth another attempt; errors and empty replies are recorded as they are
+    private static final Set<String> RETRIABLE = Set.of("busy", "timeout", "network", "unavailable");
+
+    private final BatchConfig config;
+    private final ChatModelProvider provider;
+    private final ModelCallExecutor modelCalls;
+    private final ResultLog results;
+    private final ObjectMapper json;
+    private final BatchStats stats = new BatchStats();
+    // Shared back-off after a busy reply, so all workers slow down rather than each retrying alone
+    private final AtomicLong pausedUntil = new AtomicLong();
+
+    private BatchRunner(BatchConfig config, ChatModelProvider provider, ModelCallExecutor modelCalls,
+            ResultLog results, ObjectMapper json) {
+        this.config = config;
+        this.provider = provider;
+        this.modelCalls = modelCalls;
+        this.results = results;
+        this.json = json;
+    }
+
+    public static void main(String[] args) throws Exception {
+        BatchConfig config = BatchConfig.parse(args);
+        // Sized so every worker gets a call slot and nothing is turned away by the executor
+        defaultProperty("MODEL_MAX_CONCURRENT_CALLS", Integer.toString(config.concurrency));
+        defaultProperty("MODEL_MAX_QUEUED_CALLS", Integer.toString(config.concurrency));
+        defaultProperty("LOG_LEVEL", "WARN");
+
+        ObjectMapper json = new ObjectMapper();
+        try (SeContainer container = SeContainerInitializer.newInstance()
+                .disableDiscovery()
+                .addBeanClasses(GeminiService.class, StubModelProvider.class, ModelCallExecutor.class,
+                    ModelMetrics.class, MetricsRegistry.class)
+                .initialize();
+             ResultLog results = ResultLog.open(json, config)) {
+
+            ChatModelProvider provider = "stub".equalsIgnoreCase(
+                    AppSettings.getString(ChatModelProviderProducer.PROVIDER_KEY, "gemini"))
+                ? container.select(StubModelProvider.class).get()
+                : container.select(GeminiService.class).get();
+            if (provider.isDemoMode()) {
+                System.err.println("No Gemini API key configured; set GEMINI_API_KEY or use -DCHAT_MODEL_PROVIDER=stub");
+                System.exit(2);
+            }
+
+            System.out.println("Batch: " + config + " model=" + provider.getModelName());
+            if (results.getCompletedCount() > 0) {
+                System.out.println("Resuming: " + results.getCompletedCount() + " items already in " + config.output);
+            }
+            new BatchRunner(config, provider, container.select(ModelCallExecutor.class).get(), results, json).run();
+        }
+    }
+
+    private void run() throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        ExecutorService workers = Executors.newFixedThreadPool(config.concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "batch-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Semaphore slots = new Semaphore(config.concurrency);
+        long skipped = 0;
+        long invalid = 0;
+        long lastProgress = System.currentTimeMillis();
+
+        try (BufferedReader in = Files.newBufferedReader(config.input, StandardCharsets.UTF_8)) {
+            String line;
+            long lineNumber = 0;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                BatchItem item;
+                try {
+                    item = BatchItem.parse(json, line, lineNumber);
+                } catch (IOException e) {
+                    System.err.println("Skipping invalid input: " + e.getMessage().lines().findFirst().orElse(""));
+                    invalid++;
+                    continue;
+                }
+                if (results.isDone(item.id)) {
+                    skipped++;
+                    continue;
+                }
+                // Backpressure: the next line is read only once a slot is free
+                slots.acquire();
+                workers.execute(() -> {
+                    try {
+                        process(item);
+                    } finally {
+                        slots.release();
+                    }
+                });
+                if (System.currentTimeMillis() - lastProgress >= PROGRESS_INTERVAL_MS) {
+                    lastProgress = System.currentTimeMillis();
+                    printProgress(start);
+                }
+            }
+        }
+        slots.acquire(config.concurrency); // Wait for the items still in flight
+        workers.shutdown();
+        report(start, skipped, invalid);
+    }
+
+    /**
+     * Runs one item, retrying transient failures, and writes its result line.
+     */
+    private void process(BatchItem item) {
+        Attempt attempt = null;
+        int attempts = 0;
+        while (true) {
+            attempts++;
+            waitOutPause();
+            attempt = call(item.messages);
+            if (!RETRIABLE.contains(attempt.outcome) || attempts > config.retries) {
+                break;
+            }
+            stats.retried();
+            long delay = Math.min(RETRY_MAX_DELAY_MS, RETRY_BASE_DELAY_MS << Math.min(attempts - 1, 16));
+            if ("busy".equals(attempt.outcome)) {
+                pausedUntil.accumulateAndGet(System.currentTimeMillis() + delay, Math::max);
+            } else {
+                sleep(delay);
+            }
+        }
+
+        stats.count(attempt.outcome);
+        stats.record("reply", attempt.nanos);
+        if (attempt.firstChunkNanos >= 0) {
+            stats.record("first chunk", attempt.firstChunkNanos);
+        }
+        if (attempt.usage != null) {
+            stats.addTokens(attempt.usage.getInputTokens(), attempt.usage.getOutputTokens(),
+                attempt.usage.getCachedTokens());
+        }
+        try {
+            results.write(toResult(item, attempt, attempts));
+        } catch (IOException e) {
+            // The item simply runs again on resume
+            System.err.println("Could not write result for " + item.id + ": " + e.getMessage());
+        }
+    }
+
+    private Attempt call(List<ChatMessage> messages) {
+        long start = System.nanoTime();
+        long[] firstChunk = {-1};
+        TokenUsage[] usage = {null};
+        String text;
+        try {
+            // Usage is reported on the thread that makes the call, so it is captured there
+            text = modelCalls.submit(() -> {
+                try (TokenUsage captured = TokenUsage.capture()) {
+                    usage[0] = captured;
+                    return provider.streamResponse(messages, chunk -> {
+                        if (firstChunk[0] < 0) {
+                            firstChunk[0] = System.nanoTime() - start;
+                        }
+                    });
+                }
+            }, config.timeout).join();
+        } catch (RejectedExecutionException e) {
+            text = ChatModelProvider.BUSY_RESPONSE;
+        } catch (RuntimeException e) {
+            text = ModelCallExecutor.isTimeout(e) ? ChatModelProvider.TIMEOUT_RESPONSE : ChatModelProvider.ERROR_RESPONSE;
+        }
+        String outcome = ModelMetrics.outcomeOf(text);
+        TokenUsage reported = (usage[0] != null && usage[0].isReported()) ? usage[0] : null;
+        return new Attempt(text, outcome, System.nanoTime() - start, firstChunk[0], reported);
+    }
+
+    private ObjectNode toResult(BatchItem item, Attempt attempt, int attempts) {
+        ObjectNode result = json.createObjectNode();
+        result.put("id", item.id);
+        result.put("model", provider.getModelName());
+        result.put("outcome", attempt.outcome);
+        if ("ok".equals(attempt.outcome)) {
+            result.put("text", attempt.text);
+        } else {
+            result.put("error", attempt.text);
+        }
+        result.put("attempts", attempts);
+        result.put("latencyMs", TimeUnit.NANOSECONDS.toMillis(attempt.nanos));
+        if (attempt.firstChunkNanos >= 0 && "ok".equals(attempt.outcome)) {
+            result.put("firstChunkMs", TimeUnit.NANOSECONDS.toMillis(attempt.firstChunkNanos));
+        }
+        if (attempt.usage != null) {
+            result.put("inputTokens", attempt.usage.getInputTokens());
+            result.put("outputTokens", attempt.usage.getOutputTokens());
+            result.put("cachedTokens", attempt.usage.getCachedTokens());
+        }
+        return result;
+    }
+
+    private void waitOutPause() {
+        long wait;
+        while ((wait = pausedUntil.get() - System.currentTimeMillis()) > 0) {
+            sleep(wait);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void printProgress(long start) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long finished = stats.finished();
+        System.out.printf("%,d items done in %.0f s (%.2f/s), %d failed%n",
+            finished, seconds, finished / seconds, finished - stats.total("ok"));
+    }
+
+    private void report(long start, long skipped, long invalid) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long finished = stats.finished();
+        System.out.println();
+        System.out.printf("Elapsed %.1f s: %d items run (%.2f/s), %d already done, %d invalid lines, %d retries%n",
+            seconds, finished, finished / seconds, skipped, invalid, stats.retries());
+        for (Map.Entry<String, Long> count : stats.counts().entrySet()) {
+            System.out.printf("  %6d  %s%n", count.getValue(), count.getKey());
+        }
+        System.out.println();
+        System.out.print(stats.latencyTable());
+        System.out.println(stats.tokenSummary());
+        System.out.println("Results: " + config.output.toAbsolutePath());
+    }
+
+    private static void defaultProperty(String name, String value) {
+        if (System.getProperty(name) == null) {
+            System.setProperty(name, value);
+        }
+    }
+
+    /**
+     * Outcome of one call of an item.
+     */
+    private static final class Attempt {
+
+        final String text;
+        final String outcome;
+        final long nanos;
+        final long firstChunkNanos;
+        final TokenUsage usage;
+
+        Attempt(String text, String outcome, long nanos, long firstChunkNanos, TokenUsage usage) {
+            this.text = text;
+            this.outcome = outcome;
+            this.nanos = nanos;
+            this.firstChunkNanos = firstChunkNanos;
+            this.usage = usage;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.hexabiblos.chatbot.batch;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies, outcome counts and token totals of one run, shared by all workers.
+ */
+final class BatchStats {
+
+    private final ConcurrentMap<String, Samples> latencies = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> counts = new ConcurrentHashMap<>();
+    private final LongAdder inputTokens = new LongAdder();
+    private final LongAdder outputTokens = new LongAdder();
+    private final LongAdder cachedTokens = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+
+    void record(String measure, long nanos) {
+        latencies.computeIfAbsent(measure, m -> new Samples()).add(nanos);
+    }
+
+    void count(String outcome) {
+        counts.computeIfAbsent(outcome, o -> new LongAdder()).increment();
+    }
+
+    void retried() {
+        retries.increment();
+    }
+
+    void addTokens(long input, long output, long cached) {
+        inputTokens.add(input);
+        outputTokens.add(output);
+        cachedTokens.add(cached);
+    }
+
+    long total(String outcome) {
+        LongAdder adder = counts.get(outcome);
+        return (adder != null) ? adder.sum() : 0;
+    }
+
+    long finished() {
+        return counts.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    long retries() {
+        return retries.sum();
+    }
+
+    /**
+     * One line per measure: count, then p50/p90/p95/p99/max in milliseconds.
+     */
+    String latencyTable() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("%-14s %8s %9s %9s %9s %9s %9s%n",
+            "measure", "count", "p50 ms", "p90 ms", "p95 ms", "p99 ms", "max ms"));
+        for (Map.Entry<String, Samples> entry : new TreeMap<>(latencies).entrySet()) {
+            long[] sorted = entry.getValue().sorted();
+            out.append(String.format("%-14s %8d %9.1f %9.1f %9.1f %9.1f %9.1f%n", entry.getKey(), sorted.length,
+                millis(sorted, 0.50), millis(sorted, 0.90), millis(sorted, 0.95), millis(sorted, 0.99),
+                millis(sorted, 1.0)));
+        }
+        return out.toString();
+    }
+
+    String tokenSummary() {
+        return String.format("Tokens: %d input, %d output, %d cached",
+            inputTokens.sum(), outputTokens.sum(), cachedTokens.sum());
+    }
+
+    Map<String, Long> counts() {
+        Map<String, Long> result = new TreeMap<>();
+        counts.forEach((name, adder) -> result.put(name, adder.sum()));
+        return result;
+    }
+
+    private static double millis(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = Math.max(0, (int) Math.ceil(fraction * sorted.length) - 1);
+        return sorted[Math.min(index, sorted.length - 1)] / 1_000_000.0;
+    }
+
+    private static final class Samples {
+
+        private long[] values = new long[1024];
+        private int size;
+
+        synchronized void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        synchronized long[] sorted() {
+            long[] copy = Arrays.copyOf(values, size);
+            Arrays.sort(copy);
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.hexabiblos.chatbot.batch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The JSONL output file, which doubles as the checkpoint.
+ *
+ * Every result is written and flushed as soon as its item finishes, so an
+ * interrupted run loses at most the lines being written. On resume the ids already
+ * in the file are skipped; a torn last line is ignored and its item runs again.
+ * With {@code retryFailed} the failed items run again too, and the later line for
+ * an id supersedes the earlier one.
+ */
+final class ResultLog implements Closeable {
+
+    private final ObjectMapper json;
+    private final BufferedWriter out;
+    private final Set<String> done;
+
+    private ResultLog(ObjectMapper json, BufferedWriter out, Set<String> done) {
+        this.json = json;
+        this.out = out;
+        this.done = done;
+    }
+
+    static ResultLog open(ObjectMapper json, BatchConfig config) throws IOException {
+        Path file = config.output;
+        Set<String> done = new HashSet<>();
+        if (config.resume && Files.exists(file)) {
+            readCompleted(json, file, config.retryFailed, done);
+            terminateLastLine(file);
+        } else {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Files.deleteIfExists(file);
+        }
+        BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        return new ResultLog(json, out, done);
+    }
+
+    /**
+     * Number of items the checkpoint already covers.
+     */
+    int getCompletedCount() {
+        return done.size();
+    }
+
+    boolean isDone(String id) {
+        return done.contains(id);
+    }
+
+    synchronized void write(ObjectNode result) throws IOException {
+        out.write(json.writeValueAsString(result));
+        out.newLine();
+        out.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+
+    private static void readCompleted(ObjectMapper json, Path file, boolean retryFailed, Set<String> done)
+            throws IOException {
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                JsonNode result;
+                try {
+                    result = json.readTree(line);
+                } catch (IOException e) {
+                    continue; // Torn line from an interrupted run
+                }
+                if (result == null || !result.hasNonNull("id")) {
+                    continue;
+                }
+                String id = result.get("id").asText();
+                if (retryFailed && result.hasNonNull("error")) {
+                    done.remove(id);
+                } else {
+                    done.add(id);
+                }
+            }
+        }
+    }
+
+    /**
+     * Makes sure appended results start on a line of their own.
+     */
+    private static void terminateLastLine(Path file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            long length = raf.length();
+            if (length == 0) {
+                return;
+            }
+            raf.seek(length - 1);
+            if (raf.read() != '\n') {
+                raf.write('\n');
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.hexabiblos.chatbot.bean;
+
+import com.hexabiblos.chatbot.model.ChatMessage;
+import com.hexabiblos.chatbot.store.Conversation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Java serialization of a session's {@link ChatState}, as done for session
+ * passivation and replication. Runs without CDI, so there is no conversation
+ * store and the whole conversation is held in the session.
+ *
+ * {@code serialize}/{@code deserialize} use the compact format;
+ * {@code serializeDelta} writes only the newest turn, as replication with
+ * {@link Conversation#writeDelta} would. {@code serializeDefaultFormat} writes the
+ * same messages with default serialization (enum role, {@link Instant}
+ * timestamp, window held as a second copy) for comparison.
+ * The serialized sizes are printed once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChatStateSerializationBenchmark {
+
+    @Param({"100", "1000"})
+    private int messageCount;
+
+    private ChatState chatState;
+    private Conversation conversation;
+    private long deltaBase;
+    private byte[] serialized;
+    private ArrayList<DefaultSerializedMessage> defaultHistory;
+    private ArrayList<DefaultSerializedMessage> defaultWindow;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        // Hold every message in session memory rather than the default tail
+        System.setProperty("HISTORY_MAX_MESSAGES", Integer.toString(messageCount + 2));
+
+        List<ChatMessage> messages = new ArrayList<>(messageCount);
+        StringBuilder reply = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            reply.append("The permit can be renewed online or at the service desk. ");
+        }
+        for (int i = 0; i < messageCount; i++) {
+            messages.add((i % 2 == 0)
+                ? new ChatMessage(ChatMessage.Role.USER, "Question " + i + ": how do I renew my permit?")
+                : new ChatMessage(ChatMessage.Role.ASSISTANT, reply.toString()));
+        }
+        chatState = new ChatState();
+        chatState.setMessages(messages);
+        conversation = chatState.conversation();
+
+        // One more turn on top of the replicated base
+        deltaBase = conversation.getReplicationCursor();
+        chatState.setInputText("And which documents do I need?");
+        chatState.send();
+        chatState.claimPendingReply().complete(reply.toString());
+
+        defaultHistory = new ArrayList<>();
+        for (ChatMessage message : conversation.read(0, conversation.getMessageCount())) {
+            defaultHistory.add(new DefaultSerializedMessage(message));
+        }
+        defaultWindow = new ArrayList<>();
+        for (ChatMessage message : conversation.getWindow().getMessages()) {
+            defaultWindow.add(new DefaultSerializedMessage(message));
+        }
+
+        serialized = serialize();
+        System.out.println("ChatState with " + messageCount + " messages: compact " + serialized.length
+            + " bytes, delta of one turn " + serializeDelta().length
+            + " bytes, default serialization " + serializeDefaultFormat().length + " bytes");
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * 1024);
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(chatState);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public Object deserialize() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized))) {
+            return in.readObject();
+        }
+    }
+
+    @Benchmark
+    public byte[] serializeDelta() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(4 * 1024);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            conversation.writeDelta(out, deltaBase);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] serializeDefaultFormat() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * 1024);
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(defaultHistory);
+            out.writeObject(defaultWindow);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * A message as default serialization writes it: enum role, full Instant.
+     */
+    private static final class DefaultSerializedMessage implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ChatMessage.Role role;
+        private final String text;
+        private final Instant timestamp;
+
+        DefaultSerializedMessage(ChatMessage message) {
+            this.role = message.getRole();
+            this.text = message.getText();
+            this.timestamp = message.getTimestamp();
+        }
+    }
+}
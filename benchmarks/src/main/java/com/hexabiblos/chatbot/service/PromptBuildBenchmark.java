@@ -0,0 +1,71 @@
+package com.hexabiblos.chatbot.service;
+
+import com.google.genai.types.Content;
+import com.hexabiblos.chatbot.model.ChatMessage;
+import com.hexabiblos.chatbot.model.ContextWindow;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning a conversation into request contents
+ * ({@link GeminiService#buildContents}), for histories of 10 to 10,000 messages.
+ * With the default turn limit the cost should stay flat as the history grows;
+ * the unlimited variant shows what the token budget alone bounds.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PromptBuildBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    private int historySize;
+
+    @Param({"20", "100000"})
+    private int maxTurns;
+
+    private GeminiService service;
+    private List<ChatMessage> history;
+
+    @Setup(Level.Trial)
+    public void setUp() throws ReflectiveOperationException {
+        service = new GeminiService();
+        setField("maxTurns", maxTurns);
+        setField("contextTokenBudget", ContextWindow.DEFAULT_TOKEN_BUDGET);
+
+        history = new ArrayList<>(historySize);
+        for (int i = 0; i < historySize; i++) {
+            ChatMessage.Role role = (i % 2 == 0) ? ChatMessage.Role.USER : ChatMessage.Role.ASSISTANT;
+            history.add(new ChatMessage(role, "Message " + i
+                + ": how do I renew a permit for the community centre, and which documents are needed?"));
+        }
+    }
+
+    @Benchmark
+    public List<Content> buildContents() {
+        return service.buildContents(history);
+    }
+
+    private void setField(String name, int value) throws ReflectiveOperationException {
+        Field field = GeminiService.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.setInt(service, value);
+    }
+}
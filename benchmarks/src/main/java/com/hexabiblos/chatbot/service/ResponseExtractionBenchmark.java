@@ -0,0 +1,63 @@
+package com.hexabiblos.chatbot.service;
+
+import com.google.genai.types.Candidate;
+import com.google.genai.types.Content;
+import com.google.genai.types.GenerateContentResponse;
+import com.google.genai.types.Part;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link GeminiService#extractTextFromResponse}. The text case is served
+ * by {@code response.text()}; the empty case (e.g. a trailing stream chunk that
+ * carries only usage metadata) falls through to the reflective part lookup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseExtractionBenchmark {
+
+    private GeminiService service;
+    private GenerateContentResponse textResponse;
+    private GenerateContentResponse emptyResponse;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        service = new GeminiService();
+        textResponse = responseOf("Permits are renewed online; bring proof of address and the old permit.");
+        emptyResponse = responseOf("");
+    }
+
+    @Benchmark
+    public String extractText() {
+        return service.extractTextFromResponse(textResponse);
+    }
+
+    @Benchmark
+    public String extractEmptyFallback() {
+        return service.extractTextFromResponse(emptyResponse);
+    }
+
+    private static GenerateContentResponse responseOf(String text) {
+        return GenerateContentResponse.builder()
+            .candidates(List.of(Candidate.builder()
+                .content(Content.builder().role("model").parts(List.of(Part.fromText(text))).build())
+                .build()))
+            .build();
+    }
+}
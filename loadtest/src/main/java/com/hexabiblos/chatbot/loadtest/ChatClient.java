@@ -0,0 +1,248 @@
+package com.hexabiblos.chatbot.loadtest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * One browser tab on chat.xhtml. Keeps its own cookies (session and conversation),
+ * the JSF ViewState and the message cursor, and issues the same requests the page
+ * does: the initial GET, PrimeFaces partial requests for send, quick replies and
+ * the refresh remote command, and the SSE reply stream.
+ *
+ * Component ids the page does not fix (quick reply buttons, the remote command) are
+ * read from the rendered page rather than hard-coded.
+ */
+final class ChatClient {
+
+    static final String CHAT_RENDER = "chatDelta chatStatus olderLink chatForm:messageInput";
+    static final String REFRESH_RENDER = CHAT_RENDER + " chatForm:sendButton";
+
+    private static final Pattern VIEW_STATE_INPUT = Pattern.compile(
+        "name=\"jakarta\\.faces\\.ViewState\"[^>]*value=\"([^\"]*)\"");
+    private static final Pattern VIEW_STATE_UPDATE = Pattern.compile(
+        "<update id=\"[^\"]*jakarta\\.faces\\.ViewState[^\"]*\"><!\\[CDATA\\[(.*?)]]>", Pattern.DOTALL);
+    private static final Pattern CURSOR = Pattern.compile(
+        "id=\"(?:chatLogPage|chatDeltaData)\" data-cursor=\"([^\"]+)\"");
+    private static final Pattern QUICK_REPLY = Pattern.compile(
+        "<button id=\"([^\"]+)\"[^>]*quick-reply-btn[^>]*>.*?<span class=\"ui-button-text[^\"]*\">([^<]+)</span>",
+        Pattern.DOTALL);
+    private static final Pattern REMOTE_COMMAND = Pattern.compile(
+        "refreshChat\\s*=\\s*function\\([^)]*\\)\\s*\\{[^}]*?s:\"([^\"]+)\"");
+    private static final Pattern ERROR = Pattern.compile("<error>.*?<error-message><!\\[CDATA\\[(.*?)]]>",
+        Pattern.DOTALL);
+
+    private final HttpClient http;
+    private final LoadConfig config;
+    private final Map<String, String> cookies = new LinkedHashMap<>();
+    private final Map<String, String> quickReplies = new LinkedHashMap<>();
+    private String viewState;
+    private String cursor = "";
+    private String refreshSource;
+
+    ChatClient(HttpClient http, LoadConfig config) {
+        this.http = http;
+        this.config = config;
+    }
+
+    /**
+     * Loads the chat page, starting a session, and reads the ids the later requests need.
+     */
+    void open() throws IOException, InterruptedException {
+        HttpResponse<String> response = send(request("/chat.xhtml").GET().build());
+        String html = response.body();
+        viewState = find(VIEW_STATE_INPUT, html, "ViewState");
+        refreshSource = find(REMOTE_COMMAND, html, "refreshChat remote command");
+        Matcher quick = QUICK_REPLY.matcher(html);
+        while (quick.find()) {
+            quickReplies.put(quick.group(2).trim(), quick.group(1));
+        }
+        updateCursor(html);
+    }
+
+    /**
+     * Types {@code text} and presses Send.
+     *
+     * @return true if the server queued a reply, false if the message was turned away
+     */
+    boolean sendMessage(String text) throws IOException, InterruptedException {
+        Map<String, String> form = new LinkedHashMap<>();
+        form.put("chatForm", "chatForm");
+        form.put("chatCursor", cursor);
+        form.put("chatForm:messageInput", text);
+        form.put("chatForm:sendButton", "chatForm:sendButton");
+        return expectsReply(partial("chatForm:sendButton", "chatForm", CHAT_RENDER, form));
+    }
+
+    /**
+     * Presses one of the quick reply buttons, e.g. "Help".
+     */
+    boolean quickReply(String label) throws IOException, InterruptedException {
+        String source = quickReplies.get(label);
+        if (source == null) {
+            throw new IOException("No quick reply button labelled " + label);
+        }
+        Map<String, String> form = new LinkedHashMap<>();
+        form.put("chatForm", "chatForm");
+        form.put("chatCursor", cursor);
+        form.put(source, source);
+        return expectsReply(partial(source, source, CHAT_RENDER, form));
+    }
+
+    /**
+     * Reads the SSE reply stream to the end.
+     *
+     * @param onFirstChunk Run when the first chunk arrives
+     * @return Number of chunks received, or -1 if there was no reply to stream
+     */
+    int streamReply(Runnable onFirstChunk) throws IOException, InterruptedException {
+        HttpRequest request = request("/chat/stream").header("Accept", "text/event-stream").GET().build();
+        HttpResponse<Stream<String>> response = http.send(request, HttpResponse.BodyHandlers.ofLines());
+        storeCookies(response);
+        if (response.statusCode() == 204) {
+            response.body().close();
+            return -1;
+        }
+        if (response.statusCode() != 200) {
+            response.body().close();
+            throw new IOException("Reply stream answered " + response.statusCode());
+        }
+        int chunks = 0;
+        String event = null;
+        try (Stream<String> lines = response.body()) {
+            for (String line : (Iterable<String>) lines::iterator) {
+                if (line.startsWith("event: ")) {
+                    event = line.substring("event: ".length());
+                    if ("done".equals(event)) {
+                        return chunks;
+                    }
+                } else if (line.isEmpty() && "chunk".equals(event)) {
+                    if (chunks++ == 0) {
+                        onFirstChunk.run();
+                    }
+                    event = null;
+                }
+            }
+        }
+        throw new IOException("Reply stream ended without a done event");
+    }
+
+    /**
+     * The refresh the page runs once the stream is done, re-rendering the log delta.
+     */
+    void refresh() throws IOException, InterruptedException {
+        Map<String, String> form = new LinkedHashMap<>();
+        form.put("chatForm", "chatForm");
+        form.put("chatCursor", cursor);
+        partial(refreshSource, "@all", REFRESH_RENDER, form);
+    }
+
+    /**
+     * Drops the session, as a new visitor would arrive without cookies.
+     */
+    void forget() {
+        cookies.clear();
+        quickReplies.clear();
+        viewState = null;
+        cursor = "";
+    }
+
+    private String partial(String source, String execute, String render, Map<String, String> form)
+            throws IOException, InterruptedException {
+        Map<String, String> body = new LinkedHashMap<>();
+        body.put("jakarta.faces.partial.ajax", "true");
+        body.put("jakarta.faces.source", source);
+        body.put("jakarta.faces.partial.execute", execute);
+        body.put("jakarta.faces.partial.render", render);
+        body.putAll(form);
+        body.put("jakarta.faces.ViewState", viewState);
+
+        HttpRequest request = request("/chat.xhtml")
+            .header("Content-Type", "application/x-www-form-urlencoded; charset=UTF-8")
+            .header("Faces-Request", "partial/ajax")
+            .header("X-Requested-With", "XMLHttpRequest")
+            .POST(HttpRequest.BodyPublishers.ofString(encode(body)))
+            .build();
+        String xml = send(request).body();
+
+        Matcher error = ERROR.matcher(xml);
+        if (error.find()) {
+            throw new IOException("Partial request failed: " + error.group(1));
+        }
+        Matcher state = VIEW_STATE_UPDATE.matcher(xml);
+        if (state.find()) {
+            viewState = state.group(1);
+        }
+        updateCursor(xml);
+        return xml;
+    }
+
+    private static boolean expectsReply(String xml) {
+        return xml.contains("id=\"streamingBubble\"");
+    }
+
+    private void updateCursor(String markup) {
+        Matcher matcher = CURSOR.matcher(markup);
+        while (matcher.find()) {
+            cursor = matcher.group(1);
+        }
+    }
+
+    private HttpRequest.Builder request(String path) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(config.baseUrl + path))
+            .timeout(config.requestTimeout);
+        if (!cookies.isEmpty()) {
+            StringJoiner header = new StringJoiner("; ");
+            cookies.forEach((name, value) -> header.add(name + "=" + value));
+            builder.header("Cookie", header.toString());
+        }
+        return builder;
+    }
+
+    private HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException {
+        HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString());
+        storeCookies(response);
+        if (response.statusCode() != 200) {
+            throw new IOException(request.method() + " " + request.uri().getPath() + " answered "
+                + response.statusCode());
+        }
+        return response;
+    }
+
+    private void storeCookies(HttpResponse<?> response) {
+        List<String> setCookies = response.headers().allValues("Set-Cookie");
+        for (String setCookie : setCookies) {
+            String pair = setCookie.split(";", 2)[0];
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                cookies.put(pair.substring(0, equals).trim(), pair.substring(equals + 1).trim());
+            }
+        }
+    }
+
+    private static String find(Pattern pattern, String text, String what) throws IOException {
+        Matcher matcher = pattern.matcher(text);
+        if (!matcher.find()) {
+            throw new IOException("Could not find the " + what + " in the chat page");
+        }
+        return matcher.group(1);
+    }
+
+    private static String encode(Map<String, String> form) {
+        StringJoiner body = new StringJoiner("&");
+        form.forEach((name, value) -> body.add(URLEncoder.encode(name, StandardCharsets.UTF_8) + "="
+            + URLEncoder.encode((value != null) ? value : "", StandardCharsets.UTF_8)));
+        return body.toString();
+    }
+}
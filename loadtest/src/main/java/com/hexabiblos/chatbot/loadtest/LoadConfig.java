@@ -0,0 +1,57 @@
+package com.hexabiblos.chatbot.loadtest;
+
+import java.time.Duration;
+
+/**
+ * Load test parameters, read from {@code --name=value} arguments or {@code -Dname=value}
+ * system properties (arguments win).
+ */
+final class LoadConfig {
+
+    final String baseUrl;
+    final int users;
+    final Duration rampUp;
+    final Duration duration;
+    final Duration thinkTime;
+    final int messagesPerConversation;
+    final double quickReplyRatio;
+    final Duration requestTimeout;
+
+    private LoadConfig(String[] args) {
+        String url = value(args, "baseUrl", "http://localhost:8080/chatbot-ui");
+        baseUrl = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+        users = Math.max(1, Integer.parseInt(value(args, "users", "20")));
+        rampUp = Duration.ofSeconds(Long.parseLong(value(args, "rampUpSeconds", "10")));
+        duration = Duration.ofSeconds(Long.parseLong(value(args, "durationSeconds", "60")));
+        thinkTime = Duration.ofMillis(Long.parseLong(value(args, "thinkTimeMs", "3000")));
+        messagesPerConversation = Math.max(1, Integer.parseInt(value(args, "messagesPerConversation", "10")));
+        quickReplyRatio = Double.parseDouble(value(args, "quickReplyRatio", "0.2"));
+        requestTimeout = Duration.ofSeconds(Long.parseLong(value(args, "timeoutSeconds", "60")));
+    }
+
+    static LoadConfig parse(String[] args) {
+        return new LoadConfig(args);
+    }
+
+    private static String value(String[] args, String name, String defaultValue) {
+        String prefix = "--" + name + "=";
+        for (String arg : args) {
+            if (arg.startsWith(prefix)) {
+                return arg.substring(prefix.length()).trim();
+            }
+        }
+        String property = System.getProperty(name);
+        return (property != null && !property.isBlank()) ? property.trim() : defaultValue;
+    }
+
+    @Override
+    public String toString() {
+        return "baseUrl=" + baseUrl
+            + " users=" + users
+            + " rampUp=" + rampUp.getSeconds() + "s"
+            + " duration=" + duration.getSeconds() + "s"
+            + " thinkTime=" + thinkTime.toMillis() + "ms"
+            + " messagesPerConversation=" + messagesPerConversation
+            + " quickReplyRatio=" + quickReplyRatio;
+    }
+}
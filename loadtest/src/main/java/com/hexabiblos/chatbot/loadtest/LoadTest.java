@@ -0,0 +1,105 @@
+package com.hexabiblos.chatbot.loadtest;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives chat.xhtml with a number of concurrent virtual users and reports
+ * throughput, latency percentiles, and server heap and session size growth.
+ *
+ * Run the server against the stub model first ({@code mvn -Ploadtest package cargo:run}),
+ * then {@code mvn -f loadtest/pom.xml compile exec:java -Dusers=100 -DdurationSeconds=120}
+ * or {@code java -jar loadtest/target/loadtest.jar --users=100}. See {@link LoadConfig}
+ * for all parameters.
+ */
+public final class LoadTest {
+
+    private static final double MB = 1024.0 * 1024.0;
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadConfig config = LoadConfig.parse(args);
+        HttpClient http = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(10))
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .build();
+
+        System.out.println("Load test: " + config);
+        ServerMetrics before = ServerMetrics.scrape(http, config.baseUrl);
+
+        Stats stats = new Stats();
+        long start = System.nanoTime();
+        long deadline = start + config.rampUp.toNanos() + config.duration.toNanos();
+        long rampStep = config.rampUp.toNanos() / config.users;
+
+        List<Thread> users = new ArrayList<>(config.users);
+        for (int i = 0; i < config.users; i++) {
+            Thread user = new Thread(new VirtualUser(i + 1, config, http, stats, deadline), "virtual-user-" + (i + 1));
+            user.setDaemon(true);
+            users.add(user);
+            user.start();
+            if (rampStep > 0) {
+                TimeUnit.NANOSECONDS.sleep(rampStep);
+            }
+        }
+        long graceMillis = config.requestTimeout.toMillis();
+        for (Thread user : users) {
+            user.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()) + graceMillis));
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        for (Thread user : users) {
+            user.interrupt();
+        }
+
+        ServerMetrics after = ServerMetrics.scrape(http, config.baseUrl);
+        report(config, stats, elapsedSeconds, before, after);
+    }
+
+    private static void report(LoadConfig config, Stats stats, double elapsedSeconds,
+            ServerMetrics before, ServerMetrics after) {
+        long completed = stats.total("messages_completed");
+        System.out.println();
+        System.out.printf("Elapsed %.1f s, %d users%n", elapsedSeconds, config.users);
+        System.out.printf("Throughput: %.2f replies/s (%d completed, %d rejected, %d conversations)%n",
+            completed / elapsedSeconds, completed, stats.total("messages_rejected"),
+            stats.total("conversations_completed"));
+        System.out.println();
+        System.out.print(stats.latencyTable());
+
+        Map<String, Long> counts = stats.counts();
+        counts.keySet().removeIf(name -> !name.startsWith("error: "));
+        if (!counts.isEmpty()) {
+            System.out.println();
+            System.out.println("Errors:");
+            counts.forEach((name, count) -> System.out.printf("  %6d  %s%n", count, name.substring("error: ".length())));
+        }
+
+        System.out.println();
+        if (!before.isAvailable() || !after.isAvailable()) {
+            System.out.println("Server metrics unavailable (is METRICS_ENABLED=false?)");
+            return;
+        }
+        double heapBefore = before.get("jvm_memory_heap_used_bytes");
+        double heapAfter = after.get("jvm_memory_heap_used_bytes");
+        double sessionsBefore = before.get("chat_sessions_active");
+        double sessionsAfter = after.get("chat_sessions_active");
+        System.out.printf("Server heap used: %.1f MB -> %.1f MB (%+.1f MB, committed %.1f MB)%n",
+            heapBefore / MB, heapAfter / MB, (heapAfter - heapBefore) / MB,
+            after.get("jvm_memory_heap_committed_bytes") / MB);
+        System.out.printf("Live sessions: %.0f -> %.0f%n", sessionsBefore, sessionsAfter);
+        double newSessions = sessionsAfter - sessionsBefore;
+        if (newSessions > 0) {
+            // Includes garbage not yet collected, so an upper bound
+            System.out.printf("Heap growth per new session: %.1f KB%n", (heapAfter - heapBefore) / newSessions / 1024);
+        }
+        System.out.printf("Per session at send: %.1f messages in conversation, %.1f held in memory, %.0f context tokens%n",
+            after.mean("chat_session_conversation_messages"), after.mean("chat_session_history_messages"),
+            after.mean("chat_session_context_tokens"));
+    }
+}
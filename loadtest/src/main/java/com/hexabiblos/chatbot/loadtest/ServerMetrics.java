@@ -0,0 +1,68 @@
+package com.hexabiblos.chatbot.loadtest;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Snapshot of the server's {@code /metrics} endpoint: heap, live sessions and the
+ * per-session conversation size histograms.
+ */
+final class ServerMetrics {
+
+    private final Map<String, Double> values;
+
+    private ServerMetrics(Map<String, Double> values) {
+        this.values = values;
+    }
+
+    /**
+     * Scrapes the endpoint; returns an empty snapshot if it is disabled or unreachable.
+     */
+    static ServerMetrics scrape(HttpClient http, String baseUrl) {
+        Map<String, Double> values = new HashMap<>();
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/metrics"))
+                .timeout(Duration.ofSeconds(10)).GET().build();
+            HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() == 200) {
+                for (String line : response.body().split("\n")) {
+                    int space = line.lastIndexOf(' ');
+                    if (line.startsWith("#") || space < 0) {
+                        continue;
+                    }
+                    try {
+                        values.put(line.substring(0, space), Double.parseDouble(line.substring(space + 1)));
+                    } catch (NumberFormatException e) {
+                        // Not a sample line
+                    }
+                }
+            }
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return new ServerMetrics(values);
+    }
+
+    boolean isAvailable() {
+        return !values.isEmpty();
+    }
+
+    double get(String sample) {
+        return values.getOrDefault(sample, Double.NaN);
+    }
+
+    /**
+     * Mean of a histogram, from its {@code _sum} and {@code _count}.
+     */
+    double mean(String histogram) {
+        double count = get(histogram + "_count");
+        return (count > 0) ? get(histogram + "_sum") / count : Double.NaN;
+    }
+}
@@ -0,0 +1,91 @@
+package com.hexabiblos.chatbot.loadtest;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies and outcome counts per operation, shared by all virtual users.
+ */
+final class Stats {
+
+    private final ConcurrentMap<String, Samples> latencies = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> counts = new ConcurrentHashMap<>();
+
+    void record(String operation, long nanos) {
+        latencies.computeIfAbsent(operation, o -> new Samples()).add(nanos);
+    }
+
+    void count(String outcome) {
+        counts.computeIfAbsent(outcome, o -> new LongAdder()).increment();
+    }
+
+    long total(String outcome) {
+        LongAdder adder = counts.get(outcome);
+        return (adder != null) ? adder.sum() : 0;
+    }
+
+    long samples(String operation) {
+        Samples samples = latencies.get(operation);
+        return (samples != null) ? samples.size() : 0;
+    }
+
+    /**
+     * One line per operation: count, then p50/p90/p95/p99/max in milliseconds.
+     */
+    String latencyTable() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("%-22s %8s %9s %9s %9s %9s %9s%n",
+            "operation", "count", "p50 ms", "p90 ms", "p95 ms", "p99 ms", "max ms"));
+        for (Map.Entry<String, Samples> entry : new TreeMap<>(latencies).entrySet()) {
+            long[] sorted = entry.getValue().sorted();
+            out.append(String.format("%-22s %8d %9.1f %9.1f %9.1f %9.1f %9.1f%n", entry.getKey(), sorted.length,
+                millis(sorted, 0.50), millis(sorted, 0.90), millis(sorted, 0.95), millis(sorted, 0.99),
+                millis(sorted, 1.0)));
+        }
+        return out.toString();
+    }
+
+    Map<String, Long> counts() {
+        Map<String, Long> result = new TreeMap<>();
+        counts.forEach((name, adder) -> result.put(name, adder.sum()));
+        return result;
+    }
+
+    private static double millis(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = Math.max(0, (int) Math.ceil(fraction * sorted.length) - 1);
+        return sorted[Math.min(index, sorted.length - 1)] / 1_000_000.0;
+    }
+
+    /**
+     * Growable array of raw samples; a load test run holds at most a few million.
+     */
+    private static final class Samples {
+
+        private long[] values = new long[1024];
+        private int size;
+
+        synchronized void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized long[] sorted() {
+            long[] copy = Arrays.copyOf(values, size);
+            Arrays.sort(copy);
+            return copy;
+        }
+    }
+}
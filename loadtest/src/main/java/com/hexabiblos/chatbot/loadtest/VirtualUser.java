@@ -0,0 +1,123 @@
+package com.hexabiblos.chatbot.loadtest;
+
+import java.net.http.HttpClient;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * One simulated chatter: opens the page, sends {@code messagesPerConversation}
+ * messages with think time in between, then leaves and comes back as a new
+ * visitor, until the deadline.
+ */
+final class VirtualUser implements Runnable {
+
+    private static final String[] QUESTIONS = {
+        "What services does the department offer for small businesses?",
+        "How do I renew a permit that expired last month?",
+        "Summarize the main points of our previous exchange.",
+        "Can you explain the difference between the two options in plain language?",
+        "Draft a short reply to a citizen asking about opening hours.",
+        "Which documents are needed to register a new address?"
+    };
+
+    private static final String[] QUICK_REPLIES = {"Help", "Show Features"};
+
+    private final int id;
+    private final LoadConfig config;
+    private final ChatClient client;
+    private final Stats stats;
+    private final long deadlineNanos;
+
+    VirtualUser(int id, LoadConfig config, HttpClient http, Stats stats, long deadlineNanos) {
+        this.id = id;
+        this.config = config;
+        this.client = new ChatClient(http, config);
+        this.stats = stats;
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    @Override
+    public void run() {
+        int conversation = 0;
+        while (!expired()) {
+            conversation++;
+            try {
+                long start = System.nanoTime();
+                client.open();
+                stats.record("page_load", System.nanoTime() - start);
+                for (int turn = 1; turn <= config.messagesPerConversation && !expired(); turn++) {
+                    exchange(conversation, turn);
+                    think();
+                }
+                stats.count("conversations_completed");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                stats.count("error: " + e.getClass().getSimpleName()
+                    + ((e.getMessage() != null) ? ": " + e.getMessage() : ""));
+                think();
+            } finally {
+                client.forget();
+            }
+        }
+    }
+
+    /**
+     * One message and its streamed reply, timed the way a user would notice them.
+     */
+    private void exchange(int conversation, int turn) throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        boolean quick = random.nextDouble() < config.quickReplyRatio;
+
+        long start = System.nanoTime();
+        boolean accepted;
+        if (quick) {
+            accepted = client.quickReply(QUICK_REPLIES[random.nextInt(QUICK_REPLIES.length)]);
+            stats.record("quick_reply", System.nanoTime() - start);
+        } else {
+            // Unique per user and turn, so replies are not served from the response cache
+            String text = QUESTIONS[random.nextInt(QUESTIONS.length)]
+                + " (user " + id + ", conversation " + conversation + ", turn " + turn + ")";
+            accepted = client.sendMessage(text);
+            stats.record("send", System.nanoTime() - start);
+        }
+        if (!accepted) {
+            stats.count("messages_rejected");
+            return;
+        }
+
+        long streamStart = System.nanoTime();
+        long[] firstChunk = {0};
+        int chunks = client.streamReply(() -> firstChunk[0] = System.nanoTime());
+        long end = System.nanoTime();
+        if (chunks > 0) {
+            stats.record("reply_first_chunk", firstChunk[0] - start);
+            stats.record("reply_stream", end - streamStart);
+            stats.record("reply_end_to_end", end - start);
+        }
+
+        long refreshStart = System.nanoTime();
+        client.refresh();
+        stats.record("refresh", System.nanoTime() - refreshStart);
+        stats.count("messages_completed");
+    }
+
+    private void think() {
+        long mean = config.thinkTime.toMillis();
+        if (mean <= 0) {
+            return;
+        }
+        // Uniform between half and one and a half times the configured think time
+        long pause = mean / 2 + ThreadLocalRandom.current().nextLong(mean + 1);
+        long remaining = (deadlineNanos - System.nanoTime()) / 1_000_000;
+        try {
+            Thread.sleep(Math.max(0, Math.min(pause, remaining)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean expired() {
+        return Thread.currentThread().isInterrupted() || System.nanoTime() >= deadlineNanos;
+    }
+}
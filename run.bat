@@ -38,6 +38,7 @@ if errorlevel 1 (
 REM Check for .env file
 if exist ".env" (
     echo Found .env file - API key will be loaded from it.
+    set "CHATBOT_CONFIG_FILE=%CD%\.env"
 ) else (
     echo No .env file found. Using environment variables or demo mode.
     if not defined GEMINI_API_KEY (
@@ -78,9 +78,13 @@ if (Test-Path ".env") {
                 $env:GEMINI_MODEL = $value
             } elseif ($key -eq "GEMINI_MAX_TURNS") {
                 $env:GEMINI_MAX_TURNS = $value
+            } elseif ($key -eq "CHAT_MODEL_PROVIDER" -or $key -eq "CONTEXT_TOKEN_BUDGET" -or $key -like "STUB_*" -or $key -like "RESPONSE_CACHE_*" -or $key -like "HISTORY_*" -or $key -like "TRANSCRIPT_*" -or $key -like "CONVERSATION_*" -or $key -like "MODEL_MAX_*" -or $key -like "SESSION_*" -or $key -eq "SINGLE_FLIGHT_ENABLED" -or $key -eq "GEMINI_FALLBACK_MODEL" -or $key -like "CIRCUIT_*" -or $key -like "MODEL_LATENCY_*" -or $key -like "MODEL_DEGRADE_*" -or $key -like "HEDGE_*" -or $key -eq "METRICS_ENABLED" -or $key -eq "METRICS_ACCESS" -or $key -eq "CONFIG_RELOAD_SECONDS" -or $key -like "SUMMARY_*" -or $key -like "API_*" -or $key -eq "LOG_LEVEL" -or $key -like "TRACE_*" -or $key -like "PREFETCH_*") {
+                Set-Item -Path "env:$key" -Value $value
             }
         }
     }
+    # Lets the application re-read the file while it runs
+    $env:CHATBOT_CONFIG_FILE = (Resolve-Path ".env").Path
     Write-Host "✓ .env file processed" -ForegroundColor Green
 } else {
     Write-Host "No .env file found. Using environment variables or demo mode." -ForegroundColor Yellow
@@ -0,0 +1,33 @@
+package com.hexabiblos.chatbot.api;
+
+import com.hexabiblos.chatbot.service.AppSettings;
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * Identifies the client of an API request for per-client admission limits: the
+ * value of the {@code API_CLIENT_HEADER} header when that is configured and
+ * present, e.g. an API key checked by a gateway in front of the server, otherwise
+ * the remote address.
+ */
+final class ApiClients {
+
+    private ApiClients() {
+    }
+
+    /**
+     * @return The client's key, or null if there is no request to tell it by
+     */
+    static String key(HttpServletRequest request) {
+        if (request == null) {
+            return null;
+        }
+        String header = AppSettings.getString("API_CLIENT_HEADER", "").trim();
+        if (!header.isEmpty()) {
+            String value = request.getHeader(header);
+            if (value != null && !value.isBlank()) {
+                return "key:" + value.trim();
+            }
+        }
+        return "addr:" + request.getRemoteAddr();
+    }
+}
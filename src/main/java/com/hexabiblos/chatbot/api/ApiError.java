@@ -0,0 +1,34 @@
+package com.hexabiblos.chatbot.api;
+
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+
+/**
+ * Error body: {@code {"error":"..."}}.
+ */
+public class ApiError {
+
+    public String error;
+
+    public ApiError() {
+    }
+
+    ApiError(String error) {
+        this.error = error;
+    }
+
+    static Response response(Response.Status status, String error) {
+        return Response.status(status).type(MediaType.APPLICATION_JSON).entity(new ApiError(error)).build();
+    }
+
+    /**
+     * 429 with a Retry-After header, for messages turned away by admission control.
+     */
+    static Response tooManyRequests(String error, int retryAfterSeconds) {
+        return Response.status(Response.Status.TOO_MANY_REQUESTS)
+            .header("Retry-After", retryAfterSeconds)
+            .type(MediaType.APPLICATION_JSON)
+            .entity(new ApiError(error))
+            .build();
+    }
+}
@@ -0,0 +1,34 @@
+package com.hexabiblos.chatbot.api;
+
+import com.hexabiblos.chatbot.model.ChatMessage;
+
+/**
+ * A chat message on the wire: {@code {"role":"user","text":"...","ts":1700000000000}}.
+ */
+public class ApiMessage {
+
+    /** {@code user}, {@code assistant} or {@code system}. */
+    public String role;
+    public String text;
+    /** Epoch milliseconds; ignored on input. */
+    public long ts;
+
+    public ApiMessage() {
+    }
+
+    public static ApiMessage of(ChatMessage message) {
+        ApiMessage api = new ApiMessage();
+        api.role = message.getRole().name().toLowerCase();
+        api.text = message.getText();
+        api.ts = message.getTimestampMillis();
+        return api;
+    }
+
+    /**
+     * Converts an incoming message; anything but {@code assistant} is taken as a user turn.
+     */
+    ChatMessage toChatMessage() {
+        return new ChatMessage("assistant".equalsIgnoreCase(role) ? ChatMessage.Role.ASSISTANT : ChatMessage.Role.USER,
+            (text != null) ? text : "");
+    }
+}
@@ -0,0 +1,13 @@
+package com.hexabiblos.chatbot.api;
+
+import jakarta.ws.rs.ApplicationPath;
+import jakarta.ws.rs.core.Application;
+
+/**
+ * JSON chat API under {@code /api}, for clients that do not need the JSF page:
+ * {@link ConversationResource} for conversations and {@link PromptResource} for
+ * independent prompts. Resources and JSON-B providers are discovered by the container.
+ */
+@ApplicationPath("/api")
+public class ChatApiApplication extends Application {
+}
@@ -0,0 +1,273 @@
+package com.hexabiblos.chatbot.api;
+
+import com.hexabiblos.chatbot.metrics.MetricsRegistry;
+import com.hexabiblos.chatbot.model.ChatMessage;
+import com.hexabiblos.chatbot.service.AdmissionControl;
+import com.hexabiblos.chatbot.service.ChatModelProvider;
+import com.hexabiblos.chatbot.service.ConversationSummarizer;
+import com.hexabiblos.chatbot.service.ModelCallExecutor;
+import com.hexabiblos.chatbot.service.ModelMetrics;
+import com.hexabiblos.chatbot.store.Conversation;
+import com.hexabiblos.chatbot.store.ConversationStore;
+import com.hexabiblos.chatbot.trace.Span;
+import com.hexabiblos.chatbot.trace.Tracer;
+import jakarta.enterprise.context.RequestScoped;
+import jakarta.inject.Inject;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.DefaultValue;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.container.AsyncResponse;
+import jakarta.ws.rs.container.Suspended;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.sse.OutboundSseEvent;
+import jakarta.ws.rs.sse.Sse;
+import jakarta.ws.rs.sse.SseEventSink;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Conversations over JSON, without the JSF lifecycle or an HTTP session.
+ *
+ * <pre>
+ * POST /api/conversations                          201 {"id":"..."}
+ * GET  /api/conversations/{id}/messages?from&amp;limit  200 [message, ...]
+ * POST /api/conversations/{id}/messages            200 {"reply":message}
+ * POST /api/conversations/{id}/messages/stream     text/event-stream: chunk..., done
+ * </pre>
+ *
+ * Conversations come from the same {@link ConversationStore} as the chat page,
+ * so the id from the page's {@code chatConversation} cookie works here too.
+ * Sends go through the same admission control and model-call executor as the
+ * chat page, so API traffic is bounded by the same global limits, and by a
+ * per-client allowance in place of the per-session one; a rejected send returns
+ * 429 with Retry-After. The model call runs on the executor while the
+ * container thread is released.
+ */
+@Path("/conversations")
+@RequestScoped
+@Produces(MediaType.APPLICATION_JSON)
+public class ConversationResource {
+
+    // Same limit as the chat page
+    private static final int MAX_INPUT_LENGTH = 2000;
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 500;
+    // Outlives the model-call deadline so the timeout message still reaches the client
+    private static final long RESPONSE_TIMEOUT_MS = ModelCallExecutor.CALL_TIMEOUT.toMillis() + 10_000;
+
+    @Inject
+    private ConversationStore conversations;
+
+    @Inject
+    private ChatModelProvider modelProvider;
+
+    @Inject
+    private ModelCallExecutor modelCalls;
+
+    @Inject
+    private AdmissionControl admission;
+
+    @Inject
+    private ConversationSummarizer summarizer;
+
+    @Inject
+    private MetricsRegistry metrics;
+
+    @Context
+    private HttpServletRequest servletRequest;
+
+    @POST
+    public Response create() {
+        Conversation conversation = conversations.open(UUID.randomUUID().toString());
+        synchronized (conversation) {
+            conversations.save(conversation);
+        }
+        return Response.created(URI.create("conversations/" + conversation.getId()))
+            .entity(Map.of("id", conversation.getId()))
+            .build();
+    }
+
+    @GET
+    @Path("{id}/messages")
+    public Response messages(@PathParam("id") String id,
+                             @QueryParam("from") @DefaultValue("0") int from,
+                             @QueryParam("limit") @DefaultValue("" + DEFAULT_PAGE_SIZE) int limit) {
+        Conversation conversation = conversations.find(id);
+        if (conversation == null) {
+            return ApiError.response(Response.Status.NOT_FOUND, "Unknown conversation");
+        }
+        List<ChatMessage> page;
+        synchronized (conversation) {
+            page = conversation.read(from, Math.min(limit, MAX_PAGE_SIZE));
+        }
+        return Response.ok(page.stream().map(ApiMessage::of).collect(Collectors.toList())).build();
+    }
+
+    /**
+     * Sends a user message and answers with the complete assistant reply.
+     */
+    @POST
+    @Path("{id}/messages")
+    @Consumes(MediaType.APPLICATION_JSON)
+    public void send(@PathParam("id") String id, SendRequest request, @Suspended AsyncResponse async) {
+        Turn turn = new Turn();
+        Response rejected = turn.begin(id, request);
+        if (rejected != null) {
+            async.resume(rejected);
+            return;
+        }
+        async.setTimeout(RESPONSE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        turn.run(chunk -> { }).thenAccept(reply ->
+            async.resume(Map.of("reply", ApiMessage.of(reply))));
+    }
+
+    /**
+     * Sends a user message and streams the reply as Server-Sent Events: one
+     * {@code chunk} event per text fragment, then a {@code done} event carrying
+     * the committed assistant message as JSON. Requests that are turned away get
+     * a plain JSON error response instead of a stream.
+     */
+    @POST
+    @Path("{id}/messages/stream")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces({MediaType.SERVER_SENT_EVENTS, MediaType.APPLICATION_JSON})
+    public void stream(@PathParam("id") String id, SendRequest request,
+                       @Context SseEventSink sink, @Context Sse sse) {
+        Turn turn = new Turn();
+        Response rejected = turn.begin(id, request);
+        if (rejected != null) {
+            // The sink has not written anything yet, so the status still reaches the client
+            throw new WebApplicationException(rejected);
+        }
+        turn.run(chunk -> send(sink, sse.newEvent("chunk", chunk))).thenAccept(reply -> {
+            send(sink, sse.newEventBuilder()
+                .name("done")
+                .mediaType(MediaType.APPLICATION_JSON_TYPE)
+                .data(ApiMessage.class, ApiMessage.of(reply))
+                .build());
+            sink.close();
+        });
+    }
+
+    private static void send(SseEventSink sink, OutboundSseEvent event) {
+        // Chunks arrive on the model-call thread; late ones after a disconnect are dropped
+        synchronized (sink) {
+            if (!sink.isClosed()) {
+                sink.send(event);
+            }
+        }
+    }
+
+    /**
+     * One user turn and its reply, from validation to the committed assistant message.
+     */
+    private final class Turn {
+
+        private Conversation conversation;
+        private List<ChatMessage> context;
+        private long start;
+        private Span span; // the request's span, see TracingFilter
+
+        /**
+         * Validates and admits the message and appends it to the conversation.
+         *
+         * @return null if the reply can be generated, otherwise the error response
+         */
+        Response begin(String id, SendRequest request) {
+            start = System.nanoTime();
+            span = Tracer.current();
+            conversation = conversations.find(id);
+            if (conversation == null) {
+                return ApiError.response(Response.Status.NOT_FOUND, "Unknown conversation");
+            }
+            String text = (request != null && request.text != null) ? request.text.trim() : "";
+            if (text.isEmpty()) {
+                return ApiError.response(Response.Status.BAD_REQUEST, "Message text is required");
+            }
+            if (span != null) {
+                span.setAttribute("chat.conversation", Tracer.pseudonym(id)).setAttribute("chat.message_chars", text.length());
+            }
+            if (text.length() > MAX_INPUT_LENGTH) {
+                return ApiError.response(Response.Status.BAD_REQUEST,
+                    "Message too long. Maximum length is " + MAX_INPUT_LENGTH + " characters.");
+            }
+            synchronized (conversation) {
+                // One reply at a time per conversation, as on the chat page
+                if (!conversation.startReply()) {
+                    return ApiError.response(Response.Status.CONFLICT, "A reply is already in progress");
+                }
+                String rejection = admission.admitClient(ApiClients.key(servletRequest));
+                if (rejection != null) {
+                    conversation.endReply();
+                    return ApiError.tooManyRequests(rejection, modelCalls.retryAfterSeconds());
+                }
+                conversation.append(new ChatMessage(ChatMessage.Role.USER, text));
+                conversations.save(conversation);
+                context = conversation.getWindow().getMessages();
+            }
+            return null;
+        }
+
+        /**
+         * Generates the reply on the model-call executor and commits it to the conversation.
+         * Failures are committed as their user-facing text, like on the chat page.
+         */
+        CompletableFuture<ChatMessage> run(Consumer<String> onChunk) {
+            CompletableFuture<String> call;
+            String cached = modelProvider.cachedResponse(context);
+            try {
+                if (cached != null) {
+                    onChunk.accept(cached);
+                    call = CompletableFuture.completedFuture(cached);
+                } else {
+                    call = modelCalls.submit(() -> modelProvider.streamResponse(context, onChunk));
+                }
+            } catch (RejectedExecutionException e) {
+                // Admitted, but the queue filled up before the call was submitted
+                String busy = ChatModelProvider.busyResponse(modelCalls.retryAfterSeconds());
+                onChunk.accept(busy);
+                call = CompletableFuture.completedFuture(busy);
+            }
+            return call.handle((responseText, failure) -> {
+                String finalText = responseText;
+                if (failure != null) {
+                    finalText = ModelCallExecutor.isTimeout(failure)
+                        ? ChatModelProvider.TIMEOUT_RESPONSE
+                        : ChatModelProvider.ERROR_RESPONSE;
+                }
+                ChatMessage reply = new ChatMessage(ChatMessage.Role.ASSISTANT, finalText);
+                synchronized (conversation) {
+                    conversation.append(reply);
+                    conversation.endReply();
+                    conversations.save(conversation);
+                    summarizer.compactIfDue(conversation.getWindow(), conversation::persistSummary);
+                }
+                String outcome = ModelMetrics.outcomeOf(finalText);
+                metrics.histogram("chat_api_reply_seconds", "API reply duration by outcome",
+                    MetricsRegistry.LATENCY_BUCKETS, "outcome", outcome)
+                    .observeNanos(System.nanoTime() - start);
+                if (span != null) {
+                    span.setAttribute("chat.outcome", outcome).setAttribute("chat.reply_chars", finalText.length());
+                }
+                return reply;
+            });
+        }
+    }
+}
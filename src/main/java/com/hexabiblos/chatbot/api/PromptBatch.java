@@ -0,0 +1,63 @@
+package com.hexabiblos.chatbot.api;
+
+import java.util.List;
+
+/**
+ * Request and response of {@code POST /api/prompts}.
+ *
+ * Request: {@code {"prompts":[{"text":"..."},{"messages":[{"role":"user","text":"..."}]}]}};
+ * a prompt is earlier turns, a final user text, or both.
+ * Response: {@code {"results":[{"text":"..."},{"error":"...","retryAfter":3}]}}, in request order.
+ */
+public class PromptBatch {
+
+    public List<Prompt> prompts;
+
+    public PromptBatch() {
+    }
+
+    public static class Prompt {
+
+        public String text;
+        public List<ApiMessage> messages;
+
+        public Prompt() {
+        }
+    }
+
+    public static class Results {
+
+        public List<Result> results;
+
+        public Results() {
+        }
+
+        Results(List<Result> results) {
+            this.results = results;
+        }
+    }
+
+    public static class Result {
+
+        public String text;
+        public String error;
+        /** Seconds to wait before retrying a prompt that was turned away; absent otherwise. */
+        public Integer retryAfter;
+
+        public Result() {
+        }
+
+        static Result ok(String text) {
+            Result result = new Result();
+            result.text = text;
+            return result;
+        }
+
+        static Result failed(String error, Integer retryAfter) {
+            Result result = new Result();
+            result.error = error;
+            result.retryAfter = retryAfter;
+            return result;
+        }
+    }
+}
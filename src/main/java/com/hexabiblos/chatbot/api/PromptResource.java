@@ -0,0 +1,143 @@
+package com.hexabiblos.chatbot.api;
+
+import com.hexabiblos.chatbot.model.ChatMessage;
+import com.hexabiblos.chatbot.service.AdmissionControl;
+import com.hexabiblos.chatbot.service.AppSettings;
+import com.hexabiblos.chatbot.service.ChatModelProvider;
+import com.hexabiblos.chatbot.service.ModelCallExecutor;
+import jakarta.enterprise.context.RequestScoped;
+import jakarta.inject.Inject;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.container.AsyncResponse;
+import jakarta.ws.rs.container.Suspended;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Independent, stateless prompts: {@code POST /api/prompts} with a batch of up to
+ * {@code API_MAX_BATCH} prompts, answered in request order once all are done.
+ *
+ * The prompts of a batch run in parallel on the model-call executor, each admitted
+ * separately and charged to the client's allowance (see {@link AdmissionControl}). A prompt that is turned away gets an error with {@code retryAfter}
+ * while the rest of the batch still runs, so a client can retry only what failed.
+ * Repeated prompts are answered from the response cache before admission.
+ */
+@Path("/prompts")
+@RequestScoped
+@Produces(MediaType.APPLICATION_JSON)
+public class PromptResource {
+
+    private static final int DEFAULT_MAX_BATCH = 16;
+    private static final int MAX_INPUT_LENGTH = 2000;
+    private static final long RESPONSE_TIMEOUT_MS = ModelCallExecutor.CALL_TIMEOUT.toMillis() + 10_000;
+
+    @Inject
+    private ChatModelProvider modelProvider;
+
+    @Inject
+    private ModelCallExecutor modelCalls;
+
+    @Inject
+    private AdmissionControl admission;
+
+    @Context
+    private HttpServletRequest servletRequest;
+
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    public void run(PromptBatch batch, @Suspended AsyncResponse async) {
+        int maxBatch = Math.max(1, AppSettings.getInt("API_MAX_BATCH", DEFAULT_MAX_BATCH));
+        if (batch == null || batch.prompts == null || batch.prompts.isEmpty()) {
+            async.resume(ApiError.response(Response.Status.BAD_REQUEST, "At least one prompt is required"));
+            return;
+        }
+        if (batch.prompts.size() > maxBatch) {
+            async.resume(ApiError.response(Response.Status.BAD_REQUEST,
+                "Too many prompts. Maximum per request is " + maxBatch + "."));
+            return;
+        }
+        async.setTimeout(RESPONSE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+        String client = ApiClients.key(servletRequest);
+        List<CompletableFuture<PromptBatch.Result>> results = new ArrayList<>(batch.prompts.size());
+        for (PromptBatch.Prompt prompt : batch.prompts) {
+            results.add(submit(prompt, client));
+        }
+        CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).whenComplete((ignored, failure) ->
+            async.resume(new PromptBatch.Results(results.stream()
+                .map(CompletableFuture::join)
+                .collect(Collectors.toList()))));
+    }
+
+    private CompletableFuture<PromptBatch.Result> submit(PromptBatch.Prompt prompt, String client) {
+        List<ChatMessage> messages = toMessages(prompt);
+        if (messages.isEmpty()) {
+            return CompletableFuture.completedFuture(PromptBatch.Result.failed("Prompt text is required", null));
+        }
+        if (messages.stream().anyMatch(m -> m.getText().length() > MAX_INPUT_LENGTH)) {
+            return CompletableFuture.completedFuture(PromptBatch.Result.failed(
+                "Message too long. Maximum length is " + MAX_INPUT_LENGTH + " characters.", null));
+        }
+        // A cached reply costs no model call, so it needs neither admission nor a permit
+        String cached = modelProvider.cachedResponse(messages);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(PromptBatch.Result.ok(cached));
+        }
+        String rejection = admission.admitClient(client);
+        if (rejection != null) {
+            return CompletableFuture.completedFuture(
+                PromptBatch.Result.failed(rejection, modelCalls.retryAfterSeconds()));
+        }
+        CompletableFuture<String> call;
+        try {
+            call = modelCalls.submit(() -> modelProvider.streamResponse(messages, chunk -> { }));
+        } catch (RejectedExecutionException e) {
+            int retryAfter = modelCalls.retryAfterSeconds();
+            return CompletableFuture.completedFuture(
+                PromptBatch.Result.failed(ChatModelProvider.busyResponse(retryAfter), retryAfter));
+        }
+        return call.handle((responseText, failure) -> {
+            if (failure != null) {
+                return PromptBatch.Result.failed(ModelCallExecutor.isTimeout(failure)
+                    ? ChatModelProvider.TIMEOUT_RESPONSE
+                    : ChatModelProvider.ERROR_RESPONSE, null);
+            }
+            if (ChatModelProvider.isBusyResponse(responseText)) {
+                return PromptBatch.Result.failed(responseText, modelCalls.retryAfterSeconds());
+            }
+            return ChatModelProvider.isFailureResponse(responseText)
+                ? PromptBatch.Result.failed(responseText, null)
+                : PromptBatch.Result.ok(responseText);
+        });
+    }
+
+    private static List<ChatMessage> toMessages(PromptBatch.Prompt prompt) {
+        List<ChatMessage> messages = new ArrayList<>();
+        if (prompt == null) {
+            return messages;
+        }
+        if (prompt.messages != null) {
+            for (ApiMessage message : prompt.messages) {
+                if (message != null && message.text != null && !message.text.isBlank()) {
+                    messages.add(message.toChatMessage());
+                }
+            }
+        }
+        if (prompt.text != null && !prompt.text.isBlank()) {
+            messages.add(new ChatMessage(ChatMessage.Role.USER, prompt.text.trim()));
+        }
+        return messages;
+    }
+}
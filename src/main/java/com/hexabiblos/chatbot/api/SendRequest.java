@@ -0,0 +1,12 @@
+package com.hexabiblos.chatbot.api;
+
+/**
+ * Body of a conversation send: {@code {"text":"..."}}.
+ */
+public class SendRequest {
+
+    public String text;
+
+    public SendRequest() {
+    }
+}
@@ -1,50 +1,138 @@
 package com.hexabiblos.chatbot.bean;
 
+import com.hexabiblos.chatbot.metrics.MetricsRegistry;
 import com.hexabiblos.chatbot.model.ChatMessage;
-import com.hexabiblos.chatbot.service.GeminiService;
+import com.hexabiblos.chatbot.model.CompactIO;
+import com.hexabiblos.chatbot.model.ContextWindow;
+import com.hexabiblos.chatbot.model.ConversationHistory;
+import com.hexabiblos.chatbot.service.AdmissionControl;
+import com.hexabiblos.chatbot.service.ChatModelProvider;
+import com.hexabiblos.chatbot.service.ConversationSummarizer;
+import com.hexabiblos.chatbot.service.QuickReplyPrefetcher;
+import com.hexabiblos.chatbot.service.TokenBucket;
+import com.hexabiblos.chatbot.store.Conversation;
+import com.hexabiblos.chatbot.store.ConversationStore;
+import com.hexabiblos.chatbot.trace.Span;
+import com.hexabiblos.chatbot.trace.Tracer;
+import jakarta.annotation.PostConstruct;
 import jakarta.enterprise.context.SessionScoped;
+import jakarta.enterprise.inject.spi.CDI;
+import jakarta.faces.context.FacesContext;
 import jakarta.inject.Inject;
 import jakarta.inject.Named;
+import jakarta.servlet.http.Cookie;
 
-import java.io.Serializable;
-import java.util.ArrayList;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 
 /**
  * JSF backing bean for chat state management.
- * Session-scoped to maintain conversation continuity.
+ * Session-scoped view of one conversation. The conversation itself (message
+ * cursor, in-memory tail, the model's context window) is looked up by id in the
+ * {@link ConversationStore}, so it does not depend on this session or node; the
+ * session holds only the id and what belongs to the page: visible range, pending
+ * input, reply status and send allowance. Mutators are synchronized so that sends
+ * from several tabs of one session are serialized, and model calls never run on
+ * the request thread.
+ *
+ * Passivated and replicated in a compact, versioned binary form (see
+ * {@link #writeExternal}); the injected services are not part of it and are
+ * looked up again after deserialization.
  */
 @Named
 @SessionScoped
-public class ChatState implements Serializable {
+public class ChatState implements Externalizable {
     
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 3L;
+    private static final int FORMAT_VERSION = 2;
+    
+    private static final int FLAG_LOADING = 1;
+    private static final int FLAG_AWAITING_REPLY = 2;
+    private static final int FLAG_SEND_ALLOWANCE = 4;
     private static final int MAX_INPUT_LENGTH = 2000;
+    private static final int PAGE_SIZE = 50;
+    private static final String WELCOME_TEXT = "Welcome! I'm your enterprise assistant. How can I help you today?";
+    private static final String CLEARED_TEXT = "Chat cleared. How can I help you today?";
+    private static final String CONVERSATION_COOKIE = "chatConversation";
+    private static final int CONVERSATION_COOKIE_MAX_AGE = 30 * 24 * 60 * 60;
+    // Posted back by the page: "generation:count" of the log it currently shows
+    private static final String CURSOR_PARAM = "chatCursor";
+    
+    // Transient: not part of the serialized state, restored by restoreServices()
+    @Inject
+    private transient ChatModelProvider modelProvider;
+    
+    @Inject
+    private transient ConversationStore conversations;
+    
+    @Inject
+    private transient MetricsRegistry metrics;
+    
+    @Inject
+    private transient AdmissionControl admission;
+    
+    @Inject
+    private transient ConversationSummarizer summarizer;
     
     @Inject
-    private GeminiService geminiService;
+    private transient QuickReplyPrefetcher prefetcher;
     
-    private List<ChatMessage> messages;
+    // Store key; the cookie lets a returning user pick the conversation up again
+    private String conversationId = UUID.randomUUID().toString();
+    // Outside a container there is no store, and the view keeps its conversation itself
+    private Conversation detached;
+    // Last copy the store gave this view, readmitted if the store drops it without a transcript
+    private transient volatile Conversation lastConversation;
+    private int visibleCount = PAGE_SIZE;
     private String inputText;
-    private boolean loading;
+    private volatile boolean loading;
+    private volatile boolean awaitingReply;
+    private int generation; // bumped whenever the view switches conversation, so stale replies are dropped
+    private TokenBucket sendAllowance; // null when per-session limiting is off
+    private transient MessageFragments fragments;
+    private transient Span sendSpan; // the reply stream continues this trace
     
     public ChatState() {
-        messages = new ArrayList<>();
         inputText = "";
         loading = false;
+    }
+    
+    /**
+     * Resumes the conversation named by the browser's conversation cookie, if the
+     * store still knows it, or starts a new one.
+     */
+    @PostConstruct
+    public void init() {
+        if (admission != null) {
+            sendAllowance = admission.newSessionBucket();
+        }
+        if (conversations == null) {
+            return;
+        }
         
-        // Add welcome message
-        ChatMessage welcome = new ChatMessage(
-            ChatMessage.Role.ASSISTANT,
-            "Welcome! I'm your enterprise assistant. How can I help you today?"
-        );
-        messages.add(welcome);
+        String returningId = readConversationCookie();
+        if (returningId != null && conversations.find(returningId) != null) {
+            conversationId = returningId;
+        } else {
+            startConversation(WELCOME_TEXT);
+        }
+        writeConversationCookie();
     }
     
     /**
-     * Sends the current input text as a user message and generates a response.
+     * Sends the current input text as a user message and queues an assistant turn.
+     * The reply itself is produced by the streaming endpoint, which the page opens
+     * as soon as this request completes.
      */
-    public void send() {
+    public synchronized void send() {
         if (loading) {
             return; // Prevent concurrent requests
         }
@@ -56,61 +144,93 @@ public class ChatState implements Serializable {
             return; // Ignore empty messages
         }
         
-        if (trimmedInput.length() > MAX_INPUT_LENGTH) {
-            // Add error message
-            ChatMessage error = new ChatMessage(
-                ChatMessage.Role.SYSTEM,
-                "Message too long. Maximum length is " + MAX_INPUT_LENGTH + " characters."
-            );
-            messages.add(error);
-            inputText = "";
-            return;
-        }
-        
-        loading = true;
-        
-        try {
-            // Add user message
-            ChatMessage userMessage = new ChatMessage(ChatMessage.Role.USER, trimmedInput);
-            messages.add(userMessage);
-            
-            // Generate assistant response
-            String responseText = geminiService.generateResponse(messages);
-            ChatMessage assistantMessage = new ChatMessage(ChatMessage.Role.ASSISTANT, responseText);
-            messages.add(assistantMessage);
-            
-        } catch (Exception e) {
-            // Add error message
-            ChatMessage error = new ChatMessage(
-                ChatMessage.Role.SYSTEM,
-                "An error occurred while processing your message. Please try again."
-            );
-            messages.add(error);
-        } finally {
-            loading = false;
+        Conversation conversation = conversation();
+        try (Span span = Tracer.start("chat.send", "chat.conversation", Tracer.pseudonym(conversation.getId()),
+                "chat.message_chars", trimmedInput.length())) {
+            synchronized (conversation) {
+                if (trimmedInput.length() > MAX_INPUT_LENGTH) {
+                    // Add error message
+                    ChatMessage error = new ChatMessage(
+                        ChatMessage.Role.SYSTEM,
+                        "Message too long. Maximum length is " + MAX_INPUT_LENGTH + " characters."
+                    );
+                    append(conversation, error);
+                    inputText = "";
+                    span.setAttribute("chat.outcome", "too_long");
+                    return;
+                }
+                
+                // Another view of this conversation (a tab of another session, or the API) is waiting for a reply
+                if (!conversation.startReply()) {
+                    span.setAttribute("chat.outcome", "reply_pending");
+                    return;
+                }
+                
+                // Turned away under load or when this session sends too fast; the input is kept for the retry
+                String rejection = (admission != null) ? admission.admit(sendAllowance) : null;
+                if (rejection != null) {
+                    conversation.endReply();
+                    append(conversation, new ChatMessage(ChatMessage.Role.SYSTEM, rejection));
+                    span.setAttribute("chat.outcome", "rejected");
+                    return;
+                }
+                
+                // Add user message; the assistant bubble stays open until the stream ends
+                ChatMessage userMessage = new ChatMessage(ChatMessage.Role.USER, trimmedInput);
+                append(conversation, userMessage);
+                recordSizes(conversation);
+            }
+            loading = true;
+            awaitingReply = true;
             inputText = ""; // Clear input field
+            sendSpan = span;
+        }
+    }
+    
+    /**
+     * Hands the queued assistant turn to the streaming endpoint.
+     *
+     * @return The pending reply, or null if no user message is waiting for one
+     */
+    public synchronized PendingReply claimPendingReply() {
+        if (!awaitingReply) {
+            return null;
+        }
+        awaitingReply = false;
+        Conversation conversation = conversation();
+        synchronized (conversation) {
+            PendingReply reply = new PendingReply(conversation.getId(), conversation.getWindow().getMessages(),
+                generation, sendSpan);
+            sendSpan = null;
+            return reply;
         }
     }
     
     /**
      * Clears the chat conversation and resets to initial state.
      */
-    public void clear() {
-        messages.clear();
+    public synchronized void clear() {
+        if (awaitingReply) {
+            // Queued but never claimed, so no stream will end the reply
+            Conversation previous = find(conversationId);
+            if (previous != null) {
+                synchronized (previous) {
+                    previous.endReply();
+                }
+            }
+        }
+        visibleCount = PAGE_SIZE;
         inputText = "";
-        loading = false;
         
-        // Add welcome message
-        ChatMessage welcome = new ChatMessage(
-            ChatMessage.Role.ASSISTANT,
-            "Chat cleared. How can I help you today?"
-        );
-        messages.add(welcome);
+        // A reset starts a new conversation; the old one stays in the store
+        conversationId = UUID.randomUUID().toString();
+        startConversation(CLEARED_TEXT);
+        writeConversationCookie();
     }
     
     /**
      * Sends a quick reply message.
-     * 
+     *
      * @param replyText The quick reply text to send
      */
     public void quickReply(String replyText) {
@@ -120,14 +240,370 @@ public class ChatState implements Serializable {
         }
     }
     
+    /**
+     * Returns the conversation this view shows, as the store currently has it.
+     * One the store has dropped meanwhile (evicted with no transcript to rebuild
+     * it from) is put back from this view's copy; only a view that never had one,
+     * e.g. after a session failover, starts afresh under the same id.
+     */
+    synchronized Conversation conversation() {
+        Conversation conversation = find(conversationId);
+        if (conversation == null && conversations != null && lastConversation != null
+                && lastConversation.getId().equals(conversationId)) {
+            conversation = conversations.readmit(lastConversation);
+            lastConversation = conversation;
+        }
+        return (conversation != null) ? conversation : startConversation(WELCOME_TEXT);
+    }
+    
+    private Conversation find(String id) {
+        if (conversations != null) {
+            Conversation found = conversations.find(id);
+            if (found != null && id.equals(conversationId)) {
+                lastConversation = found;
+            }
+            return found;
+        }
+        return (detached != null && detached.getId().equals(id)) ? detached : null;
+    }
+    
+    /**
+     * Opens the conversation under the current id, greeting with {@code welcomeText} if it is empty.
+     */
+    private Conversation startConversation(String welcomeText) {
+        Conversation conversation = openConversation();
+        synchronized (conversation) {
+            if (conversation.getMessageCount() == 0) {
+                append(conversation, new ChatMessage(ChatMessage.Role.ASSISTANT, welcomeText));
+            }
+        }
+        return conversation;
+    }
+    
+    /**
+     * Switches the view to the conversation under the current id; a reply still
+     * pending for the previous one is dropped.
+     */
+    private Conversation openConversation() {
+        generation++;
+        fragments().clear();
+        loading = false;
+        awaitingReply = false;
+        sendSpan = null;
+        if (conversations != null) {
+            lastConversation = conversations.open(conversationId);
+            return lastConversation;
+        }
+        detached = new Conversation(conversationId, null);
+        return detached;
+    }
+    
+    /**
+     * Adds a message to the conversation and saves it; called holding the conversation's lock.
+     */
+    private void append(Conversation conversation, ChatMessage message) {
+        conversation.append(message);
+        if (conversations != null) {
+            conversations.save(conversation);
+        }
+    }
+    
+    /**
+     * Samples this conversation's sizes, once per send.
+     */
+    private void recordSizes(Conversation conversation) {
+        if (metrics == null) {
+            return;
+        }
+        metrics.histogram("chat_session_conversation_messages", "Messages per conversation, sampled on send",
+            MetricsRegistry.SIZE_BUCKETS).observe(conversation.getMessageCount());
+        metrics.histogram("chat_session_history_messages", "Messages held in memory, sampled on send",
+            MetricsRegistry.SIZE_BUCKETS).observe(conversation.getTailSize());
+        metrics.histogram("chat_session_context_tokens", "Estimated context window tokens, sampled on send",
+            MetricsRegistry.SIZE_BUCKETS).observe(conversation.getWindow().getTokenCount());
+    }
+    
+    private String readConversationCookie() {
+        FacesContext faces = FacesContext.getCurrentInstance();
+        if (faces == null) {
+            return null;
+        }
+        Object cookie = faces.getExternalContext().getRequestCookieMap().get(CONVERSATION_COOKIE);
+        return (cookie instanceof Cookie) ? ((Cookie) cookie).getValue() : null;
+    }
+    
+    private void writeConversationCookie() {
+        if (conversations == null) {
+            return; // Ids of conversations kept in the session are not worth resuming
+        }
+        FacesContext faces = FacesContext.getCurrentInstance();
+        if (faces == null) {
+            return;
+        }
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("maxAge", CONVERSATION_COOKIE_MAX_AGE);
+        properties.put("path", faces.getExternalContext().getRequestContextPath() + "/");
+        properties.put("httpOnly", Boolean.TRUE);
+        faces.getExternalContext().addResponseCookie(CONVERSATION_COOKIE, conversationId, properties);
+    }
+    
     // Getters and Setters
     
-    public List<ChatMessage> getMessages() {
-        return messages;
+    /**
+     * Returns the visible page of the conversation: the newest messages, extended
+     * by {@link #loadOlder()}. Messages older than the in-memory tail are read
+     * back from the transcript store.
+     */
+    public synchronized List<ChatMessage> getMessages() {
+        Conversation conversation = conversation();
+        synchronized (conversation) {
+            return range(conversation, firstVisible(conversation));
+        }
+    }
+    
+    /**
+     * Replaces the conversation with a new one holding {@code messages}.
+     */
+    public synchronized void setMessages(List<ChatMessage> messages) {
+        conversationId = UUID.randomUUID().toString();
+        Conversation conversation = openConversation();
+        synchronized (conversation) {
+            messages.forEach(conversation::append);
+            if (conversations != null) {
+                conversations.save(conversation);
+            }
+        }
+        writeConversationCookie();
     }
     
-    public void setMessages(List<ChatMessage> messages) {
-        this.messages = messages;
+    /**
+     * Returns the visible page as pre-escaped HTML, for a full render of the log.
+     */
+    public synchronized String getLogHtml() {
+        Conversation conversation = conversation();
+        synchronized (conversation) {
+            return renderLog(conversation, "chatLogPage", firstVisible(conversation), false);
+        }
+    }
+    
+    /**
+     * Returns only the messages the page does not show yet, as pre-escaped HTML.
+     * The page posts its cursor with every chat request; if the cursor belongs to
+     * an earlier generation of the conversation, or is too far behind, the whole
+     * visible page is sent instead and flagged to replace the log.
+     *
+     * @return The delta markup, or an empty string on a full page render
+     */
+    public synchronized String getLogDelta() {
+        int[] cursor = readCursor();
+        if (cursor == null) {
+            return "";
+        }
+        Conversation conversation = conversation();
+        synchronized (conversation) {
+            int rendered = cursor[1];
+            int firstVisible = firstVisible(conversation);
+            boolean reset = cursor[0] != generation
+                || rendered > conversation.getMessageCount()
+                || rendered < firstVisible;
+            return renderLog(conversation, "chatDeltaData", reset ? firstVisible : rendered, reset);
+        }
+    }
+    
+    /**
+     * Pages one more screenful of older messages into view.
+     */
+    public synchronized void loadOlder() {
+        int available = conversation().getAvailableCount();
+        visibleCount = Math.min(visibleCount + PAGE_SIZE, Math.max(PAGE_SIZE, available));
+    }
+    
+    public boolean isHasOlder() {
+        return conversation().getAvailableCount() > visibleCount;
+    }
+    
+    public String getConversationId() {
+        return conversationId;
+    }
+    
+    private int firstVisible(Conversation conversation) {
+        return conversation.getMessageCount() - Math.min(visibleCount, conversation.getAvailableCount());
+    }
+    
+    /**
+     * Returns the messages from position {@code from} to the newest one, reading
+     * any that have left the in-memory tail back from the transcript store.
+     */
+    private static List<ChatMessage> range(Conversation conversation, int from) {
+        return conversation.read(from, conversation.getMessageCount() - from);
+    }
+    
+    private String renderLog(Conversation conversation, String elementId, int from, boolean reset) {
+        try (Span span = Tracer.start("chat.render_log", "chat.conversation", Tracer.pseudonym(conversation.getId()),
+                "chat.reset", reset)) {
+            String html = renderLogHtml(conversation, elementId, from, reset);
+            span.setAttribute("chat.html_chars", html.length());
+            return html;
+        }
+    }
+    
+    private String renderLogHtml(Conversation conversation, String elementId, int from, boolean reset) {
+        List<ChatMessage> messages = range(conversation, from);
+        int messageCount = conversation.getMessageCount();
+        StringBuilder html = new StringBuilder(messages.size() * 256 + 96);
+        html.append("<div id=\"").append(elementId)
+            .append("\" data-cursor=\"").append(generation).append(':').append(messageCount).append('"');
+        if (reset) {
+            html.append(" data-reset=\"true\"");
+        }
+        html.append('>');
+        // range() may start later than requested if older messages were evicted
+        int index = messageCount - messages.size();
+        for (ChatMessage message : messages) {
+            html.append(fragments().get(index++, message));
+        }
+        return html.append("</div>").toString();
+    }
+    
+    /**
+     * Writes the session state: conversation id, page state and send allowance.
+     * A conversation the view keeps itself (no store) is written along with it.
+     */
+    @Override
+    public synchronized void writeExternal(ObjectOutput out) throws IOException {
+        out.writeByte(FORMAT_VERSION);
+        writeConversationId(out);
+        CompactIO.writeVarInt(out, generation);
+        writeState(out);
+        out.writeBoolean(detached != null);
+        if (detached != null) {
+            synchronized (detached) {
+                detached.writeTo(out);
+            }
+        }
+    }
+    
+    @Override
+    public synchronized void readExternal(ObjectInput in) throws IOException {
+        int version = CompactIO.readVersion(in, FORMAT_VERSION, "ChatState");
+        conversationId = readConversationId(in);
+        if (version == 1) {
+            // Held the conversation itself; it is found again in the store by its id
+            CompactIO.readVarInt(in);
+            generation = CompactIO.readVarInt(in);
+            readState(in);
+            ConversationHistory history = new ConversationHistory();
+            history.readFrom(in);
+            new ContextWindow().readFrom(in, history);
+            detached = null;
+        } else {
+            generation = CompactIO.readVarInt(in);
+            readState(in);
+            detached = in.readBoolean() ? Conversation.readFrom(in, null) : null;
+        }
+        fragments = null;
+        restoreServices();
+    }
+    
+    private void writeState(DataOutput out) throws IOException {
+        CompactIO.writeVarInt(out, visibleCount);
+        int flags = (loading ? FLAG_LOADING : 0)
+            | (awaitingReply ? FLAG_AWAITING_REPLY : 0)
+            | (sendAllowance != null ? FLAG_SEND_ALLOWANCE : 0);
+        out.writeByte(flags);
+        CompactIO.writeString(out, inputText);
+        if (sendAllowance != null) {
+            sendAllowance.writeTo(out);
+        }
+    }
+    
+    private void readState(DataInput in) throws IOException {
+        visibleCount = CompactIO.readVarInt(in);
+        int flags = in.readUnsignedByte();
+        loading = (flags & FLAG_LOADING) != 0;
+        awaitingReply = (flags & FLAG_AWAITING_REPLY) != 0;
+        inputText = CompactIO.readString(in);
+        if ((flags & FLAG_SEND_ALLOWANCE) != 0) {
+            sendAllowance = new TokenBucket();
+            sendAllowance.readFrom(in);
+        } else {
+            sendAllowance = null;
+        }
+    }
+    
+    /**
+     * Writes the id as two longs when it is a UUID, as it always is unless resumed from an older cookie.
+     */
+    private void writeConversationId(DataOutput out) throws IOException {
+        UUID uuid = parseUuid(conversationId);
+        out.writeBoolean(uuid != null);
+        if (uuid != null) {
+            out.writeLong(uuid.getMostSignificantBits());
+            out.writeLong(uuid.getLeastSignificantBits());
+        } else {
+            CompactIO.writeString(out, conversationId);
+        }
+    }
+    
+    private static String readConversationId(DataInput in) throws IOException {
+        if (in.readBoolean()) {
+            return new UUID(in.readLong(), in.readLong()).toString();
+        }
+        return CompactIO.readString(in);
+    }
+    
+    private static UUID parseUuid(String value) {
+        try {
+            UUID uuid = UUID.fromString(value);
+            // fromString accepts non-canonical forms; only round-tripping ids are packed
+            return uuid.toString().equals(value) ? uuid : null;
+        } catch (IllegalArgumentException | NullPointerException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * Looks the injected services up again after deserialization. Outside a
+     * container (e.g. in benchmarks) they stay null, which every use tolerates.
+     */
+    private void restoreServices() {
+        try {
+            CDI<Object> cdi = CDI.current();
+            modelProvider = cdi.select(ChatModelProvider.class).get();
+            conversations = cdi.select(ConversationStore.class).get();
+            metrics = cdi.select(MetricsRegistry.class).get();
+            admission = cdi.select(AdmissionControl.class).get();
+            summarizer = cdi.select(ConversationSummarizer.class).get();
+            prefetcher = cdi.select(QuickReplyPrefetcher.class).get();
+        } catch (IllegalStateException e) {
+            // No CDI container
+        }
+    }
+    
+    private MessageFragments fragments() {
+        if (fragments == null) {
+            fragments = new MessageFragments();
+        }
+        return fragments;
+    }
+    
+    private int[] readCursor() {
+        FacesContext faces = FacesContext.getCurrentInstance();
+        String value = (faces != null)
+            ? faces.getExternalContext().getRequestParameterMap().get(CURSOR_PARAM)
+            : null;
+        int separator = (value != null) ? value.indexOf(':') : -1;
+        if (separator < 0) {
+            return null;
+        }
+        try {
+            return new int[] {
+                Integer.parseInt(value.substring(0, separator)),
+                Integer.parseInt(value.substring(separator + 1))
+            };
+        } catch (NumberFormatException e) {
+            return null;
+        }
     }
     
     public String getInputText() {
@@ -142,11 +618,82 @@ public class ChatState implements Serializable {
         return loading;
     }
     
-    public void setLoading(boolean loading) {
+    public synchronized void setLoading(boolean loading) {
         this.loading = loading;
     }
     
+    public boolean isAwaitingReply() {
+        return awaitingReply;
+    }
+    
     public boolean isDemoMode() {
-        return geminiService != null && geminiService.isDemoMode();
+        return modelProvider != null && modelProvider.isDemoMode();
+    }
+    
+    /**
+     * An assistant turn claimed by the streaming endpoint.
+     * Holds a snapshot of the context window so the stream can run off the request
+     * thread, and commits the final text back to the conversation when done.
+     */
+    public class PendingReply {
+        
+        private final String conversationId;
+        private final List<ChatMessage> history;
+        private final int generation;
+        private final Span traceParent;
+        
+        private PendingReply(String conversationId, List<ChatMessage> history, int generation, Span traceParent) {
+            this.conversationId = conversationId;
+            this.history = history;
+            this.generation = generation;
+            this.traceParent = traceParent;
+        }
+        
+        public String getConversationId() {
+            return conversationId;
+        }
+        
+        public List<ChatMessage> getHistory() {
+            return history;
+        }
+        
+        /**
+         * The span of the send that queued this reply, or null if it is unknown
+         * (e.g. the session was passivated in between).
+         */
+        public Span getTraceParent() {
+            return traceParent;
+        }
+        
+        /**
+         * Commits the full streamed text as a single assistant message.
+         */
+        public void complete(String responseText) {
+            synchronized (ChatState.this) {
+                // Otherwise the view has moved on to another conversation while streaming
+                boolean current = generation == ChatState.this.generation;
+                Conversation conversation = find(conversationId);
+                if (conversation != null) {
+                    synchronized (conversation) {
+                        conversation.endReply();
+                        if (current) {
+                            append(conversation, new ChatMessage(ChatMessage.Role.ASSISTANT, responseText));
+                            // Answers the quick replies in the background while the user reads this one
+                            if (prefetcher != null && !ChatModelProvider.isFailureResponse(responseText)) {
+                                prefetcher.prefetch(conversationId, conversation.getWindow().getMessages());
+                            }
+                            // Summarizes older turns in the background before they would fall off the window
+                            if (summarizer != null) {
+                                summarizer.compactIfDue(conversation.getWindow(), conversation::persistSummary);
+                            }
+                        }
+                    }
+                }
+                if (!current) {
+                    return;
+                }
+                loading = false;
+            }
+        }
     }
 }
@@ -0,0 +1,78 @@
+package com.hexabiblos.chatbot.bean;
+
+import com.hexabiblos.chatbot.model.ChatMessage;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Pre-escaped HTML for chat messages, rendered once and reused by later renders.
+ *
+ * Messages never change once appended, so a fragment is keyed by the message's
+ * position in the conversation and only has to be dropped when the conversation
+ * is reset. The markup matches what chat.xhtml used to render per message.
+ */
+final class MessageFragments {
+    
+    // Enough for a few pages of the visible log
+    private static final int MAX_ENTRIES = 200;
+    
+    private final Map<Integer, String> fragments = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, String> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    
+    /**
+     * Returns the fragment for the message at {@code index}, rendering it on first use.
+     */
+    String get(int index, ChatMessage message) {
+        return fragments.computeIfAbsent(index, i -> render(message));
+    }
+    
+    void clear() {
+        fragments.clear();
+    }
+    
+    static String render(ChatMessage message) {
+        String text = message.getText();
+        StringBuilder html = new StringBuilder(((text != null) ? text.length() : 0) + 160);
+        html.append("<div class=\"message ")
+            .append(message.isUser() ? "user-message" : "bot-message")
+            .append("\"><div class=\"message-content\"><p>");
+        escape(html, text);
+        html.append("</p></div><div class=\"message-timestamp\">")
+            .append(message.getFormattedTimestamp())
+            .append("</div></div>");
+        return html.toString();
+    }
+    
+    private static void escape(StringBuilder html, String text) {
+        if (text == null) {
+            return;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '<':
+                    html.append("&lt;");
+                    break;
+                case '>':
+                    html.append("&gt;");
+                    break;
+                case '&':
+                    html.append("&amp;");
+                    break;
+                case '"':
+                    html.append("&quot;");
+                    break;
+                case '\'':
+                    html.append("&#39;");
+                    break;
+                default:
+                    html.append(c);
+            }
+        }
+    }
+}
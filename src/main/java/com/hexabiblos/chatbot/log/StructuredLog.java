@@ -0,0 +1,205 @@
+package com.hexabiblos.chatbot.log;
+
+import com.hexabiblos.chatbot.service.AppSettings;
+
+import java.io.PrintStream;
+import java.time.Instant;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Asynchronous logger writing one JSON object per line to standard output.
+ *
+ * Callers only format the line and offer it to a bounded queue; a single daemon
+ * thread does the blocking write. When the queue is full the line is dropped and
+ * counted rather than stalling a request thread.
+ *
+ * Usage: {@code log.info("Model call failed", "model", modelName, "cause", cause)}.
+ * Fields are name/value pairs; numbers and booleans are written unquoted.
+ */
+public final class StructuredLog {
+
+    public enum Level {
+        DEBUG,
+        INFO,
+        WARN,
+        ERROR
+    }
+
+    private static final int QUEUE_CAPACITY = 10_000;
+
+    private static final Level THRESHOLD = parseLevel(AppSettings.getString("LOG_LEVEL", "INFO"));
+    private static final BlockingQueue<String> QUEUE = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private static final LongAdder DROPPED = new LongAdder();
+    private static volatile Thread writer;
+    private static volatile boolean closed;
+
+    private final String logger;
+
+    private StructuredLog(String logger) {
+        this.logger = logger;
+    }
+
+    public static StructuredLog forClass(Class<?> type) {
+        return new StructuredLog(type.getSimpleName());
+    }
+
+    public boolean isDebugEnabled() {
+        return THRESHOLD == Level.DEBUG;
+    }
+
+    public void debug(String message, Object... fields) {
+        log(Level.DEBUG, message, null, fields);
+    }
+
+    public void info(String message, Object... fields) {
+        log(Level.INFO, message, null, fields);
+    }
+
+    public void warn(String message, Object... fields) {
+        log(Level.WARN, message, null, fields);
+    }
+
+    public void warn(String message, Throwable error, Object... fields) {
+        log(Level.WARN, message, error, fields);
+    }
+
+    public void error(String message, Throwable error, Object... fields) {
+        log(Level.ERROR, message, error, fields);
+    }
+
+    /**
+     * Number of lines dropped because the queue was full.
+     */
+    public static long getDroppedCount() {
+        return DROPPED.sum();
+    }
+
+    /**
+     * Writes out whatever is still queued and stops the writer thread.
+     * Called when the application is undeployed.
+     */
+    public static synchronized void shutdown() {
+        closed = true;
+        Thread current = writer;
+        writer = null;
+        if (current != null) {
+            current.interrupt();
+            try {
+                current.join(TimeUnit.SECONDS.toMillis(2));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void log(Level level, String message, Throwable error, Object... fields) {
+        if (level.compareTo(THRESHOLD) < 0) {
+            return;
+        }
+        StringBuilder line = new StringBuilder(128);
+        line.append("{\"time\":\"").append(Instant.now()).append('"');
+        line.append(",\"level\":\"").append(level).append('"');
+        appendField(line, "logger", logger);
+        appendField(line, "msg", message);
+        for (int i = 0; i + 1 < fields.length; i += 2) {
+            appendField(line, String.valueOf(fields[i]), fields[i + 1]);
+        }
+        if (error != null) {
+            appendField(line, "error", error.getClass().getName() + ": " + error.getMessage());
+        }
+        line.append('}');
+
+        if (closed) {
+            System.out.println(line); // Late lines during undeploy
+            return;
+        }
+        ensureWriter();
+        if (!QUEUE.offer(line.toString())) {
+            DROPPED.increment();
+        }
+    }
+
+    private static void appendField(StringBuilder line, String name, Object value) {
+        line.append(",\"");
+        escape(line, name);
+        line.append("\":");
+        if (value instanceof Number || value instanceof Boolean) {
+            line.append(value);
+        } else if (value == null) {
+            line.append("null");
+        } else {
+            line.append('"');
+            escape(line, value.toString());
+            line.append('"');
+        }
+    }
+
+    private static void escape(StringBuilder line, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"':
+                    line.append("\\\"");
+                    break;
+                case '\\':
+                    line.append("\\\\");
+                    break;
+                case '\n':
+                    line.append("\\n");
+                    break;
+                case '\r':
+                    line.append("\\r");
+                    break;
+                case '\t':
+                    line.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+            }
+        }
+    }
+
+    private static void ensureWriter() {
+        if (writer == null) {
+            synchronized (StructuredLog.class) {
+                if (writer == null && !closed) {
+                    Thread thread = new Thread(StructuredLog::drain, "structured-log-writer");
+                    thread.setDaemon(true);
+                    thread.start();
+                    writer = thread;
+                }
+            }
+        }
+    }
+
+    private static void drain() {
+        PrintStream out = System.out;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                out.println(QUEUE.take());
+            }
+        } catch (InterruptedException e) {
+            // Shutting down
+        }
+        String line;
+        while ((line = QUEUE.poll()) != null) {
+            out.println(line);
+        }
+        out.flush();
+    }
+
+    private static Level parseLevel(String value) {
+        try {
+            return Level.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException | NullPointerException e) {
+            return Level.INFO;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package com.hexabiblos.chatbot.metrics;
+
+import com.hexabiblos.chatbot.log.StructuredLog;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Application-wide metrics, exposed in the Prometheus text format by
+ * {@link com.hexabiblos.chatbot.web.MetricsServlet}.
+ *
+ * Metrics are identified by name plus label pairs and created on first use, so
+ * callers simply ask for {@code counter("x_total", help, "model", name)} on the hot
+ * path. Updates are lock-free ({@link LongAdder}/{@link DoubleAdder}); only the
+ * scrape walks the registry.
+ */
+@ApplicationScoped
+public class MetricsRegistry {
+
+    /** Upper bounds in seconds for request latencies, from cache hits to the call timeout. */
+    public static final double[] LATENCY_BUCKETS = {
+        0.005, 0.025, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60
+    };
+
+    /** Upper bounds for message and token counts. */
+    public static final double[] SIZE_BUCKETS = {
+        1, 5, 10, 25, 50, 100, 250, 500, 1000, 5000
+    };
+
+    // Sorted so the scrape output is stable
+    private final Map<String, Family> families = new ConcurrentSkipListMap<>();
+
+    @PostConstruct
+    public void init() {
+        counterFunction("chat_log_lines_dropped_total", "Log lines dropped because the log queue was full",
+            StructuredLog::getDroppedCount);
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        gauge("jvm_memory_heap_used_bytes", "Heap in use", () -> memory.getHeapMemoryUsage().getUsed());
+        gauge("jvm_memory_heap_committed_bytes", "Heap committed by the JVM",
+            () -> memory.getHeapMemoryUsage().getCommitted());
+    }
+
+    public Counter counter(String name, String help, String... labels) {
+        return (Counter) family(name, help, "counter")
+            .samples.computeIfAbsent(formatLabels(labels), l -> new Counter());
+    }
+
+    public Histogram histogram(String name, String help, double[] buckets, String... labels) {
+        return (Histogram) family(name, help, "histogram")
+            .samples.computeIfAbsent(formatLabels(labels), l -> new Histogram(buckets));
+    }
+
+    /**
+     * Registers a value read at scrape time, e.g. a queue depth.
+     */
+    public void gauge(String name, String help, DoubleSupplier value, String... labels) {
+        family(name, help, "gauge").samples.put(formatLabels(labels), new Function(value));
+    }
+
+    /**
+     * Registers a monotonic count that another component already keeps, read at scrape time.
+     */
+    public void counterFunction(String name, String help, DoubleSupplier value, String... labels) {
+        family(name, help, "counter").samples.put(formatLabels(labels), new Function(value));
+    }
+
+    /**
+     * Renders every metric in the Prometheus text exposition format (version 0.0.4).
+     */
+    public String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+        for (Map.Entry<String, Family> entry : families.entrySet()) {
+            String name = entry.getKey();
+            Family family = entry.getValue();
+            out.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(family.type).append('\n');
+            for (Map.Entry<String, Sample> sample : family.samples.entrySet()) {
+                sample.getValue().write(out, name, sample.getKey());
+            }
+        }
+        return out.toString();
+    }
+
+    private Family family(String name, String help, String type) {
+        Family family = families.computeIfAbsent(name, n -> new Family(help, type));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException("Metric " + name + " is a " + family.type + ", not a " + type);
+        }
+        return family;
+    }
+
+    /**
+     * Formats label pairs as {@code a="x",b="y"}, without braces.
+     */
+    private static String formatLabels(String... labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be name/value pairs");
+        }
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                out.append(',');
+            }
+            out.append(labels[i]).append("=\"");
+            String value = (labels[i + 1] != null) ? labels[i + 1] : "";
+            for (int j = 0; j < value.length(); j++) {
+                char c = value.charAt(j);
+                if (c == '\\' || c == '"') {
+                    out.append('\\').append(c);
+                } else if (c == '\n') {
+                    out.append("\\n");
+                } else {
+                    out.append(c);
+                }
+            }
+            out.append('"');
+        }
+        return out.toString();
+    }
+
+    private static void writeSample(StringBuilder out, String name, String labels, double value) {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ');
+        if (value == Math.rint(value) && !Double.isInfinite(value)) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+
+    private static final class Family {
+
+        final String help;
+        final String type;
+        final Map<String, Sample> samples = new ConcurrentHashMap<>();
+
+        Family(String help, String type) {
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    private interface Sample {
+        void write(StringBuilder out, String name, String labels);
+    }
+
+    public static final class Counter implements Sample {
+
+        private final LongAdder count = new LongAdder();
+
+        public void increment() {
+            count.increment();
+        }
+
+        public void add(long amount) {
+            if (amount > 0) {
+                count.add(amount);
+            }
+        }
+
+        public long get() {
+            return count.sum();
+        }
+
+        @Override
+        public void write(StringBuilder out, String name, String labels) {
+            writeSample(out, name, labels, count.sum());
+        }
+    }
+
+    public static final class Histogram implements Sample {
+
+        private final double[] bounds;
+        private final LongAdder[] buckets;
+        private final LongAdder count = new LongAdder();
+        private final DoubleAdder sum = new DoubleAdder();
+
+        Histogram(double[] bounds) {
+            this.bounds = bounds.clone();
+            this.buckets = new LongAdder[bounds.length];
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        public void observe(double value) {
+            // Counted in the first bucket that fits; made cumulative at scrape time
+            for (int i = 0; i < bounds.length; i++) {
+                if (value <= bounds[i]) {
+                    buckets[i].increment();
+                    break;
+                }
+            }
+            count.increment();
+            sum.add(value);
+        }
+
+        public void observeNanos(long nanos) {
+            observe(nanos / 1_000_000_000.0);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        @Override
+        public void write(StringBuilder out, String name, String labels) {
+            String prefix = labels.isEmpty() ? "" : labels + ",";
+            long cumulative = 0;
+            for (int i = 0; i < bounds.length; i++) {
+                cumulative += buckets[i].sum();
+                String bound = (bounds[i] == Math.rint(bounds[i]))
+                    ? Long.toString((long) bounds[i]) : Double.toString(bounds[i]);
+                writeSample(out, name + "_bucket", prefix + "le=\"" + bound + "\"", cumulative);
+            }
+            long total = count.sum();
+            writeSample(out, name + "_bucket", prefix + "le=\"+Inf\"", total);
+            writeSample(out, name + "_sum", labels, sum.sum());
+            writeSample(out, name + "_count", labels, total);
+        }
+    }
+
+    private static final class Function implements Sample {
+
+        private final DoubleSupplier value;
+
+        Function(DoubleSupplier value) {
+            this.value = value;
+        }
+
+        @Override
+        public void write(StringBuilder out, String name, String labels) {
+            writeSample(out, name, labels, value.getAsDouble());
+        }
+    }
+}
@@ -1,17 +1,25 @@
 package com.hexabiblos.chatbot.model;
 
-import java.io.Serializable;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.time.Instant;
-import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 
 /**
  * Domain model representing a chat message in the conversation.
+ * Stored compactly: the role as a byte code and the timestamp as epoch millis,
+ * and serialized the same way (see {@link #writeTo}) rather than by default
+ * serialization, which would describe the class and box every field.
  */
-public class ChatMessage implements Serializable {
+public class ChatMessage implements Externalizable {
     
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 3L;
+    private static final int FORMAT_VERSION = 1;
     
     public enum Role {
         USER,
@@ -19,26 +27,45 @@ public class ChatMessage implements Serializable {
         SYSTEM
     }
     
-    private Role role;
+    private static final Role[] ROLES = Role.values();
+    private static final byte NO_ROLE = -1;
+    // Thread-safe and immutable, so one instance serves every render
+    private static final DateTimeFormatter TIME_FORMAT =
+        DateTimeFormatter.ofPattern("HH:mm").withZone(ZoneId.systemDefault());
+    
+    private byte role = NO_ROLE;
     private String text;
-    private Instant timestamp;
+    private long timestamp;
     
     public ChatMessage() {
-        this.timestamp = Instant.now();
+        this.timestamp = System.currentTimeMillis();
     }
     
     public ChatMessage(Role role, String text) {
-        this.role = role;
+        this.role = toCode(role);
+        this.text = text;
+        this.timestamp = System.currentTimeMillis();
+    }
+    
+    /**
+     * Rebuilds a message from its compact form, e.g. from {@link ConversationHistory}.
+     */
+    public ChatMessage(byte roleCode, String text, long timestampMillis) {
+        this.role = roleCode;
         this.text = text;
-        this.timestamp = Instant.now();
+        this.timestamp = timestampMillis;
     }
     
     public Role getRole() {
-        return role;
+        return (role == NO_ROLE) ? null : ROLES[role];
     }
     
     public void setRole(Role role) {
-        this.role = role;
+        this.role = toCode(role);
+    }
+    
+    public byte getRoleCode() {
+        return role;
     }
     
     public String getText() {
@@ -50,23 +77,27 @@ public class ChatMessage implements Serializable {
     }
     
     public Instant getTimestamp() {
-        return timestamp;
+        return Instant.ofEpochMilli(timestamp);
     }
     
     public void setTimestamp(Instant timestamp) {
-        this.timestamp = timestamp;
+        this.timestamp = (timestamp != null) ? timestamp.toEpochMilli() : 0L;
+    }
+    
+    public long getTimestampMillis() {
+        return timestamp;
     }
     
     public boolean isUser() {
-        return Role.USER.equals(role);
+        return role == Role.USER.ordinal();
     }
     
     public boolean isAssistant() {
-        return Role.ASSISTANT.equals(role);
+        return role == Role.ASSISTANT.ordinal();
     }
     
     public boolean isSystem() {
-        return Role.SYSTEM.equals(role);
+        return role == Role.SYSTEM.ordinal();
     }
     
     /**
@@ -74,10 +105,55 @@ public class ChatMessage implements Serializable {
      * Formats as HH:mm (24-hour format).
      */
     public String getFormattedTimestamp() {
-        if (timestamp == null) {
+        if (timestamp == 0L) {
             return "";
         }
-        LocalDateTime dateTime = LocalDateTime.ofInstant(timestamp, ZoneId.systemDefault());
-        return dateTime.format(DateTimeFormatter.ofPattern("HH:mm"));
+        return TIME_FORMAT.format(Instant.ofEpochMilli(timestamp));
+    }
+    
+    /**
+     * Writes role, timestamp and text without a version header; containers such as
+     * {@link ConversationHistory} version their own format.
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeByte(role);
+        CompactIO.writeVarLong(out, timestamp);
+        CompactIO.writeString(out, text);
+    }
+    
+    public static ChatMessage readFrom(DataInput in) throws IOException {
+        byte role = in.readByte();
+        if (role < NO_ROLE || role >= ROLES.length) {
+            role = NO_ROLE;
+        }
+        long timestamp = CompactIO.readVarLong(in);
+        return new ChatMessage(role, CompactIO.readString(in), timestamp);
+    }
+    
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        out.writeByte(FORMAT_VERSION);
+        writeTo(out);
+    }
+    
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        CompactIO.readVersion(in, FORMAT_VERSION, "ChatMessage");
+        ChatMessage read = readFrom(in);
+        role = read.role;
+        timestamp = read.timestamp;
+        text = read.text;
+    }
+    
+    /**
+     * True if both messages have the same role, timestamp and text.
+     */
+    public boolean sameAs(ChatMessage other) {
+        return other != null && role == other.role && timestamp == other.timestamp
+            && (text == other.text || (text != null && text.equals(other.text)));
+    }
+    
+    private static byte toCode(Role role) {
+        return (role == null) ? NO_ROLE : (byte) role.ordinal();
     }
 }
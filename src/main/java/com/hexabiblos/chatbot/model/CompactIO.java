@@ -0,0 +1,120 @@
+package com.hexabiblos.chatbot.model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Primitives of the compact binary format used to passivate and replicate chat
+ * state: variable-length integers and length-prefixed UTF-8 strings.
+ *
+ * Small numbers dominate session state (counts, roles, timestamp gaps), so a
+ * varint usually takes one or two bytes where {@code writeInt}/{@code writeLong}
+ * take four or eight. Strings are not limited to 64 KB like {@code writeUTF}.
+ */
+public final class CompactIO {
+
+    // Rejects corrupt lengths before allocating; far above any real message
+    private static final int MAX_BYTES_LENGTH = 64 * 1024 * 1024;
+
+    private CompactIO() {
+    }
+
+    /**
+     * Writes a non-negative value in 7-bit groups, least significant first.
+     */
+    public static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    public static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new InvalidObjectException("Malformed varint");
+    }
+
+    public static void writeVarInt(DataOutput out, int value) throws IOException {
+        writeVarLong(out, value & 0xFFFFFFFFL);
+    }
+
+    public static int readVarInt(DataInput in) throws IOException {
+        return (int) readVarLong(in);
+    }
+
+    /**
+     * Writes a value that may be negative, such as the gap between two timestamps,
+     * so that small magnitudes of either sign stay short.
+     */
+    public static void writeSignedVarLong(DataOutput out, long value) throws IOException {
+        writeVarLong(out, (value << 1) ^ (value >> 63));
+    }
+
+    public static long readSignedVarLong(DataInput in) throws IOException {
+        long raw = readVarLong(in);
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    /**
+     * Writes a string as its UTF-8 length plus one (0 stands for null), then the bytes.
+     */
+    public static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, utf8.length + 1);
+        out.write(utf8);
+    }
+
+    public static String readString(DataInput in) throws IOException {
+        int length = readVarInt(in) - 1;
+        if (length < 0) {
+            return null;
+        }
+        return new String(readBytes(in, length), StandardCharsets.UTF_8);
+    }
+
+    public static void writeBytes(DataOutput out, byte[] value) throws IOException {
+        writeVarInt(out, value.length);
+        out.write(value);
+    }
+
+    public static byte[] readBytes(DataInput in) throws IOException {
+        return readBytes(in, readVarInt(in));
+    }
+
+    /**
+     * Checks the format version written ahead of an object.
+     *
+     * @return The version, if it is one this code can read
+     */
+    public static int readVersion(DataInput in, int maxSupported, String type) throws IOException {
+        int version = in.readUnsignedByte();
+        if (version < 1 || version > maxSupported) {
+            throw new InvalidObjectException("Unsupported " + type + " format version " + version);
+        }
+        return version;
+    }
+
+    private static byte[] readBytes(DataInput in, int length) throws IOException {
+        if (length < 0 || length > MAX_BYTES_LENGTH) {
+            throw new InvalidObjectException("Invalid length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,273 @@
+package com.hexabiblos.chatbot.model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The slice of a conversation that is sent to the model, maintained incrementally.
+ *
+ * Each appended message is costed once with {@link TokenEstimator}; the oldest
+ * turns are dropped as soon as the running total exceeds the token budget, so
+ * appending is O(1) amortized and the window never grows with conversation length.
+ * The newest message is always kept, even if it alone exceeds the budget.
+ * SYSTEM messages are UI-only and never enter the window.
+ *
+ * Before turns fall off the budget they can be compacted: a summarizer takes the
+ * oldest turns from {@link #beginCompaction}, and {@link #applySummary} replaces
+ * them with a rolling summary that leads the window from then on.
+ *
+ * Serialized in a compact, versioned form. A window written together with the
+ * {@link ConversationHistory} it was built from refers to the history's newest
+ * messages instead of repeating them (see {@link #writeTo}).
+ */
+public class ContextWindow implements Externalizable {
+
+    private static final long serialVersionUID = 2L;
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int MESSAGES_INLINE = 0;
+    private static final int MESSAGES_HISTORY_TAIL = 1;
+
+    public static final int DEFAULT_TOKEN_BUDGET = 8000;
+
+    /** Opens the summary message, so the model reads it as context rather than a question. */
+    public static final String SUMMARY_PREFIX = "Summary of our conversation so far: ";
+
+    private int tokenBudget;
+    private final ArrayDeque<ChatMessage> messages = new ArrayDeque<>();
+    private final ArrayDeque<Integer> tokenCosts = new ArrayDeque<>();
+    private int tokenCount;
+    // Rolling summary of the turns compacted away, sent ahead of the window
+    private ChatMessage summary;
+    private int summaryCost;
+    private transient boolean compacting;
+
+    /**
+     * For deserialization only.
+     */
+    public ContextWindow() {
+        this(DEFAULT_TOKEN_BUDGET);
+    }
+
+    public ContextWindow(int tokenBudget) {
+        this.tokenBudget = Math.max(1, tokenBudget);
+    }
+
+    /**
+     * Adds a message at the newest end and trims the oldest turns to fit the budget.
+     */
+    public synchronized void append(ChatMessage message) {
+        if (message == null || message.isSystem()) {
+            return;
+        }
+        int cost = TokenEstimator.estimate(message.getText());
+        messages.addLast(message);
+        tokenCosts.addLast(cost);
+        tokenCount += cost;
+
+        while (tokenCount > tokenBudget && messages.size() > 1) {
+            messages.removeFirst();
+            tokenCount -= tokenCosts.removeFirst();
+        }
+    }
+
+    public synchronized void clear() {
+        messages.clear();
+        tokenCosts.clear();
+        tokenCount = 0;
+        summary = null;
+        summaryCost = 0;
+        compacting = false;
+    }
+
+    /**
+     * Returns a snapshot of the windowed messages, oldest first, led by the summary
+     * message if turns have been compacted.
+     */
+    public synchronized List<ChatMessage> getMessages() {
+        List<ChatMessage> result = new ArrayList<>(messages.size() + 1);
+        if (summary != null) {
+            result.add(summary);
+        }
+        result.addAll(messages);
+        return result;
+    }
+
+    /**
+     * Starts a compaction if the window holds more than {@code maxMessages} messages
+     * or {@code maxTokens} tokens and none is running yet.
+     *
+     * @param keepRecent Newest messages that stay verbatim
+     * @return The oldest messages to summarize, or null if no compaction is due
+     */
+    public synchronized List<ChatMessage> beginCompaction(int maxMessages, int maxTokens, int keepRecent) {
+        if (compacting || messages.size() <= keepRecent
+                || (messages.size() <= maxMessages && tokenCount <= maxTokens)) {
+            return null;
+        }
+        compacting = true;
+        List<ChatMessage> oldest = new ArrayList<>(messages.size() - keepRecent);
+        for (ChatMessage message : messages) {
+            if (oldest.size() == messages.size() - keepRecent) {
+                break;
+            }
+            oldest.add(message);
+        }
+        return oldest;
+    }
+
+    /**
+     * Replaces the compacted messages with {@code summaryText}, which must cover the
+     * previous summary as well. Does nothing if the window no longer starts with
+     * those messages (cleared, or trimmed by the budget in the meantime).
+     *
+     * @return true if the summary was applied
+     */
+    public synchronized boolean applySummary(List<ChatMessage> compacted, String summaryText) {
+        compacting = false;
+        if (compacted.isEmpty() || compacted.size() > messages.size()) {
+            return false;
+        }
+        int i = 0;
+        for (ChatMessage message : messages) {
+            if (i == compacted.size()) {
+                break;
+            }
+            if (message != compacted.get(i++)) {
+                return false;
+            }
+        }
+        for (int n = 0; n < compacted.size(); n++) {
+            messages.removeFirst();
+            tokenCount -= tokenCosts.removeFirst();
+        }
+        setSummary(summaryText);
+        return true;
+    }
+
+    /**
+     * Puts back the summary of a window being rebuilt, e.g. from a transcript,
+     * before its verbatim messages are appended.
+     */
+    public synchronized void restoreSummary(String summaryText) {
+        setSummary(summaryText);
+    }
+
+    private void setSummary(String summaryText) {
+        tokenCount -= summaryCost;
+        summary = new ChatMessage(ChatMessage.Role.USER, SUMMARY_PREFIX + summaryText);
+        summaryCost = TokenEstimator.estimate(summary.getText());
+        tokenCount += summaryCost;
+    }
+
+    /**
+     * Ends a compaction that produced no summary, so a later one can start.
+     */
+    public synchronized void abortCompaction() {
+        compacting = false;
+    }
+
+    /**
+     * Current rolling summary without its prefix, or null if nothing was compacted.
+     */
+    public synchronized String getSummary() {
+        return (summary != null) ? summary.getText().substring(SUMMARY_PREFIX.length()) : null;
+    }
+
+    public synchronized int getTokenCount() {
+        return tokenCount;
+    }
+
+    /**
+     * Number of verbatim messages, not counting the summary.
+     */
+    public synchronized int size() {
+        return messages.size();
+    }
+
+    public int getTokenBudget() {
+        return tokenBudget;
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        writeTo(out, null);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        readFrom(in, null);
+    }
+
+    /**
+     * Writes the window. If {@code history} is given and the windowed messages are
+     * its newest ones, only their span is written; {@link #readFrom} must then be
+     * given the same history, already read.
+     */
+    public synchronized void writeTo(DataOutput out, ConversationHistory history) throws IOException {
+        out.writeByte(FORMAT_VERSION);
+        CompactIO.writeVarInt(out, tokenBudget);
+        out.writeBoolean(summary != null);
+        if (summary != null) {
+            summary.writeTo(out);
+            CompactIO.writeVarInt(out, summaryCost);
+        }
+        List<ChatMessage> windowed = new ArrayList<>(messages);
+        int span = (history != null) ? history.matchTail(windowed) : -1;
+        if (span >= 0) {
+            out.writeByte(MESSAGES_HISTORY_TAIL);
+            CompactIO.writeVarInt(out, span);
+        } else {
+            out.writeByte(MESSAGES_INLINE);
+            CompactIO.writeVarInt(out, windowed.size());
+            for (ChatMessage message : windowed) {
+                message.writeTo(out);
+            }
+        }
+        // Written rather than re-estimated, so reading costs no tokenizer work
+        for (Integer cost : tokenCosts) {
+            CompactIO.writeVarInt(out, cost);
+        }
+    }
+
+    public synchronized void readFrom(DataInput in, ConversationHistory history) throws IOException {
+        CompactIO.readVersion(in, FORMAT_VERSION, "ContextWindow");
+        clear();
+        tokenBudget = Math.max(1, CompactIO.readVarInt(in));
+        if (in.readBoolean()) {
+            summary = ChatMessage.readFrom(in);
+            summaryCost = CompactIO.readVarInt(in);
+        }
+        int mode = in.readUnsignedByte();
+        List<ChatMessage> windowed;
+        if (mode == MESSAGES_HISTORY_TAIL) {
+            if (history == null) {
+                throw new InvalidObjectException("Context window refers to a history that was not given");
+            }
+            windowed = history.tailWithoutSystem(CompactIO.readVarInt(in));
+        } else if (mode == MESSAGES_INLINE) {
+            int count = CompactIO.readVarInt(in);
+            windowed = new ArrayList<>(Math.min(count, 1024));
+            for (int i = 0; i < count; i++) {
+                windowed.add(ChatMessage.readFrom(in));
+            }
+        } else {
+            throw new InvalidObjectException("Unknown context window encoding " + mode);
+        }
+        tokenCount = summaryCost;
+        for (ChatMessage message : windowed) {
+            int cost = CompactIO.readVarInt(in);
+            messages.addLast(message);
+            tokenCosts.addLast(cost);
+            tokenCount += cost;
+        }
+    }
+}
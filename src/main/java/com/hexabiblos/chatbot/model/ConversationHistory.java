@@ -0,0 +1,298 @@
+package com.hexabiblos.chatbot.model;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compact, bounded in-memory log of a conversation.
+ *
+ * Messages live in a ring buffer of parallel primitive arrays (epoch-millis
+ * timestamp, role code, text) rather than as one object each. Once the log holds
+ * {@code maxMessages}, appending evicts the oldest message. Texts that fall more
+ * than {@code uncompressedTail} messages behind the newest one are deflated if
+ * they are long enough to benefit, and inflated again only when read.
+ *
+ * Serialized in a compact, versioned form: one flag byte per message (role and
+ * text encoding), the timestamp as the gap to the previous message, and texts
+ * that are already deflated written as they are.
+ */
+public class ConversationHistory implements Externalizable {
+    
+    private static final long serialVersionUID = 2L;
+    private static final int FORMAT_VERSION = 1;
+    
+    private static final int TEXT_NULL = 0;
+    private static final int TEXT_PLAIN = 1;
+    private static final int TEXT_DEFLATED = 2;
+    
+    public static final int DEFAULT_MAX_MESSAGES = 100;
+    public static final int DEFAULT_UNCOMPRESSED_TAIL = 50;
+    
+    // Shorter texts rarely shrink enough to pay for the byte[] and the inflate on read
+    private static final int MIN_COMPRESS_LENGTH = 256;
+    
+    private int maxMessages;
+    private int uncompressedTail;
+    
+    private long[] timestamps;
+    private byte[] roles;
+    private Object[] texts; // String, or deflated UTF-8 byte[]
+    
+    private int head;  // index of the oldest message
+    private int size;
+    private long evicted;
+    
+    /**
+     * For deserialization only.
+     */
+    public ConversationHistory() {
+        this(1, 1);
+    }
+    
+    public ConversationHistory(int maxMessages, int uncompressedTail) {
+        this.maxMessages = Math.max(1, maxMessages);
+        this.uncompressedTail = Math.max(1, uncompressedTail);
+        this.timestamps = new long[this.maxMessages];
+        this.roles = new byte[this.maxMessages];
+        this.texts = new Object[this.maxMessages];
+    }
+    
+    /**
+     * Appends a message, evicting the oldest one if the log is full.
+     */
+    public synchronized void add(ChatMessage message) {
+        int slot;
+        if (size == maxMessages) {
+            slot = head;
+            head = (head + 1) % maxMessages;
+            evicted++;
+        } else {
+            slot = (head + size) % maxMessages;
+            size++;
+        }
+        timestamps[slot] = message.getTimestampMillis();
+        roles[slot] = message.getRoleCode();
+        texts[slot] = message.getText();
+        
+        // The message that just left the uncompressed tail
+        if (size > uncompressedTail) {
+            compress((head + size - 1 - uncompressedTail) % maxMessages);
+        }
+    }
+    
+    /**
+     * Returns the message at {@code index}, where 0 is the oldest one still held.
+     */
+    public synchronized ChatMessage get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+        }
+        int slot = (head + index) % maxMessages;
+        return new ChatMessage(roles[slot], textAt(slot), timestamps[slot]);
+    }
+    
+    /**
+     * Returns the newest {@code count} messages, oldest first.
+     */
+    public synchronized List<ChatMessage> tail(int count) {
+        int n = Math.min(Math.max(0, count), size);
+        List<ChatMessage> result = new ArrayList<>(n);
+        for (int i = size - n; i < size; i++) {
+            int slot = (head + i) % maxMessages;
+            result.add(new ChatMessage(roles[slot], textAt(slot), timestamps[slot]));
+        }
+        return result;
+    }
+    
+    /**
+     * Checks whether {@code messages} (oldest first) are exactly the newest
+     * messages of this log once SYSTEM messages are left out, as for a context
+     * window built from the same appends.
+     *
+     * @return How many of the newest messages they span, or -1 if they are not such a tail
+     */
+    synchronized int matchTail(List<ChatMessage> messages) {
+        int index = size;
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            int slot;
+            do {
+                if (--index < 0) {
+                    return -1;
+                }
+                slot = (head + index) % maxMessages;
+            } while (roles[slot] == ChatMessage.Role.SYSTEM.ordinal());
+            ChatMessage message = messages.get(i);
+            if (roles[slot] != message.getRoleCode() || timestamps[slot] != message.getTimestampMillis()) {
+                return -1;
+            }
+            Object text = texts[slot];
+            if (text != message.getText() && !Objects.equals(textAt(slot), message.getText())) {
+                return -1;
+            }
+        }
+        return size - index;
+    }
+    
+    /**
+     * Returns the newest {@code span} messages without the SYSTEM ones, oldest first.
+     */
+    synchronized List<ChatMessage> tailWithoutSystem(int span) {
+        List<ChatMessage> result = tail(span);
+        result.removeIf(ChatMessage::isSystem);
+        return result;
+    }
+    
+    public synchronized void clear() {
+        for (int i = 0; i < size; i++) {
+            texts[(head + i) % maxMessages] = null;
+        }
+        head = 0;
+        size = 0;
+    }
+    
+    public synchronized int size() {
+        return size;
+    }
+    
+    /**
+     * Number of messages dropped because the log was full.
+     */
+    public synchronized long getEvictedCount() {
+        return evicted;
+    }
+    
+    public int getMaxMessages() {
+        return maxMessages;
+    }
+    
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        writeTo(out);
+    }
+    
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        readFrom(in);
+    }
+    
+    public synchronized void writeTo(DataOutput out) throws IOException {
+        out.writeByte(FORMAT_VERSION);
+        CompactIO.writeVarInt(out, maxMessages);
+        CompactIO.writeVarInt(out, uncompressedTail);
+        CompactIO.writeVarLong(out, evicted);
+        CompactIO.writeVarInt(out, size);
+        long previous = 0;
+        for (int i = 0; i < size; i++) {
+            int slot = (head + i) % maxMessages;
+            Object text = texts[slot];
+            int encoding = (text == null) ? TEXT_NULL : (text instanceof byte[]) ? TEXT_DEFLATED : TEXT_PLAIN;
+            // Role codes run from -1 (none) to 2, so role + 1 fits the low nibble
+            out.writeByte((encoding << 4) | (roles[slot] + 1));
+            CompactIO.writeSignedVarLong(out, timestamps[slot] - previous);
+            previous = timestamps[slot];
+            if (encoding == TEXT_DEFLATED) {
+                CompactIO.writeBytes(out, (byte[]) text);
+            } else if (encoding == TEXT_PLAIN) {
+                CompactIO.writeString(out, (String) text);
+            }
+        }
+    }
+    
+    public synchronized void readFrom(DataInput in) throws IOException {
+        CompactIO.readVersion(in, FORMAT_VERSION, "ConversationHistory");
+        maxMessages = Math.max(1, CompactIO.readVarInt(in));
+        uncompressedTail = Math.max(1, CompactIO.readVarInt(in));
+        evicted = CompactIO.readVarLong(in);
+        int count = CompactIO.readVarInt(in);
+        if (count < 0 || count > maxMessages) {
+            throw new InvalidObjectException("History of " + count + " messages exceeds " + maxMessages);
+        }
+        timestamps = new long[maxMessages];
+        roles = new byte[maxMessages];
+        texts = new Object[maxMessages];
+        head = 0;
+        size = count;
+        long previous = 0;
+        for (int slot = 0; slot < count; slot++) {
+            int flags = in.readUnsignedByte();
+            int role = (flags & 0x0F) - 1;
+            roles[slot] = (byte) ((role < ChatMessage.Role.values().length) ? role : -1);
+            timestamps[slot] = previous + CompactIO.readSignedVarLong(in);
+            previous = timestamps[slot];
+            int encoding = flags >>> 4;
+            if (encoding == TEXT_DEFLATED) {
+                texts[slot] = CompactIO.readBytes(in);
+            } else if (encoding == TEXT_PLAIN) {
+                texts[slot] = CompactIO.readString(in);
+            }
+        }
+    }
+    
+    private String textAt(int slot) {
+        Object text = texts[slot];
+        return (text instanceof byte[]) ? inflate((byte[]) text) : (String) text;
+    }
+    
+    private void compress(int slot) {
+        Object text = texts[slot];
+        if (!(text instanceof String) || ((String) text).length() < MIN_COMPRESS_LENGTH) {
+            return;
+        }
+        byte[] utf8 = ((String) text).getBytes(StandardCharsets.UTF_8);
+        byte[] deflated = deflate(utf8);
+        // Keep the String if deflate did not actually save anything
+        if (deflated.length < utf8.length) {
+            texts[slot] = deflated;
+        }
+    }
+    
+    private static byte[] deflate(byte[] input) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(input.length / 2 + 16);
+            byte[] buffer = new byte[512];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+    
+    private static String inflate(byte[] input) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(input);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(input.length * 3);
+            byte[] buffer = new byte[1024];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && inflater.needsInput()) {
+                    break;
+                }
+                out.write(buffer, 0, n);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            return "";
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.hexabiblos.chatbot.model;
+
+/**
+ * Cheap local estimate of how many model tokens a text costs, without calling
+ * the tokenizer API. Tuned to err on the high side for budgeting:
+ * <ul>
+ *   <li>ASCII words cost one token per started 4 characters</li>
+ *   <li>Non-ASCII words (e.g. Greek) cost one token per started 2 characters</li>
+ *   <li>Every punctuation or symbol character costs one token</li>
+ * </ul>
+ */
+public final class TokenEstimator {
+
+    private TokenEstimator() {
+    }
+
+    public static int estimate(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+
+        int tokens = 0;
+        int runLength = 0;
+        boolean runHasNonAscii = false;
+
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                runLength++;
+                runHasNonAscii |= c > 0x7F;
+                continue;
+            }
+            tokens += wordTokens(runLength, runHasNonAscii);
+            runLength = 0;
+            runHasNonAscii = false;
+            if (!Character.isWhitespace(c)) {
+                tokens++;
+            }
+        }
+        return tokens + wordTokens(runLength, runHasNonAscii);
+    }
+
+    private static int wordTokens(int length, boolean nonAscii) {
+        if (length == 0) {
+            return 0;
+        }
+        int charsPerToken = nonAscii ? 2 : 4;
+        return (length + charsPerToken - 1) / charsPerToken;
+    }
+}
@@ -0,0 +1,133 @@
+package com.hexabiblos.chatbot.service;
+
+import com.hexabiblos.chatbot.metrics.MetricsRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Decides whether a chat message may start a model call.
+ *
+ * Two limits apply, checked in this order so a globally rejected message does
+ * not use up the sender's allowance:
+ * <ul>
+ *   <li>Global: the {@link ModelCallExecutor} concurrency limit and wait queue
+ *       ({@code MODEL_MAX_CONCURRENT_CALLS}, {@code MODEL_MAX_QUEUED_CALLS}).</li>
+ *   <li>Per session: a {@link TokenBucket} of {@code SESSION_BURST} messages,
+ *       refilled at {@code SESSION_RATE_PER_MINUTE}; 0 disables it.</li>
+ * </ul>
+ * API requests have no session, so they are limited per client instead: a bucket
+ * of {@code API_CLIENT_BURST} messages refilled at {@code API_CLIENT_RATE_PER_MINUTE}
+ * (by default the session rate), kept for the {@code API_CLIENT_MAX} most recently
+ * seen clients.
+ * A rejected message gets an immediate "retry in N s" reply instead of a slot.
+ */
+@ApplicationScoped
+public class AdmissionControl {
+
+    private static final double DEFAULT_SESSION_RATE_PER_MINUTE = 10;
+    private static final double DEFAULT_SESSION_BURST = 5;
+    private static final double DEFAULT_CLIENT_BURST = 16; // one full prompt batch
+    private static final int DEFAULT_MAX_CLIENTS = 10_000;
+
+    private static final String RATE_LIMITED_PREFIX = "You're sending messages too quickly.";
+
+    @Inject
+    private ModelCallExecutor modelCalls;
+
+    @Inject
+    private MetricsRegistry metrics;
+
+    private double sessionRatePerMinute;
+    private double sessionBurst;
+    private double clientRatePerMinute;
+    private double clientBurst;
+    private int maxClients;
+    // Least recently used first; a client dropped from here starts again with a full bucket
+    private final Map<String, TokenBucket> clientBuckets = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, TokenBucket> eldest) {
+            return size() > maxClients;
+        }
+    };
+
+    @PostConstruct
+    public void init() {
+        sessionRatePerMinute = Math.max(0, AppSettings.getDouble("SESSION_RATE_PER_MINUTE", DEFAULT_SESSION_RATE_PER_MINUTE));
+        sessionBurst = Math.max(1, AppSettings.getDouble("SESSION_BURST", DEFAULT_SESSION_BURST));
+        clientRatePerMinute = Math.max(0, AppSettings.getDouble("API_CLIENT_RATE_PER_MINUTE", sessionRatePerMinute));
+        clientBurst = Math.max(1, AppSettings.getDouble("API_CLIENT_BURST", DEFAULT_CLIENT_BURST));
+        maxClients = Math.max(1, AppSettings.getInt("API_CLIENT_MAX", DEFAULT_MAX_CLIENTS));
+
+        metrics.gauge("chat_admission_session_rate_per_minute", "Configured per-session message rate (0 = unlimited)",
+            () -> sessionRatePerMinute);
+        metrics.gauge("chat_admission_session_burst", "Configured per-session burst size", () -> sessionBurst);
+        metrics.gauge("chat_admission_api_clients", "API clients with a rate bucket", () -> {
+            synchronized (clientBuckets) {
+                return clientBuckets.size();
+            }
+        });
+    }
+
+    /**
+     * Creates the per-session bucket, or returns null when per-session limiting is off.
+     */
+    public TokenBucket newSessionBucket() {
+        return (sessionRatePerMinute > 0) ? new TokenBucket(sessionBurst, sessionRatePerMinute / 60) : null;
+    }
+
+    /**
+     * Admits or rejects one message.
+     *
+     * @param sessionBucket The sender's bucket from {@link #newSessionBucket()}, may be null
+     * @return null if admitted, otherwise the user-facing message explaining when to retry
+     */
+    public String admit(TokenBucket sessionBucket) {
+        return admit(sessionBucket, "session_rate");
+    }
+
+    /**
+     * Admits or rejects one message of an API client, charged to that client's bucket.
+     *
+     * @param clientKey Identifies the client, e.g. its API key or address; null only applies the global limit
+     * @return null if admitted, otherwise the user-facing message explaining when to retry
+     */
+    public String admitClient(String clientKey) {
+        return admit(clientBucket(clientKey), "client_rate");
+    }
+
+    private TokenBucket clientBucket(String clientKey) {
+        if (clientRatePerMinute <= 0 || clientKey == null) {
+            return null;
+        }
+        synchronized (clientBuckets) {
+            return clientBuckets.computeIfAbsent(clientKey,
+                key -> new TokenBucket(clientBurst, clientRatePerMinute / 60));
+        }
+    }
+
+    private String admit(TokenBucket bucket, String rateLimitReason) {
+        if (modelCalls.isSaturated()) {
+            reject("queue_full");
+            return ChatModelProvider.busyResponse(modelCalls.retryAfterSeconds());
+        }
+        if (bucket != null) {
+            long waitMillis = bucket.tryAcquire();
+            if (waitMillis > 0) {
+                reject(rateLimitReason);
+                long seconds = Math.max(1, (long) Math.ceil(Math.min(waitMillis, 3_600_000L) / 1000.0));
+                return RATE_LIMITED_PREFIX + " Please retry in " + seconds + " s.";
+            }
+        }
+        metrics.counter("chat_admission_admitted_total", "Messages admitted to a model call").increment();
+        return null;
+    }
+
+    private void reject(String reason) {
+        metrics.counter("chat_admission_rejected_total", "Requests turned away by admission control",
+            "reason", reason).increment();
+    }
+}
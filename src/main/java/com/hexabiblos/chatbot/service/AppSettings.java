@@ -0,0 +1,148 @@
+package com.hexabiblos.chatbot.service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads tuning settings from system properties, then an optional configuration
+ * file, then environment variables. Malformed numbers fall back to the supplied default.
+ *
+ * The file is named by {@value #CONFIG_FILE_KEY} (system property or environment
+ * variable) and uses {@code KEY=value} lines, so a {@code .env} file works as is.
+ * Nothing is searched for: without that setting no file is read. System properties
+ * and the file are read live, so {@link #reload()} plus a fresh lookup picks up
+ * changes made while the server runs.
+ */
+public final class AppSettings {
+
+    public static final String CONFIG_FILE_KEY = "CHATBOT_CONFIG_FILE";
+
+    private static volatile ConfigFile configFile = ConfigFile.load(null);
+
+    private AppSettings() {
+    }
+
+    public static String getString(String key, String defaultValue) {
+        String value = System.getProperty(key);
+        if (isBlank(value)) {
+            value = configFile.values.get(key);
+        }
+        if (isBlank(value)) {
+            value = System.getenv(key);
+        }
+        return isBlank(value) ? defaultValue : value.trim();
+    }
+
+    public static int getInt(String key, int defaultValue) {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    public static double getDouble(String key, double defaultValue) {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Re-reads the configuration file if it was modified since it was last read.
+     *
+     * @return true if the file contents were reloaded
+     */
+    public static synchronized boolean reload() {
+        ConfigFile current = configFile;
+        ConfigFile latest = ConfigFile.load(current);
+        if (latest == current) {
+            return false;
+        }
+        configFile = latest;
+        return true;
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+
+    /**
+     * Snapshot of the configuration file, with the timestamp it was read at.
+     */
+    private static final class ConfigFile {
+
+        static final ConfigFile NONE = new ConfigFile(null, -1, Collections.emptyMap());
+
+        final Path path;
+        final long modified;
+        final Map<String, String> values;
+
+        private ConfigFile(Path path, long modified, Map<String, String> values) {
+            this.path = path;
+            this.modified = modified;
+            this.values = values;
+        }
+
+        /**
+         * Reads the file named by {@link #CONFIG_FILE_KEY}, or returns {@code previous}
+         * if it is the same file and unchanged.
+         */
+        static ConfigFile load(ConfigFile previous) {
+            String name = System.getProperty(CONFIG_FILE_KEY);
+            if (isBlank(name)) {
+                name = System.getenv(CONFIG_FILE_KEY);
+            }
+            if (isBlank(name)) {
+                return NONE;
+            }
+            Path path = Paths.get(name.trim());
+            try {
+                long modified = Files.getLastModifiedTime(path).toMillis();
+                if (previous != null && path.equals(previous.path) && modified == previous.modified) {
+                    return previous;
+                }
+                Map<String, String> values = new HashMap<>();
+                for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+                    line = line.trim();
+                    if (line.startsWith("export ")) {
+                        line = line.substring("export ".length()).trim();
+                    }
+                    int equals = line.indexOf('=');
+                    if (line.isEmpty() || line.startsWith("#") || equals <= 0) {
+                        continue;
+                    }
+                    values.put(line.substring(0, equals).trim(), unquote(line.substring(equals + 1).trim()));
+                }
+                return new ConfigFile(path, modified, Collections.unmodifiableMap(values));
+            } catch (IOException e) {
+                // Missing or unreadable: keep the last good values
+                return (previous != null) ? previous : NONE;
+            }
+        }
+
+        private static String unquote(String value) {
+            if (value.length() >= 2
+                    && (value.charAt(0) == '"' || value.charAt(0) == '\'')
+                    && value.charAt(value.length() - 1) == value.charAt(0)) {
+                return value.substring(1, value.length() - 1);
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.hexabiblos.chatbot.service;
+
+import com.hexabiblos.chatbot.model.ChatMessage;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * {@link ChatModelProvider} decorator that answers repeated short prompts from
+ * the {@link ResponseCache} instead of calling the model again. Failed and
+ * truncated replies are never stored. Callers look a reply up through
+ * {@link #cachedResponse} before submitting a model call, so a hit takes no
+ * executor permit; the lookup in the call itself catches replies stored meanwhile.
+ *
+ * Entries are keyed by {@link #getModelName()}. Behind a {@link ResilientModelProvider},
+ * only replies from that (primary) model are stored, so answers from the fallback
+ * model are not served in its name once the primary has recovered.
+ */
+public class CachingModelProvider implements ChatModelProvider {
+
+    private final ChatModelProvider delegate;
+    private final ResponseCache cache;
+    private final ResilientModelProvider resilience;
+
+    /**
+     * @param resilience The resilience layer somewhere inside {@code delegate}, or null
+     */
+    public CachingModelProvider(ChatModelProvider delegate, ResponseCache cache, ResilientModelProvider resilience) {
+        this.delegate = delegate;
+        this.cache = cache;
+        this.resilience = resilience;
+    }
+
+    @Override
+    public String generateResponse(List<ChatMessage> messages) {
+        String key = keyFor(messages);
+        String cached = cache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        clearAnswered();
+        String responseText = delegate.generateResponse(messages);
+        store(key, responseText);
+        return responseText;
+    }
+
+    @Override
+    public String streamResponse(List<ChatMessage> messages, Consumer<String> onChunk) {
+        String key = keyFor(messages);
+        String cached = cache.get(key);
+        if (cached != null) {
+            onChunk.accept(cached); // Already complete, so one chunk
+            return cached;
+        }
+        clearAnswered();
+        String responseText = delegate.streamResponse(messages, onChunk);
+        store(key, responseText);
+        return responseText;
+    }
+
+    @Override
+    public String cachedResponse(List<ChatMessage> messages) {
+        // A miss is counted by the call that follows it
+        return cache.peek(keyFor(messages));
+    }
+
+    @Override
+    public String getModelName() {
+        return delegate.getModelName();
+    }
+
+    @Override
+    public boolean isDemoMode() {
+        return delegate.isDemoMode();
+    }
+
+    @Override
+    public String getSystemInstruction() {
+        return delegate.getSystemInstruction();
+    }
+
+    private void clearAnswered() {
+        if (resilience != null) {
+            resilience.clearAnswered();
+        }
+    }
+
+    private void store(String key, String responseText) {
+        // A coalesced follower never reaches the resilience layer, so it stores nothing; its leader does
+        if (resilience == null || resilience.answeredByPrimary()) {
+            cache.put(key, responseText);
+        }
+        clearAnswered();
+    }
+
+    private String keyFor(List<ChatMessage> messages) {
+        if (delegate.isDemoMode()) {
+            return null; // Placeholder replies are not worth caching
+        }
+        return cache.keyFor(delegate.getModelName(), delegate.getSystemInstruction(), messages);
+    }
+}
@@ -0,0 +1,116 @@
+package com.hexabiblos.chatbot.service;
+
+import com.hexabiblos.chatbot.model.ChatMessage;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Backend that turns a conversation into an assistant reply.
+ * Implementations report failures as user-facing reply text rather than
+ * throwing, so callers can always commit what they get back.
+ */
+public interface ChatModelProvider {
+
+    String ERROR_RESPONSE = "An error occurred while processing your request. Please try again.";
+
+    String TIMEOUT_RESPONSE = "Request timed out. Please try again.";
+
+    String BUSY_PREFIX = "The assistant is busy right now.";
+
+    String BUSY_RESPONSE = BUSY_PREFIX + " Please try again in a moment.";
+
+    String NETWORK_ERROR_RESPONSE = "Network error occurred. Please check your connection and try again.";
+
+    String EMPTY_RESPONSE = "Received empty response from the assistant. Please try again.";
+
+    String UNAVAILABLE_RESPONSE = "The assistant is temporarily unavailable. Please try again shortly.";
+
+    /**
+     * Ends, and is streamed as the last chunk of, a reply that broke off after part
+     * of it had already reached the user.
+     */
+    String INTERRUPTED_NOTICE = "\n\n[Reply interrupted. Please try again.]";
+
+    /**
+     * Generates a complete reply, blocking until it is available.
+     *
+     * @param messages Conversation history, oldest first
+     * @return Reply text, or a user-facing error message
+     */
+    String generateResponse(List<ChatMessage> messages);
+
+    /**
+     * Generates a reply, handing each text fragment to {@code onChunk} as it is produced.
+     * Blocks the calling thread until the reply is complete.
+     *
+     * @param messages Conversation history, oldest first
+     * @param onChunk Receives every non-empty text fragment in arrival order
+     * @return Full reply text, or the error message that was streamed instead
+     */
+    String streamResponse(List<ChatMessage> messages, Consumer<String> onChunk);
+
+    /**
+     * Name of the model replies are generated with.
+     */
+    String getModelName();
+
+    /**
+     * True when the backend is not configured and only returns placeholder replies.
+     */
+    boolean isDemoMode();
+
+    /**
+     * System instruction sent ahead of every conversation, part of what makes two
+     * prompts identical. Empty if the backend uses none.
+     */
+    default String getSystemInstruction() {
+        return "";
+    }
+
+    /**
+     * A complete reply to {@code messages} that is available without calling the
+     * model, such as a cached one, or null. Callers check this before submitting
+     * to the {@link ModelCallExecutor}, so such replies never wait for a permit.
+     */
+    default String cachedResponse(List<ChatMessage> messages) {
+        return null;
+    }
+
+    /**
+     * True if {@code responseText} is one of the user-facing failure messages above,
+     * or a truncated reply, rather than a complete model reply.
+     */
+    static boolean isFailureResponse(String responseText) {
+        return responseText == null
+            || ERROR_RESPONSE.equals(responseText)
+            || TIMEOUT_RESPONSE.equals(responseText)
+            || isBusyResponse(responseText)
+            || NETWORK_ERROR_RESPONSE.equals(responseText)
+            || EMPTY_RESPONSE.equals(responseText)
+            || UNAVAILABLE_RESPONSE.equals(responseText)
+            || isTruncatedResponse(responseText);
+    }
+
+    /**
+     * True for a reply that ends in {@link #INTERRUPTED_NOTICE}: its text is real
+     * but incomplete, so it must not be reused or count as a healthy call.
+     */
+    static boolean isTruncatedResponse(String responseText) {
+        return responseText != null && responseText.endsWith(INTERRUPTED_NOTICE);
+    }
+
+    /**
+     * Busy message telling the user when to try again.
+     */
+    static String busyResponse(int retryAfterSeconds) {
+        return BUSY_PREFIX + " Please retry in " + retryAfterSeconds + " s.";
+    }
+
+    /**
+     * True for {@link #BUSY_RESPONSE} and every {@link #busyResponse(int)} variant.
+     */
+    static boolean isBusyResponse(String responseText) {
+        return responseText != null && responseText.startsWith(BUSY_PREFIX);
+    }
+}
@@ -0,0 +1,93 @@
+package com.hexabiblos.chatbot.service;
+
+import com.hexabiblos.chatbot.log.StructuredLog;
+import com.hexabiblos.chatbot.metrics.MetricsRegistry;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Instance;
+import jakarta.enterprise.inject.Produces;
+import jakarta.inject.Inject;
+
+/**
+ * Chooses the {@link ChatModelProvider} the application talks to.
+ * Set {@code CHAT_MODEL_PROVIDER=stub} (system property or environment variable)
+ * to use the offline {@link StubModelProvider}; anything else selects Gemini.
+ * The chosen backend is metered by {@link MeteredModelProvider}, guarded by
+ * {@link ResilientModelProvider} (circuit breaker, Gemini fallback model, optional
+ * hedging), shared between
+ * identical concurrent requests by {@link CoalescingModelProvider}
+ * ({@code SINGLE_FLIGHT_ENABLED}, default true) and wrapped in the shared
+ * {@link ResponseCache}.
+ */
+@ApplicationScoped
+public class ChatModelProviderProducer {
+
+    public static final String PROVIDER_KEY = "CHAT_MODEL_PROVIDER";
+
+    private static final StructuredLog LOG = StructuredLog.forClass(ChatModelProviderProducer.class);
+
+    @Inject
+    private Instance<GeminiService> gemini;
+
+    @Inject
+    private Instance<StubModelProvider> stub;
+
+    @Inject
+    private ResponseCache responseCache;
+
+    @Inject
+    private ModelMetrics modelMetrics;
+
+    @Inject
+    private ModelCallExecutor modelCalls;
+
+    @Inject
+    private MetricsRegistry metrics;
+
+    private ResilientModelProvider resilience;
+
+    @Produces
+    @ApplicationScoped
+    public ChatModelProvider produceProvider() {
+        ChatModelProvider backend = selectBackend();
+        // Layers wrap the backend from the inside out
+        // Cache hits and coalesced requests never reach the metered layer, so call metrics count real model calls
+        // Metered per model, so calls that went to the fallback are counted under its name
+        ChatModelProvider fallback = null;
+        if (backend instanceof GeminiService && ((GeminiService) backend).getFallbackModelName() != null) {
+            GeminiService service = (GeminiService) backend;
+            fallback = new MeteredModelProvider(service.forModel(service.getFallbackModelName()), modelMetrics);
+        }
+        resilience = new ResilientModelProvider(new MeteredModelProvider(backend, modelMetrics), fallback,
+            modelCalls, metrics);
+        ChatModelProvider provider = resilience;
+        if (Boolean.parseBoolean(AppSettings.getString("SINGLE_FLIGHT_ENABLED", "true"))) {
+            provider = new CoalescingModelProvider(provider, metrics);
+        }
+        return new CachingModelProvider(provider, responseCache, resilience);
+    }
+
+    /**
+     * Breaker, latency and fallback state of the produced provider, for status reporting.
+     * Null until the provider has been produced.
+     */
+    public ResilientModelProvider getResilience() {
+        return resilience;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (resilience != null) {
+            resilience.shutdown();
+        }
+    }
+
+    private ChatModelProvider selectBackend() {
+        String provider = AppSettings.getString(PROVIDER_KEY, "gemini");
+        if ("stub".equalsIgnoreCase(provider)) {
+            LOG.info("Using stub model provider");
+            return stub.get();
+        }
+        return gemini.get();
+    }
+}
@@ -0,0 +1,94 @@
+package com.hexabiblos.chatbot.service;
+
+/**
+ * Consecutive-failure circuit breaker for one model.
+ *
+ * Closed: calls pass, and {@code failureThreshold} failures in a row open it.
+ * Open: calls are refused until {@code openMillis} have passed. Half-open: one
+ * trial call passes; its success closes the breaker, its failure opens it again.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        HALF_OPEN,
+        OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openMillis;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMillis = Math.max(0, openMillis);
+    }
+
+    /**
+     * Returns true if a call may go ahead now. In the half-open state only the
+     * first caller gets through; it must report back with a success or failure.
+     */
+    public synchronized boolean allowRequest() {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openMillis) {
+            state = State.HALF_OPEN;
+            trialInFlight = false;
+        }
+        if (state == State.HALF_OPEN) {
+            if (trialInFlight) {
+                return false;
+            }
+            trialInFlight = true;
+            return true;
+        }
+        return state == State.CLOSED;
+    }
+
+    /**
+     * Returns true if a call would be allowed, without claiming the half-open trial.
+     */
+    public synchronized boolean isCallable() {
+        return state == State.CLOSED
+            || (state == State.HALF_OPEN && !trialInFlight)
+            || (state == State.OPEN && System.currentTimeMillis() - openedAt >= openMillis);
+    }
+
+    /**
+     * @return true if this success closed a breaker that was not closed
+     */
+    public synchronized boolean recordSuccess() {
+        consecutiveFailures = 0;
+        trialInFlight = false;
+        boolean changed = state != State.CLOSED;
+        state = State.CLOSED;
+        return changed;
+    }
+
+    /**
+     * @return true if this failure opened the breaker
+     */
+    public synchronized boolean recordFailure() {
+        trialInFlight = false;
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Releases a half-open trial that ended without a verdict (e.g. a local busy reply).
+     */
+    public synchronized void recordIgnored() {
+        trialInFlight = false;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+}
@@ -0,0 +1,200 @@
+package com.hexabiblos.chatbot.service;
+
+import com.hexabiblos.chatbot.metrics.MetricsRegistry;
+import com.hexabiblos.chatbot.model.ChatMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * {@link ChatModelProvider} decorator that coalesces identical in-flight requests
+ * ("single flight"). The first request for a prompt calls the backend; requests
+ * for the same prompt that arrive while it runs wait for that call and receive
+ * its result. Streaming followers first get the chunks already produced, then
+ * every further chunk as it arrives, so each sees the complete reply.
+ *
+ * Prompts are identical when model, system instruction and every turn match
+ * exactly. Unlike the {@link ResponseCache}, nothing is kept once the call ends.
+ *
+ * A follower running on the {@link ModelCallExecutor} gives its permit back
+ * before it waits, so only the leader's call counts against the concurrency
+ * limit and a burst of identical prompts cannot starve other calls.
+ */
+public class CoalescingModelProvider implements ChatModelProvider {
+
+    private final ChatModelProvider delegate;
+    private final ConcurrentMap<String, Flight> flights = new ConcurrentHashMap<>();
+    private final MetricsRegistry.Counter coalesced;
+
+    public CoalescingModelProvider(ChatModelProvider delegate, MetricsRegistry metrics) {
+        this.delegate = delegate;
+        this.coalesced = metrics.counter("chat_model_calls_coalesced_total",
+            "Requests served by joining an identical in-flight model call");
+        metrics.gauge("chat_model_flights", "Distinct model calls currently shared by single flight",
+            flights::size);
+    }
+
+    @Override
+    public String generateResponse(List<ChatMessage> messages) {
+        return call(messages, null);
+    }
+
+    @Override
+    public String streamResponse(List<ChatMessage> messages, Consumer<String> onChunk) {
+        return call(messages, onChunk);
+    }
+
+    @Override
+    public String getModelName() {
+        return delegate.getModelName();
+    }
+
+    @Override
+    public boolean isDemoMode() {
+        return delegate.isDemoMode();
+    }
+
+    @Override
+    public String getSystemInstruction() {
+        return delegate.getSystemInstruction();
+    }
+
+    /**
+     * Leads a new flight for the prompt or joins the one in progress.
+     *
+     * @param onChunk Chunk consumer for streaming requests, null for blocking ones
+     */
+    private String call(List<ChatMessage> messages, Consumer<String> onChunk) {
+        String key = keyFor(messages);
+        if (key == null) {
+            return (onChunk != null) ? delegate.streamResponse(messages, onChunk) : delegate.generateResponse(messages);
+        }
+
+        Flight flight = new Flight();
+        Flight existing = flights.putIfAbsent(key, flight);
+        if (existing != null) {
+            coalesced.increment();
+            return existing.join(onChunk);
+        }
+
+        try {
+            String responseText;
+            if (onChunk != null) {
+                responseText = delegate.streamResponse(messages, chunk -> {
+                    flight.publish(chunk);
+                    Flight.deliver(onChunk, chunk);
+                });
+            } else {
+                responseText = delegate.generateResponse(messages);
+            }
+            flight.complete(responseText);
+            return responseText;
+        } catch (RuntimeException | Error e) {
+            flight.fail(e);
+            throw e;
+        } finally {
+            flights.remove(key, flight);
+        }
+    }
+
+    private String keyFor(List<ChatMessage> messages) {
+        if (messages == null || delegate.isDemoMode()) {
+            return null;
+        }
+        StringBuilder key = new StringBuilder(256)
+            .append(delegate.getModelName()).append('\u0000')
+            .append(delegate.getSystemInstruction()).append('\u0000');
+        for (ChatMessage message : messages) {
+            if (message.isSystem()) {
+                continue; // Never sent to the model
+            }
+            key.append(message.isUser() ? 'U' : 'A').append(':').append(message.getText()).append('\u0000');
+        }
+        return key.toString();
+    }
+
+    /**
+     * One shared backend call: its result and the chunks streamed so far. The
+     * leader only appends chunks; each follower reads them on its own thread, so a
+     * slow client holds up neither the upstream stream nor the other followers.
+     */
+    private static final class Flight {
+
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+        private final List<String> chunks = new ArrayList<>();
+        private boolean done;
+
+        synchronized void publish(String chunk) {
+            chunks.add(chunk);
+            notifyAll();
+        }
+
+        void complete(String responseText) {
+            result.complete(responseText);
+            finish();
+        }
+
+        void fail(Throwable failure) {
+            result.completeExceptionally(failure);
+            finish();
+        }
+
+        private synchronized void finish() {
+            done = true;
+            notifyAll();
+        }
+
+        /**
+         * Waits for the leader's result, replaying and then forwarding its chunks.
+         */
+        String join(Consumer<String> onChunk) {
+            // The leader holds the permit for the upstream call; this thread only waits
+            ModelCallExecutor.releasePermit();
+            try {
+                int delivered = 0;
+                if (onChunk != null) {
+                    boolean finished;
+                    do {
+                        List<String> pending;
+                        synchronized (this) {
+                            while (delivered == chunks.size() && !done) {
+                                wait();
+                            }
+                            pending = new ArrayList<>(chunks.subList(delivered, chunks.size()));
+                            finished = done;
+                        }
+                        // Outside the lock: the consumer may block on a slow client
+                        for (String chunk : pending) {
+                            deliver(onChunk, chunk);
+                        }
+                        delivered += pending.size();
+                    } while (!finished);
+                }
+                String responseText = result.get();
+                if (onChunk != null && delivered == 0) {
+                    onChunk.accept(responseText); // The leader did not stream
+                }
+                return responseText;
+            } catch (InterruptedException e) {
+                // This request's own deadline passed; the shared call carries on
+                Thread.currentThread().interrupt();
+                return TIMEOUT_RESPONSE;
+            } catch (ExecutionException e) {
+                return ERROR_RESPONSE;
+            }
+        }
+
+        private static void deliver(Consumer<String> subscriber, String chunk) {
+            try {
+                subscriber.accept(chunk);
+            } catch (RuntimeException ignored) {
+                // One broken listener must not cut off the others or the leader
+            }
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.hexabiblos.chatbot.service;
+
+import com.hexabiblos.chatbot.log.StructuredLog;
+import com.hexabiblos.chatbot.metrics.MetricsRegistry;
+import com.hexabiblos.chatbot.model.ChatMessage;
+import com.hexabiblos.chatbot.model.ContextWindow;
+import com.hexabiblos.chatbot.trace.Span;
+import com.hexabiblos.chatbot.trace.Tracer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compacts long conversations in the background: once a {@link ContextWindow}
+ * holds more than {@code SUMMARY_TRIGGER_MESSAGES} messages or
+ * {@code SUMMARY_TRIGGER_TOKENS} tokens, its older turns are summarized by the
+ * model into a rolling summary, and prompts carry that summary plus the newest
+ * {@code SUMMARY_KEEP_RECENT} turns verbatim.
+ *
+ * Summaries are started from a small pool of their own, never on a request thread,
+ * run as ordinary {@link ModelCallExecutor} calls, and are skipped while model
+ * calls are saturated; the window then falls back to dropping its oldest turns
+ * as before.
+ */
+@ApplicationScoped
+public class ConversationSummarizer {
+
+    private static final StructuredLog LOG = StructuredLog.forClass(ConversationSummarizer.class);
+
+    private static final int DEFAULT_TRIGGER_MESSAGES = 16; // below the default GEMINI_MAX_TURNS of 20
+    private static final int DEFAULT_KEEP_RECENT = 6;
+    private static final int DEFAULT_MAX_WORDS = 150;
+    private static final int QUEUE_CAPACITY = 100;
+
+    @Inject
+    private ChatModelProvider modelProvider;
+
+    @Inject
+    private ModelCallExecutor modelCalls;
+
+    @Inject
+    private MetricsRegistry metrics;
+
+    private boolean enabled;
+    private int triggerMessages;
+    private int triggerTokens;
+    private int keepRecent;
+    private int maxWords;
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void init() {
+        enabled = Boolean.parseBoolean(AppSettings.getString("SUMMARY_ENABLED", "true"));
+        triggerMessages = Math.max(2, AppSettings.getInt("SUMMARY_TRIGGER_MESSAGES", DEFAULT_TRIGGER_MESSAGES));
+        int budget = AppSettings.getInt("CONTEXT_TOKEN_BUDGET", ContextWindow.DEFAULT_TOKEN_BUDGET);
+        triggerTokens = AppSettings.getInt("SUMMARY_TRIGGER_TOKENS", budget * 3 / 5);
+        keepRecent = Math.max(1, Math.min(AppSettings.getInt("SUMMARY_KEEP_RECENT", DEFAULT_KEEP_RECENT),
+            triggerMessages - 1));
+        maxWords = Math.max(20, AppSettings.getInt("SUMMARY_MAX_WORDS", DEFAULT_MAX_WORDS));
+
+        int threads = Math.max(1, AppSettings.getInt("SUMMARY_MAX_CONCURRENT", 2));
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(QUEUE_CAPACITY), ModelCallExecutor.daemonThreadFactory("context-summarizer"));
+        executor.allowCoreThreadTimeOut(true);
+        metrics.gauge("chat_context_compactions_queued", "Conversation compactions waiting for a summarizer",
+            () -> executor.getQueue().size());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Starts a background compaction of {@code window} if it is due. Returns at once.
+     */
+    public void compactIfDue(ContextWindow window) {
+        compactIfDue(window, null);
+    }
+
+    /**
+     * Starts a background compaction of {@code window} if it is due. Returns at once.
+     *
+     * @param onApplied Run on the summarizer thread once a summary has been applied,
+     *                  e.g. to persist it, or null
+     */
+    public void compactIfDue(ContextWindow window, Runnable onApplied) {
+        if (!enabled || modelProvider.isDemoMode()) {
+            return;
+        }
+        List<ChatMessage> oldest = window.beginCompaction(triggerMessages, triggerTokens, keepRecent);
+        if (oldest == null) {
+            return;
+        }
+        if (modelCalls.isSaturated()) {
+            window.abortCompaction();
+            count("skipped");
+            return;
+        }
+        String previous = window.getSummary();
+        try {
+            // A trace of its own: it outlives the reply that triggered it
+            executor.execute(() -> {
+                try (Span span = Tracer.startTrace("chat.summarize", "chat.summarized_messages", oldest.size())) {
+                    compact(window, previous, oldest, onApplied);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            window.abortCompaction();
+            count("skipped");
+        }
+    }
+
+    private void compact(ContextWindow window, String previous, List<ChatMessage> oldest, Runnable onApplied) {
+        long start = System.nanoTime();
+        List<ChatMessage> request = List.of(new ChatMessage(ChatMessage.Role.USER, buildPrompt(previous, oldest)));
+        String summary;
+        try {
+            // Through the model-call executor, so the summary holds a permit and has a deadline
+            summary = modelCalls.submit(() -> modelProvider.streamResponse(request, chunk -> { })).join();
+        } catch (RejectedExecutionException e) {
+            window.abortCompaction();
+            count("skipped");
+            return;
+        } catch (RuntimeException e) {
+            if (!ModelCallExecutor.isTimeout(e)) {
+                LOG.warn("Conversation summary failed", e);
+            }
+            summary = null;
+        }
+        if (summary == null || ChatModelProvider.isFailureResponse(summary) || summary.isBlank()) {
+            window.abortCompaction();
+            count("failed");
+            return;
+        }
+
+        int before = window.getTokenCount();
+        if (window.applySummary(oldest, clip(summary.trim()))) {
+            count("applied");
+            metrics.counter("chat_context_compacted_tokens_total", "Estimated context tokens removed by compaction")
+                .add(before - window.getTokenCount());
+            metrics.histogram("chat_context_compaction_seconds", "Time to summarize older turns",
+                MetricsRegistry.LATENCY_BUCKETS).observeNanos(System.nanoTime() - start);
+            if (onApplied != null) {
+                onApplied.run();
+            }
+        } else {
+            count("stale");
+        }
+    }
+
+    /**
+     * Builds the single-turn summarization request, folding in the previous summary.
+     */
+    String buildPrompt(String previous, List<ChatMessage> turns) {
+        StringBuilder prompt = new StringBuilder(2048)
+            .append("Summarize the conversation below between a user and an assistant in at most ")
+            .append(maxWords)
+            .append(" words. Keep facts, names, numbers, decisions and open questions the rest of the "
+                + "conversation may refer to. Write plain prose, without a preamble.\n\n");
+        if (previous != null) {
+            prompt.append("Summary of the earlier part:\n").append(previous).append("\n\n");
+        }
+        prompt.append("Conversation:\n");
+        for (ChatMessage turn : turns) {
+            prompt.append(turn.isUser() ? "User: " : "Assistant: ").append(turn.getText()).append('\n');
+        }
+        return prompt.toString();
+    }
+
+    /**
+     * Cuts a summary that ignored the word limit, so one reply cannot crowd out the window.
+     */
+    private String clip(String summary) {
+        int maxChars = maxWords * 10;
+        return (summary.length() <= maxChars) ? summary : summary.substring(0, maxChars);
+    }
+
+    private void count(String outcome) {
+        metrics.counter("chat_context_compactions_total", "Conversation compactions by outcome",
+            "outcome", outcome).increment();
+    }
+}
@@ -1,31 +1,60 @@
 package com.hexabiblos.chatbot.service;
 
 import com.google.genai.Client;
+import com.google.genai.ResponseStream;
+import com.google.genai.errors.ApiException;
+import com.google.genai.errors.GenAiIOException;
+import com.google.genai.types.Content;
+import com.google.genai.types.GenerateContentConfig;
 import com.google.genai.types.GenerateContentResponse;
+import com.google.genai.types.GenerateContentResponseUsageMetadata;
+import com.google.genai.types.HttpOptions;
+import com.google.genai.types.Part;
+import com.hexabiblos.chatbot.log.StructuredLog;
 import com.hexabiblos.chatbot.model.ChatMessage;
-import io.github.cdimascio.dotenv.Dotenv;
-import io.github.cdimascio.dotenv.DotenvException;
+import com.hexabiblos.chatbot.model.ContextWindow;
+import com.hexabiblos.chatbot.model.TokenEstimator;
+import com.hexabiblos.chatbot.trace.Span;
+import com.hexabiblos.chatbot.trace.Tracer;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Typed;
+import jakarta.inject.Inject;
 import jakarta.inject.Named;
 
-import java.time.Duration;
-import java.time.Instant;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * Service for integrating with Google Gemini AI API.
  * Handles API key configuration, conversation building, and response generation.
+ * Settings come from {@link AppSettings}; the API key, model and turn limit are
+ * re-read every {@code CONFIG_RELOAD_SECONDS} and take effect without a redeploy.
+ * Exposed to the rest of the app as a {@link ChatModelProvider}; see
+ * {@link ChatModelProviderProducer} for how the active backend is chosen.
+ * Building the request, the API call and text extraction are traced as spans
+ * of the current trace (see {@link Tracer}).
  */
 @Named
 @ApplicationScoped
-public class GeminiService {
+@Typed(GeminiService.class)
+public class GeminiService implements ChatModelProvider {
+    
+    private static final StructuredLog LOG = StructuredLog.forClass(GeminiService.class);
     
     private static final String DEFAULT_MODEL = "gemini-3-flash-preview";
+    private static final String DEFAULT_FALLBACK_MODEL = "gemini-2.5-flash-lite";
     private static final int DEFAULT_MAX_TURNS = 20;
-    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+    private static final int DEFAULT_RELOAD_SECONDS = 10;
     
     private static final String SYSTEM_INSTRUCTION = 
         "You are a professional, concise AI assistant for public-sector and enterprise use. " +
@@ -34,172 +63,145 @@ public class GeminiService {
     private static final String DEMO_MODE_RESPONSE = 
         "Gemini API key not configured. Running in demo mode.";
     
-    private Client client;
-    private String apiKey;
-    private String modelName;
-    private int maxTurns;
-    private boolean demoMode;
+    @Inject
+    private ModelCallExecutor modelCalls;
+    
+    @Inject
+    private ModelMetrics modelMetrics;
+    
+    private static final String READY_RESPONSE = "I'm ready to help. What would you like to know?";
+    
+    private static final String ROLE_USER = "user";
+    private static final String ROLE_MODEL = "model";
+    
+    private GenerateContentConfig generationConfig;
+    private String fallbackModelName;
+    private ScheduledExecutorService background;
+    
+    // Replaced as a whole when the key or model changes, so a call never mixes the two
+    private volatile Connection connection;
+    private volatile int maxTurns;
+    private int contextTokenBudget;
     
     @PostConstruct
     public void init() {
-        // Try to load .env file first, then fall back to environment variables
-        Dotenv dotenv = null;
+        contextTokenBudget = AppSettings.getInt("CONTEXT_TOKEN_BUDGET", ContextWindow.DEFAULT_TOKEN_BUDGET);
         
-        // Try to find .env file in project root
-        // Strategy: Start from current directory and traverse up to find pom.xml (project root)
-        java.io.File projectRoot = null;
-        java.io.File currentDir = new java.io.File(System.getProperty("user.dir"));
+        // Built once and shared by every call: the constant system instruction
+        // is the request prefix the API can serve from its context cache
+        generationConfig = GenerateContentConfig.builder()
+            .systemInstruction(Content.fromParts(Part.fromText(SYSTEM_INSTRUCTION)))
+            .build();
         
-        // Traverse up directories looking for pom.xml (indicates project root)
-        for (int i = 0; i < 10 && currentDir != null; i++) {
-            java.io.File pomFile = new java.io.File(currentDir, "pom.xml");
-            if (pomFile.exists() && pomFile.isFile()) {
-                projectRoot = currentDir;
-                System.out.println("DEBUG: Found project root: " + projectRoot.getAbsolutePath());
-                break;
-            }
-            currentDir = currentDir.getParentFile();
-        }
+        background = Executors.newSingleThreadScheduledExecutor(
+            ModelCallExecutor.daemonThreadFactory("gemini-config"));
+        applySettings();
         
-        // Try .env file locations in priority order
-        java.util.List<java.io.File> envFileCandidates = new java.util.ArrayList<>();
-        
-        // 1. Project root (where pom.xml is)
-        if (projectRoot != null) {
-            envFileCandidates.add(new java.io.File(projectRoot, ".env"));
+        // Cheaper model used while the primary one is failing or too slow; "none" disables it
+        fallbackModelName = AppSettings.getString("GEMINI_FALLBACK_MODEL", DEFAULT_FALLBACK_MODEL);
+        if ("none".equalsIgnoreCase(fallbackModelName) || fallbackModelName.equals(getModelName())) {
+            fallbackModelName = null;
         }
         
-        // 2. Explicit known path (for this specific project)
-        envFileCandidates.add(new java.io.File("C:\\Users\\georg\\Desktop\\Interviews\\Hexabiblos\\.env"));
+        LOG.info("Gemini service configured", "model", getModelName(), "fallbackModel", fallbackModelName,
+            "maxTurns", maxTurns, "contextTokenBudget", contextTokenBudget, "demoMode", isDemoMode());
         
-        // 3. User home
-        String userHome = System.getProperty("user.home");
-        if (userHome != null) {
-            envFileCandidates.add(new java.io.File(userHome, ".env"));
+        int reloadSeconds = AppSettings.getInt("CONFIG_RELOAD_SECONDS", DEFAULT_RELOAD_SECONDS);
+        if (reloadSeconds > 0) {
+            background.scheduleWithFixedDelay(this::reload, reloadSeconds, reloadSeconds, TimeUnit.SECONDS);
         }
-        
-        // 4. WildFly/Tomcat base
-        String jbossBase = System.getProperty("jboss.server.base.dir");
-        if (jbossBase != null) {
-            envFileCandidates.add(new java.io.File(jbossBase, ".env"));
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        background.shutdownNow();
+        Connection current = connection;
+        if (current != null && current.client != null) {
+            current.client.close();
         }
-        
-        // Try each candidate
-        for (java.io.File envFile : envFileCandidates) {
-            try {
-                if (envFile.exists() && envFile.isFile() && envFile.canRead()) {
-                    dotenv = Dotenv.configure()
-                        .directory(envFile.getParent())
-                        .filename(".env")
-                        .ignoreIfMissing()
-                        .load();
-                    System.out.println("✓ Loaded .env file from: " + envFile.getAbsolutePath());
-                    break;
-                }
-            } catch (Exception e) {
-                // Try next candidate
-                continue;
-            }
+    }
+    
+    /**
+     * Picks up changed settings: system properties, or the configuration file
+     * named by {@link AppSettings#CONFIG_FILE_KEY}.
+     */
+    private void reload() {
+        try {
+            AppSettings.reload();
+            applySettings();
+        } catch (RuntimeException e) {
+            LOG.warn("Reloading Gemini settings failed", e);
         }
-        
-        // If still not found, try default location
-        if (dotenv == null) {
-            try {
-                dotenv = Dotenv.configure()
-                    .ignoreIfMissing()
-                    .load();
-            } catch (DotenvException e) {
-                System.out.println("⚠ No .env file found in standard locations, using environment variables");
-            }
+    }
+    
+    /**
+     * Reads the API key, model and turn limit. A new client is only built when the
+     * key changed; the old one is closed once calls still using it have timed out.
+     */
+    private synchronized void applySettings() {
+        String apiKey = AppSettings.getString("GEMINI_API_KEY", AppSettings.getString("GOOGLE_API_KEY", null));
+        String modelName = AppSettings.getString("GEMINI_MODEL", DEFAULT_MODEL);
+        int turns = AppSettings.getInt("GEMINI_MAX_TURNS", DEFAULT_MAX_TURNS);
+        if (connection != null && turns != maxTurns) {
+            LOG.info("Gemini max turns changed", "maxTurns", turns);
         }
+        maxTurns = turns;
         
-        // Get API key: .env file -> GEMINI_API_KEY env var -> GOOGLE_API_KEY env var
-        apiKey = getEnvValue(dotenv, "GEMINI_API_KEY");
-        if (apiKey == null || apiKey.trim().isEmpty()) {
-            apiKey = getEnvValue(dotenv, "GOOGLE_API_KEY");
+        Connection current = connection;
+        if (current != null && Objects.equals(current.apiKey, apiKey) && current.modelName.equals(modelName)) {
+            return;
         }
+        boolean sameKey = current != null && Objects.equals(current.apiKey, apiKey);
+        Client client = sameKey ? current.client : createClient(apiKey);
+        connection = new Connection(apiKey, modelName, client);
         
-        // Debug: Log what we found
-        if (dotenv != null) {
-            String envKey = dotenv.get("GEMINI_API_KEY");
-            System.out.println("DEBUG: .env file loaded. GEMINI_API_KEY from .env: " + 
-                (envKey != null && !envKey.trim().isEmpty() ? "FOUND (length: " + envKey.length() + ")" : "NOT FOUND"));
-        }
-        System.out.println("DEBUG: Final API key: " + 
-            (apiKey != null && !apiKey.trim().isEmpty() ? "FOUND (length: " + apiKey.length() + ")" : "NOT FOUND"));
-        System.out.println("DEBUG: Current working directory: " + System.getProperty("user.dir"));
-        
-        // Get model name
-        modelName = getEnvValue(dotenv, "GEMINI_MODEL");
-        if (modelName == null || modelName.trim().isEmpty()) {
-            modelName = DEFAULT_MODEL;
+        if (client == null) {
+            LOG.warn("Gemini API key not found, running in demo mode",
+                "checked", "GEMINI_API_KEY, GOOGLE_API_KEY");
+        } else if (current != null) {
+            LOG.info("Gemini settings changed", "model", modelName, "newApiKey", !sameKey);
         }
-        
-        // Get max turns
-        String maxTurnsStr = getEnvValue(dotenv, "GEMINI_MAX_TURNS");
-        if (maxTurnsStr != null && !maxTurnsStr.trim().isEmpty()) {
-            try {
-                maxTurns = Integer.parseInt(maxTurnsStr.trim());
-            } catch (NumberFormatException e) {
-                maxTurns = DEFAULT_MAX_TURNS;
-            }
-        } else {
-            maxTurns = DEFAULT_MAX_TURNS;
+        if (client != null && !sameKey) {
+            background.execute(() -> warmUp(client, modelName));
         }
-        
-        demoMode = (apiKey == null || apiKey.trim().isEmpty());
-        
-        // Log configuration status
-        if (demoMode) {
-            System.out.println("WARNING: Gemini API key not found. Running in DEMO MODE.");
-            System.out.println("Checked .env file and environment variables: GEMINI_API_KEY, GOOGLE_API_KEY");
-        } else {
-            System.out.println("Gemini API key found. Initializing client...");
-            System.out.println("Model: " + modelName);
-            System.out.println("Max turns: " + maxTurns);
+        if (!sameKey && current != null && current.client != null) {
+            Client retired = current.client;
+            background.schedule(retired::close, ModelCallExecutor.CALL_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
         }
-        
-        if (!demoMode) {
-            try {
-                // Initialize client with API key directly (preferred method)
-                // This avoids needing to modify environment variables at runtime
-                client = Client.builder()
-                    .apiKey(apiKey)
-                    .build();
-                System.out.println("✓ Gemini client initialized successfully with API key");
-            } catch (Exception e) {
-                System.err.println("Failed to initialize Gemini client: " + e.getMessage());
-                e.printStackTrace();
-                demoMode = true;
-            }
+    }
+    
+    private static Client createClient(String apiKey) {
+        if (apiKey == null) {
+            return null;
+        }
+        try {
+            // The timeout bounds connection setup and tells the server our deadline
+            return Client.builder()
+                .apiKey(apiKey)
+                .httpOptions(HttpOptions.builder()
+                    .timeout((int) ModelCallExecutor.CALL_TIMEOUT.toMillis())
+                    .build())
+                .build();
+        } catch (Exception e) {
+            LOG.error("Failed to initialize Gemini client", e);
+            return null;
         }
     }
     
     /**
-     * Gets a value from .env file first, then falls back to environment variable.
+     * Opens the client's connection (DNS, TLS handshake) with a cheap metadata
+     * request, so the first chat message does not pay for it. Also reports an
+     * unknown model name early.
      */
-    private String getEnvValue(Dotenv dotenv, String key) {
-        // Check environment variable FIRST (set by run script)
-        String envValue = System.getenv(key);
-        if (envValue != null && !envValue.trim().isEmpty()) {
-            System.out.println("DEBUG: Found " + key + " in environment variable");
-            return envValue.trim();
-        }
-        
-        // Fall back to .env file
-        if (dotenv != null) {
-            try {
-                String value = dotenv.get(key);
-                if (value != null && !value.trim().isEmpty()) {
-                    System.out.println("DEBUG: Found " + key + " in .env file");
-                    return value.trim();
-                }
-            } catch (Exception e) {
-                // Key not in .env file
-            }
+    private static void warmUp(Client client, String modelName) {
+        long start = System.nanoTime();
+        try {
+            client.models.get(modelName, null);
+            LOG.info("Gemini client warmed up", "model", modelName,
+                "ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (Exception e) {
+            LOG.warn("Gemini warm-up request failed", e, "model", modelName);
         }
-        
-        return null;
     }
     
     /**
@@ -208,104 +210,357 @@ public class GeminiService {
      * @param messages Conversation history (last N messages)
      * @return Response text from Gemini or demo mode message
      */
+    @Override
     public String generateResponse(List<ChatMessage> messages) {
-        if (demoMode) {
+        Connection current = connection;
+        return generate(current, current.modelName, messages);
+    }
+    
+    private String generate(Connection current, String model, List<ChatMessage> messages) {
+        if (current.client == null) {
             return DEMO_MODE_RESPONSE;
         }
         
-        if (messages == null || messages.isEmpty()) {
-            return "I'm ready to help. What would you like to know?";
+        // Build structured turns from conversation history
+        List<Content> contents = (messages != null) ? traceBuildContents(messages) : Collections.emptyList();
+        if (contents.isEmpty()) {
+            return READY_RESPONSE;
         }
         
         try {
-            // Build prompt from conversation history
-            String prompt = buildPrompt(messages);
-            
-            // Generate response with timeout protection
-            Instant startTime = Instant.now();
-            
-            // Use the SDK API: client.models.generateContent(modelName, promptText, config)
-            GenerateContentResponse response = client.models.generateContent(
-                modelName,
-                prompt,
-                null  // No config for now
-            );
-            
-            Duration elapsed = Duration.between(startTime, Instant.now());
-            if (elapsed.compareTo(REQUEST_TIMEOUT) > 0) {
-                return "Request timed out. Please try again.";
+            // Run on the model-call executor so the deadline is actually enforced
+            return modelCalls.submit(() -> callModel(current.client, model, contents)).join();
+        } catch (RejectedExecutionException e) {
+            return ChatModelProvider.busyResponse(modelCalls.retryAfterSeconds());
+        } catch (Exception e) {
+            if (ModelCallExecutor.isTimeout(e)) {
+                return TIMEOUT_RESPONSE;
+            }
+            Throwable cause = (e.getCause() != null) ? e.getCause() : e;
+            LOG.warn("Gemini API call failed", cause, "model", model);
+            return describeError(cause);
+        }
+    }
+    
+    /**
+     * Performs one blocking generateContent round-trip.
+     */
+    private String callModel(Client client, String model, List<Content> contents) {
+        GenerateContentResponse response;
+        try (Span span = Tracer.start("gemini.generate_content", "gemini.model", model,
+                "gemini.turns", contents.size())) {
+            try {
+                // Use the SDK API: client.models.generateContent(modelName, contents, config)
+                response = client.models.generateContent(
+                    model,
+                    contents,
+                    generationConfig
+                );
+            } catch (RuntimeException e) {
+                span.recordError(e);
+                throw e;
             }
-            
-            // Extract response text - handle SDK version variations
             if (response != null) {
-                String responseText = extractTextFromResponse(response);
-                if (responseText != null && !responseText.trim().isEmpty()) {
-                    return responseText.trim();
-                }
+                recordUsage(span, model, response.usageMetadata().orElse(null));
             }
-            
-            return "Received empty response from Gemini. Please try again.";
-            
-        } catch (Exception e) {
-            System.err.println("Error calling Gemini API: " + e.getMessage());
-            if (e.getMessage() != null && e.getMessage().contains("network") || 
-                e.getMessage() != null && e.getMessage().contains("connection")) {
-                return "Network error occurred. Please check your connection and try again.";
+        }
+        
+        // Extract response text - handle SDK version variations
+        if (response != null) {
+            String responseText;
+            try (Span span = Tracer.start("gemini.extract_text")) {
+                responseText = extractTextFromResponse(response);
+                span.setAttribute("gemini.response_chars", (responseText != null) ? responseText.length() : 0);
+            }
+            if (responseText != null && !responseText.trim().isEmpty()) {
+                return responseText.trim();
             }
-            return "An error occurred while processing your request. Please try again.";
         }
+        
+        return EMPTY_RESPONSE;
     }
     
     /**
-     * Builds a prompt string from conversation history.
-     * Includes system instruction and formatted conversation turns.
+     * Streams an AI response, handing each text fragment to the caller as soon
+     * as the model produces it. Blocks the calling thread, so callers should run it
+     * through {@link ModelCallExecutor}, which also closes the stream on timeout.
+     * 
+     * @param messages Conversation history (last N messages)
+     * @param onChunk Receives every non-empty text fragment in arrival order
+     * @return Full response text, or the demo/error message that was streamed instead
      */
-    private String buildPrompt(List<ChatMessage> messages) {
-        StringBuilder prompt = new StringBuilder();
+    @Override
+    public String streamResponse(List<ChatMessage> messages, Consumer<String> onChunk) {
+        Connection current = connection;
+        return stream(current, current.modelName, messages, onChunk);
+    }
+    
+    private String stream(Connection current, String model, List<ChatMessage> messages, Consumer<String> onChunk) {
+        if (current.client == null) {
+            onChunk.accept(DEMO_MODE_RESPONSE);
+            return DEMO_MODE_RESPONSE;
+        }
         
-        // Add system instruction
-        prompt.append(SYSTEM_INSTRUCTION).append("\n\n");
-        prompt.append("Conversation history:\n");
+        List<Content> contents = (messages != null) ? traceBuildContents(messages) : Collections.emptyList();
+        if (contents.isEmpty()) {
+            onChunk.accept(READY_RESPONSE);
+            return READY_RESPONSE;
+        }
         
-        // Get last N messages (respecting maxTurns)
-        List<ChatMessage> recentMessages = messages.stream()
-            .filter(m -> !m.isSystem())
-            .collect(Collectors.toList());
+        StringBuilder fullText = new StringBuilder();
+        GenerateContentResponseUsageMetadata usage = null;
         
-        int startIndex = Math.max(0, recentMessages.size() - maxTurns);
-        List<ChatMessage> contextMessages = recentMessages.subList(startIndex, recentMessages.size());
+        try (Span span = Tracer.start("gemini.generate_content_stream", "gemini.model", model,
+                "gemini.turns", contents.size())) {
+            long start = System.nanoTime();
+            int chunks = 0;
+            try (ResponseStream<GenerateContentResponse> stream =
+                     current.client.models.generateContentStream(model, contents, generationConfig)) {
+                ModelCallExecutor.closeOnCancel(stream);
+                for (GenerateContentResponse chunk : stream) {
+                    if (chunks++ == 0) {
+                        span.setAttribute("gemini.first_chunk_ms",
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                    }
+                    // Counts are cumulative; the last chunk carries the totals
+                    usage = chunk.usageMetadata().orElse(usage);
+                    long extractStart = System.nanoTime();
+                    String chunkText = extractTextFromResponse(chunk);
+                    // Summed rather than a span per chunk, which would dwarf the trace
+                    span.addToAttribute("gemini.extract_text_us",
+                        TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - extractStart));
+                    if (chunkText != null && !chunkText.isEmpty()) {
+                        fullText.append(chunkText);
+                        onChunk.accept(chunkText);
+                    }
+                }
+            } catch (Exception e) {
+                LOG.warn("Gemini stream failed", e, "model", model, "charsStreamed", fullText.length());
+                span.recordError(e).setAttribute("gemini.chunks", chunks);
+                if (fullText.length() == 0) {
+                    String error = describeError(e);
+                    onChunk.accept(error);
+                    return error;
+                }
+                // Keep what already reached the user, but marked, so it is neither cached nor taken for a success
+                fullText.append(INTERRUPTED_NOTICE);
+                onChunk.accept(INTERRUPTED_NOTICE);
+            }
+            span.setAttribute("gemini.chunks", chunks).setAttribute("gemini.response_chars", fullText.length());
+            recordUsage(span, model, usage);
+        }
         
-        // Format conversation
-        for (ChatMessage msg : contextMessages) {
-            if (msg.isUser()) {
-                prompt.append("User: ").append(msg.getText()).append("\n");
-            } else if (msg.isAssistant()) {
-                prompt.append("Assistant: ").append(msg.getText()).append("\n");
+        String responseText = fullText.toString().trim();
+        if (responseText.isEmpty()) {
+            onChunk.accept(EMPTY_RESPONSE);
+            return EMPTY_RESPONSE;
+        }
+        return responseText;
+    }
+    
+    private void recordUsage(Span span, String model, GenerateContentResponseUsageMetadata usage) {
+        if (usage == null) {
+            return;
+        }
+        int inputTokens = usage.promptTokenCount().orElse(0);
+        int outputTokens = usage.candidatesTokenCount().orElse(0);
+        int cachedTokens = usage.cachedContentTokenCount().orElse(0);
+        modelMetrics.recordTokens(model, inputTokens, outputTokens, cachedTokens);
+        span.setAttribute("gemini.input_tokens", inputTokens)
+            .setAttribute("gemini.output_tokens", outputTokens)
+            .setAttribute("gemini.cached_tokens", cachedTokens);
+    }
+    
+    private List<Content> traceBuildContents(List<ChatMessage> messages) {
+        try (Span span = Tracer.start("gemini.build_contents", "chat.history_messages", messages.size())) {
+            List<Content> contents = buildContents(messages);
+            span.setAttribute("gemini.turns", contents.size());
+            return contents;
+        }
+    }
+    
+    /**
+     * Maps a failed model call to a user-facing message by the type of the error,
+     * so {@link ModelMetrics#outcomeOf(String)} and the circuit breaker can tell
+     * transport failures and upstream throttling from other errors.
+     */
+    private String describeError(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof ApiException) {
+                // 429 is the API's quota/rate limit: tell the user to retry later
+                return (((ApiException) t).code() == 429) ? BUSY_RESPONSE : ERROR_RESPONSE;
+            }
+            if (t instanceof GenAiIOException || t instanceof IOException) {
+                return NETWORK_ERROR_RESPONSE;
+            }
+            if (t.getCause() == t) {
+                break;
+            }
+        }
+        return ERROR_RESPONSE;
+    }
+    
+    /**
+     * Builds the multi-turn request contents from conversation history.
+     * The system instruction is not part of the contents; it travels in the shared
+     * {@link #generationConfig}, so every request starts with the same prefix.
+     * 
+     * Walks back from the newest message until the token budget or the turn limit
+     * is spent, so the cost depends on the window size rather than the length of
+     * the conversation. Callers normally pass the session's {@link ContextWindow},
+     * which is already trimmed, but full histories are handled the same way.
+     * A leading summary message from context compaction is always kept.
+     * Package-private for the benchmarks module.
+     */
+    List<Content> buildContents(List<ChatMessage> messages) {
+        int start = messages.size();
+        int turns = 0;
+        int tokens = 0;
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            ChatMessage msg = messages.get(i);
+            if (msg.isSystem()) {
+                continue;
             }
+            int cost = TokenEstimator.estimate(msg.getText());
+            if (turns >= maxTurns || (turns > 0 && tokens + cost > contextTokenBudget)) {
+                break;
+            }
+            tokens += cost;
+            turns++;
+            start = i;
         }
         
-        prompt.append("\nPlease provide a helpful response to the user's last message.");
+        List<ChatMessage> selected = messages.subList(start, messages.size());
+        if (start > 0 && isSummary(messages.get(0))) {
+            // The rolling summary stands in for everything before the window, so it is never cut
+            selected = new ArrayList<>(selected);
+            selected.add(0, messages.get(0));
+        }
         
-        return prompt.toString();
+        List<Content> contents = new ArrayList<>(turns + 1);
+        String currentRole = null;
+        List<Part> currentParts = null;
+        for (ChatMessage msg : selected) {
+            String role = msg.isUser() ? ROLE_USER : (msg.isAssistant() ? ROLE_MODEL : null);
+            if (role == null || msg.getText() == null || msg.getText().isEmpty()) {
+                continue;
+            }
+            // The API expects the conversation to open with a user turn
+            if (currentRole == null && ROLE_MODEL.equals(role)) {
+                continue;
+            }
+            // Consecutive messages from the same side become one turn with several parts
+            if (!role.equals(currentRole)) {
+                if (currentParts != null) {
+                    contents.add(Content.builder().role(currentRole).parts(currentParts).build());
+                }
+                currentRole = role;
+                currentParts = new ArrayList<>(1);
+            }
+            currentParts.add(Part.fromText(msg.getText()));
+        }
+        if (currentParts != null) {
+            contents.add(Content.builder().role(currentRole).parts(currentParts).build());
+        }
+        
+        return contents;
     }
     
+    private static boolean isSummary(ChatMessage message) {
+        return message.isUser() && message.getText() != null
+            && message.getText().startsWith(ContextWindow.SUMMARY_PREFIX);
+    }
+    
+    @Override
     public boolean isDemoMode() {
-        return demoMode;
+        return connection.client == null;
     }
     
+    /**
+     * The configured fallback model, or null if there is none.
+     */
+    public String getFallbackModelName() {
+        return fallbackModelName;
+    }
+    
+    /**
+     * Returns a provider that sends the same requests as this service, with the
+     * same client, limits and system instruction, to another model.
+     */
+    public ChatModelProvider forModel(String model) {
+        return new ModelVariant(model);
+    }
+    
+    @Override
     public String getModelName() {
-        return modelName;
+        return connection.modelName;
+    }
+    
+    @Override
+    public String getSystemInstruction() {
+        return SYSTEM_INSTRUCTION;
+    }
+    
+    private final class ModelVariant implements ChatModelProvider {
+        
+        private final String model;
+        
+        ModelVariant(String model) {
+            this.model = model;
+        }
+        
+        @Override
+        public String generateResponse(List<ChatMessage> messages) {
+            return generate(connection, model, messages);
+        }
+        
+        @Override
+        public String streamResponse(List<ChatMessage> messages, Consumer<String> onChunk) {
+            return stream(connection, model, messages, onChunk);
+        }
+        
+        @Override
+        public boolean isDemoMode() {
+            return GeminiService.this.isDemoMode();
+        }
+        
+        @Override
+        public String getModelName() {
+            return model;
+        }
+        
+        @Override
+        public String getSystemInstruction() {
+            return SYSTEM_INSTRUCTION;
+        }
+    }
+    
+    /**
+     * API key, model and the client built for that key.
+     */
+    private static final class Connection {
+        
+        final String apiKey;
+        final String modelName;
+        final Client client; // null in demo mode
+        
+        Connection(String apiKey, String modelName, Client client) {
+            this.apiKey = apiKey;
+            this.modelName = modelName;
+            this.client = client;
+        }
     }
     
     /**
      * Extracts text from Gemini API response.
      * Handles SDK version variations where text() may return String or Optional<String>.
+     * Package-private for the benchmarks module.
      */
-    private String extractTextFromResponse(GenerateContentResponse response) {
+    String extractTextFromResponse(GenerateContentResponse response) {
         if (response == null) {
             return "";
         }
-
+        
         // 1) Try convenience helper - in some versions returns String directly
         try {
             String text = response.text();
@@ -315,7 +570,7 @@ public class GeminiService {
         } catch (Exception ignored) {
             // Method may not exist or behave differently in some versions
         }
-
+        
         // 2) Fallback: candidates -> content -> parts -> text
         try {
             var candidatesOpt = response.candidates(); // Optional<List<Candidate>>
@@ -323,14 +578,14 @@ public class GeminiService {
             if (candidates.isEmpty()) {
                 return "";
             }
-
+            
             var first = candidates.get(0);
             var contentOpt = first.content(); // Optional<Content>
             var content = contentOpt.orElse(null);
             if (content == null) {
                 return "";
             }
-
+            
             // parts() may return Optional<List<Part>> or List<Part> - handle both
             Object partsResult = content.parts();
             List<?> parts;
@@ -350,7 +605,7 @@ public class GeminiService {
             if (parts == null || parts.isEmpty()) {
                 return "";
             }
-
+            
             // Extract text from first part
             Object partObj = parts.get(0);
             
@@ -371,11 +626,11 @@ public class GeminiService {
                 }
                 return "";
             } catch (Exception e) {
-                System.err.println("Error extracting text from part: " + e.getMessage());
+                LOG.debug("Could not extract text from part", "error", e.getMessage());
                 return "";
             }
         } catch (Exception e) {
-            System.err.println("Error extracting text from response: " + e.getMessage());
+            LOG.debug("Could not extract text from response", "error", e.getMessage());
             return "";
         }
     }
@@ -0,0 +1,42 @@
+package com.hexabiblos.chatbot.service;
+
+import java.util.Arrays;
+
+/**
+ * Sliding window of the most recent response latencies, for percentile checks.
+ */
+public class LatencyTracker {
+
+    private final long[] samples;
+    private int next;
+    private int count;
+
+    public LatencyTracker(int windowSize) {
+        this.samples = new long[Math.max(1, windowSize)];
+    }
+
+    public synchronized void record(long millis) {
+        samples[next] = millis;
+        next = (next + 1) % samples.length;
+        count = Math.min(count + 1, samples.length);
+    }
+
+    /**
+     * Returns the given percentile (0-1) of the window, or -1 if it holds fewer
+     * than {@code minSamples} samples.
+     */
+    public synchronized long percentile(double fraction, int minSamples) {
+        if (count == 0 || count < minSamples) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(fraction * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, index))];
+    }
+
+    public synchronized void reset() {
+        next = 0;
+        count = 0;
+    }
+}
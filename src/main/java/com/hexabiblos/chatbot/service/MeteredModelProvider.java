@@ -0,0 +1,70 @@
+package com.hexabiblos.chatbot.service;
+
+import com.hexabiblos.chatbot.model.ChatMessage;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * {@link ChatModelProvider} decorator that records latency, time to first token
+ * and failures of every call that reaches the backend.
+ */
+public class MeteredModelProvider implements ChatModelProvider {
+
+    private final ChatModelProvider delegate;
+    private final ModelMetrics metrics;
+
+    public MeteredModelProvider(ChatModelProvider delegate, ModelMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public String generateResponse(List<ChatMessage> messages) {
+        long start = System.nanoTime();
+        String outcome = "error";
+        try {
+            String responseText = delegate.generateResponse(messages);
+            outcome = ModelMetrics.outcomeOf(responseText);
+            return responseText;
+        } finally {
+            metrics.recordCall(delegate.getModelName(), outcome, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public String streamResponse(List<ChatMessage> messages, Consumer<String> onChunk) {
+        long start = System.nanoTime();
+        String model = delegate.getModelName();
+        boolean[] first = {true};
+        String outcome = "error";
+        try {
+            String responseText = delegate.streamResponse(messages, chunk -> {
+                if (first[0]) {
+                    first[0] = false;
+                    metrics.recordFirstToken(model, System.nanoTime() - start);
+                }
+                onChunk.accept(chunk);
+            });
+            outcome = ModelMetrics.outcomeOf(responseText);
+            return responseText;
+        } finally {
+            metrics.recordCall(model, outcome, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public String getModelName() {
+        return delegate.getModelName();
+    }
+
+    @Override
+    public boolean isDemoMode() {
+        return delegate.isDemoMode();
+    }
+
+    @Override
+    public String getSystemInstruction() {
+        return delegate.getSystemInstruction();
+    }
+}
@@ -0,0 +1,407 @@
+package com.hexabiblos.chatbot.service;
+
+import com.hexabiblos.chatbot.metrics.MetricsRegistry;
+import com.hexabiblos.chatbot.trace.Span;
+import com.hexabiblos.chatbot.trace.Tracer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs model calls off the servlet request threads with a hard deadline.
+ * Uses virtual threads when the runtime has them (Java 21+) and a platform pool
+ * that grows on demand otherwise; either way at most {@code MODEL_MAX_CONCURRENT_CALLS}
+ * calls hold a permit at once and at most {@code MODEL_MAX_QUEUED_CALLS} wait
+ * for one. Beyond that, calls are rejected at once so callers can answer
+ * "busy, retry in N s" instead of queueing into a timeout. A call that only waits
+ * for another call's result gives its permit back through {@link #releasePermit()}.
+ *
+ * Each call is traced as a {@code model_call} span under the submitting thread's
+ * current span, with the time it waited for a permit.
+ */
+@ApplicationScoped
+public class ModelCallExecutor {
+
+    /** Hard deadline after which a model call is cancelled. */
+    public static final Duration CALL_TIMEOUT = Duration.ofSeconds(30);
+
+    private static final int DEFAULT_MAX_CONCURRENT_CALLS = 64;
+    private static final int DEFAULT_MAX_QUEUED_CALLS = 256;
+    private static final int MAX_RETRY_AFTER_SECONDS = 60;
+    // Weight of the newest sample in the moving average of call durations
+    private static final double DURATION_SMOOTHING = 0.1;
+
+    private static final ThreadLocal<CallGuard> CURRENT_CALL = new ThreadLocal<>();
+
+    private final int maxConcurrentCalls =
+        Math.max(1, AppSettings.getInt("MODEL_MAX_CONCURRENT_CALLS", DEFAULT_MAX_CONCURRENT_CALLS));
+    private final int maxQueuedCalls =
+        Math.max(0, AppSettings.getInt("MODEL_MAX_QUEUED_CALLS", DEFAULT_MAX_QUEUED_CALLS));
+
+    private final ExecutorService executor = createExecutor(maxConcurrentCalls);
+    private final ScheduledThreadPoolExecutor watchdog = createWatchdog();
+    private final Semaphore permits = new Semaphore(maxConcurrentCalls, true);
+    // Submitted calls without a permit yet, wherever they wait: on the semaphore
+    // (virtual threads) or in the pool's queue (platform threads)
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private double averageCallMillis = 1000;
+
+    @Inject
+    private MetricsRegistry metrics;
+    private MetricsRegistry.Counter rejected;
+
+    @PostConstruct
+    public void init() {
+        metrics.gauge("chat_model_calls_in_flight", "Model calls holding a concurrency permit",
+            this::getInFlightCalls);
+        metrics.gauge("chat_model_calls_queued", "Model calls waiting for a concurrency permit",
+            this::getQueuedCalls);
+        metrics.gauge("chat_model_calls_limit", "Configured limit of concurrent model calls",
+            this::getMaxConcurrentCalls);
+        metrics.gauge("chat_model_queue_limit", "Configured limit of queued model calls",
+            () -> maxQueuedCalls);
+        rejected = metrics.counter("chat_admission_rejected_total", "Requests turned away by admission control",
+            "reason", "queue_full");
+    }
+
+    /**
+     * Submits a model call with the default deadline.
+     *
+     * @param call The model call to run
+     * @return Future completed with the result, or exceptionally with a
+     *         {@link TimeoutException} once the deadline passes
+     * @throws RejectedExecutionException if the queue is full
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> call) {
+        return submit(call, CALL_TIMEOUT);
+    }
+
+    /**
+     * Submits a model call that is cancelled if it has not finished within {@code timeout}.
+     * Cancellation interrupts the worker and closes any resources the call registered
+     * through {@link #closeOnCancel(AutoCloseable)}, so a hung stream is actually cut off.
+     * Cancelling the returned future stops the call the same way.
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> call, Duration timeout) {
+        // Reserve the queue slot first, so concurrent submits cannot overshoot the limit
+        if (queued.incrementAndGet() > maxQueuedCalls + permits.availablePermits()) {
+            queued.decrementAndGet();
+            reject();
+            throw new RejectedExecutionException("Model call queue is full");
+        }
+        AtomicBoolean waiting = new AtomicBoolean(true);
+        CompletableFuture<T> result = new CompletableFuture<>();
+        CallGuard guard = new CallGuard();
+        Span parent = Tracer.current();
+        long submitted = System.nanoTime();
+
+        Future<?> task;
+        try {
+            task = executor.submit(() -> {
+                CURRENT_CALL.set(guard);
+                boolean acquired = false;
+                try {
+                    permits.acquire();
+                    acquired = true;
+                    guard.holdPermit(permits::release);
+                    leaveQueue(waiting);
+                    if (!result.isDone()) {
+                        long start = System.nanoTime();
+                        T value;
+                        try (Span span = Tracer.start(parent, "model_call",
+                                "queue_ms", TimeUnit.NANOSECONDS.toMillis(start - submitted))) {
+                            try {
+                                value = call.call();
+                            } catch (Throwable t) {
+                                span.recordError(t);
+                                throw t;
+                            }
+                        } finally {
+                            recordDuration(System.nanoTime() - start);
+                        }
+                        // Outside the span: completion runs the caller's callbacks on this thread
+                        result.complete(value);
+                    }
+                } catch (Throwable t) {
+                    result.completeExceptionally(t);
+                } finally {
+                    leaveQueue(waiting);
+                    if (acquired) {
+                        guard.releasePermit();
+                    }
+                    CURRENT_CALL.remove();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            leaveQueue(waiting);
+            reject();
+            throw e;
+        }
+
+        ScheduledFuture<?> deadline = watchdog.schedule(() -> {
+            if (result.completeExceptionally(
+                    new TimeoutException("Model call exceeded " + timeout.toMillis() + " ms"))) {
+                guard.cancel();
+                task.cancel(true);
+                leaveQueue(waiting);
+            }
+        }, timeout.toMillis(), TimeUnit.MILLISECONDS);
+        result.whenComplete((value, failure) -> {
+            deadline.cancel(false);
+            if (result.isCancelled()) {
+                // By the caller, who no longer wants the result
+                guard.cancel();
+                task.cancel(true);
+                leaveQueue(waiting);
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Registers a resource to be closed if the current call is cancelled.
+     * A no-op when called outside a submitted call.
+     */
+    public static void closeOnCancel(AutoCloseable resource) {
+        CallGuard guard = CURRENT_CALL.get();
+        if (guard != null) {
+            guard.register(resource);
+        }
+    }
+
+    /**
+     * Gives the current call's concurrency permit back before the call ends, for a
+     * call that from here on only waits for work holding a permit of its own, such
+     * as a coalesced follower. The call keeps its deadline. A no-op outside a
+     * submitted call, or if the permit was already released.
+     */
+    public static void releasePermit() {
+        CallGuard guard = CURRENT_CALL.get();
+        if (guard != null) {
+            guard.releasePermit();
+        }
+    }
+
+    /**
+     * Takes a permit for work that a running call fans out to another thread, such
+     * as a hedged attempt, if one is free and no submitted call is waiting for it.
+     * A permit taken here must be given back through {@link #releaseExtraPermit()}.
+     */
+    boolean tryAcquireExtraPermit() {
+        try {
+            // The timed form respects fairness, so it never overtakes queued calls
+            return permits.tryAcquire(0, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    void releaseExtraPermit() {
+        permits.release();
+    }
+
+    /**
+     * Returns true if the failure of a submitted call was its deadline passing.
+     */
+    public static boolean isTimeout(Throwable failure) {
+        Throwable t = failure;
+        while (t != null) {
+            if (t instanceof TimeoutException) {
+                return true;
+            }
+            t = t.getCause();
+        }
+        return false;
+    }
+
+    /**
+     * The configured limit of concurrent calls ({@code MODEL_MAX_CONCURRENT_CALLS}).
+     */
+    public int getMaxConcurrentCalls() {
+        return maxConcurrentCalls;
+    }
+
+    /**
+     * Number of calls currently holding a concurrency permit.
+     */
+    public int getInFlightCalls() {
+        return maxConcurrentCalls - permits.availablePermits();
+    }
+
+    /**
+     * Number of submitted calls that do not hold a concurrency permit yet.
+     */
+    public int getQueuedCalls() {
+        return queued.get();
+    }
+
+    /**
+     * True when the wait queue is full and {@link #submit} would reject.
+     */
+    public boolean isSaturated() {
+        return queued.get() >= maxQueuedCalls + permits.availablePermits();
+    }
+
+    /**
+     * Estimated seconds until a new call would get a slot: the calls ahead of it
+     * divided over the concurrency limit, times the recent average call duration.
+     */
+    public synchronized int retryAfterSeconds() {
+        double waves = (getQueuedCalls() + 1) / (double) maxConcurrentCalls;
+        long seconds = (long) Math.ceil(waves * averageCallMillis / 1000);
+        return (int) Math.max(1, Math.min(MAX_RETRY_AFTER_SECONDS, seconds));
+    }
+
+    private void leaveQueue(AtomicBoolean waiting) {
+        if (waiting.compareAndSet(true, false)) {
+            queued.decrementAndGet();
+        }
+    }
+
+    private void reject() {
+        if (rejected != null) {
+            rejected.increment();
+        }
+    }
+
+    private synchronized void recordDuration(long nanos) {
+        averageCallMillis += DURATION_SMOOTHING * (nanos / 1_000_000.0 - averageCallMillis);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        watchdog.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    private static ExecutorService createExecutor(int maxConcurrentCalls) {
+        try {
+            // Java 21+: one cheap virtual thread per call, bounded by the permits
+            return (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor")
+                .invoke(null);
+        } catch (ReflectiveOperationException e) {
+            // Older runtime: a thread per call as well, kept warm for reuse. Calls wait for
+            // a permit on the semaphore, not in the pool, so a call that released its
+            // permit early never keeps another one from starting
+            return new ThreadPoolExecutor(
+                maxConcurrentCalls, Integer.MAX_VALUE,
+                60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(),
+                daemonThreadFactory("model-call"),
+                new ThreadPoolExecutor.AbortPolicy());
+        }
+    }
+
+    private static ScheduledThreadPoolExecutor createWatchdog() {
+        ScheduledThreadPoolExecutor scheduler =
+            new ScheduledThreadPoolExecutor(1, daemonThreadFactory("model-call-watchdog"));
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+
+    static ThreadFactory daemonThreadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Cancellation scope for work that a submitted call fans out to other threads,
+     * such as hedged attempts. Code run through {@link #run(Callable)} can use
+     * {@link ModelCallExecutor#closeOnCancel(AutoCloseable)} as usual, and
+     * {@link #cancel()} closes what it registered.
+     */
+    static final class Scope {
+
+        private final CallGuard guard = new CallGuard();
+
+        <T> T run(Callable<T> call) throws Exception {
+            CallGuard previous = CURRENT_CALL.get();
+            CURRENT_CALL.set(guard);
+            try {
+                return call.call();
+            } finally {
+                if (previous != null) {
+                    CURRENT_CALL.set(previous);
+                } else {
+                    CURRENT_CALL.remove();
+                }
+            }
+        }
+
+        void cancel() {
+            guard.cancel();
+        }
+    }
+
+    /**
+     * Resources owned by one in-flight call, closed when the call is cancelled, and
+     * the call's permit until it is released.
+     */
+    private static final class CallGuard {
+
+        private final List<AutoCloseable> resources = new CopyOnWriteArrayList<>();
+        private final AtomicReference<Runnable> permit = new AtomicReference<>();
+        private volatile boolean cancelled;
+
+        void holdPermit(Runnable release) {
+            permit.set(release);
+        }
+
+        void releasePermit() {
+            Runnable release = permit.getAndSet(null);
+            if (release != null) {
+                release.run();
+            }
+        }
+
+        void register(AutoCloseable resource) {
+            resources.add(resource);
+            if (cancelled) {
+                closeQuietly(resource);
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+            resources.forEach(CallGuard::closeQuietly);
+        }
+
+        private static void closeQuietly(AutoCloseable resource) {
+            try {
+                resource.close();
+            } catch (Exception ignored) {
+                // Best effort: the call is being abandoned anyway
+            }
+        }
+    }
+}
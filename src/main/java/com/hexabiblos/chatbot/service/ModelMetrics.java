@@ -0,0 +1,74 @@
+package com.hexabiblos.chatbot.service;
+
+import com.hexabiblos.chatbot.metrics.MetricsRegistry;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Model-call metrics shared by the {@link MeteredModelProvider} decorator, which
+ * times every call, and the backends, which alone know the token counts.
+ */
+@ApplicationScoped
+public class ModelMetrics {
+
+    @Inject
+    private MetricsRegistry metrics;
+
+    /**
+     * Records one completed model call.
+     *
+     * @param outcome {@code ok}, or the failure cause from {@link #outcomeOf(String)}
+     */
+    public void recordCall(String model, String outcome, long nanos) {
+        metrics.histogram("chat_model_call_seconds", "Model call latency by model and outcome",
+            MetricsRegistry.LATENCY_BUCKETS, "model", model, "outcome", outcome).observeNanos(nanos);
+        if (!"ok".equals(outcome)) {
+            metrics.counter("chat_model_errors_total", "Failed model calls by cause",
+                "model", model, "cause", outcome).increment();
+        }
+    }
+
+    public void recordFirstToken(String model, long nanos) {
+        metrics.histogram("chat_model_first_token_seconds", "Time to the first streamed chunk",
+            MetricsRegistry.LATENCY_BUCKETS, "model", model).observeNanos(nanos);
+    }
+
+    /**
+     * Records token usage as reported by the backend; negative counts are unknown and skipped.
+     */
+    public void recordTokens(String model, long input, long output, long cached) {
+        String help = "Tokens by model and type";
+        metrics.counter("chat_model_tokens_total", help, "model", model, "type", "input").add(input);
+        metrics.counter("chat_model_tokens_total", help, "model", model, "type", "output").add(output);
+        metrics.counter("chat_model_tokens_total", help, "model", model, "type", "cached").add(cached);
+        TokenUsage.record(input, output, cached);
+    }
+
+    /**
+     * Classifies a reply: {@code ok}, or the failure it stands for.
+     */
+    public static String outcomeOf(String responseText) {
+        if (ChatModelProvider.TIMEOUT_RESPONSE.equals(responseText)) {
+            return "timeout";
+        }
+        if (ChatModelProvider.isBusyResponse(responseText)) {
+            return "busy";
+        }
+        if (ChatModelProvider.NETWORK_ERROR_RESPONSE.equals(responseText)) {
+            return "network";
+        }
+        if (ChatModelProvider.EMPTY_RESPONSE.equals(responseText)) {
+            return "empty";
+        }
+        if (ChatModelProvider.UNAVAILABLE_RESPONSE.equals(responseText)) {
+            return "unavailable";
+        }
+        if (ChatModelProvider.isTruncatedResponse(responseText)) {
+            return "truncated";
+        }
+        if (ChatModelProvider.isFailureResponse(responseText)) {
+            return "error";
+        }
+        return "ok";
+    }
+}
@@ -0,0 +1,331 @@
+package com.hexabiblos.chatbot.service;
+
+import com.hexabiblos.chatbot.log.StructuredLog;
+import com.hexabiblos.chatbot.metrics.MetricsRegistry;
+import com.hexabiblos.chatbot.model.ChatMessage;
+import com.hexabiblos.chatbot.trace.Span;
+import com.hexabiblos.chatbot.trace.Tracer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Answers the quick-reply chips ahead of time. After each assistant turn, while
+ * the user reads, the reply to every chip in {@code PREFETCH_QUICK_REPLIES} is
+ * generated in the background against the conversation's current context. If
+ * the next message is one of those chips, the stream endpoint takes the result
+ * instead of starting a cold call, waiting up to {@code PREFETCH_MAX_WAIT_MS} for
+ * one still running; any other message discards the batch and cancels its calls.
+ *
+ * Off unless {@code PREFETCH_ENABLED=true}. Prefetches only use spare capacity:
+ * they are started from a small pool of their own ({@code PREFETCH_MAX_CONCURRENT}),
+ * draw on an application-wide budget of {@code PREFETCH_PER_MINUTE} calls, and are
+ * skipped while model calls are above {@code PREFETCH_MAX_LOAD_PERCENT} of
+ * {@code MODEL_MAX_CONCURRENT_CALLS}. Each one is an ordinary
+ * {@link ModelCallExecutor} call with its permit and deadline. Unused results
+ * expire after {@code PREFETCH_TTL_SECONDS}.
+ */
+@ApplicationScoped
+public class QuickReplyPrefetcher {
+
+    private static final StructuredLog LOG = StructuredLog.forClass(QuickReplyPrefetcher.class);
+
+    // The chips on chat.xhtml
+    private static final String DEFAULT_QUICK_REPLIES = "Help|Show Features";
+    private static final int DEFAULT_MAX_CONCURRENT = 2;
+    private static final int DEFAULT_PER_MINUTE = 60;
+    private static final int DEFAULT_MAX_LOAD_PERCENT = 50;
+    private static final int DEFAULT_TTL_SECONDS = 300;
+    private static final int DEFAULT_MAX_WAIT_MS = 5000;
+    private static final int MAX_CONVERSATIONS = 1000;
+    private static final int QUEUE_CAPACITY = 50;
+
+    @Inject
+    private ChatModelProvider modelProvider;
+
+    @Inject
+    private ModelCallExecutor modelCalls;
+
+    @Inject
+    private MetricsRegistry metrics;
+
+    private boolean enabled;
+    private List<String> quickReplies;
+    private TokenBucket budget;
+    private int maxLoadPercent;
+    private long ttlMillis;
+    private long maxWaitMillis;
+    private ThreadPoolExecutor executor;
+
+    // Latest batch per conversation, oldest first
+    private final LinkedHashMap<String, Batch> batches = new LinkedHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        enabled = Boolean.parseBoolean(AppSettings.getString("PREFETCH_ENABLED", "false"));
+        quickReplies = new ArrayList<>();
+        for (String reply : AppSettings.getString("PREFETCH_QUICK_REPLIES", DEFAULT_QUICK_REPLIES).split("\\|")) {
+            if (!reply.isBlank()) {
+                quickReplies.add(reply.trim());
+            }
+        }
+        int perMinute = Math.max(0, AppSettings.getInt("PREFETCH_PER_MINUTE", DEFAULT_PER_MINUTE));
+        // A minute's budget may be spent in bursts of a quarter of it
+        budget = new TokenBucket(Math.max(1, perMinute / 4.0), perMinute / 60.0);
+        maxLoadPercent = Math.max(0, Math.min(100,
+            AppSettings.getInt("PREFETCH_MAX_LOAD_PERCENT", DEFAULT_MAX_LOAD_PERCENT)));
+        ttlMillis = Math.max(1, AppSettings.getInt("PREFETCH_TTL_SECONDS", DEFAULT_TTL_SECONDS)) * 1000L;
+        // Well inside the call deadline, so a late prefetch still leaves time for a live call
+        maxWaitMillis = Math.max(1, Math.min(AppSettings.getInt("PREFETCH_MAX_WAIT_MS", DEFAULT_MAX_WAIT_MS),
+            ModelCallExecutor.CALL_TIMEOUT.toMillis() / 3));
+        enabled = enabled && perMinute > 0 && !quickReplies.isEmpty();
+        if (!enabled) {
+            return;
+        }
+
+        int threads = Math.max(1, AppSettings.getInt("PREFETCH_MAX_CONCURRENT", DEFAULT_MAX_CONCURRENT));
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(QUEUE_CAPACITY), ModelCallExecutor.daemonThreadFactory("quick-reply-prefetch"));
+        executor.allowCoreThreadTimeOut(true);
+        metrics.gauge("chat_prefetch_conversations", "Conversations holding prefetched quick replies",
+            this::getPendingCount);
+        LOG.info("Quick-reply prefetch enabled", "quickReplies", String.join("|", quickReplies),
+            "perMinute", perMinute, "maxConcurrent", threads);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Starts generating the quick replies for a conversation that has just
+     * received an assistant turn. Replaces the conversation's previous batch.
+     * Returns at once.
+     *
+     * @param context The context window the next message will be answered with
+     */
+    public void prefetch(String conversationId, List<ChatMessage> context) {
+        if (!enabled || modelProvider.isDemoMode()) {
+            return;
+        }
+        Batch batch = new Batch(context);
+        Batch previous;
+        synchronized (batches) {
+            previous = batches.remove(conversationId);
+            batches.put(conversationId, batch);
+            evictExcess();
+        }
+        if (previous != null) {
+            previous.discard(null);
+        }
+
+        for (String reply : quickReplies) {
+            // Spare capacity only: never compete with messages users are waiting for
+            if (isBusy() || budget.tryAcquire() != 0) {
+                count("skipped");
+                continue;
+            }
+            CompletableFuture<String> result = new CompletableFuture<>();
+            batch.results.put(normalize(reply), result);
+            try {
+                executor.execute(() -> generate(batch, reply, result));
+                count("started");
+            } catch (RejectedExecutionException e) {
+                batch.results.remove(normalize(reply));
+                count("skipped");
+            }
+        }
+    }
+
+    /**
+     * Takes the prefetched reply for a conversation's next message, and discards
+     * the rest of its batch. A hit needs {@code history} to end with the batch's
+     * newest context message followed by one of the quick replies; older messages
+     * may differ, e.g. once they have been compacted into a summary.
+     *
+     * @return The reply, possibly still being generated; it completes with null if
+     *         generation failed or did not finish within {@code PREFETCH_MAX_WAIT_MS}.
+     *         Null if nothing was prefetched for this message.
+     */
+    public CompletableFuture<String> take(String conversationId, List<ChatMessage> history) {
+        if (!enabled) {
+            return null;
+        }
+        Batch batch;
+        synchronized (batches) {
+            batch = batches.remove(conversationId);
+        }
+        if (batch == null) {
+            return null;
+        }
+        String key = batch.match(history);
+        CompletableFuture<String> result = (key != null) ? batch.results.get(key) : null;
+        if (result != null && result.isDone() && result.getNow(null) == null) {
+            result = null; // Failed; a live call does better than waiting for nothing
+        }
+        batch.discard(result);
+        if (result == null) {
+            return null;
+        }
+        count("used");
+        if (!result.isDone()) {
+            // Given up on after the wait, like a failure, so its call stops holding a permit
+            result.completeOnTimeout(null, maxWaitMillis, TimeUnit.MILLISECONDS)
+                .thenAccept(text -> {
+                    if (text == null) {
+                        batch.cancelCall(key);
+                    }
+                });
+        }
+        return result;
+    }
+
+    public int getPendingCount() {
+        synchronized (batches) {
+            return batches.size();
+        }
+    }
+
+    private void generate(Batch batch, String reply, CompletableFuture<String> result) {
+        if (result.isDone()) {
+            return; // Discarded while queued
+        }
+        String text = null;
+        try (Span span = Tracer.startTrace("chat.prefetch", "chat.quick_reply", reply,
+                "chat.context_messages", batch.context.size())) {
+            List<ChatMessage> messages = new ArrayList<>(batch.context);
+            messages.add(new ChatMessage(ChatMessage.Role.USER, reply));
+            text = modelProvider.cachedResponse(messages);
+            if (text == null) {
+                // Through the model-call executor, like any other call: it holds a permit, so
+                // load and admission see it, and it is cut off at the usual deadline
+                CompletableFuture<String> call =
+                    modelCalls.submit(() -> modelProvider.streamResponse(messages, chunk -> { }));
+                batch.calls.put(normalize(reply), call);
+                if (result.isDone()) {
+                    call.cancel(true); // Discarded before the call was registered
+                }
+                text = call.join();
+            }
+            if (ChatModelProvider.isFailureResponse(text)) {
+                span.setAttribute("chat.outcome", ModelMetrics.outcomeOf(text));
+                count("failed");
+                text = null;
+            }
+        } catch (RejectedExecutionException e) {
+            count("skipped");
+        } catch (CancellationException e) {
+            // Discarded, and counted as such
+        } catch (RuntimeException e) {
+            if (!ModelCallExecutor.isTimeout(e)) {
+                LOG.warn("Quick-reply prefetch failed", e, "quickReply", reply);
+            }
+            count("failed");
+        }
+        // Outside the span: a waiting reply stream continues on this thread
+        result.complete(text);
+    }
+
+    private boolean isBusy() {
+        int load = modelCalls.getInFlightCalls() + modelCalls.getQueuedCalls();
+        return load * 100 >= modelCalls.getMaxConcurrentCalls() * maxLoadPercent;
+    }
+
+    /**
+     * Drops expired batches from the old end, then whatever is over capacity.
+     */
+    private void evictExcess() {
+        long now = System.currentTimeMillis();
+        Iterator<Batch> it = batches.values().iterator();
+        while (it.hasNext()) {
+            Batch oldest = it.next();
+            if (batches.size() <= MAX_CONVERSATIONS && now - oldest.createdAt < ttlMillis) {
+                break;
+            }
+            it.remove();
+            oldest.discard(null);
+        }
+    }
+
+    private void count(String outcome) {
+        metrics.counter("chat_prefetch_total", "Quick-reply prefetches by outcome", "outcome", outcome).increment();
+    }
+
+    private static String normalize(String text) {
+        return text.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * The replies prefetched after one assistant turn, and the context they answer.
+     */
+    private final class Batch {
+
+        final List<ChatMessage> context;
+        final Map<String, CompletableFuture<String>> results = new ConcurrentHashMap<>();
+        // The model calls behind the results, once submitted
+        final Map<String, CompletableFuture<String>> calls = new ConcurrentHashMap<>();
+        final long createdAt = System.currentTimeMillis();
+
+        Batch(List<ChatMessage> context) {
+            this.context = context;
+        }
+
+        /**
+         * @return Key of the result that answers {@code history}, or null if none does
+         */
+        String match(List<ChatMessage> history) {
+            if (System.currentTimeMillis() - createdAt >= ttlMillis || context.isEmpty() || history.size() < 2) {
+                return null;
+            }
+            // The newest context message is the turn the chips followed; it carries its own timestamp
+            if (!context.get(context.size() - 1).sameAs(history.get(history.size() - 2))) {
+                return null;
+            }
+            ChatMessage next = history.get(history.size() - 1);
+            return (next.isUser() && results.containsKey(normalize(next.getText()))) ? normalize(next.getText()) : null;
+        }
+
+        /**
+         * Drops every result except {@code kept}; queued ones never reach the model,
+         * running ones are cancelled.
+         */
+        void discard(CompletableFuture<String> kept) {
+            for (Map.Entry<String, CompletableFuture<String>> entry : results.entrySet()) {
+                CompletableFuture<String> result = entry.getValue();
+                if (result == kept) {
+                    continue;
+                }
+                // Failed ones were counted as such
+                if (result.complete(null) || result.getNow(null) != null) {
+                    count("discarded");
+                }
+                cancelCall(entry.getKey());
+            }
+        }
+
+        void cancelCall(String key) {
+            CompletableFuture<String> call = calls.get(key);
+            if (call != null) {
+                call.cancel(true);
+            }
+        }
+    }
+}
@@ -0,0 +1,569 @@
+package com.hexabiblos.chatbot.service;
+
+import com.hexabiblos.chatbot.log.StructuredLog;
+import com.hexabiblos.chatbot.metrics.MetricsRegistry;
+import com.hexabiblos.chatbot.model.ChatMessage;
+import com.hexabiblos.chatbot.trace.Tracer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * {@link ChatModelProvider} decorator that keeps replies coming while the primary
+ * model is failing or slow.
+ *
+ * <ul>
+ *   <li>Each model has a {@link CircuitBreaker}: after {@code CIRCUIT_FAILURE_THRESHOLD}
+ *       consecutive errors, timeouts or empty replies it stops calling that model for
+ *       {@code CIRCUIT_OPEN_SECONDS}, then lets one trial call through.</li>
+ *   <li>If the p95 time to the first visible output of the primary model exceeds
+ *       {@code MODEL_LATENCY_SLO_MS}, traffic moves to the fallback model for
+ *       {@code MODEL_DEGRADE_SECONDS}.</li>
+ *   <li>A call that fails on the primary model before anything reached the user is
+ *       retried once on the fallback.</li>
+ *   <li>With {@code HEDGE_ENABLED}, a call that has produced nothing after the
+ *       model's p95 latency is duplicated; the first attempt to produce output wins
+ *       and the other one is cancelled. At most {@code HEDGE_MAX_IN_FLIGHT} calls are
+ *       hedged at once, and the duplicate needs a free {@link ModelCallExecutor}
+ *       permit of its own; the rest run normally.</li>
+ * </ul>
+ *
+ * When no model can be called the reply is {@link #UNAVAILABLE_RESPONSE}. Busy
+ * replies come from our own admission limits and count neither for nor against a model.
+ * Truncated replies and calls that throw count against it.
+ */
+public class ResilientModelProvider implements ChatModelProvider {
+
+    private static final StructuredLog LOG = StructuredLog.forClass(ResilientModelProvider.class);
+
+    private static final int LATENCY_WINDOW = 200;
+    private static final int MIN_LATENCY_SAMPLES = 20;
+    private static final double HEDGE_PERCENTILE = 0.95;
+
+    private final Route primary;
+    private final Route fallback;
+    private final long latencySloMillis;
+    private final long degradeMillis;
+    private final boolean hedgeEnabled;
+    private final Semaphore hedgeSlots;
+    private final ExecutorService hedgeExecutor;
+    private final ModelCallExecutor modelCalls;
+
+    private final MetricsRegistry metrics;
+
+    // Until when traffic goes to the fallback because the primary is too slow
+    private volatile long degradedUntil;
+
+    // Model that answered the calling thread's latest call, see answeredByPrimary()
+    private final ThreadLocal<Route> answeredBy = new ThreadLocal<>();
+
+    /**
+     * @param fallback Cheaper model to use while the primary one is unhealthy, or null
+     * @param modelCalls Executor whose permits hedged duplicates take; without one
+     *        no call is hedged
+     */
+    public ResilientModelProvider(ChatModelProvider primary, ChatModelProvider fallback,
+                                  ModelCallExecutor modelCalls, MetricsRegistry metrics) {
+        int failureThreshold = AppSettings.getInt("CIRCUIT_FAILURE_THRESHOLD", 5);
+        long openMillis = TimeUnit.SECONDS.toMillis(AppSettings.getInt("CIRCUIT_OPEN_SECONDS", 30));
+        this.primary = new Route(primary, new CircuitBreaker(failureThreshold, openMillis));
+        this.fallback = (fallback != null) ? new Route(fallback, new CircuitBreaker(failureThreshold, openMillis)) : null;
+        this.latencySloMillis = AppSettings.getInt("MODEL_LATENCY_SLO_MS", 8000);
+        this.degradeMillis = TimeUnit.SECONDS.toMillis(AppSettings.getInt("MODEL_DEGRADE_SECONDS", 60));
+        this.hedgeEnabled = modelCalls != null
+            && Boolean.parseBoolean(AppSettings.getString("HEDGE_ENABLED", "false"));
+        int maxHedged = Math.max(1, AppSettings.getInt("HEDGE_MAX_IN_FLIGHT", 16));
+        this.hedgeSlots = new Semaphore(maxHedged);
+        // Two attempts per hedged call, plus room for cancelled losers that are still unwinding
+        this.hedgeExecutor = hedgeEnabled
+            ? new ThreadPoolExecutor(0, maxHedged * 4, 30, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                ModelCallExecutor.daemonThreadFactory("model-hedge"))
+            : null;
+        this.modelCalls = modelCalls;
+        this.metrics = metrics;
+
+        registerGauges(this.primary);
+        if (this.fallback != null) {
+            registerGauges(this.fallback);
+        }
+        metrics.gauge("chat_model_degraded", "1 while traffic is moved to the fallback model for latency",
+            () -> isDegraded() ? 1 : 0);
+        LOG.info("Model resilience configured", "model", primary.getModelName(),
+            "fallbackModel", (fallback != null) ? fallback.getModelName() : null,
+            "failureThreshold", failureThreshold, "latencySloMs", latencySloMillis, "hedging", hedgeEnabled);
+    }
+
+    @Override
+    public String generateResponse(List<ChatMessage> messages) {
+        return call(messages, null);
+    }
+
+    @Override
+    public String streamResponse(List<ChatMessage> messages, Consumer<String> onChunk) {
+        return call(messages, onChunk);
+    }
+
+    @Override
+    public String getModelName() {
+        return primary.provider.getModelName();
+    }
+
+    @Override
+    public boolean isDemoMode() {
+        return primary.provider.isDemoMode();
+    }
+
+    @Override
+    public String getSystemInstruction() {
+        return primary.provider.getSystemInstruction();
+    }
+
+    /**
+     * Model that new calls currently go to, or null if none can be called.
+     */
+    public String getActiveModelName() {
+        Route route = choose(false);
+        return (route != null) ? route.provider.getModelName() : null;
+    }
+
+    public String getFallbackModelName() {
+        return (fallback != null) ? fallback.provider.getModelName() : null;
+    }
+
+    public CircuitBreaker.State getCircuitState() {
+        return primary.breaker.getState();
+    }
+
+    public CircuitBreaker.State getFallbackCircuitState() {
+        return (fallback != null) ? fallback.breaker.getState() : null;
+    }
+
+    /**
+     * True if the calling thread's latest call was answered by the primary model,
+     * the one {@link #getModelName()} names; false after a fallback answer, a
+     * refused call, or {@link #clearAnswered()}. Lets a cache keyed by model name
+     * keep out replies from another model.
+     */
+    public boolean answeredByPrimary() {
+        return answeredBy.get() == primary;
+    }
+
+    /**
+     * Forgets which model answered the calling thread's latest call.
+     */
+    public void clearAnswered() {
+        answeredBy.remove();
+    }
+
+    public boolean isDegraded() {
+        return fallback != null && System.currentTimeMillis() < degradedUntil;
+    }
+
+    /**
+     * p95 time to first output of the primary model over recent calls, or -1 if
+     * there are too few samples.
+     */
+    public long getLatencyP95Millis() {
+        return primary.latency.percentile(HEDGE_PERCENTILE, MIN_LATENCY_SAMPLES);
+    }
+
+    public void shutdown() {
+        if (hedgeExecutor != null) {
+            hedgeExecutor.shutdownNow();
+        }
+    }
+
+    private String call(List<ChatMessage> messages, Consumer<String> onChunk) {
+        answeredBy.remove();
+        if (primary.provider.isDemoMode()) {
+            return invoke(primary.provider, messages, onChunk);
+        }
+        Route route = choose(true);
+        if (route == null) {
+            count("chat_model_unavailable_total", "Calls refused because no model could be called");
+            if (onChunk != null) {
+                onChunk.accept(UNAVAILABLE_RESPONSE);
+            }
+            return UNAVAILABLE_RESPONSE;
+        }
+        if (route != primary) {
+            countFallback(isDegraded() ? "degraded" : "circuit_open");
+        }
+
+        HeldChunks held = (onChunk != null) ? new HeldChunks(onChunk) : null;
+        String responseText = attempt(route, messages, held);
+
+        // Nothing reached the user yet, so the fallback can still answer instead
+        if (route == primary && fallback != null && isRetryable(responseText)
+                && (held == null || !held.forwarded) && !Thread.currentThread().isInterrupted()
+                && fallback.breaker.allowRequest()) {
+            countFallback("retry");
+            LOG.info("Retrying failed call on fallback model", "model", primary.provider.getModelName(),
+                "fallbackModel", fallback.provider.getModelName(), "outcome", ModelMetrics.outcomeOf(responseText));
+            held = (onChunk != null) ? new HeldChunks(onChunk) : null;
+            route = fallback;
+            responseText = attempt(route, messages, held);
+        }
+        if (held != null) {
+            held.release();
+        }
+        answeredBy.set(route);
+        return responseText;
+    }
+
+    /**
+     * Picks the model for the next call. With {@code claim}, also takes the
+     * breaker's half-open trial slot; without it only reports what would happen.
+     */
+    private Route choose(boolean claim) {
+        boolean degraded = isDegraded();
+        if (!degraded && (claim ? primary.breaker.allowRequest() : primary.breaker.isCallable())) {
+            return primary;
+        }
+        if (fallback != null && (claim ? fallback.breaker.allowRequest() : fallback.breaker.isCallable())) {
+            return fallback;
+        }
+        // Degraded but the fallback is out too: the slow primary beats no answer
+        if (degraded && (claim ? primary.breaker.allowRequest() : primary.breaker.isCallable())) {
+            return primary;
+        }
+        return null;
+    }
+
+    /**
+     * One call on one model, hedged if enabled and there is enough latency history,
+     * with the outcome reported to that model's breaker and latency window.
+     */
+    private String attempt(Route route, List<ChatMessage> messages, Consumer<String> onChunk) {
+        long hedgeDelay = hedgeEnabled ? route.latency.percentile(HEDGE_PERCENTILE, MIN_LATENCY_SAMPLES) : -1;
+        String responseText = null;
+        try {
+            if (hedgeDelay >= 0 && hedgeSlots.tryAcquire()) {
+                try {
+                    responseText = hedged(route, messages, onChunk, hedgeDelay);
+                } finally {
+                    hedgeSlots.release();
+                }
+            } else {
+                long start = System.nanoTime();
+                boolean[] signalled = {false};
+                responseText = invoke(route.provider, messages, (onChunk == null) ? null : chunk -> {
+                    if (!signalled[0] && !ChatModelProvider.isFailureResponse(chunk)) {
+                        signalled[0] = true;
+                        route.recordLatency(start);
+                    }
+                    onChunk.accept(chunk);
+                });
+                if (onChunk == null && !ChatModelProvider.isFailureResponse(responseText)) {
+                    route.recordLatency(start);
+                }
+            }
+        } finally {
+            // Also when the provider or a chunk consumer threw, or a half-open trial would never end
+            record(route, (responseText != null) ? responseText : ERROR_RESPONSE);
+        }
+        return responseText;
+    }
+
+    private String hedged(Route route, List<ChatMessage> messages, Consumer<String> onChunk, long delayMillis) {
+        HedgeRace race = new HedgeRace(route, messages, onChunk);
+        try {
+            if (!race.start()) {
+                return invoke(route.provider, messages, onChunk);
+            }
+            if (!race.awaitWinner(delayMillis)) {
+                if (race.start()) {
+                    count("chat_model_hedges_total", "Calls duplicated because the first attempt was slow");
+                } else {
+                    count("chat_model_hedges_skipped_total",
+                        "Slow calls not duplicated because no model-call permit was free");
+                }
+            }
+            return race.result();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return TIMEOUT_RESPONSE;
+        } finally {
+            race.cancelAll();
+        }
+    }
+
+    private void record(Route route, String responseText) {
+        // Only complete replies count as successes; a stream that broke off is "truncated"
+        String outcome = ModelMetrics.outcomeOf(responseText);
+        boolean changed;
+        if ("ok".equals(outcome)) {
+            changed = route.breaker.recordSuccess();
+        } else if ("busy".equals(outcome) || "unavailable".equals(outcome)) {
+            route.breaker.recordIgnored();
+            changed = false;
+        } else {
+            changed = route.breaker.recordFailure();
+        }
+        if (changed) {
+            LOG.warn("Circuit breaker changed state", "model", route.provider.getModelName(),
+                "state", route.breaker.getState(), "outcome", outcome);
+        }
+
+        if (route == primary && fallback != null) {
+            long p95 = primary.latency.percentile(HEDGE_PERCENTILE, MIN_LATENCY_SAMPLES);
+            if (p95 > latencySloMillis && !isDegraded()) {
+                degradedUntil = System.currentTimeMillis() + degradeMillis;
+                // Start over once traffic returns, so old samples cannot degrade it again at once
+                primary.latency.reset();
+                LOG.warn("Model latency over SLO, using fallback model", "model", primary.provider.getModelName(),
+                    "p95Ms", p95, "sloMs", latencySloMillis, "fallbackModel", fallback.provider.getModelName(),
+                    "forSeconds", TimeUnit.MILLISECONDS.toSeconds(degradeMillis));
+            }
+        }
+    }
+
+    private static boolean isRetryable(String responseText) {
+        String outcome = ModelMetrics.outcomeOf(responseText);
+        return !"ok".equals(outcome) && !"timeout".equals(outcome) && !"unavailable".equals(outcome);
+    }
+
+    private static String invoke(ChatModelProvider provider, List<ChatMessage> messages, Consumer<String> onChunk) {
+        return (onChunk != null) ? provider.streamResponse(messages, onChunk) : provider.generateResponse(messages);
+    }
+
+    private void registerGauges(Route route) {
+        metrics.gauge("chat_circuit_state", "Circuit breaker state by model (0 closed, 1 half-open, 2 open)",
+            () -> route.breaker.getState().ordinal(), "model", route.provider.getModelName());
+    }
+
+    private void countFallback(String reason) {
+        metrics.counter("chat_model_fallback_total", "Calls served by the fallback model, by reason",
+            "reason", reason).increment();
+    }
+
+    private void count(String name, String help) {
+        metrics.counter(name, help).increment();
+    }
+
+    /**
+     * A model with its breaker and its recent times to first output.
+     */
+    private static final class Route {
+
+        final ChatModelProvider provider;
+        final CircuitBreaker breaker;
+        final LatencyTracker latency = new LatencyTracker(LATENCY_WINDOW);
+
+        Route(ChatModelProvider provider, CircuitBreaker breaker) {
+            this.provider = provider;
+            this.breaker = breaker;
+        }
+
+        void recordLatency(long startNanos) {
+            latency.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        }
+    }
+
+    /**
+     * Forwards streamed chunks, except that a failure message arriving as the very
+     * first chunk is held back until it is clear whether a retry will replace it.
+     */
+    private static final class HeldChunks implements Consumer<String> {
+
+        private final Consumer<String> target;
+        private String held;
+        boolean forwarded;
+
+        HeldChunks(Consumer<String> target) {
+            this.target = target;
+        }
+
+        @Override
+        public void accept(String chunk) {
+            if (!forwarded && held == null && ChatModelProvider.isFailureResponse(chunk)) {
+                held = chunk;
+                return;
+            }
+            release();
+            forwarded = true;
+            target.accept(chunk);
+        }
+
+        /** Forwards the held failure message, if any. */
+        void release() {
+            if (held != null) {
+                String chunk = held;
+                held = null;
+                forwarded = true;
+                target.accept(chunk);
+            }
+        }
+    }
+
+    /**
+     * Up to two attempts at the same call. An attempt wins with its first real
+     * chunk (streaming) or successful reply (blocking); a failed attempt only wins
+     * once no other attempt is left running. Only the winner's chunks are forwarded.
+     */
+    private final class HedgeRace {
+
+        private final Route route;
+        private final List<ChatMessage> messages;
+        private final Consumer<String> onChunk;
+        private final List<Attempt> attempts = new ArrayList<>(2);
+        private final CountDownLatch decided = new CountDownLatch(1);
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+        private final long start = System.nanoTime();
+        private Attempt winner;
+        private int running;
+
+        HedgeRace(Route route, List<ChatMessage> messages, Consumer<String> onChunk) {
+            this.route = route;
+            this.messages = messages;
+            this.onChunk = onChunk;
+        }
+
+        /**
+         * Starts the first attempt, which runs under the caller's permit, or the
+         * duplicate, which needs a permit of its own.
+         */
+        boolean start() {
+            Attempt attempt = new Attempt(attempts.isEmpty());
+            if (!attempt.first && !modelCalls.tryAcquireExtraPermit()) {
+                return false;
+            }
+            synchronized (this) {
+                attempts.add(attempt);
+                running++;
+            }
+            try {
+                // Both attempts belong to the caller's trace
+                attempt.future = hedgeExecutor.submit(Tracer.wrap(attempt));
+                return true;
+            } catch (RejectedExecutionException e) {
+                synchronized (this) {
+                    attempts.remove(attempt);
+                    running--;
+                }
+                attempt.releasePermit();
+                return false;
+            }
+        }
+
+        boolean awaitWinner(long millis) throws InterruptedException {
+            return decided.await(millis, TimeUnit.MILLISECONDS);
+        }
+
+        String result() throws InterruptedException {
+            try {
+                return result.get();
+            } catch (ExecutionException e) {
+                LOG.warn("Hedged model call failed", e.getCause(), "model", route.provider.getModelName());
+                return ERROR_RESPONSE;
+            }
+        }
+
+        void cancelAll() {
+            List<Attempt> all;
+            synchronized (this) {
+                all = new ArrayList<>(attempts);
+            }
+            for (Attempt attempt : all) {
+                if (attempt != winner || !result.isDone()) {
+                    attempt.scope.cancel();
+                    if (attempt.future != null) {
+                        attempt.future.cancel(true);
+                    }
+                }
+            }
+        }
+
+        private synchronized boolean claim(Attempt attempt) {
+            if (winner == null) {
+                winner = attempt;
+                route.recordLatency(attempt.start);
+                if (!attempt.first) {
+                    count("chat_model_hedge_wins_total", "Hedged calls answered first by the duplicate attempt");
+                }
+                decided.countDown();
+                for (String chunk : attempt.buffer) {
+                    onChunk.accept(chunk);
+                }
+                attempt.buffer.clear();
+            }
+            return winner == attempt;
+        }
+
+        private final class Attempt implements Runnable {
+
+            final boolean first;
+            final ModelCallExecutor.Scope scope = new ModelCallExecutor.Scope();
+            final List<String> buffer = new ArrayList<>();
+            final long start = System.nanoTime();
+            volatile Future<?> future;
+
+            Attempt(boolean first) {
+                this.first = first;
+            }
+
+            @Override
+            public void run() {
+                try {
+                    String text = scope.run(() -> invoke(route.provider, messages, (onChunk == null) ? null : this::chunk));
+                    finish(text, null);
+                } catch (Throwable t) {
+                    finish(null, t);
+                } finally {
+                    // Held until a cancelled loser has actually unwound
+                    releasePermit();
+                }
+            }
+
+            void releasePermit() {
+                if (!first) {
+                    modelCalls.releaseExtraPermit();
+                }
+            }
+
+            private void chunk(String chunk) {
+                synchronized (HedgeRace.this) {
+                    if (winner == this) {
+                        onChunk.accept(chunk);
+                        return;
+                    }
+                    if (winner != null) {
+                        return; // Lost the race
+                    }
+                    buffer.add(chunk);
+                    if (!ChatModelProvider.isFailureResponse(chunk)) {
+                        claim(this);
+                    }
+                }
+            }
+
+            private void finish(String text, Throwable failure) {
+                synchronized (HedgeRace.this) {
+                    running--;
+                    boolean ok = failure == null && !ChatModelProvider.isFailureResponse(text);
+                    if (winner == null && (ok || running == 0)) {
+                        claim(this);
+                    }
+                    if (winner == this) {
+                        if (failure != null) {
+                            result.completeExceptionally(failure);
+                        } else {
+                            result.complete(text);
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
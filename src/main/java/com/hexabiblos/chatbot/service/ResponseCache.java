@@ -0,0 +1,224 @@
+package com.hexabiblos.chatbot.service;
+
+import com.hexabiblos.chatbot.metrics.MetricsRegistry;
+import com.hexabiblos.chatbot.model.ChatMessage;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Application-wide cache of model replies for short, repeated prompts such as
+ * the quick-reply chips and common first questions.
+ *
+ * Entries are keyed on the normalized prompt (model name, system instruction and
+ * the conversation turns) and evicted least-recently-used once the cache is full,
+ * or when older than the TTL. Only conversations of at most
+ * {@code RESPONSE_CACHE_MAX_TURNS} turns are cached, so a key always covers the
+ * whole context the model would see. That includes assistant turns such as the
+ * chat page's greeting, which counts as one of those turns.
+ *
+ * Turn text is compared ignoring case and runs of whitespace, so "What are your
+ * hours?" and "what are your  HOURS?" share one reply. Prompts whose meaning
+ * depends on case are rare enough in a support chat to accept that.
+ */
+@ApplicationScoped
+public class ResponseCache {
+
+    private static final int DEFAULT_MAX_ENTRIES = 1000;
+    private static final int DEFAULT_TTL_SECONDS = 600;
+    private static final int DEFAULT_MAX_TURNS = 3;
+
+    private int maxEntries;
+    private long ttlMillis;
+    private int maxTurns;
+
+    // Access-ordered so iteration starts at the least recently used entry
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    @Inject
+    private MetricsRegistry metrics;
+
+    @PostConstruct
+    public void init() {
+        maxEntries = Math.max(0, AppSettings.getInt("RESPONSE_CACHE_MAX_ENTRIES", DEFAULT_MAX_ENTRIES));
+        ttlMillis = Math.max(0, AppSettings.getInt("RESPONSE_CACHE_TTL_SECONDS", DEFAULT_TTL_SECONDS)) * 1000L;
+        maxTurns = Math.max(0, AppSettings.getInt("RESPONSE_CACHE_MAX_TURNS", DEFAULT_MAX_TURNS));
+
+        String help = "Response cache lookups by result";
+        metrics.counterFunction("chat_response_cache_lookups_total", help, hits::sum, "result", "hit");
+        metrics.counterFunction("chat_response_cache_lookups_total", help, misses::sum, "result", "miss");
+        metrics.counterFunction("chat_response_cache_evictions_total", "Response cache evictions",
+            evictions::sum);
+        metrics.gauge("chat_response_cache_hit_ratio", "Share of lookups answered from the cache",
+            this::getHitRate);
+        metrics.gauge("chat_response_cache_entries", "Entries in the response cache", this::getSize);
+    }
+
+    /**
+     * Builds the cache key for a conversation, or returns null if it is not cacheable
+     * (caching disabled, or more turns than {@code RESPONSE_CACHE_MAX_TURNS}).
+     */
+    public String keyFor(String modelName, String systemInstruction, List<ChatMessage> messages) {
+        if (maxEntries == 0 || messages == null) {
+            return null;
+        }
+
+        StringBuilder key = new StringBuilder(128)
+            .append(modelName).append('\u0000')
+            .append(systemInstruction).append('\u0000');
+        int turns = 0;
+        for (ChatMessage message : messages) {
+            if (message.isSystem()) {
+                continue; // Never sent to the model
+            }
+            if (++turns > maxTurns) {
+                return null;
+            }
+            key.append(message.isUser() ? 'U' : 'A').append(':');
+            appendNormalized(key, message.getText());
+            key.append('\u0000');
+        }
+        return (turns == 0) ? null : key.toString();
+    }
+
+    /**
+     * Returns the cached reply for {@code key}, or null on a miss.
+     */
+    public String get(String key) {
+        String responseText = peek(key);
+        if (key != null && responseText == null) {
+            misses.increment();
+        }
+        return responseText;
+    }
+
+    /**
+     * Like {@link #get}, but a miss is not counted: for a lookup that is followed by
+     * {@code get} on the path that calls the model.
+     */
+    public String peek(String key) {
+        if (key == null) {
+            return null;
+        }
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && !entry.isExpired(System.currentTimeMillis(), ttlMillis)) {
+                hits.increment();
+                return entry.responseText;
+            }
+            if (entry != null) {
+                entries.remove(key);
+                evictions.increment();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Stores a reply. Failure messages are never cached.
+     */
+    public void put(String key, String responseText) {
+        if (key == null || ChatModelProvider.isFailureResponse(responseText)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            entries.put(key, new Entry(responseText, now));
+            evictExcess(now);
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public double getHitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return (total == 0) ? 0.0 : (double) h / total;
+    }
+
+    public int getSize() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Drops expired entries from the LRU end, then whatever is still over capacity.
+     */
+    private void evictExcess(long now) {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Entry oldest = it.next().getValue();
+            if (entries.size() <= maxEntries && !oldest.isExpired(now, ttlMillis)) {
+                break;
+            }
+            it.remove();
+            evictions.increment();
+        }
+    }
+
+    /**
+     * Trims and collapses whitespace and lower-cases, so "Help" and " help " share an entry.
+     */
+    private static void appendNormalized(StringBuilder key, String text) {
+        if (text == null) {
+            return;
+        }
+        boolean started = false;
+        boolean pendingSpace = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = started;
+                continue;
+            }
+            if (pendingSpace) {
+                key.append(' ');
+            }
+            started = true;
+            pendingSpace = false;
+            key.append(Character.toLowerCase(c));
+        }
+    }
+
+    private static final class Entry {
+
+        final String responseText;
+        final long createdAt;
+
+        Entry(String responseText, long createdAt) {
+            this.responseText = responseText;
+            this.createdAt = createdAt;
+        }
+
+        boolean isExpired(long now, long ttlMillis) {
+            return ttlMillis > 0 && now - createdAt > ttlMillis;
+        }
+    }
+}
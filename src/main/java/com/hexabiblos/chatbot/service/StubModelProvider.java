@@ -0,0 +1,128 @@
+package com.hexabiblos.chatbot.service;
+
+import com.hexabiblos.chatbot.log.StructuredLog;
+import com.hexabiblos.chatbot.model.ChatMessage;
+import com.hexabiblos.chatbot.model.TokenEstimator;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Typed;
+import jakarta.inject.Inject;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+/**
+ * In-process model backend that simulates Gemini's timing without any network calls.
+ * Used for load tests and benchmarks of the full JSF stack offline.
+ *
+ * Time to first token is drawn from a log-normal distribution fitted to the
+ * configured median and p99; the reply then arrives one token at a time at the
+ * configured rate. Settings are read through {@link AppSettings}:
+ * <ul>
+ *   <li>{@code STUB_LATENCY_MEDIAN_MS} - median time to first token (default 400)</li>
+ *   <li>{@code STUB_LATENCY_P99_MS} - 99th percentile time to first token (default 2000)</li>
+ *   <li>{@code STUB_TOKENS_PER_SECOND} - streaming rate, 0 for instant (default 50)</li>
+ *   <li>{@code STUB_RESPONSE_TOKENS} - reply length in tokens (default 120)</li>
+ *   <li>{@code STUB_ERROR_RATE} - fraction of calls that fail, 0.0-1.0 (default 0)</li>
+ * </ul>
+ */
+@ApplicationScoped
+@Typed(StubModelProvider.class)
+public class StubModelProvider implements ChatModelProvider {
+
+    private static final StructuredLog LOG = StructuredLog.forClass(StubModelProvider.class);
+
+    private static final String MODEL_NAME = "stub";
+
+    // z-score of the 99th percentile of the standard normal distribution
+    private static final double Z_99 = 2.3263;
+
+    private static final String[] VOCABULARY = {
+        "the", "service", "request", "policy", "citizen", "record", "process", "team",
+        "update", "review", "system", "access", "report", "data", "support", "case",
+        "and", "for", "with", "is", "can", "will", "to", "of", "a", "your", "this"
+    };
+
+    private double latencyMu;
+    private double latencySigma;
+    private double tokensPerSecond;
+    private int responseTokens;
+    private double errorRate;
+
+    @Inject
+    private ModelMetrics modelMetrics;
+
+    @PostConstruct
+    public void init() {
+        double median = Math.max(1, AppSettings.getDouble("STUB_LATENCY_MEDIAN_MS", 400));
+        double p99 = Math.max(median, AppSettings.getDouble("STUB_LATENCY_P99_MS", 2000));
+        latencyMu = Math.log(median);
+        latencySigma = Math.log(p99 / median) / Z_99;
+        tokensPerSecond = Math.max(0, AppSettings.getDouble("STUB_TOKENS_PER_SECOND", 50));
+        responseTokens = (int) Math.max(1, AppSettings.getDouble("STUB_RESPONSE_TOKENS", 120));
+        errorRate = Math.min(1, Math.max(0, AppSettings.getDouble("STUB_ERROR_RATE", 0)));
+
+        LOG.info("Stub model provider configured", "medianMs", (long) median, "p99Ms", (long) p99,
+            "tokensPerSecond", tokensPerSecond, "responseTokens", responseTokens, "errorRate", errorRate);
+    }
+
+    @Override
+    public String generateResponse(List<ChatMessage> messages) {
+        return streamResponse(messages, chunk -> { });
+    }
+
+    @Override
+    public String streamResponse(List<ChatMessage> messages, Consumer<String> onChunk) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        try {
+            Thread.sleep(sampleFirstTokenLatencyMs(random));
+
+            if (random.nextDouble() < errorRate) {
+                onChunk.accept(ERROR_RESPONSE);
+                return ERROR_RESPONSE;
+            }
+
+            long tokenDelayMs = (tokensPerSecond > 0) ? Math.round(1000 / tokensPerSecond) : 0;
+            StringBuilder reply = new StringBuilder();
+            for (int i = 0; i < responseTokens; i++) {
+                if (i > 0 && tokenDelayMs > 0) {
+                    Thread.sleep(tokenDelayMs);
+                }
+                String token = (i == 0 ? "" : " ") + VOCABULARY[random.nextInt(VOCABULARY.length)];
+                reply.append(token);
+                onChunk.accept(token);
+            }
+            modelMetrics.recordTokens(MODEL_NAME, estimateInputTokens(messages), responseTokens, 0);
+            return reply.toString();
+        } catch (InterruptedException e) {
+            // Cancelled by the model-call deadline
+            Thread.currentThread().interrupt();
+            return TIMEOUT_RESPONSE;
+        }
+    }
+
+    @Override
+    public String getModelName() {
+        return MODEL_NAME;
+    }
+
+    @Override
+    public boolean isDemoMode() {
+        return false;
+    }
+
+    private static long estimateInputTokens(List<ChatMessage> messages) {
+        long tokens = 0;
+        if (messages != null) {
+            for (ChatMessage message : messages) {
+                tokens += message.isSystem() ? 0 : TokenEstimator.estimate(message.getText());
+            }
+        }
+        return tokens;
+    }
+
+    private long sampleFirstTokenLatencyMs(ThreadLocalRandom random) {
+        return Math.round(Math.exp(latencyMu + latencySigma * random.nextGaussian()));
+    }
+}
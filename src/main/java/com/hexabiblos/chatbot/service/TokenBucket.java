@@ -0,0 +1,92 @@
+package com.hexabiblos.chatbot.service;
+
+import com.hexabiblos.chatbot.model.CompactIO;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/**
+ * Classic token bucket: holds up to {@code capacity} tokens, refilled continuously
+ * at {@code tokensPerSecond}. Each admitted request takes one token, so short
+ * bursts up to the capacity pass and the sustained rate is capped.
+ * Externalizable so it travels, compactly, with the session that owns it.
+ */
+public class TokenBucket implements Externalizable {
+
+    private static final long serialVersionUID = 2L;
+    private static final int FORMAT_VERSION = 1;
+
+    private double capacity;
+    private double tokensPerSecond;
+    private double tokens;
+    private long lastRefillMillis;
+
+    /**
+     * For deserialization only.
+     */
+    public TokenBucket() {
+        this(1, 0);
+    }
+
+    public TokenBucket(double capacity, double tokensPerSecond) {
+        this.capacity = Math.max(1, capacity);
+        this.tokensPerSecond = Math.max(0, tokensPerSecond);
+        this.tokens = this.capacity;
+        this.lastRefillMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Takes a token if one is available.
+     *
+     * @return 0 if a token was taken, otherwise the milliseconds until one will be
+     */
+    public synchronized long tryAcquire() {
+        refill(System.currentTimeMillis());
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        if (tokensPerSecond == 0) {
+            return Long.MAX_VALUE;
+        }
+        return (long) Math.ceil((1 - tokens) / tokensPerSecond * 1000);
+    }
+
+    private void refill(long now) {
+        long elapsed = now - lastRefillMillis;
+        if (elapsed > 0) {
+            tokens = Math.min(capacity, tokens + elapsed * tokensPerSecond / 1000);
+            lastRefillMillis = now;
+        }
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        writeTo(out);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        readFrom(in);
+    }
+
+    public synchronized void writeTo(DataOutput out) throws IOException {
+        out.writeByte(FORMAT_VERSION);
+        out.writeFloat((float) capacity);
+        out.writeFloat((float) tokensPerSecond);
+        out.writeFloat((float) tokens);
+        CompactIO.writeVarLong(out, lastRefillMillis);
+    }
+
+    public synchronized void readFrom(DataInput in) throws IOException {
+        CompactIO.readVersion(in, FORMAT_VERSION, "TokenBucket");
+        capacity = Math.max(1, in.readFloat());
+        tokensPerSecond = Math.max(0, in.readFloat());
+        tokens = Math.min(capacity, Math.max(0, in.readFloat()));
+        lastRefillMillis = CompactIO.readVarLong(in);
+    }
+}
@@ -0,0 +1,79 @@
+package com.hexabiblos.chatbot.service;
+
+/**
+ * Token counts of the model calls made by one piece of work, for callers that
+ * need usage per item rather than the totals in {@link ModelMetrics}.
+ *
+ * Backends report usage through {@link ModelMetrics#recordTokens} on the thread
+ * that made the call, so wrapping a call in {@link #capture()} on that same
+ * thread collects its counts:
+ * <pre>
+ * try (TokenUsage usage = TokenUsage.capture()) {
+ *     String reply = provider.streamResponse(messages, chunk -> { });
+ *     long output = usage.getOutputTokens();
+ * }
+ * </pre>
+ */
+public final class TokenUsage implements AutoCloseable {
+
+    private static final ThreadLocal<TokenUsage> CURRENT = new ThreadLocal<>();
+
+    private final TokenUsage outer;
+    private long inputTokens;
+    private long outputTokens;
+    private long cachedTokens;
+    private boolean reported;
+
+    private TokenUsage(TokenUsage outer) {
+        this.outer = outer;
+    }
+
+    /**
+     * Starts collecting the usage reported on this thread until {@link #close()}.
+     */
+    public static TokenUsage capture() {
+        TokenUsage usage = new TokenUsage(CURRENT.get());
+        CURRENT.set(usage);
+        return usage;
+    }
+
+    /**
+     * Adds to the capture open on this thread, if any.
+     */
+    static void record(long input, long output, long cached) {
+        for (TokenUsage usage = CURRENT.get(); usage != null; usage = usage.outer) {
+            usage.inputTokens += Math.max(0, input);
+            usage.outputTokens += Math.max(0, output);
+            usage.cachedTokens += Math.max(0, cached);
+            usage.reported = true;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (outer != null) {
+            CURRENT.set(outer);
+        } else {
+            CURRENT.remove();
+        }
+    }
+
+    /**
+     * False if no call reported usage, e.g. a failed call or a cached reply.
+     */
+    public boolean isReported() {
+        return reported;
+    }
+
+    public long getInputTokens() {
+        return inputTokens;
+    }
+
+    public long getOutputTokens() {
+        return outputTokens;
+    }
+
+    public long getCachedTokens() {
+        return cachedTokens;
+    }
+}
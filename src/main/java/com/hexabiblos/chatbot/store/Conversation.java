@@ -0,0 +1,304 @@
+package com.hexabiblos.chatbot.store;
+
+import com.hexabiblos.chatbot.model.ChatMessage;
+import com.hexabiblos.chatbot.model.CompactIO;
+import com.hexabiblos.chatbot.model.ContextWindow;
+import com.hexabiblos.chatbot.model.ConversationHistory;
+import com.hexabiblos.chatbot.service.AppSettings;
+import com.hexabiblos.chatbot.service.ModelCallExecutor;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * State of one conversation, shared by every view of it: the chat page of any
+ * session, and the JSON API. Holds a cursor (the total message count), a small
+ * tail of recent messages and the model's context window; the full conversation
+ * lives in the {@link TranscriptStore} when that is enabled.
+ *
+ * Not thread-safe on its own: callers synchronize on the conversation for each
+ * step of a turn, and hand it back to {@link ConversationStore#save} after a change.
+ */
+public final class Conversation {
+
+    private static final int FORMAT_VERSION = 1;
+    private static final int DELTA_FORMAT_VERSION = 1;
+    // A reply still marked in progress after this was abandoned, e.g. a page that never opened its stream
+    private static final long REPLY_ABANDONED_MILLIS = 2 * ModelCallExecutor.CALL_TIMEOUT.toMillis();
+
+    private final String id;
+    private final TranscriptStore transcriptStore; // null or disabled: memory only
+    private final ConversationHistory history;
+    private final ContextWindow window;
+    private int messageCount;
+    private volatile boolean replying; // also read by the store, which never evicts a replying conversation
+    private long replyStartedMillis;
+    private volatile long lastAccessMillis = System.currentTimeMillis();
+    // Set by a snapshotting store when a change has not been written yet; guarded by the conversation's lock
+    boolean snapshotPending;
+
+    /**
+     * Starts an empty conversation.
+     *
+     * @param transcriptStore Store every appended message goes to, or null to keep it in memory only
+     */
+    public Conversation(String id, TranscriptStore transcriptStore) {
+        this(id, transcriptStore,
+            new ConversationHistory(
+                AppSettings.getInt("HISTORY_MAX_MESSAGES", ConversationHistory.DEFAULT_MAX_MESSAGES),
+                AppSettings.getInt("HISTORY_UNCOMPRESSED_TAIL", ConversationHistory.DEFAULT_UNCOMPRESSED_TAIL)),
+            new ContextWindow(AppSettings.getInt("CONTEXT_TOKEN_BUDGET", ContextWindow.DEFAULT_TOKEN_BUDGET)));
+    }
+
+    private Conversation(String id, TranscriptStore transcriptStore, ConversationHistory history, ContextWindow window) {
+        this.id = id;
+        this.transcriptStore = transcriptStore;
+        this.history = history;
+        this.window = window;
+    }
+
+    /**
+     * Rebuilds a conversation from its transcript: the tail goes back into memory,
+     * and the context window gets the stored summary, if any, followed by the
+     * messages it does not cover.
+     *
+     * @return The conversation, or null if the transcript has no messages for this id
+     */
+    static Conversation fromTranscript(String id, TranscriptStore transcriptStore) {
+        int stored = isEnabled(transcriptStore) ? transcriptStore.count(id) : 0;
+        if (stored == 0) {
+            return null;
+        }
+        Conversation loaded = new Conversation(id, transcriptStore);
+        List<ChatMessage> tail = transcriptStore.tail(id, loaded.history.getMaxMessages());
+        TranscriptStore.Summary summary = transcriptStore.summary(id);
+        int windowFrom = 0;
+        if (summary != null) {
+            loaded.window.restoreSummary(summary.getText());
+            windowFrom = Math.max(0, tail.size() - summary.getVerbatimMessages());
+        }
+        for (int i = 0; i < tail.size(); i++) {
+            loaded.history.add(tail.get(i));
+            if (i >= windowFrom) {
+                loaded.window.append(tail.get(i));
+            }
+        }
+        loaded.messageCount = stored;
+        return loaded;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public ContextWindow getWindow() {
+        return window;
+    }
+
+    /**
+     * Total messages in the conversation, including those only in the transcript.
+     */
+    public int getMessageCount() {
+        return messageCount;
+    }
+
+    /**
+     * Messages that can be read back: those the transcript still holds, or at least the in-memory tail.
+     */
+    public int getAvailableCount() {
+        if (!isPersistent()) {
+            return history.size();
+        }
+        return Math.max(history.size(), Math.min(messageCount, transcriptStore.count(id)));
+    }
+
+    /**
+     * Messages held in memory, the newest ones of the conversation.
+     */
+    public int getTailSize() {
+        return history.size();
+    }
+
+    public boolean isPersistent() {
+        return isEnabled(transcriptStore);
+    }
+
+    public boolean isReplying() {
+        return replying;
+    }
+
+    /**
+     * Marks a reply as in progress; false if one already is.
+     */
+    public boolean startReply() {
+        long now = System.currentTimeMillis();
+        if (replying && now - replyStartedMillis < REPLY_ABANDONED_MILLIS) {
+            return false;
+        }
+        replying = true;
+        replyStartedMillis = now;
+        return true;
+    }
+
+    public void endReply() {
+        replying = false;
+    }
+
+    /**
+     * Appends to the transcript, the in-memory tail and the context window.
+     */
+    public void append(ChatMessage message) {
+        history.add(message);
+        window.append(message);
+        messageCount++;
+        touch();
+        if (isPersistent()) {
+            transcriptStore.append(id, message);
+        }
+    }
+
+    /**
+     * Stores the context window's summary in the transcript, so a conversation
+     * rebuilt from it starts from the same context. Called by the summarizer once it
+     * has applied a summary, so it takes the conversation's lock itself.
+     */
+    public void persistSummary() {
+        synchronized (this) {
+            String summary = window.getSummary();
+            if (summary != null && isPersistent()) {
+                transcriptStore.appendSummary(id, summary, window.size());
+            }
+        }
+    }
+
+    /**
+     * Messages {@code from} (0 is the first of the conversation) up to {@code limit} of them,
+     * read from the transcript once they have left memory. Messages that are in neither,
+     * without a transcript or past its retention, are left out, so the result starts at
+     * the oldest message still available.
+     */
+    public List<ChatMessage> read(int from, int limit) {
+        int firstInMemory = messageCount - history.size();
+        int start = Math.max(0, from);
+        int end = Math.min(messageCount, start + Math.max(0, limit));
+        if (start >= end) {
+            return List.of();
+        }
+        List<ChatMessage> result = new ArrayList<>(end - start);
+        if (start < firstInMemory) {
+            if (isPersistent()) {
+                // Both end at the newest message; the transcript may have dropped older ones for retention
+                int dropped = Math.max(0, messageCount - transcriptStore.count(id));
+                int transcriptStart = Math.max(start, dropped);
+                int transcriptEnd = Math.min(end, firstInMemory);
+                if (transcriptStart < transcriptEnd) {
+                    result.addAll(transcriptStore.read(id, transcriptStart - dropped, transcriptEnd - transcriptStart));
+                }
+            }
+            start = firstInMemory;
+        }
+        if (start < end) {
+            List<ChatMessage> tail = history.tail(messageCount - start);
+            result.addAll(tail.subList(0, Math.min(tail.size(), end - start)));
+        }
+        return result;
+    }
+
+    long getLastAccessMillis() {
+        return lastAccessMillis;
+    }
+
+    void touch() {
+        lastAccessMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Writes the conversation: id, cursor, in-memory tail and context window (as a
+     * span of that tail where possible). The reply flag is not part of it.
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeByte(FORMAT_VERSION);
+        CompactIO.writeString(out, id);
+        CompactIO.writeVarInt(out, messageCount);
+        history.writeTo(out);
+        window.writeTo(out, history);
+    }
+
+    /**
+     * Reads a conversation written by {@link #writeTo}.
+     *
+     * @param transcriptStore Store further messages go to, or null to keep them in memory only
+     */
+    public static Conversation readFrom(DataInput in, TranscriptStore transcriptStore) throws IOException {
+        CompactIO.readVersion(in, FORMAT_VERSION, "Conversation");
+        String id = CompactIO.readString(in);
+        int messageCount = CompactIO.readVarInt(in);
+        ConversationHistory history = new ConversationHistory();
+        history.readFrom(in);
+        ContextWindow window = new ContextWindow();
+        window.readFrom(in, history);
+        Conversation conversation = new Conversation(id, transcriptStore, history, window);
+        conversation.messageCount = messageCount;
+        return conversation;
+    }
+
+    /**
+     * Position of this copy for {@link #writeDelta}.
+     */
+    public long getReplicationCursor() {
+        return messageCount;
+    }
+
+    /**
+     * Writes what changed since a copy of this conversation was at {@code baseCursor}:
+     * the messages appended since, and the context window.
+     *
+     * @return false, with nothing written, if a full copy is needed instead
+     *         (more messages were appended than the conversation holds in memory)
+     */
+    public boolean writeDelta(DataOutput out, long baseCursor) throws IOException {
+        long appended = messageCount - baseCursor;
+        if (appended < 0 || appended > history.size()) {
+            return false;
+        }
+        out.writeByte(DELTA_FORMAT_VERSION);
+        CompactIO.writeVarLong(out, baseCursor);
+        CompactIO.writeVarInt(out, (int) appended);
+        for (ChatMessage message : history.tail((int) appended)) {
+            message.writeTo(out);
+        }
+        window.writeTo(out, history);
+        return true;
+    }
+
+    /**
+     * Applies a delta written by {@link #writeDelta}.
+     *
+     * @return false, with nothing changed, if this copy is not at the delta's base
+     */
+    public boolean applyDelta(DataInput in) throws IOException {
+        CompactIO.readVersion(in, DELTA_FORMAT_VERSION, "Conversation delta");
+        if (CompactIO.readVarLong(in) != getReplicationCursor()) {
+            return false;
+        }
+        int appended = CompactIO.readVarInt(in);
+        List<ChatMessage> messages = new ArrayList<>(Math.min(appended, 1024));
+        for (int i = 0; i < appended; i++) {
+            messages.add(ChatMessage.readFrom(in));
+        }
+        // Into the tail only: the transcript and window are the sender's to update
+        for (ChatMessage message : messages) {
+            history.add(message);
+            messageCount++;
+        }
+        window.readFrom(in, history);
+        return true;
+    }
+
+    private static boolean isEnabled(TranscriptStore transcriptStore) {
+        return transcriptStore != null && transcriptStore.isEnabled();
+    }
+}
@@ -0,0 +1,39 @@
+package com.hexabiblos.chatbot.store;
+
+/**
+ * Conversations by id, shared by every session and by the JSON API, so a
+ * conversation is not tied to the HTTP session (or node) that started it.
+ *
+ * Chosen by {@link ConversationStoreProducer}: {@link InMemoryConversationStore}
+ * keeps the working set on this node, {@link FileConversationStore} also writes
+ * a snapshot of each conversation to a local directory, so one dropped from
+ * memory or lost to a restart comes back with its context window.
+ */
+public interface ConversationStore {
+
+    /**
+     * Returns the conversation, loading it if it is not in memory,
+     * or null if there is no such conversation.
+     */
+    Conversation find(String id);
+
+    /**
+     * Returns the conversation, or starts an empty one under this id.
+     */
+    Conversation open(String id);
+
+    /**
+     * Puts a conversation the caller still holds back into the store if the store
+     * dropped it meanwhile, e.g. evicted it with no transcript to rebuild it from.
+     *
+     * @return The conversation the store now holds under its id
+     */
+    Conversation readmit(Conversation conversation);
+
+    /**
+     * Records a change made to the conversation. Called while holding its lock,
+     * once per completed step of a turn; a store that keeps nothing beyond
+     * memory and the transcript does nothing here.
+     */
+    void save(Conversation conversation);
+}
@@ -0,0 +1,65 @@
+package com.hexabiblos.chatbot.store;
+
+import com.hexabiblos.chatbot.log.StructuredLog;
+import com.hexabiblos.chatbot.metrics.MetricsRegistry;
+import com.hexabiblos.chatbot.service.AppSettings;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Produces;
+import jakarta.inject.Inject;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Chooses the {@link ConversationStore}.
+ * {@code CONVERSATION_STORE=file} selects the {@link FileConversationStore},
+ * writing to {@code CONVERSATION_STORE_DIR}; anything else, or a directory that
+ * cannot be created, selects the {@link InMemoryConversationStore}.
+ */
+@ApplicationScoped
+public class ConversationStoreProducer {
+
+    private static final StructuredLog LOG = StructuredLog.forClass(ConversationStoreProducer.class);
+
+    @Inject
+    private TranscriptStore transcriptStore;
+
+    @Inject
+    private MetricsRegistry metrics;
+
+    private InMemoryConversationStore store;
+
+    @Produces
+    @ApplicationScoped
+    public ConversationStore produceStore() {
+        if ("file".equalsIgnoreCase(AppSettings.getString("CONVERSATION_STORE", "memory"))) {
+            Path directory = Paths.get(AppSettings.getString("CONVERSATION_STORE_DIR", defaultDirectory()));
+            try {
+                Files.createDirectories(directory);
+                store = new FileConversationStore(directory, transcriptStore, metrics);
+                LOG.info("Using file conversation store", "directory", directory.toAbsolutePath().toString());
+                return store;
+            } catch (IOException e) {
+                LOG.error("Conversation store directory unavailable, conversations stay in memory only", e,
+                    "directory", directory.toString());
+            }
+        }
+        store = new InMemoryConversationStore(transcriptStore, metrics);
+        return store;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (store != null) {
+            store.shutdown();
+        }
+    }
+
+    private static String defaultDirectory() {
+        String base = System.getProperty("jboss.server.data.dir", System.getProperty("java.io.tmpdir"));
+        return Paths.get(base, "chatbot-conversations").toString();
+    }
+}
@@ -0,0 +1,179 @@
+package com.hexabiblos.chatbot.store;
+
+import com.hexabiblos.chatbot.log.StructuredLog;
+import com.hexabiblos.chatbot.metrics.MetricsRegistry;
+import com.hexabiblos.chatbot.service.AppSettings;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Conversations held in memory and written to a local directory, one snapshot
+ * file per conversation in the compact format of {@link Conversation#writeTo}.
+ * A conversation that is not in memory, because it was evicted or the server
+ * restarted, is read from its file, including the context window with its
+ * summary, before falling back to the transcript.
+ *
+ * For a single node only: the copy in memory is taken as the latest, and older
+ * messages are read from this node's transcript, so the directory must not be
+ * shared with other nodes.
+ *
+ * {@link #save} only marks the conversation as changed; a background writer
+ * writes the changed ones every {@code CONVERSATION_SNAPSHOT_INTERVAL_MS}, so a
+ * reply never waits for the disk and a busy conversation is written once per
+ * interval however many steps it took. Snapshots are replaced atomically but not
+ * fsynced; the transcript is the durable record.
+ *
+ * Layout: {@code <dir>/<first two id characters>/<id>.conv}. Ids that are not
+ * plain file names are kept in memory only.
+ */
+public class FileConversationStore extends InMemoryConversationStore {
+
+    private static final StructuredLog LOG = StructuredLog.forClass(FileConversationStore.class);
+
+    private static final Pattern FILE_SAFE_ID = Pattern.compile("[A-Za-z0-9_-]{1,128}");
+    private static final String SUFFIX = ".conv";
+    private static final int DEFAULT_SNAPSHOT_INTERVAL_MS = 500;
+
+    private final Path directory;
+    private final MetricsRegistry.Histogram writeLatency;
+    // Changed since their last snapshot; kept until written, so a load never reads an older file
+    private final Map<String, Conversation> unwritten = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService writer;
+
+    /**
+     * @param directory Existing directory the snapshots are kept in
+     */
+    public FileConversationStore(Path directory, TranscriptStore transcriptStore, MetricsRegistry metrics) {
+        super(transcriptStore, metrics);
+        this.directory = directory;
+        this.writeLatency = metrics.histogram("chat_conversation_snapshot_seconds", "Conversation snapshot write latency",
+            MetricsRegistry.LATENCY_BUCKETS);
+        metrics.gauge("chat_conversation_snapshots_pending", "Conversations changed since their last snapshot",
+            unwritten::size);
+
+        long intervalMs = Math.max(1, AppSettings.getInt("CONVERSATION_SNAPSHOT_INTERVAL_MS", DEFAULT_SNAPSHOT_INTERVAL_MS));
+        writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "conversation-snapshots");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleWithFixedDelay(this::writePending, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void save(Conversation conversation) {
+        if (fileFor(conversation.getId()) == null) {
+            return;
+        }
+        conversation.snapshotPending = true;
+        unwritten.put(conversation.getId(), conversation);
+    }
+
+    /**
+     * Stops the background writer after writing what is still pending.
+     */
+    @Override
+    public void shutdown() {
+        super.shutdown();
+        writer.shutdown();
+        try {
+            writer.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writePending();
+    }
+
+    /**
+     * Writes a snapshot of every conversation changed since its last one.
+     */
+    void writePending() {
+        for (Conversation conversation : unwritten.values()) {
+            write(conversation);
+        }
+    }
+
+    private void write(Conversation conversation) {
+        Path file = fileFor(conversation.getId());
+        long start = System.nanoTime();
+        Path temp = null;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(8 * 1024);
+            synchronized (conversation) {
+                conversation.writeTo(new DataOutputStream(bytes));
+                conversation.snapshotPending = false;
+            }
+            Files.createDirectories(file.getParent());
+            temp = Files.createTempFile(file.getParent(), conversation.getId(), ".tmp");
+            Files.write(temp, bytes.toByteArray());
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            synchronized (conversation) {
+                // Changed again while being written: stays for the next round
+                if (!conversation.snapshotPending) {
+                    unwritten.remove(conversation.getId(), conversation);
+                }
+            }
+        } catch (IOException e) {
+            LOG.warn("Conversation snapshot not written", e, "conversation", conversation.getId());
+            deleteQuietly(temp);
+        }
+        writeLatency.observeNanos(System.nanoTime() - start);
+    }
+
+    @Override
+    protected Conversation load(String id) {
+        Conversation pending = unwritten.get(id);
+        if (pending != null) {
+            // Evicted before its snapshot was written: newer than the file
+            return pending;
+        }
+        Path file = fileFor(id);
+        if (file != null) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                Conversation conversation = Conversation.readFrom(in, transcriptStore);
+                if (!id.equals(conversation.getId())) {
+                    throw new InvalidObjectException("Snapshot holds conversation " + conversation.getId());
+                }
+                return conversation;
+            } catch (NoSuchFileException e) {
+                // Never saved
+            } catch (IOException e) {
+                LOG.warn("Conversation snapshot unreadable, rebuilding from the transcript", e, "conversation", id);
+            }
+        }
+        return super.load(id);
+    }
+
+    private Path fileFor(String id) {
+        if (!FILE_SAFE_ID.matcher(id).matches()) {
+            return null;
+        }
+        return directory.resolve(id.substring(0, Math.min(2, id.length()))).resolve(id + SUFFIX);
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // Left behind; harmless
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.hexabiblos.chatbot.store;
+
+import com.hexabiblos.chatbot.metrics.MetricsRegistry;
+import com.hexabiblos.chatbot.service.AppSettings;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversations held in memory on this node.
+ *
+ * The map is split into lock stripes ({@code CONVERSATION_STORE_STRIPES}) chosen
+ * by the id's hash, so lookups of different conversations rarely wait on each
+ * other. Each stripe evicts its least recently used conversation once it holds
+ * its share of {@code CONVERSATION_STORE_MAX}, and a background sweep drops
+ * conversations not touched for {@code CONVERSATION_IDLE_MINUTES}. A conversation
+ * with a reply in progress is never evicted, so the turn ends on the same copy it
+ * started on; a stripe may briefly hold more than its share because of that. An
+ * evicted conversation is rebuilt from its transcript on the next request; without
+ * a transcript it is gone, unless a caller that still holds it readmits it.
+ */
+public class InMemoryConversationStore implements ConversationStore {
+
+    public static final int DEFAULT_MAX_CONVERSATIONS = 10_000;
+    public static final int DEFAULT_IDLE_MINUTES = 30;
+    private static final int DEFAULT_STRIPES = 64;
+    private static final int MAX_STRIPES = 1024;
+
+    protected final TranscriptStore transcriptStore;
+    private final Stripe[] stripes;
+    private final long idleMillis;
+    private final ScheduledExecutorService sweeper;
+    private final MetricsRegistry.Counter capacityEvictions;
+    private final MetricsRegistry.Counter idleEvictions;
+    private final MetricsRegistry.Counter loads;
+
+    public InMemoryConversationStore(TranscriptStore transcriptStore, MetricsRegistry metrics) {
+        this.transcriptStore = transcriptStore;
+        int maxConversations = Math.max(1,
+            AppSettings.getInt("CONVERSATION_STORE_MAX", DEFAULT_MAX_CONVERSATIONS));
+        // A power of two, so the stripe is picked with a mask
+        int stripeCount = Integer.highestOneBit(Math.max(1, Math.min(MAX_STRIPES,
+            AppSettings.getInt("CONVERSATION_STORE_STRIPES", DEFAULT_STRIPES))));
+        int stripeCapacity = Math.max(1, (maxConversations + stripeCount - 1) / stripeCount);
+        stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe(stripeCapacity);
+        }
+
+        String evictedHelp = "Conversations dropped from memory by reason";
+        capacityEvictions = metrics.counter("chat_conversations_evicted_total", evictedHelp, "reason", "capacity");
+        idleEvictions = metrics.counter("chat_conversations_evicted_total", evictedHelp, "reason", "idle");
+        loads = metrics.counter("chat_conversations_loaded_total", "Conversations loaded back into memory");
+        metrics.gauge("chat_conversations_cached", "Conversations held in memory", this::size);
+
+        idleMillis = TimeUnit.MINUTES.toMillis(Math.max(0,
+            AppSettings.getInt("CONVERSATION_IDLE_MINUTES", DEFAULT_IDLE_MINUTES)));
+        if (idleMillis > 0) {
+            long sweepMillis = Math.max(1000, Math.min(idleMillis / 4, 60_000));
+            sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "conversation-eviction");
+                thread.setDaemon(true);
+                return thread;
+            });
+            sweeper.scheduleWithFixedDelay(this::evictIdle, sweepMillis, sweepMillis, TimeUnit.MILLISECONDS);
+        } else {
+            sweeper = null;
+        }
+    }
+
+    @Override
+    public Conversation find(String id) {
+        if (id == null || id.isEmpty()) {
+            return null;
+        }
+        Stripe stripe = stripeFor(id);
+        Conversation cached;
+        synchronized (stripe) {
+            cached = stripe.conversations.get(id);
+        }
+        if (cached != null) {
+            cached.touch();
+            return cached;
+        }
+        // Loaded outside the stripe lock, so slow reads do not hold up the stripe's other conversations
+        Conversation loaded = load(id);
+        synchronized (stripe) {
+            Conversation present = stripe.conversations.get(id);
+            if (loaded == null || present != null) {
+                // Nothing to load, or another request loaded it meanwhile
+                return present;
+            }
+            stripe.put(loaded);
+        }
+        loads.increment();
+        return loaded;
+    }
+
+    @Override
+    public Conversation open(String id) {
+        Conversation found = find(id);
+        if (found != null) {
+            return found;
+        }
+        Stripe stripe = stripeFor(id);
+        synchronized (stripe) {
+            Conversation present = stripe.conversations.get(id);
+            if (present != null) {
+                return present;
+            }
+            Conversation opened = new Conversation(id, transcriptStore);
+            stripe.put(opened);
+            return opened;
+        }
+    }
+
+    @Override
+    public Conversation readmit(Conversation conversation) {
+        Stripe stripe = stripeFor(conversation.getId());
+        synchronized (stripe) {
+            Conversation present = stripe.conversations.get(conversation.getId());
+            if (present != null) {
+                return present;
+            }
+            conversation.touch();
+            stripe.put(conversation);
+            return conversation;
+        }
+    }
+
+    @Override
+    public void save(Conversation conversation) {
+        // Memory and the transcript are already up to date
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.conversations.size();
+            }
+        }
+        return size;
+    }
+
+    public void shutdown() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+    }
+
+    /**
+     * Loads a conversation that is not in memory.
+     *
+     * @return The conversation, or null if there is no such conversation
+     */
+    protected Conversation load(String id) {
+        return Conversation.fromTranscript(id, transcriptStore);
+    }
+
+    private void evictIdle() {
+        long cutoff = System.currentTimeMillis() - idleMillis;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                Iterator<Conversation> it = stripe.conversations.values().iterator();
+                while (it.hasNext()) {
+                    Conversation conversation = it.next();
+                    if (conversation.getLastAccessMillis() < cutoff && !conversation.isReplying()) {
+                        it.remove();
+                        idleEvictions.increment();
+                    }
+                }
+            }
+        }
+    }
+
+    private Stripe stripeFor(String id) {
+        int hash = id.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+    }
+
+    /**
+     * One lock stripe: an access-ordered map, least recently used first.
+     */
+    private final class Stripe {
+
+        private final Map<String, Conversation> conversations = new LinkedHashMap<>(16, 0.75f, true);
+        private final int capacity;
+
+        Stripe(int capacity) {
+            this.capacity = capacity;
+        }
+
+        /**
+         * Adds a conversation and evicts the least recently used ones over capacity,
+         * passing over those with a reply in progress. Caller holds the stripe lock.
+         */
+        void put(Conversation conversation) {
+            conversations.put(conversation.getId(), conversation);
+            Iterator<Conversation> it = conversations.values().iterator();
+            while (conversations.size() > capacity && it.hasNext()) {
+                Conversation eldest = it.next();
+                if (eldest != conversation && !eldest.isReplying()) {
+                    it.remove();
+                    capacityEvictions.increment();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,686 @@
+package com.hexabiblos.chatbot.store;
+
+import com.hexabiblos.chatbot.log.StructuredLog;
+import com.hexabiblos.chatbot.metrics.MetricsRegistry;
+import com.hexabiblos.chatbot.model.ChatMessage;
+import com.hexabiblos.chatbot.service.AppSettings;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Durable, append-only log of every conversation, keyed by conversation id.
+ *
+ * All conversations share one log that is split into numbered segment files
+ * ({@code transcript-000001.log}, ...). A new segment is started once the active
+ * one reaches {@code TRANSCRIPT_SEGMENT_BYTES}. Appends go to the page cache
+ * immediately and are made durable by a background group commit that fsyncs at
+ * most every {@code TRANSCRIPT_FSYNC_INTERVAL_MS}, so many writers share one fsync.
+ * Sealed segments are read through memory-mapped views; the active one, which
+ * grows with every append, through positional reads.
+ *
+ * An in-memory index from conversation id to record positions is rebuilt by
+ * scanning the segments at startup. Only a torn append at the very end of the
+ * last segment (e.g. after a crash) is truncated away. Any other record whose
+ * checksum fails is logged and skipped; one whose length cannot be trusted ends
+ * the scan of its segment, and if that is the last one, appends continue in a
+ * new segment so the unreadable bytes are kept.
+ *
+ * At most {@code TRANSCRIPT_MAX_SEGMENTS} segments are kept (0 keeps all). Once
+ * a roll goes past that, the oldest segment is deleted and its records leave the
+ * index, which bounds both the disk and the memory the transcript uses.
+ *
+ * A conversation's rolling summary is stored as a record of its own, with role
+ * {@code SUMMARY_ROLE}, so a conversation rebuilt from the transcript keeps the
+ * context its older turns were compacted into. Only the newest summary of each
+ * conversation is indexed, and summaries never count as messages.
+ *
+ * Record layout: {@code int bodyLength, int crc32(body), body}, where body is
+ * {@code short idLength, id (UTF-8), long epochMillis, byte role, int textLength, text (UTF-8)}.
+ * In a summary record the long holds the number of messages the summary left verbatim instead.
+ */
+@ApplicationScoped
+public class TranscriptStore {
+    
+    private static final StructuredLog LOG = StructuredLog.forClass(TranscriptStore.class);
+    
+    private static final String SEGMENT_PREFIX = "transcript-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int HEADER_BYTES = 8;
+    // Outside the ChatMessage role codes
+    private static final byte SUMMARY_ROLE = Byte.MAX_VALUE;
+    
+    private static final long DEFAULT_SEGMENT_BYTES = 64L * 1024 * 1024;
+    private static final int DEFAULT_FSYNC_INTERVAL_MS = 50;
+    private static final int DEFAULT_MAX_SEGMENTS = 32;
+    
+    private final Map<String, PositionList> index = new ConcurrentHashMap<>();
+    private final Map<String, Long> summaries = new ConcurrentHashMap<>();
+    private final Map<Integer, Segment> segments = new ConcurrentHashMap<>();
+    private final List<CompletableFuture<Void>> awaitingSync = new ArrayList<>();
+    private final Object writeLock = new Object();
+    
+    private Path directory;
+    private long segmentBytes;
+    private int maxSegments;
+    private Segment active;
+    private boolean dirty;
+    private boolean enabled;
+    private ScheduledExecutorService committer;
+    
+    @Inject
+    private MetricsRegistry metrics;
+    private MetricsRegistry.Histogram fsyncLatency;
+    
+    @PostConstruct
+    public void init() {
+        if (!Boolean.parseBoolean(AppSettings.getString("TRANSCRIPT_STORE_ENABLED", "true"))) {
+            LOG.info("Transcript store disabled");
+            return;
+        }
+        
+        fsyncLatency = metrics.histogram("chat_transcript_fsync_seconds", "Transcript group-commit fsync latency",
+            MetricsRegistry.LATENCY_BUCKETS);
+        directory = Paths.get(AppSettings.getString("TRANSCRIPT_DIR", defaultDirectory()));
+        segmentBytes = Math.min(Integer.MAX_VALUE,
+            Math.max(4096, (long) AppSettings.getDouble("TRANSCRIPT_SEGMENT_BYTES", DEFAULT_SEGMENT_BYTES)));
+        int fsyncIntervalMs = Math.max(1, AppSettings.getInt("TRANSCRIPT_FSYNC_INTERVAL_MS", DEFAULT_FSYNC_INTERVAL_MS));
+        maxSegments = Math.max(0, AppSettings.getInt("TRANSCRIPT_MAX_SEGMENTS", DEFAULT_MAX_SEGMENTS));
+        
+        try {
+            Files.createDirectories(directory);
+            recover();
+        } catch (IOException e) {
+            LOG.error("Transcript store unavailable, conversations stay in memory only", e,
+                "directory", directory.toString());
+            closeSegments();
+            return;
+        }
+        
+        committer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "transcript-group-commit");
+            thread.setDaemon(true);
+            return thread;
+        });
+        committer.scheduleWithFixedDelay(this::groupCommit, fsyncIntervalMs, fsyncIntervalMs, TimeUnit.MILLISECONDS);
+        enabled = true;
+        
+        metrics.gauge("chat_transcript_conversations", "Conversations in the transcript index", index::size);
+        metrics.gauge("chat_transcript_segments", "Transcript segment files", segments::size);
+        
+        LOG.info("Transcript store opened", "directory", directory.toAbsolutePath().toString(),
+            "segments", segments.size(), "conversations", index.size());
+    }
+    
+    @PreDestroy
+    public void close() {
+        if (committer != null) {
+            committer.shutdown();
+        }
+        groupCommit();
+        closeSegments();
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * Appends a message to a conversation's transcript.
+     *
+     * @return Future completed once the record has been fsynced by the next group commit
+     */
+    public CompletableFuture<Void> append(String conversationId, ChatMessage message) {
+        if (!enabled) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return write(conversationId, message);
+    }
+    
+    /**
+     * Records a conversation's rolling summary, replacing the previous one.
+     *
+     * @param verbatimMessages Newest messages the summary does not cover, which stay verbatim
+     * @return Future completed once the record has been fsynced by the next group commit
+     */
+    public CompletableFuture<Void> appendSummary(String conversationId, String summary, int verbatimMessages) {
+        if (!enabled) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return write(conversationId, new ChatMessage(SUMMARY_ROLE, summary, verbatimMessages));
+    }
+    
+    private CompletableFuture<Void> write(String conversationId, ChatMessage message) {
+        ByteBuffer record = encode(conversationId, message);
+        CompletableFuture<Void> synced = new CompletableFuture<>();
+        try {
+            synchronized (writeLock) {
+                if (active.size > 0 && active.size + record.remaining() > segmentBytes) {
+                    roll();
+                }
+                long offset = active.size;
+                while (record.hasRemaining()) {
+                    active.channel.write(record, active.size + record.position());
+                }
+                active.size += record.limit();
+                addToIndex(conversationId, message, position(active.id, offset));
+                dirty = true;
+                awaitingSync.add(synced);
+            }
+        } catch (IOException e) {
+            LOG.error("Failed to append transcript record", e, "conversation", conversationId);
+            synced.completeExceptionally(e);
+        }
+        return synced;
+    }
+    
+    /**
+     * Number of messages stored for a conversation. Messages in segments that were
+     * deleted for retention no longer count.
+     */
+    public int count(String conversationId) {
+        PositionList positions = index.get(conversationId);
+        return (positions == null) ? 0 : positions.size();
+    }
+    
+    /**
+     * Newest summary stored for a conversation, or null if there is none (never
+     * compacted, or its record was deleted for retention).
+     */
+    public Summary summary(String conversationId) {
+        Long position = summaries.get(conversationId);
+        if (position == null) {
+            return null;
+        }
+        ChatMessage record = readAt(position);
+        if (record == null) {
+            return null;
+        }
+        PositionList positions = index.get(conversationId);
+        int since = (positions == null) ? 0 : positions.countAfter(position);
+        return new Summary(record.getText(), (int) record.getTimestampMillis() + since);
+    }
+    
+    /**
+     * Reads {@code count} messages of a conversation starting at message {@code from}
+     * (0 is the oldest message still stored), oldest first.
+     */
+    public List<ChatMessage> read(String conversationId, int from, int count) {
+        PositionList positions = index.get(conversationId);
+        if (positions == null || count <= 0) {
+            return Collections.emptyList();
+        }
+        long[] slice = positions.slice(Math.max(0, from), count);
+        List<ChatMessage> result = new ArrayList<>(slice.length);
+        for (long position : slice) {
+            ChatMessage message = readAt(position);
+            if (message != null) {
+                result.add(message);
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Reads the newest {@code count} messages of a conversation, oldest first.
+     */
+    public List<ChatMessage> tail(String conversationId, int count) {
+        int total = count(conversationId);
+        return read(conversationId, Math.max(0, total - count), Math.min(count, total));
+    }
+    
+    private ChatMessage readAt(long position) {
+        Segment segment = segments.get(segmentId(position));
+        if (segment == null) {
+            return null;
+        }
+        int offset = offset(position);
+        try {
+            int bodyLength = segment.read(offset, HEADER_BYTES).getInt(0);
+            return decode(segment.read(offset + HEADER_BYTES, bodyLength)).message;
+        } catch (IOException e) {
+            LOG.error("Failed to read transcript record", e, "segment", segment.id);
+            return null;
+        }
+    }
+    
+    /**
+     * Fsyncs everything written since the last commit and releases its waiters.
+     */
+    private void groupCommit() {
+        List<CompletableFuture<Void>> released;
+        Segment toSync;
+        synchronized (writeLock) {
+            if (!dirty || active == null) {
+                return;
+            }
+            dirty = false;
+            toSync = active;
+            released = new ArrayList<>(awaitingSync);
+            awaitingSync.clear();
+        }
+        long start = System.nanoTime();
+        try {
+            toSync.channel.force(false);
+            fsyncLatency.observeNanos(System.nanoTime() - start);
+            released.forEach(f -> f.complete(null));
+        } catch (IOException e) {
+            LOG.error("Transcript fsync failed", e);
+            released.forEach(f -> f.completeExceptionally(e));
+        }
+    }
+    
+    /**
+     * Seals the active segment (fsyncing it, so its waiters are durable) and starts the next one.
+     * Caller holds the write lock.
+     */
+    private void roll() throws IOException {
+        active.channel.force(false);
+        awaitingSync.forEach(f -> f.complete(null));
+        awaitingSync.clear();
+        dirty = false;
+        active.seal();
+        active = openSegment(active.id + 1);
+        enforceRetention();
+    }
+    
+    /**
+     * Deletes the oldest segments beyond {@code TRANSCRIPT_MAX_SEGMENTS} and drops
+     * their records from the index. Never deletes the active segment.
+     */
+    private void enforceRetention() {
+        while (maxSegments > 0 && segments.size() > maxSegments) {
+            int oldest = Collections.min(segments.keySet());
+            if (oldest == active.id) {
+                return;
+            }
+            Segment segment = segments.remove(oldest);
+            // Positions are in append order, so a segment's records lead every list they are in
+            index.entrySet().removeIf(entry -> entry.getValue().dropThrough(oldest) == 0);
+            summaries.values().removeIf(position -> segmentId(position) <= oldest);
+            try {
+                segment.channel.close();
+                Files.deleteIfExists(segment.path);
+                LOG.info("Deleted transcript segment past retention", "segment", segment.path.getFileName().toString());
+            } catch (IOException e) {
+                LOG.error("Failed to delete transcript segment", e, "segment", segment.path.getFileName().toString());
+            }
+        }
+    }
+    
+    /**
+     * Opens every segment, rebuilds the index and truncates a torn append from the
+     * end of the last segment.
+     */
+    private void recover() throws IOException {
+        List<Integer> ids = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    ids.add(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException ignored) {
+                    // Not one of ours
+                }
+            }
+        }
+        Collections.sort(ids);
+        
+        if (maxSegments > 0 && ids.size() > maxSegments) {
+            for (int id : ids.subList(0, ids.size() - maxSegments)) {
+                Files.deleteIfExists(segmentPath(id));
+            }
+            ids = new ArrayList<>(ids.subList(ids.size() - maxSegments, ids.size()));
+        }
+        
+        boolean keepLast = true;
+        for (int i = 0; i < ids.size(); i++) {
+            Segment segment = openSegment(ids.get(i));
+            boolean last = i == ids.size() - 1;
+            if (!last) {
+                segment.seal();
+            }
+            long validBytes = scan(segment, last);
+            if (validBytes >= segment.size) {
+                continue;
+            }
+            if (last && isTornTail(segment, validBytes)) {
+                LOG.warn("Truncating torn transcript tail", "segment", segment.path.getFileName().toString(),
+                    "validBytes", validBytes, "size", segment.size);
+                segment.channel.truncate(validBytes);
+                segment.size = validBytes;
+            } else {
+                LOG.warn("Corrupt transcript segment, later records in it are not indexed",
+                    "segment", segment.path.getFileName().toString(), "validBytes", validBytes, "size", segment.size);
+                if (last) {
+                    // Appending after bytes that cannot be parsed would make the new records unreachable too
+                    segment.seal();
+                    keepLast = false;
+                }
+            }
+        }
+        if (ids.isEmpty()) {
+            active = openSegment(1);
+        } else {
+            int lastId = ids.get(ids.size() - 1);
+            active = keepLast ? segments.get(lastId) : openSegment(lastId + 1);
+        }
+    }
+    
+    /**
+     * True if the bytes from {@code offset} to the end of the segment can only be an
+     * append that was cut short: a partial header, a record running past the end of
+     * the file, a final record that fails its checksum (see {@link #scan}), or zero fill.
+     */
+    private static boolean isTornTail(Segment segment, long offset) throws IOException {
+        if (offset + HEADER_BYTES > segment.size) {
+            return true;
+        }
+        int bodyLength = segment.read(offset, HEADER_BYTES).getInt(0);
+        if (bodyLength > 0 && offset + HEADER_BYTES + (long) bodyLength >= segment.size) {
+            return true;
+        }
+        ByteBuffer rest = segment.read(offset, (int) (segment.size - offset));
+        while (rest.hasRemaining()) {
+            if (rest.get() != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Indexes every intact record of a segment. A record whose checksum fails is
+     * skipped, unless it is the final record of the last segment, which ends the
+     * scan as a torn append. A length that does not fit ends the scan, since the
+     * next record cannot be found without it.
+     *
+     * @return Number of bytes up to the end of the last record scanned
+     */
+    private long scan(Segment segment, boolean last) throws IOException {
+        long offset = 0;
+        while (offset + HEADER_BYTES <= segment.size) {
+            ByteBuffer header = segment.read(offset, HEADER_BYTES);
+            int bodyLength = header.getInt(0);
+            int crc = header.getInt(4);
+            if (bodyLength <= 0 || offset + HEADER_BYTES + (long) bodyLength > segment.size) {
+                break;
+            }
+            ByteBuffer body = segment.read(offset + HEADER_BYTES, bodyLength);
+            if (crc32(body.duplicate()) != crc) {
+                if (last && offset + HEADER_BYTES + bodyLength == segment.size) {
+                    break;
+                }
+                LOG.warn("Skipping corrupt transcript record",
+                    "segment", segment.path.getFileName().toString(), "offset", offset);
+            } else {
+                Decoded decoded = decode(body);
+                addToIndex(decoded.conversationId, decoded.message, position(segment.id, offset));
+            }
+            offset += HEADER_BYTES + bodyLength;
+        }
+        return offset;
+    }
+    
+    private void addToIndex(String conversationId, ChatMessage message, long position) {
+        if (message.getRoleCode() == SUMMARY_ROLE) {
+            summaries.put(conversationId, position);
+        } else {
+            index.computeIfAbsent(conversationId, id -> new PositionList()).add(position);
+        }
+    }
+    
+    private Path segmentPath(int id) {
+        return directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+    }
+    
+    private Segment openSegment(int id) throws IOException {
+        Path path = segmentPath(id);
+        FileChannel channel = FileChannel.open(path,
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Segment segment = new Segment(id, path, channel);
+        segments.put(id, segment);
+        return segment;
+    }
+    
+    private void closeSegments() {
+        for (Segment segment : segments.values()) {
+            try {
+                segment.channel.close();
+            } catch (IOException ignored) {
+                // Shutting down
+            }
+        }
+        segments.clear();
+    }
+    
+    private static ByteBuffer encode(String conversationId, ChatMessage message) {
+        byte[] id = conversationId.getBytes(StandardCharsets.UTF_8);
+        byte[] text = (message.getText() != null ? message.getText() : "").getBytes(StandardCharsets.UTF_8);
+        int bodyLength = 2 + id.length + 8 + 1 + 4 + text.length;
+        
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + bodyLength);
+        record.putInt(bodyLength);
+        record.putInt(0); // CRC, filled in below
+        record.putShort((short) id.length).put(id);
+        record.putLong(message.getTimestampMillis());
+        record.put(message.getRoleCode());
+        record.putInt(text.length).put(text);
+        
+        ByteBuffer body = record.duplicate();
+        body.position(HEADER_BYTES);
+        record.putInt(4, crc32(body));
+        record.flip();
+        return record;
+    }
+    
+    private static Decoded decode(ByteBuffer body) {
+        byte[] id = new byte[body.getShort()];
+        body.get(id);
+        long timestamp = body.getLong();
+        byte role = body.get();
+        byte[] text = new byte[body.getInt()];
+        body.get(text);
+        return new Decoded(new String(id, StandardCharsets.UTF_8),
+            new ChatMessage(role, new String(text, StandardCharsets.UTF_8), timestamp));
+    }
+    
+    private static int crc32(ByteBuffer bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+    
+    private static long position(int segmentId, long offset) {
+        return ((long) segmentId << 32) | offset;
+    }
+    
+    private static int segmentId(long position) {
+        return (int) (position >>> 32);
+    }
+    
+    private static int offset(long position) {
+        return (int) position;
+    }
+    
+    private static String defaultDirectory() {
+        String base = System.getProperty("jboss.server.data.dir", System.getProperty("java.io.tmpdir"));
+        return Paths.get(base, "chatbot-transcripts").toString();
+    }
+    
+    /**
+     * One segment file. Once sealed it no longer changes and is mapped read-only
+     * once; until then it is read with positional reads, so appends never cost a
+     * new mapping.
+     */
+    private static final class Segment {
+        
+        final int id;
+        final Path path;
+        final FileChannel channel;
+        volatile long size;
+        private volatile boolean sealed;
+        private MappedByteBuffer mapped;
+        
+        Segment(int id, Path path, FileChannel channel) throws IOException {
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+            this.size = channel.size();
+        }
+        
+        void seal() {
+            sealed = true;
+        }
+        
+        /**
+         * Reads {@code length} bytes starting at {@code offset}.
+         */
+        ByteBuffer read(long offset, int length) throws IOException {
+            if (offset + length > size) {
+                throw new EOFException("Transcript record past the end of " + path.getFileName());
+            }
+            if (sealed) {
+                ByteBuffer view = mapping();
+                view.position((int) offset).limit((int) offset + length);
+                return view.slice();
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position()) < 0) {
+                    throw new EOFException("Transcript record past the end of " + path.getFileName());
+                }
+            }
+            buffer.flip();
+            return buffer;
+        }
+        
+        private synchronized ByteBuffer mapping() throws IOException {
+            if (mapped == null) {
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            return mapped.duplicate();
+        }
+    }
+    
+    /**
+     * Growable list of record positions for one conversation.
+     */
+    private static final class PositionList {
+        
+        private long[] positions = new long[16];
+        private int size;
+        
+        synchronized void add(long position) {
+            if (size == positions.length) {
+                long[] grown = new long[size * 2];
+                System.arraycopy(positions, 0, grown, 0, size);
+                positions = grown;
+            }
+            positions[size++] = position;
+        }
+        
+        synchronized int size() {
+            return size;
+        }
+        
+        /**
+         * Removes the leading positions in segments up to {@code segmentId}.
+         *
+         * @return Positions left
+         */
+        synchronized int dropThrough(int segmentId) {
+            int dropped = 0;
+            while (dropped < size && segmentId(positions[dropped]) <= segmentId) {
+                dropped++;
+            }
+            System.arraycopy(positions, dropped, positions, 0, size - dropped);
+            size -= dropped;
+            return size;
+        }
+        
+        /**
+         * Number of positions after {@code position}, which need not be in the list.
+         */
+        synchronized int countAfter(long position) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (positions[mid] <= position) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return size - low;
+        }
+        
+        synchronized long[] slice(int from, int count) {
+            int start = Math.min(from, size);
+            int end = Math.min(size, start + count);
+            long[] slice = new long[end - start];
+            System.arraycopy(positions, start, slice, 0, slice.length);
+            return slice;
+        }
+    }
+    
+    /**
+     * A conversation's stored rolling summary.
+     */
+    public static final class Summary {
+        
+        private final String text;
+        private final int verbatimMessages;
+        
+        Summary(String text, int verbatimMessages) {
+            this.text = text;
+            this.verbatimMessages = verbatimMessages;
+        }
+        
+        public String getText() {
+            return text;
+        }
+        
+        /**
+         * Newest messages of the conversation the summary does not cover.
+         */
+        public int getVerbatimMessages() {
+            return verbatimMessages;
+        }
+    }
+    
+    private static final class Decoded {
+        
+        final String conversationId;
+        final ChatMessage message;
+        
+        Decoded(String conversationId, ChatMessage message) {
+            this.conversationId = conversationId;
+            this.message = message;
+        }
+    }
+}
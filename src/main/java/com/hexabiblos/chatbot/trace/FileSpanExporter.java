@@ -0,0 +1,111 @@
+package com.hexabiblos.chatbot.trace;
+
+import com.hexabiblos.chatbot.log.StructuredLog;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Appends each span as one JSON line to {@code TRACE_FILE} (default
+ * {@value #DEFAULT_FILE}), for offline analysis. As with {@link StructuredLog},
+ * callers only offer the span to a bounded queue and a daemon thread does the
+ * writing; when the queue is full the span is dropped and counted.
+ */
+public class FileSpanExporter implements SpanExporter {
+
+    static final String DEFAULT_FILE = "chatbot-traces.jsonl";
+
+    private static final StructuredLog LOG = StructuredLog.forClass(FileSpanExporter.class);
+
+    private static final int QUEUE_CAPACITY = 10_000;
+
+    private final Path file;
+    private final BlockingQueue<Span> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final LongAdder dropped = new LongAdder();
+    private final Thread writer;
+    private volatile boolean closed;
+
+    public FileSpanExporter() {
+        this(DEFAULT_FILE);
+    }
+
+    public FileSpanExporter(String file) {
+        this.file = Paths.get(file).toAbsolutePath();
+        writer = new Thread(this::drain, "trace-file-writer");
+        writer.setDaemon(true);
+        writer.start();
+        LOG.info("Writing trace spans to file", "file", this.file);
+    }
+
+    @Override
+    public void export(Span span) {
+        if (!queue.offer(span)) {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * Number of spans dropped because the queue was full.
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    @Override
+    public void shutdown() {
+        // Not interrupted: that would close the file channel in the middle of a write
+        closed = true;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(2));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drain() {
+        try {
+            Path parent = file.getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+        } catch (IOException e) {
+            LOG.warn("Cannot create trace directory", e, "file", file);
+        }
+        StringBuilder line = new StringBuilder(512);
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            while (!closed) {
+                Span span = queue.poll(1, TimeUnit.SECONDS);
+                // Write whatever else is waiting before paying for a flush
+                while (span != null) {
+                    write(out, span, line);
+                    span = queue.poll();
+                }
+                out.flush();
+            }
+            Span span;
+            while ((span = queue.poll()) != null) {
+                write(out, span, line);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            LOG.warn("Writing trace spans failed", e, "file", file);
+        }
+    }
+
+    private static void write(BufferedWriter out, Span span, StringBuilder line) throws IOException {
+        line.setLength(0);
+        span.appendJson(line);
+        out.append(line).append('\n');
+    }
+}
@@ -0,0 +1,42 @@
+package com.hexabiblos.chatbot.trace;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the most recent spans in a fixed-size ring, for the {@code /traces}
+ * endpoint. Older spans are overwritten, so memory use does not grow with traffic.
+ * Size with {@code TRACE_BUFFER_SPANS} (default {@value #DEFAULT_CAPACITY}).
+ */
+public class InMemorySpanExporter implements SpanExporter {
+
+    static final int DEFAULT_CAPACITY = 10_000;
+
+    private final Span[] ring;
+    private long written;
+
+    public InMemorySpanExporter() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public InMemorySpanExporter(int capacity) {
+        ring = new Span[Math.max(1, capacity)];
+    }
+
+    @Override
+    public synchronized void export(Span span) {
+        ring[(int) (written++ % ring.length)] = span;
+    }
+
+    /**
+     * The buffered spans, oldest first.
+     */
+    public synchronized List<Span> getSpans() {
+        int size = (int) Math.min(written, ring.length);
+        List<Span> spans = new ArrayList<>(size);
+        for (long i = written - size; i < written; i++) {
+            spans.add(ring[(int) (i % ring.length)]);
+        }
+        return spans;
+    }
+}
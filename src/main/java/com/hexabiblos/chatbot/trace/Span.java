@@ -0,0 +1,219 @@
+package com.hexabiblos.chatbot.trace;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * One timed operation of a trace, in the spirit of an OpenTelemetry span: trace
+ * id, span id, parent id, name, start, duration, attributes and an error if the
+ * operation failed. Started through {@link Tracer}, which makes it the current
+ * span of the starting thread, and ended with {@link #end()} (or
+ * try-with-resources), which hands it to the configured {@link SpanExporter}.
+ *
+ * Spans of traces that are not sampled, or started while tracing is off, carry
+ * no ids and ignore attributes; they still take part in the thread's current-span
+ * chain so their children are not sampled either.
+ */
+public final class Span implements AutoCloseable {
+
+    private final String traceId;  // null when not recorded
+    private final String spanId;
+    private final String parentSpanId;
+    private final String name;
+    private final long startEpochMicros;
+    private final long startNanos;
+    private final Map<String, Object> attributes;
+
+    // Current span of the starting thread before this one, restored when this one is left
+    final Span previous;
+    final Thread thread;
+
+    private long durationNanos = -1;
+    private String error;
+
+    Span(String traceId, String spanId, String parentSpanId, String name, Span previous) {
+        this.traceId = traceId;
+        this.spanId = spanId;
+        this.parentSpanId = parentSpanId;
+        this.name = name;
+        this.previous = previous;
+        this.thread = Thread.currentThread();
+        this.startNanos = System.nanoTime();
+        if (traceId != null) {
+            this.startEpochMicros = ChronoUnit.MICROS.between(Instant.EPOCH, Instant.now());
+            this.attributes = new LinkedHashMap<>();
+        } else {
+            this.startEpochMicros = 0;
+            this.attributes = null;
+        }
+    }
+
+    /**
+     * True if this span is sampled and will be exported.
+     */
+    public boolean isRecording() {
+        return traceId != null;
+    }
+
+    /**
+     * Sets an attribute; numbers and booleans are exported unquoted, anything else as text.
+     */
+    public Span setAttribute(String key, Object value) {
+        if (attributes != null) {
+            synchronized (this) {
+                attributes.put(key, value);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Adds to a numeric attribute, e.g. time spent in many small steps.
+     */
+    public Span addToAttribute(String key, long amount) {
+        if (attributes != null) {
+            synchronized (this) {
+                attributes.merge(key, amount, (a, b) -> ((Number) a).longValue() + ((Number) b).longValue());
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Marks the operation as failed.
+     */
+    public Span recordError(Throwable failure) {
+        if (attributes != null) {
+            synchronized (this) {
+                error = failure.getClass().getName() + ": " + failure.getMessage();
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Ends the span and exports it. If it is the current span of the calling
+     * thread, its parent becomes current again. Later calls do nothing.
+     */
+    public void end() {
+        synchronized (this) {
+            if (durationNanos >= 0) {
+                return;
+            }
+            durationNanos = Math.max(0, System.nanoTime() - startNanos);
+        }
+        Tracer.leave(this);
+        if (traceId != null) {
+            Tracer.export(this);
+        }
+    }
+
+    /**
+     * Stops being the current span of the calling thread without ending. For
+     * operations that finish on another thread, e.g. an asynchronous request.
+     */
+    public void leave() {
+        Tracer.leave(this);
+    }
+
+    @Override
+    public void close() {
+        end();
+    }
+
+    public String getTraceId() {
+        return traceId;
+    }
+
+    public String getSpanId() {
+        return spanId;
+    }
+
+    /**
+     * Span id of the parent, or null for the root of a trace.
+     */
+    public String getParentSpanId() {
+        return parentSpanId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getStartEpochMicros() {
+        return startEpochMicros;
+    }
+
+    /**
+     * Duration in nanoseconds, or -1 while the span is running.
+     */
+    public synchronized long getDurationNanos() {
+        return durationNanos;
+    }
+
+    public synchronized Map<String, Object> getAttributes() {
+        return (attributes != null) ? new LinkedHashMap<>(attributes) : Map.of();
+    }
+
+    public synchronized String getError() {
+        return error;
+    }
+
+    /**
+     * Appends the span as one JSON object, the format of the file exporter and the
+     * {@code /traces} endpoint.
+     */
+    public void appendJson(StringBuilder json) {
+        json.append("{\"traceId\":\"").append(traceId)
+            .append("\",\"spanId\":\"").append(spanId).append('"');
+        if (parentSpanId != null) {
+            json.append(",\"parentSpanId\":\"").append(parentSpanId).append('"');
+        }
+        json.append(",\"name\":");
+        appendString(json, name);
+        json.append(",\"startMicros\":").append(startEpochMicros);
+        json.append(",\"durationMicros\":").append(getDurationNanos() / 1000);
+        json.append(",\"attributes\":{");
+        boolean first = true;
+        for (Map.Entry<String, Object> attribute : getAttributes().entrySet()) {
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            appendString(json, attribute.getKey());
+            json.append(':');
+            Object value = attribute.getValue();
+            if (value instanceof Number || value instanceof Boolean) {
+                json.append(value);
+            } else {
+                appendString(json, String.valueOf(value));
+            }
+        }
+        json.append('}');
+        String failure = getError();
+        if (failure != null) {
+            json.append(",\"error\":");
+            appendString(json, failure);
+        }
+        json.append('}');
+    }
+
+    private static void appendString(StringBuilder json, String text) {
+        json.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c == '\n') {
+                json.append("\\n");
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+}
@@ -0,0 +1,17 @@
+package com.hexabiblos.chatbot.trace;
+
+/**
+ * Receives every recorded span once it has ended. Called on the thread that
+ * ended the span, often a request thread, so implementations must not block.
+ * Select one with {@code TRACE_EXPORTER} (see {@link Tracer}).
+ */
+public interface SpanExporter {
+
+    void export(Span span);
+
+    /**
+     * Writes out what is still buffered. Called once when the application is undeployed.
+     */
+    default void shutdown() {
+    }
+}
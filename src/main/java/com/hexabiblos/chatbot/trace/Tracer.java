@@ -0,0 +1,252 @@
+package com.hexabiblos.chatbot.trace;
+
+import com.hexabiblos.chatbot.log.StructuredLog;
+import com.hexabiblos.chatbot.service.AppSettings;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Starts {@link Span}s and keeps track of the current one per thread, so nested
+ * operations become children without passing spans around. Work handed to
+ * another thread keeps its place in the trace through {@link #wrap(Callable)}.
+ *
+ * Usage: {@code try (Span span = Tracer.start("gemini.build_contents", "messages", n)) { ... }}.
+ * Attributes are name/value pairs, as in {@link StructuredLog}.
+ *
+ * Settings (read once at startup):
+ * <ul>
+ *   <li>{@code TRACE_EXPORTER}: {@code memory} (default, recent spans for the
+ *       {@code /traces} endpoint), {@code file}, {@code none}, or the class name
+ *       of a {@link SpanExporter} with a public no-argument constructor</li>
+ *   <li>{@code TRACE_SAMPLE_RATE}: share of traces recorded, decided at the root (default 1.0)</li>
+ * </ul>
+ */
+public final class Tracer {
+
+    private static final StructuredLog LOG = StructuredLog.forClass(Tracer.class);
+
+    private static final ThreadLocal<Span> CURRENT = new ThreadLocal<>();
+
+    private static final SpanExporter EXPORTER = createExporter(AppSettings.getString("TRACE_EXPORTER", "memory"));
+    private static final double SAMPLE_RATE = parseRate(AppSettings.getString("TRACE_SAMPLE_RATE", "1.0"));
+
+    // New on every start, so pseudonyms cannot be precomputed or matched across restarts
+    private static final byte[] PSEUDONYM_SALT = randomBytes(16);
+
+    private Tracer() {
+    }
+
+    /**
+     * Starts a span as a child of the calling thread's current span, or as the
+     * root of a new trace, and makes it current.
+     */
+    public static Span start(String name, Object... attributes) {
+        return start(CURRENT.get(), name, attributes);
+    }
+
+    /**
+     * Starts a span under the given parent and makes it current. The parent may
+     * have ended already and may come from another thread, e.g. the request that
+     * queued the work; null starts a new trace.
+     */
+    public static Span start(Span parent, String name, Object... attributes) {
+        Span previous = CURRENT.get();
+        Span span;
+        if (EXPORTER == null) {
+            span = new Span(null, null, null, name, previous);
+        } else if (parent != null) {
+            span = parent.isRecording()
+                ? new Span(parent.getTraceId(), newId(16), parent.getSpanId(), name, previous)
+                : new Span(null, null, null, name, previous);
+        } else if (SAMPLE_RATE >= 1.0 || ThreadLocalRandom.current().nextDouble() < SAMPLE_RATE) {
+            span = new Span(newId(32), newId(16), null, name, previous);
+        } else {
+            span = new Span(null, null, null, name, previous);
+        }
+        for (int i = 0; i + 1 < attributes.length; i += 2) {
+            span.setAttribute(String.valueOf(attributes[i]), attributes[i + 1]);
+        }
+        CURRENT.set(span);
+        return span;
+    }
+
+    /**
+     * Starts the root span of a new trace, regardless of the current span, and
+     * makes it current. For background work that should not count towards the
+     * request that happened to trigger it.
+     */
+    public static Span startTrace(String name, Object... attributes) {
+        return start((Span) null, name, attributes);
+    }
+
+    /**
+     * The calling thread's current span, or null.
+     */
+    public static Span current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Sets an attribute on the calling thread's current span, if there is one.
+     */
+    public static void setAttribute(String key, Object value) {
+        Span span = CURRENT.get();
+        if (span != null) {
+            span.setAttribute(key, value);
+        }
+    }
+
+    /**
+     * Returns a task that runs with the calling thread's current span as its
+     * current span, so spans it starts join this trace.
+     */
+    public static <T> Callable<T> wrap(Callable<T> task) {
+        Span parent = CURRENT.get();
+        if (parent == null) {
+            return task;
+        }
+        return () -> {
+            Span saved = CURRENT.get();
+            CURRENT.set(parent);
+            try {
+                return task.call();
+            } finally {
+                restore(saved);
+            }
+        };
+    }
+
+    /**
+     * {@link #wrap(Callable)} for tasks without a result.
+     */
+    public static Runnable wrap(Runnable task) {
+        Span parent = CURRENT.get();
+        if (parent == null) {
+            return task;
+        }
+        return () -> {
+            Span saved = CURRENT.get();
+            CURRENT.set(parent);
+            try {
+                task.run();
+            } finally {
+                restore(saved);
+            }
+        };
+    }
+
+    /**
+     * Stands in for a secret identifier, such as a conversation id, in span
+     * attributes: the same value always gives the same pseudonym while the
+     * application runs, so spans of one conversation can still be grouped, but the
+     * value cannot be recovered from it.
+     */
+    public static String pseudonym(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            sha256.update(PSEUDONYM_SALT);
+            byte[] digest = sha256.digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(16);
+            for (int i = 0; i < 8; i++) {
+                hex.append(Character.forDigit((digest[i] >> 4) & 0xF, 16)).append(Character.forDigit(digest[i] & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * The exporter spans go to, or null when tracing is off.
+     */
+    public static SpanExporter getExporter() {
+        return EXPORTER;
+    }
+
+    /**
+     * Flushes and closes the exporter. Called when the application is undeployed.
+     */
+    public static void shutdown() {
+        if (EXPORTER != null) {
+            EXPORTER.shutdown();
+        }
+    }
+
+    static void leave(Span span) {
+        if (span.thread == Thread.currentThread() && CURRENT.get() == span) {
+            restore(span.previous);
+        }
+    }
+
+    static void export(Span span) {
+        try {
+            EXPORTER.export(span);
+        } catch (RuntimeException e) {
+            LOG.warn("Span export failed", e, "span", span.getName());
+        }
+    }
+
+    private static void restore(Span span) {
+        if (span != null) {
+            CURRENT.set(span);
+        } else {
+            CURRENT.remove();
+        }
+    }
+
+    private static String newId(int hexDigits) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        StringBuilder id = new StringBuilder(hexDigits);
+        while (id.length() < hexDigits) {
+            String part = Long.toHexString(random.nextLong());
+            for (int i = part.length(); i < 16; i++) {
+                id.append('0');
+            }
+            id.append(part);
+        }
+        return id.substring(0, hexDigits);
+    }
+
+    private static SpanExporter createExporter(String setting) {
+        String name = setting.trim();
+        switch (name.toLowerCase()) {
+            case "none":
+            case "off":
+                return null;
+            case "memory":
+                return new InMemorySpanExporter(AppSettings.getInt("TRACE_BUFFER_SPANS",
+                    InMemorySpanExporter.DEFAULT_CAPACITY));
+            case "file":
+                return new FileSpanExporter(AppSettings.getString("TRACE_FILE", FileSpanExporter.DEFAULT_FILE));
+            default:
+                try {
+                    return (SpanExporter) Class.forName(name).getConstructor().newInstance();
+                } catch (ReflectiveOperationException | ClassCastException e) {
+                    LOG.warn("Unknown span exporter, tracing disabled", e, "exporter", name);
+                    return null;
+                }
+        }
+    }
+
+    private static byte[] randomBytes(int count) {
+        byte[] bytes = new byte[count];
+        new SecureRandom().nextBytes(bytes);
+        return bytes;
+    }
+
+    private static double parseRate(String value) {
+        try {
+            return Math.max(0, Math.min(1, Double.parseDouble(value.trim())));
+        } catch (NumberFormatException e) {
+            return 1.0;
+        }
+    }
+}
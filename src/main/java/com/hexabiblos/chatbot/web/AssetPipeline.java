@@ -0,0 +1,194 @@
+package com.hexabiblos.chatbot.web;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Build step that prepares the application's own static files for
+ * {@link AssetServlet}. Run by the {@code exec-maven-plugin} before the WAR is
+ * packaged:
+ * <pre>
+ * AssetPipeline &lt;source dir&gt; &lt;output dir&gt;
+ * </pre>
+ * Every {@code .css} and {@code .js} file under the source directory is minified,
+ * written under a name that carries a hash of its content
+ * ({@code css/chat.css} becomes {@code css/chat.1a2b3c4d5e.css}), and gzipped at
+ * the highest level next to it ({@code .gz}). {@value #MANIFEST} maps each
+ * source path to its fingerprinted name.
+ *
+ * The minifiers are deliberately conservative and only meant for the files in
+ * this project: CSS loses comments and optional whitespace; JavaScript loses
+ * whole-line comments and indentation, but keeps its line breaks so automatic
+ * semicolon insertion is unaffected.
+ */
+public final class AssetPipeline {
+
+    public static final String MANIFEST = "manifest.properties";
+    public static final String GZIP_SUFFIX = ".gz";
+
+    private static final int HASH_HEX_LENGTH = 10;
+
+    private AssetPipeline() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: AssetPipeline <source dir> <output dir>");
+            System.exit(2);
+        }
+        Path source = Paths.get(args[0]);
+        Path output = Paths.get(args[1]);
+        Map<String, String> manifest = new TreeMap<>();
+        long sourceBytes = 0;
+        long gzipBytes = 0;
+
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(source)) {
+            files = walk.filter(Files::isRegularFile)
+                .filter(file -> file.toString().endsWith(".css") || file.toString().endsWith(".js"))
+                .sorted()
+                .collect(Collectors.toList());
+        }
+        for (Path file : files) {
+            String path = source.relativize(file).toString().replace('\\', '/');
+            String text = Files.readString(file, StandardCharsets.UTF_8);
+            byte[] minified = (path.endsWith(".css") ? minifyCss(text) : minifyJs(text))
+                .getBytes(StandardCharsets.UTF_8);
+            String fingerprinted = fingerprint(path, minified);
+            byte[] gzipped = gzip(minified);
+
+            Path target = output.resolve(fingerprinted);
+            Files.createDirectories(target.getParent());
+            Files.write(target, minified);
+            Files.write(output.resolve(fingerprinted + GZIP_SUFFIX), gzipped);
+            manifest.put(path, fingerprinted);
+
+            sourceBytes += Files.size(file);
+            gzipBytes += gzipped.length;
+            System.out.println("[assets] " + path + " -> " + fingerprinted + ": " + Files.size(file)
+                + " bytes, minified " + minified.length + ", gzipped " + gzipped.length);
+        }
+
+        Files.createDirectories(output);
+        try (Writer out = Files.newBufferedWriter(output.resolve(MANIFEST), StandardCharsets.UTF_8)) {
+            out.write("# Source path = fingerprinted path, written by AssetPipeline\n");
+            for (Map.Entry<String, String> entry : manifest.entrySet()) {
+                out.write(entry.getKey() + "=" + entry.getValue() + "\n");
+            }
+        }
+        System.out.println("[assets] " + manifest.size() + " files, " + sourceBytes + " bytes -> "
+            + gzipBytes + " bytes gzipped");
+    }
+
+    /**
+     * Inserts the first hex digits of the content's SHA-256 before the extension.
+     */
+    static String fingerprint(String path, byte[] content) {
+        String hash;
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            StringBuilder hex = new StringBuilder(HASH_HEX_LENGTH);
+            for (int i = 0; hex.length() < HASH_HEX_LENGTH; i++) {
+                hex.append(String.format("%02x", digest[i]));
+            }
+            hash = hex.substring(0, HASH_HEX_LENGTH);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        int dot = path.lastIndexOf('.');
+        return path.substring(0, dot) + "." + hash + path.substring(dot);
+    }
+
+    static String minifyCss(String css) {
+        StringBuilder out = new StringBuilder(css.length());
+        int i = 0;
+        while (i < css.length()) {
+            char c = css.charAt(i);
+            if (c == '/' && i + 1 < css.length() && css.charAt(i + 1) == '*') {
+                int end = css.indexOf("*/", i + 2);
+                i = (end < 0) ? css.length() : end + 2;
+            } else if (c == '"' || c == '\'') {
+                // Strings are copied as they are
+                int end = i + 1;
+                while (end < css.length() && css.charAt(end) != c) {
+                    end += (css.charAt(end) == '\\') ? 2 : 1;
+                }
+                end = Math.min(end + 1, css.length());
+                out.append(css, i, end);
+                i = end;
+            } else if (Character.isWhitespace(c)) {
+                while (i < css.length() && Character.isWhitespace(css.charAt(i))) {
+                    i++;
+                }
+                // A space is only needed between two words, e.g. "0 auto" or ".a .b"
+                char previous = (out.length() > 0) ? out.charAt(out.length() - 1) : '{';
+                char next = (i < css.length()) ? css.charAt(i) : '}';
+                if ("{};:,>".indexOf(previous) < 0 && "{};,>".indexOf(next) < 0) {
+                    out.append(' ');
+                }
+            } else if (c == '}' && out.length() > 0 && out.charAt(out.length() - 1) == ';') {
+                out.setCharAt(out.length() - 1, '}');
+                i++;
+            } else {
+                out.append(c);
+                i++;
+            }
+        }
+        return out.toString();
+    }
+
+    static String minifyJs(String js) {
+        StringBuilder out = new StringBuilder(js.length());
+        boolean inBlockComment = false;
+        for (String line : js.split("\r?\n")) {
+            String trimmed = line.strip();
+            if (inBlockComment) {
+                int end = trimmed.indexOf("*/");
+                if (end < 0) {
+                    continue;
+                }
+                inBlockComment = false;
+                trimmed = trimmed.substring(end + 2).strip();
+            }
+            if (trimmed.startsWith("/*")) {
+                int end = trimmed.indexOf("*/", 2);
+                if (end < 0) {
+                    inBlockComment = true;
+                    continue;
+                }
+                trimmed = trimmed.substring(end + 2).strip();
+            }
+            if (trimmed.isEmpty() || trimmed.startsWith("//")) {
+                continue;
+            }
+            out.append(trimmed).append('\n');
+        }
+        return out.toString();
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length / 3 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            gzip.write(content);
+        }
+        return bytes.toByteArray();
+    }
+}
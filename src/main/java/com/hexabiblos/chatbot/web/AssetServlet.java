@@ -0,0 +1,78 @@
+package com.hexabiblos.chatbot.web;
+
+import jakarta.inject.Inject;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+
+/**
+ * Serves the fingerprinted files of {@link StaticAssets} under {@code /assets/}.
+ * A name changes whenever the content does, so responses may be cached for a
+ * year without revalidation; the gzipped copy made at build time is sent to
+ * clients that accept it, and the content hash serves as entity tag.
+ */
+@WebServlet(urlPatterns = "/assets/*", loadOnStartup = 1)
+public class AssetServlet extends HttpServlet {
+
+    private static final long serialVersionUID = 1L;
+
+    static final String IMMUTABLE = "public, max-age=31536000, immutable";
+
+    @Inject
+    private StaticAssets assets;
+
+    @Override
+    public void init() {
+        assets.load(getServletContext());
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String path = request.getPathInfo();
+        StaticAssets.Asset asset = (path != null) ? assets.get(path.substring(1)) : null;
+        if (asset == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        boolean gzip = asset.gzip != null && acceptsGzip(request);
+        // Each encoding is its own representation, so each gets its own tag
+        String etag = "\"" + asset.fingerprint + (gzip ? "-gz\"" : "\"");
+        response.setHeader("Cache-Control", IMMUTABLE);
+        response.setHeader("ETag", etag);
+        response.setHeader("Vary", "Accept-Encoding");
+        if (matches(request.getHeader("If-None-Match"), etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        byte[] body = gzip ? asset.gzip : asset.plain;
+        response.setContentType(asset.contentType);
+        if (gzip) {
+            response.setHeader("Content-Encoding", "gzip");
+        }
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+
+    static boolean acceptsGzip(HttpServletRequest request) {
+        String accepted = request.getHeader("Accept-Encoding");
+        return accepted != null && accepted.contains("gzip") && !accepted.contains("gzip;q=0");
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*") || tag.equals(etag) || tag.equals("W/" + etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
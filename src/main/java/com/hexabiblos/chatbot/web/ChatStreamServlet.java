@@ -0,0 +1,192 @@
+package com.hexabiblos.chatbot.web;
+
+import com.hexabiblos.chatbot.bean.ChatState;
+import com.hexabiblos.chatbot.metrics.MetricsRegistry;
+import com.hexabiblos.chatbot.service.ChatModelProvider;
+import com.hexabiblos.chatbot.service.ModelCallExecutor;
+import com.hexabiblos.chatbot.service.ModelMetrics;
+import com.hexabiblos.chatbot.service.QuickReplyPrefetcher;
+import com.hexabiblos.chatbot.trace.Span;
+import com.hexabiblos.chatbot.trace.Tracer;
+import jakarta.inject.Inject;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Server-Sent Events endpoint that streams the pending assistant reply to the page.
+ * The chat page opens this stream after a send and appends each chunk to the
+ * active assistant bubble; the full text is committed to the conversation once
+ * the stream ends. The stream is traced as part of the send that queued it.
+ * A quick reply answered ahead of time by {@link QuickReplyPrefetcher} is sent
+ * as soon as it is ready, without a model call of its own; one that fails or is
+ * not ready within the prefetcher's bounded wait gets a live call instead.
+ */
+@WebServlet(urlPatterns = "/chat/stream", asyncSupported = true)
+public class ChatStreamServlet extends HttpServlet {
+
+    private static final long serialVersionUID = 1L;
+    // Outlives the model-call deadline so the timeout message still reaches the page
+    private static final long STREAM_TIMEOUT_MS = ModelCallExecutor.CALL_TIMEOUT.toMillis() + 10_000;
+
+    @Inject
+    private ChatState chatState;
+
+    @Inject
+    private ChatModelProvider modelProvider;
+
+    @Inject
+    private ModelCallExecutor modelCalls;
+
+    @Inject
+    private MetricsRegistry metrics;
+
+    @Inject
+    private QuickReplyPrefetcher prefetcher;
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        // Claim on the request thread, while the session context is active
+        long start = System.nanoTime();
+        ChatState.PendingReply reply = chatState.claimPendingReply();
+        if (reply == null) {
+            // 204 tells EventSource not to reconnect
+            response.setStatus(HttpServletResponse.SC_NO_CONTENT);
+            return;
+        }
+
+        response.setContentType("text/event-stream");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Cache-Control", "no-cache");
+        response.setHeader("X-Accel-Buffering", "no");
+
+        AsyncContext async = request.startAsync();
+        async.setTimeout(STREAM_TIMEOUT_MS);
+        EventChannel channel = new EventChannel(async, response.getWriter());
+
+        Span span = Tracer.start(reply.getTraceParent(), "chat.reply_stream",
+            "chat.conversation", Tracer.pseudonym(reply.getConversationId()),
+            "chat.context_messages", reply.getHistory().size());
+        CompletableFuture<String> call;
+        try {
+            CompletableFuture<String> prefetched = prefetcher.take(reply.getConversationId(), reply.getHistory());
+            if (prefetched != null) {
+                span.setAttribute("chat.prefetched", true);
+                call = fromPrefetch(prefetched, text -> channel.send("chunk", text), () -> {
+                    try (Span fallback = Tracer.start(span, "chat.prefetch_fallback")) {
+                        return streamReply(reply, channel);
+                    }
+                });
+            } else {
+                call = streamReply(reply, channel);
+            }
+        } finally {
+            span.leave();
+        }
+
+        call.whenComplete((responseText, failure) -> {
+            String finalText = responseText;
+            if (failure != null) {
+                finalText = ModelCallExecutor.isTimeout(failure)
+                    ? ChatModelProvider.TIMEOUT_RESPONSE
+                    : ChatModelProvider.ERROR_RESPONSE;
+            }
+            // Commit even if the browser went away mid-stream
+            reply.complete(finalText);
+            channel.send("done", "");
+            channel.close();
+            // End to end, including cache hits and calls rejected before reaching the model
+            String outcome = ModelMetrics.outcomeOf(finalText);
+            metrics.histogram("chat_stream_seconds", "Reply stream duration by outcome",
+                MetricsRegistry.LATENCY_BUCKETS, "outcome", outcome)
+                .observeNanos(System.nanoTime() - start);
+            span.setAttribute("chat.outcome", outcome).setAttribute("chat.reply_chars", finalText.length());
+            span.end();
+        });
+    }
+
+    /**
+     * Answers with a prefetched reply once it is ready, or with {@code live} if the
+     * prefetch failed or was given up on, which the prefetcher does well within the
+     * call deadline, so the live call still has its full deadline.
+     */
+    static CompletableFuture<String> fromPrefetch(CompletableFuture<String> prefetched, Consumer<String> send,
+                                                  Supplier<CompletableFuture<String>> live) {
+        return prefetched.handle((text, failure) -> (failure == null) ? text : null).thenCompose(text -> {
+            if (text != null) {
+                send.accept(text);
+                return CompletableFuture.completedFuture(text);
+            }
+            return live.get();
+        });
+    }
+
+    /**
+     * Starts the model call for a reply; it runs on the model-call executor, not
+     * on a container thread. A cached reply is sent at once, without a permit.
+     */
+    private CompletableFuture<String> streamReply(ChatState.PendingReply reply, EventChannel channel) {
+        String cached = modelProvider.cachedResponse(reply.getHistory());
+        if (cached != null) {
+            channel.send("chunk", cached);
+            return CompletableFuture.completedFuture(cached);
+        }
+        try {
+            return modelCalls.submit(() -> modelProvider.streamResponse(
+                reply.getHistory(), chunk -> channel.send("chunk", chunk)));
+        } catch (RejectedExecutionException e) {
+            // Admission let the message in, but the queue filled up before the stream opened
+            String busy = ChatModelProvider.busyResponse(modelCalls.retryAfterSeconds());
+            channel.send("chunk", busy);
+            return CompletableFuture.completedFuture(busy);
+        }
+    }
+
+    /**
+     * One open SSE response. Writes are serialized, and anything sent after
+     * close (e.g. late chunks from a call that already timed out) is dropped.
+     */
+    private static final class EventChannel {
+
+        private final AsyncContext async;
+        private final PrintWriter out;
+        private boolean closed;
+
+        EventChannel(AsyncContext async, PrintWriter out) {
+            this.async = async;
+            this.out = out;
+        }
+
+        /**
+         * Writes one SSE event. Multi-line data is split into several data: lines,
+         * which EventSource joins back together with newlines.
+         */
+        synchronized void send(String event, String data) {
+            if (closed) {
+                return;
+            }
+            out.write("event: " + event + "\n");
+            for (String line : data.replace("\r", "").split("\n", -1)) {
+                out.write("data: " + line + "\n");
+            }
+            out.write("\n");
+            out.flush();
+        }
+
+        synchronized void close() {
+            if (!closed) {
+                closed = true;
+                async.complete();
+            }
+        }
+    }
+}
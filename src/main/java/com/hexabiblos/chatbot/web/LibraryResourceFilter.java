@@ -0,0 +1,212 @@
+package com.hexabiblos.chatbot.web;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.annotation.WebFilter;
+import jakarta.servlet.http.HttpFilter;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses the scripts and style sheets PrimeFaces serves through the Faces
+ * resource handler, once per library version. Their URLs carry that version
+ * ({@code ?ln=primefaces&v=13.0.0}), so the gzipped bytes are kept in memory and
+ * later requests are answered from there without going through Faces, with a
+ * year-long immutable cache lifetime.
+ *
+ * Unversioned resources, other content types and clients that do not accept
+ * gzip pass through unchanged.
+ */
+@WebFilter(urlPatterns = "/jakarta.faces.resource/*")
+public class LibraryResourceFilter extends HttpFilter {
+
+    private static final long serialVersionUID = 1L;
+
+    // A page pulls in a handful of library resources; the bound only guards against odd query strings
+    private static final int MAX_ENTRIES = 128;
+    private static final int MIN_COMPRESS_BYTES = 1024;
+
+    private final Map<String, Compressed> compressed = new ConcurrentHashMap<>();
+
+    @Override
+    protected void doFilter(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        if (!"GET".equals(request.getMethod()) || request.getParameter("v") == null
+                || !AssetServlet.acceptsGzip(request)) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        String key = request.getRequestURI() + "?" + request.getQueryString();
+        Compressed resource = compressed.get(key);
+        if (resource == null) {
+            BufferedResponse buffered = new BufferedResponse(response);
+            chain.doFilter(request, buffered);
+            byte[] body = buffered.getBody();
+            if (buffered.getStatus() != HttpServletResponse.SC_OK || !isText(buffered.getContentType())
+                    || body.length < MIN_COMPRESS_BYTES) {
+                buffered.writeThrough();
+                return;
+            }
+            resource = new Compressed(buffered.getContentType(), buffered.etag, gzip(body));
+            if (compressed.size() < MAX_ENTRIES) {
+                compressed.putIfAbsent(key, resource);
+            }
+        } else if (resource.etag != null && resource.etag.equals(request.getHeader("If-None-Match"))) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        response.setContentType(resource.contentType);
+        response.setHeader("Cache-Control", AssetServlet.IMMUTABLE);
+        response.setHeader("Vary", "Accept-Encoding");
+        response.setHeader("Content-Encoding", "gzip");
+        if (resource.etag != null) {
+            response.setHeader("ETag", resource.etag);
+        }
+        response.setContentLength(resource.gzip.length);
+        response.getOutputStream().write(resource.gzip);
+    }
+
+    private static boolean isText(String contentType) {
+        return contentType != null
+            && (contentType.startsWith("text/") || contentType.contains("javascript") || contentType.contains("json"));
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length / 3 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            gzip.write(content);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static final class Compressed {
+
+        final String contentType;
+        final String etag;
+        final byte[] gzip;
+
+        Compressed(String contentType, String etag, byte[] gzip) {
+            this.contentType = contentType;
+            this.etag = etag;
+            this.gzip = gzip;
+        }
+    }
+
+    /**
+     * Collects the body the resource handler writes, so it can be compressed
+     * before anything is sent. Headers go straight to the real response, except
+     * the length, which is only right for the uncompressed body.
+     */
+    private static final class BufferedResponse extends HttpServletResponseWrapper {
+
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream(64 * 1024);
+        private ServletOutputStream stream;
+        private PrintWriter writer;
+        private long contentLength = -1;
+        private String etag;
+
+        BufferedResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            if (stream == null) {
+                stream = new ServletOutputStream() {
+                    @Override
+                    public void write(int b) {
+                        body.write(b);
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) {
+                        body.write(b, off, len);
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return true;
+                    }
+
+                    @Override
+                    public void setWriteListener(WriteListener listener) {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+            return stream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), getCharacterEncoding()));
+            }
+            return writer;
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            if ("ETag".equalsIgnoreCase(name)) {
+                etag = value;
+            }
+            super.setHeader(name, value);
+        }
+
+        @Override
+        public void setContentLength(int length) {
+            contentLength = length;
+        }
+
+        @Override
+        public void setContentLengthLong(long length) {
+            contentLength = length;
+        }
+
+        @Override
+        public void flushBuffer() {
+            // Nothing is sent until the body is complete
+        }
+
+        @Override
+        public void resetBuffer() {
+            body.reset();
+        }
+
+        byte[] getBody() {
+            if (writer != null) {
+                writer.flush();
+            }
+            return body.toByteArray();
+        }
+
+        /**
+         * Sends the collected body as it is.
+         */
+        void writeThrough() throws IOException {
+            byte[] bytes = getBody();
+            if (contentLength >= 0 || bytes.length > 0) {
+                getResponse().setContentLength(bytes.length);
+            }
+            getResponse().getOutputStream().write(bytes);
+        }
+    }
+}
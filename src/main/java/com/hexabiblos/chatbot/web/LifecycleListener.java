@@ -0,0 +1,47 @@
+package com.hexabiblos.chatbot.web;
+
+import com.hexabiblos.chatbot.log.StructuredLog;
+import com.hexabiblos.chatbot.metrics.MetricsRegistry;
+import com.hexabiblos.chatbot.trace.Tracer;
+import jakarta.inject.Inject;
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletContextListener;
+import jakarta.servlet.annotation.WebListener;
+import jakarta.servlet.http.HttpSessionEvent;
+import jakarta.servlet.http.HttpSessionListener;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts live HTTP sessions for the metrics endpoint, and flushes and stops the
+ * log and trace writers when the application is undeployed.
+ */
+@WebListener
+public class LifecycleListener implements ServletContextListener, HttpSessionListener {
+
+    private final AtomicInteger activeSessions = new AtomicInteger();
+
+    @Inject
+    private MetricsRegistry metrics;
+
+    @Override
+    public void contextInitialized(ServletContextEvent event) {
+        metrics.gauge("chat_sessions_active", "Live HTTP sessions", activeSessions::get);
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent event) {
+        Tracer.shutdown();
+        StructuredLog.shutdown();
+    }
+
+    @Override
+    public void sessionCreated(HttpSessionEvent event) {
+        activeSessions.incrementAndGet();
+    }
+
+    @Override
+    public void sessionDestroyed(HttpSessionEvent event) {
+        activeSessions.decrementAndGet();
+    }
+}
@@ -0,0 +1,42 @@
+package com.hexabiblos.chatbot.web;
+
+import com.hexabiblos.chatbot.metrics.MetricsRegistry;
+import jakarta.inject.Inject;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+
+/**
+ * Scrape endpoint for {@link MetricsRegistry}, in the Prometheus text format.
+ * Only answers the clients {@link OpsAccess} lets in.
+ */
+@WebServlet(urlPatterns = "/metrics")
+public class MetricsServlet extends HttpServlet {
+
+    private static final long serialVersionUID = 1L;
+
+    @Inject
+    private MetricsRegistry metrics;
+
+    private OpsAccess access;
+
+    @Override
+    public void init() {
+        access = OpsAccess.fromSettings();
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (!access.permits(request)) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        response.setContentType("text/plain; version=0.0.4");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Cache-Control", "no-store");
+        response.getWriter().write(metrics.scrape());
+    }
+}
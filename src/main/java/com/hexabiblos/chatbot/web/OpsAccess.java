@@ -0,0 +1,55 @@
+package com.hexabiblos.chatbot.web;
+
+import com.hexabiblos.chatbot.service.AppSettings;
+import jakarta.servlet.http.HttpServletRequest;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Decides who may reach the operational endpoints ({@code /metrics},
+ * {@code /status}, {@code /traces}). They reveal load, models and request
+ * details, so by default only clients on the same host get an answer; anyone
+ * else gets a 404, as if the endpoint did not exist.
+ * <ul>
+ *   <li>{@code METRICS_ENABLED}: {@code false} turns them all off (default {@code true})</li>
+ *   <li>{@code METRICS_ACCESS}: {@code local} (default) or {@code any}, e.g. for a
+ *       scraper on another host when the port is firewalled or the paths are
+ *       protected by a security constraint</li>
+ * </ul>
+ * Requests relayed by a proxy (with {@code Forwarded} or {@code X-Forwarded-For})
+ * do not count as local, since the proxy itself usually runs on the same host.
+ */
+final class OpsAccess {
+
+    private final boolean enabled;
+    private final boolean localOnly;
+
+    private OpsAccess(boolean enabled, boolean localOnly) {
+        this.enabled = enabled;
+        this.localOnly = localOnly;
+    }
+
+    static OpsAccess fromSettings() {
+        return new OpsAccess(Boolean.parseBoolean(AppSettings.getString("METRICS_ENABLED", "true")),
+            !"any".equalsIgnoreCase(AppSettings.getString("METRICS_ACCESS", "local").trim()));
+    }
+
+    boolean permits(HttpServletRequest request) {
+        if (!enabled) {
+            return false;
+        }
+        if (!localOnly) {
+            return true;
+        }
+        if (request.getHeader("Forwarded") != null || request.getHeader("X-Forwarded-For") != null) {
+            return false;
+        }
+        try {
+            // An IP literal, so no name lookup
+            return InetAddress.getByName(request.getRemoteAddr()).isLoopbackAddress();
+        } catch (UnknownHostException e) {
+            return false;
+        }
+    }
+}
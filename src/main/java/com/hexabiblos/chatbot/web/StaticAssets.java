@@ -0,0 +1,123 @@
+package com.hexabiblos.chatbot.web;
+
+import com.hexabiblos.chatbot.log.StructuredLog;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Named;
+import jakarta.servlet.ServletContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * The application's own static files as prepared by {@link AssetPipeline}:
+ * minified, fingerprinted and gzipped, held in memory and served by
+ * {@link AssetServlet}. Pages link them through {@code #{staticAssets.url('css/chat.css')}}.
+ *
+ * If the build step did not run (e.g. the webapp is served straight from the
+ * source tree), there is no manifest and URLs point at the plain files under
+ * {@code /resources} instead.
+ */
+@Named
+@ApplicationScoped
+public class StaticAssets {
+
+    static final String DIRECTORY = "/WEB-INF/assets/";
+    static final String URL_PREFIX = "/assets/";
+
+    private static final StructuredLog LOG = StructuredLog.forClass(StaticAssets.class);
+
+    private volatile String contextPath = "";
+    private volatile Map<String, String> fingerprinted = Map.of();
+    private volatile Map<String, Asset> assets = Map.of();
+
+    /**
+     * Reads the manifest and every file it lists; called by {@link AssetServlet} at startup.
+     */
+    public void load(ServletContext context) {
+        contextPath = context.getContextPath();
+        Properties manifest = new Properties();
+        try (InputStream in = context.getResourceAsStream(DIRECTORY + AssetPipeline.MANIFEST)) {
+            if (in == null) {
+                LOG.info("No asset manifest, serving static files unprocessed from /resources");
+                return;
+            }
+            manifest.load(new InputStreamReader(in, StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            LOG.warn("Asset manifest unreadable, serving static files unprocessed from /resources", e);
+            return;
+        }
+
+        Map<String, String> names = new HashMap<>();
+        Map<String, Asset> loaded = new HashMap<>();
+        for (String path : manifest.stringPropertyNames()) {
+            String name = manifest.getProperty(path);
+            byte[] plain = read(context, DIRECTORY + name);
+            if (plain == null) {
+                LOG.warn("Asset listed in the manifest is missing", "asset", name);
+                continue;
+            }
+            String contentType = context.getMimeType(name);
+            loaded.put(name, new Asset(plain, read(context, DIRECTORY + name + AssetPipeline.GZIP_SUFFIX),
+                fingerprintOf(name), (contentType != null) ? contentType : "application/octet-stream"));
+            names.put(path, name);
+        }
+        fingerprinted = names;
+        assets = loaded;
+        LOG.info("Static assets loaded", "count", loaded.size());
+    }
+
+    /**
+     * Returns the URL of a static file, given its path under {@code /resources}.
+     */
+    public String url(String path) {
+        String name = fingerprinted.get(path);
+        return (name != null) ? contextPath + URL_PREFIX + name : contextPath + "/resources/" + path;
+    }
+
+    /**
+     * Returns the asset with this fingerprinted name, or null.
+     */
+    Asset get(String name) {
+        return assets.get(name);
+    }
+
+    private static byte[] read(ServletContext context, String path) {
+        try (InputStream in = context.getResourceAsStream(path)) {
+            return (in != null) ? in.readAllBytes() : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The hash AssetPipeline put in the name, e.g. {@code 1a2b3c4d5e} of {@code css/chat.1a2b3c4d5e.css}.
+     */
+    private static String fingerprintOf(String name) {
+        int extension = name.lastIndexOf('.');
+        return name.substring(name.lastIndexOf('.', extension - 1) + 1, extension);
+    }
+
+    /**
+     * One fingerprinted file: its minified bytes, the gzipped copy if there is
+     * one, and the content hash that doubles as its entity tag.
+     */
+    static final class Asset {
+
+        final byte[] plain;
+        final byte[] gzip;
+        final String fingerprint;
+        final String contentType;
+
+        Asset(byte[] plain, byte[] gzip, String fingerprint, String contentType) {
+            this.plain = plain;
+            this.gzip = gzip;
+            this.fingerprint = fingerprint;
+            this.contentType = contentType;
+        }
+    }
+}
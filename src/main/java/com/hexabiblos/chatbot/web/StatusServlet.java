@@ -0,0 +1,76 @@
+package com.hexabiblos.chatbot.web;
+
+import com.hexabiblos.chatbot.service.ChatModelProvider;
+import com.hexabiblos.chatbot.service.ChatModelProviderProducer;
+import com.hexabiblos.chatbot.service.ResilientModelProvider;
+import jakarta.inject.Inject;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+
+/**
+ * Reports which model is serving requests and the health of the circuit breakers
+ * as a small JSON document. Answers 503 while no model can be called, so it also
+ * works as a readiness check. Only answers the clients {@link OpsAccess} lets in.
+ */
+@WebServlet(urlPatterns = "/status")
+public class StatusServlet extends HttpServlet {
+
+    private static final long serialVersionUID = 1L;
+
+    @Inject
+    private ChatModelProviderProducer providers;
+
+    @Inject
+    private ChatModelProvider modelProvider;
+
+    private OpsAccess access;
+
+    @Override
+    public void init() {
+        access = OpsAccess.fromSettings();
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (!access.permits(request)) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        // Touch the proxy so the provider, and with it the resilience layer, exists
+        modelProvider.getModelName();
+        ResilientModelProvider resilience = providers.getResilience();
+
+        StringBuilder json = new StringBuilder(256).append('{');
+        field(json, "model", resilience.getModelName()).append(',');
+        field(json, "demoMode", resilience.isDemoMode()).append(',');
+        field(json, "activeModel", resilience.getActiveModelName()).append(',');
+        field(json, "circuit", resilience.getCircuitState()).append(',');
+        field(json, "fallbackModel", resilience.getFallbackModelName()).append(',');
+        field(json, "fallbackCircuit", resilience.getFallbackCircuitState()).append(',');
+        field(json, "degraded", resilience.isDegraded()).append(',');
+        field(json, "latencyP95Ms", resilience.getLatencyP95Millis());
+        json.append('}');
+
+        response.setStatus(resilience.getActiveModelName() != null
+            ? HttpServletResponse.SC_OK : HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Cache-Control", "no-store");
+        response.getWriter().write(json.toString());
+    }
+
+    /**
+     * Appends {@code "name":value}; model names and enum constants need no escaping.
+     */
+    private static StringBuilder field(StringBuilder json, String name, Object value) {
+        json.append('"').append(name).append("\":");
+        if (value == null || value instanceof Number || value instanceof Boolean) {
+            return json.append(value);
+        }
+        return json.append('"').append(value).append('"');
+    }
+}
@@ -0,0 +1,146 @@
+package com.hexabiblos.chatbot.web;
+
+import com.hexabiblos.chatbot.trace.InMemorySpanExporter;
+import com.hexabiblos.chatbot.trace.Span;
+import com.hexabiblos.chatbot.trace.Tracer;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Shows the spans held by the in-memory exporter as JSON: the duration
+ * percentiles of every span name, to see which phase the tail latency comes
+ * from, and the slowest recent traces with all their spans.
+ * <pre>
+ * GET /traces?limit=20&amp;minMs=0      slowest traces first
+ * GET /traces?traceId=...           one trace
+ * </pre>
+ * Answers 404 unless {@code TRACE_EXPORTER=memory}, and only to the clients
+ * {@link OpsAccess} lets in.
+ */
+@WebServlet(urlPatterns = "/traces")
+public class TraceServlet extends HttpServlet {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int DEFAULT_LIMIT = 20;
+
+    private OpsAccess access;
+
+    @Override
+    public void init() {
+        access = OpsAccess.fromSettings();
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (!access.permits(request) || !(Tracer.getExporter() instanceof InMemorySpanExporter)) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        List<Span> spans = ((InMemorySpanExporter) Tracer.getExporter()).getSpans();
+        String traceId = request.getParameter("traceId");
+        int limit = intParameter(request, "limit", DEFAULT_LIMIT);
+        long minMicros = intParameter(request, "minMs", 0) * 1000L;
+
+        Map<String, List<Span>> byTrace = new LinkedHashMap<>();
+        Map<String, List<Long>> byName = new TreeMap<>();
+        for (Span span : spans) {
+            if (traceId == null || traceId.equals(span.getTraceId())) {
+                byTrace.computeIfAbsent(span.getTraceId(), id -> new ArrayList<>()).add(span);
+                byName.computeIfAbsent(span.getName(), name -> new ArrayList<>()).add(span.getDurationNanos() / 1000);
+            }
+        }
+
+        List<Trace> traces = new ArrayList<>(byTrace.size());
+        for (Map.Entry<String, List<Span>> entry : byTrace.entrySet()) {
+            Trace trace = new Trace(entry.getKey(), entry.getValue());
+            if (trace.durationMicros >= minMicros) {
+                traces.add(trace);
+            }
+        }
+        traces.sort(Comparator.comparingLong((Trace trace) -> trace.durationMicros).reversed());
+
+        StringBuilder json = new StringBuilder(16 * 1024).append("{\"spans\":[");
+        boolean first = true;
+        for (Map.Entry<String, List<Long>> entry : byName.entrySet()) {
+            List<Long> durations = entry.getValue();
+            durations.sort(null);
+            json.append(first ? "" : ",").append("{\"name\":\"").append(entry.getKey()).append('"')
+                .append(",\"count\":").append(durations.size())
+                .append(",\"p50Ms\":").append(percentileMillis(durations, 0.50))
+                .append(",\"p95Ms\":").append(percentileMillis(durations, 0.95))
+                .append(",\"p99Ms\":").append(percentileMillis(durations, 0.99))
+                .append(",\"maxMs\":").append(percentileMillis(durations, 1.0))
+                .append('}');
+            first = false;
+        }
+        json.append("],\"traces\":[");
+        for (int i = 0; i < Math.min(limit, traces.size()); i++) {
+            Trace trace = traces.get(i);
+            json.append((i > 0) ? "," : "").append("{\"traceId\":\"").append(trace.id).append('"')
+                .append(",\"durationMs\":").append(trace.durationMicros / 1000.0)
+                .append(",\"spans\":[");
+            for (int j = 0; j < trace.spans.size(); j++) {
+                if (j > 0) {
+                    json.append(',');
+                }
+                trace.spans.get(j).appendJson(json);
+            }
+            json.append("]}");
+        }
+        json.append("]}");
+
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Cache-Control", "no-store");
+        response.getWriter().write(json.toString());
+    }
+
+    private static double percentileMillis(List<Long> sortedMicros, double quantile) {
+        int index = (int) Math.ceil(quantile * sortedMicros.size()) - 1;
+        return sortedMicros.get(Math.max(0, Math.min(index, sortedMicros.size() - 1))) / 1000.0;
+    }
+
+    private static int intParameter(HttpServletRequest request, String name, int defaultValue) {
+        try {
+            String value = request.getParameter(name);
+            return (value != null) ? Math.max(0, Integer.parseInt(value.trim())) : defaultValue;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * The buffered spans of one trace, in start order. Its duration runs from the
+     * first start to the last end, since a reply stream may outlive its request.
+     */
+    private static final class Trace {
+
+        final String id;
+        final List<Span> spans;
+        final long durationMicros;
+
+        Trace(String id, List<Span> spans) {
+            spans.sort(Comparator.comparingLong(Span::getStartEpochMicros));
+            long start = Long.MAX_VALUE;
+            long end = Long.MIN_VALUE;
+            for (Span span : spans) {
+                start = Math.min(start, span.getStartEpochMicros());
+                end = Math.max(end, span.getStartEpochMicros() + span.getDurationNanos() / 1000);
+            }
+            this.id = id;
+            this.spans = spans;
+            this.durationMicros = end - start;
+        }
+    }
+}
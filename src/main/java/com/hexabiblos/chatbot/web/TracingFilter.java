@@ -0,0 +1,104 @@
+package com.hexabiblos.chatbot.web;
+
+import com.hexabiblos.chatbot.trace.Span;
+import com.hexabiblos.chatbot.trace.Tracer;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebFilter;
+import jakarta.servlet.http.HttpFilter;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.util.regex.Pattern;
+
+/**
+ * Opens the root span of a trace for every page and API request; the JSF phases
+ * ({@link TracingPhaseListener}), model calls and everything else traced while
+ * the request runs become its children. Asynchronous requests, such as streamed
+ * API replies, end their span when the response completes.
+ *
+ * Faces resources (scripts, style sheets) are not traced. Conversation ids in
+ * API paths are replaced by {@code {id}}: whoever knows an id can read the
+ * conversation, and spans are shown on {@code /traces} and may be written to files.
+ */
+@WebFilter(urlPatterns = {"*.xhtml", "/api/*"}, asyncSupported = true)
+public class TracingFilter extends HttpFilter {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String RESOURCE_PATH = "/jakarta.faces.resource/";
+    private static final Pattern CONVERSATION_ID = Pattern.compile("(/conversations/)[^/]+");
+
+    @Override
+    protected void doFilter(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        if (Tracer.getExporter() == null || request.getServletPath().startsWith(RESOURCE_PATH)) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        // Named by route rather than URI, so names do not carry conversation ids
+        Span span = Tracer.start("http " + request.getMethod() + " " + request.getServletPath(),
+            "http.method", request.getMethod(),
+            "http.target", CONVERSATION_ID.matcher(request.getRequestURI()).replaceFirst("$1{id}"));
+        if ("partial/ajax".equals(request.getHeader("Faces-Request"))) {
+            span.setAttribute("faces.ajax", true);
+        }
+        boolean async = false;
+        try {
+            chain.doFilter(request, response);
+            if (request.isAsyncStarted()) {
+                async = true;
+                request.getAsyncContext().addListener(new EndOnComplete(span, response));
+            }
+        } catch (IOException | ServletException | RuntimeException e) {
+            span.recordError(e);
+            throw e;
+        } finally {
+            if (async) {
+                span.leave();
+            } else {
+                span.setAttribute("http.status", response.getStatus());
+                span.end();
+            }
+        }
+    }
+
+    private static final class EndOnComplete implements AsyncListener {
+
+        private final Span span;
+        private final HttpServletResponse response;
+
+        EndOnComplete(Span span, HttpServletResponse response) {
+            this.span = span;
+            this.response = response;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            span.setAttribute("http.status", response.getStatus());
+            span.end();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            span.setAttribute("http.timeout", true);
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            if (event.getThrowable() != null) {
+                span.recordError(event.getThrowable());
+            }
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // Restarted asynchronous processing completes through the same context
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
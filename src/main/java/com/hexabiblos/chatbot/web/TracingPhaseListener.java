@@ -0,0 +1,54 @@
+package com.hexabiblos.chatbot.web;
+
+import com.hexabiblos.chatbot.trace.Span;
+import com.hexabiblos.chatbot.trace.Tracer;
+import jakarta.faces.context.FacesContext;
+import jakarta.faces.context.PartialViewContext;
+import jakarta.faces.event.PhaseEvent;
+import jakarta.faces.event.PhaseId;
+import jakarta.faces.event.PhaseListener;
+
+import java.util.Locale;
+
+/**
+ * Traces each JSF lifecycle phase as a span ({@code jsf.restore_view} ...
+ * {@code jsf.render_response}) under the request's span from
+ * {@link TracingFilter}. The render span of an AJAX request names the
+ * components it re-renders. Registered in {@code faces-config.xml}.
+ */
+public class TracingPhaseListener implements PhaseListener {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String SPAN_KEY = TracingPhaseListener.class.getName() + ".span";
+
+    @Override
+    public PhaseId getPhaseId() {
+        return PhaseId.ANY_PHASE;
+    }
+
+    @Override
+    public void beforePhase(PhaseEvent event) {
+        if (Tracer.getExporter() == null) {
+            return;
+        }
+        FacesContext faces = event.getFacesContext();
+        PhaseId phase = event.getPhaseId();
+        Span span = Tracer.start("jsf." + phase.getName().toLowerCase(Locale.ROOT));
+        if (phase == PhaseId.RENDER_RESPONSE) {
+            PartialViewContext partial = faces.getPartialViewContext();
+            if (partial.isAjaxRequest() && !partial.isRenderAll()) {
+                span.setAttribute("faces.render", String.join(" ", partial.getRenderIds()));
+            }
+        }
+        faces.getAttributes().put(SPAN_KEY, span);
+    }
+
+    @Override
+    public void afterPhase(PhaseEvent event) {
+        Span span = (Span) event.getFacesContext().getAttributes().remove(SPAN_KEY);
+        if (span != null) {
+            span.end();
+        }
+    }
+}
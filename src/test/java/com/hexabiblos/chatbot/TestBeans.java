@@ -0,0 +1,43 @@
+package com.hexabiblos.chatbot;
+
+import com.hexabiblos.chatbot.metrics.MetricsRegistry;
+
+import java.lang.reflect.Field;
+
+/**
+ * Wires beans by hand for unit tests, in place of the CDI container:
+ * sets {@code @Inject} fields and returns ready {@link MetricsRegistry} instances.
+ */
+public final class TestBeans {
+
+    private TestBeans() {
+    }
+
+    /**
+     * A registry as the container would hand it out, after {@code @PostConstruct}.
+     */
+    public static MetricsRegistry metrics() {
+        MetricsRegistry metrics = new MetricsRegistry();
+        metrics.init();
+        return metrics;
+    }
+
+    /**
+     * Sets the (usually private) field {@code name} of {@code bean}, declared on its class or a superclass.
+     */
+    public static <T> T inject(T bean, String name, Object value) {
+        for (Class<?> type = bean.getClass(); type != null; type = type.getSuperclass()) {
+            try {
+                Field field = type.getDeclaredField(name);
+                field.setAccessible(true);
+                field.set(bean, value);
+                return bean;
+            } catch (NoSuchFieldException e) {
+                // Declared further up
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Cannot set " + name, e);
+            }
+        }
+        throw new IllegalArgumentException("No field " + name + " on " + bean.getClass().getName());
+    }
+}
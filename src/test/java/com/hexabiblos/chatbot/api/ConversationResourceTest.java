@@ -0,0 +1,221 @@
+package com.hexabiblos.chatbot.api;
+
+import com.hexabiblos.chatbot.TestBeans;
+import com.hexabiblos.chatbot.metrics.MetricsRegistry;
+import com.hexabiblos.chatbot.model.ChatMessage;
+import com.hexabiblos.chatbot.service.AdmissionControl;
+import com.hexabiblos.chatbot.service.ChatModelProvider;
+import com.hexabiblos.chatbot.service.ConversationSummarizer;
+import com.hexabiblos.chatbot.service.ModelCallExecutor;
+import com.hexabiblos.chatbot.service.ModelCallExecutorTest;
+import com.hexabiblos.chatbot.store.Conversation;
+import com.hexabiblos.chatbot.store.InMemoryConversationStore;
+import com.hexabiblos.chatbot.store.TranscriptStore;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.ws.rs.core.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConversationResourceTest {
+
+    private final MetricsRegistry metrics = TestBeans.metrics();
+    private ModelCallExecutor modelCalls;
+    private ConversationSummarizer summarizer;
+    private InMemoryConversationStore conversations;
+    private ConversationResource resource;
+
+    @BeforeEach
+    void setUp() {
+        System.setProperty("TRANSCRIPT_STORE_ENABLED", "false");
+        System.setProperty("SUMMARY_ENABLED", "false");
+        System.setProperty("MODEL_MAX_CONCURRENT_CALLS", "1");
+        System.setProperty("MODEL_MAX_QUEUED_CALLS", "0");
+        System.setProperty("API_CLIENT_BURST", "2");
+        modelCalls = TestBeans.inject(new ModelCallExecutor(), "metrics", metrics);
+        modelCalls.init();
+        AdmissionControl admission = new AdmissionControl();
+        TestBeans.inject(admission, "modelCalls", modelCalls);
+        TestBeans.inject(admission, "metrics", metrics);
+        admission.init();
+        TranscriptStore transcripts = TestBeans.inject(new TranscriptStore(), "metrics", metrics);
+        transcripts.init();
+        conversations = new InMemoryConversationStore(transcripts, metrics);
+        ChatModelProvider provider = new EchoProvider();
+        summarizer = new ConversationSummarizer();
+        TestBeans.inject(summarizer, "modelProvider", provider);
+        TestBeans.inject(summarizer, "modelCalls", modelCalls);
+        TestBeans.inject(summarizer, "metrics", metrics);
+        summarizer.init();
+
+        resource = new ConversationResource();
+        TestBeans.inject(resource, "conversations", conversations);
+        TestBeans.inject(resource, "modelProvider", provider);
+        TestBeans.inject(resource, "modelCalls", modelCalls);
+        TestBeans.inject(resource, "admission", admission);
+        TestBeans.inject(resource, "summarizer", summarizer);
+        TestBeans.inject(resource, "metrics", metrics);
+    }
+
+    @AfterEach
+    void tearDown() {
+        summarizer.shutdown();
+        conversations.shutdown();
+        modelCalls.shutdown();
+        System.clearProperty("TRANSCRIPT_STORE_ENABLED");
+        System.clearProperty("SUMMARY_ENABLED");
+        System.clearProperty("MODEL_MAX_CONCURRENT_CALLS");
+        System.clearProperty("MODEL_MAX_QUEUED_CALLS");
+        System.clearProperty("API_CLIENT_BURST");
+    }
+
+    /**
+     * A request from {@code address}, as far as the resources look at it.
+     */
+    static HttpServletRequest requestFrom(String address) {
+        return (HttpServletRequest) Proxy.newProxyInstance(HttpServletRequest.class.getClassLoader(),
+            new Class<?>[] {HttpServletRequest.class},
+            (proxy, method, args) -> method.getName().equals("getRemoteAddr") ? address : null);
+    }
+
+    private String create() {
+        Response created = resource.create();
+        assertEquals(201, created.getStatus());
+        return (String) ((Map<?, ?>) created.getEntity()).get("id");
+    }
+
+    private Object send(String id, String text) throws Exception {
+        SendRequest request = new SendRequest();
+        request.text = text;
+        SuspendedResponse response = new SuspendedResponse();
+        resource.send(id, request, response.async);
+        return response.await();
+    }
+
+    @Test
+    void sendsAndAnswersWithTheReply() throws Exception {
+        String id = create();
+
+        Object result = send(id, "  opening hours?  ");
+
+        ApiMessage reply = (ApiMessage) ((Map<?, ?>) result).get("reply");
+        assertEquals("assistant", reply.role);
+        assertEquals("You said: opening hours?", reply.text);
+        List<?> page = (List<?>) resource.messages(id, 0, 50).getEntity();
+        assertEquals(2, page.size());
+        assertEquals("opening hours?", ((ApiMessage) page.get(0)).text);
+        assertEquals(1, ((List<?>) resource.messages(id, 1, 50).getEntity()).size());
+    }
+
+    @Test
+    void unknownConversationIsNotFound() throws Exception {
+        assertEquals(404, ((Response) send("missing", "hello")).getStatus());
+        assertEquals(404, resource.messages("missing", 0, 10).getStatus());
+    }
+
+    @Test
+    void rejectsBlankAndOversizedMessages() throws Exception {
+        String id = create();
+
+        assertEquals(400, ((Response) send(id, "   ")).getStatus());
+        assertEquals(400, ((Response) send(id, "x".repeat(2001))).getStatus());
+        assertEquals(0, conversations.find(id).getMessageCount());
+    }
+
+    @Test
+    void allowsOneReplyAtATime() throws Exception {
+        String id = create();
+        Conversation conversation = conversations.find(id);
+        synchronized (conversation) {
+            conversation.startReply();
+        }
+
+        Response conflict = (Response) send(id, "hello");
+
+        assertEquals(409, conflict.getStatus());
+        assertEquals(0, conversation.getMessageCount());
+    }
+
+    @Test
+    void turnsAwaySendsWhileModelCallsAreSaturated() throws Exception {
+        String id = create();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> busy = modelCalls.submit(() -> {
+            started.countDown();
+            release.await();
+            return "done";
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Response rejected;
+        try {
+            rejected = (Response) send(id, "hello");
+        } finally {
+            release.countDown();
+        }
+        busy.join();
+
+        assertEquals(429, rejected.getStatus());
+        assertNotNull(rejected.getHeaderString("Retry-After"));
+        assertEquals(0, conversations.find(id).getMessageCount());
+        // The turned-away send did not leave the conversation marked as replying
+        assertInstanceOf(Map.class, send(id, "hello"));
+    }
+
+    @Test
+    void limitsSendsPerClient() throws Exception {
+        String id = create();
+        TestBeans.inject(resource, "servletRequest", requestFrom("10.0.0.1"));
+        assertInstanceOf(Map.class, send(id, "one"));
+        // The single permit is released just after the reply is handed over
+        ModelCallExecutorTest.awaitCondition("permit released", () -> modelCalls.getInFlightCalls() == 0);
+        assertInstanceOf(Map.class, send(id, "two"));
+        ModelCallExecutorTest.awaitCondition("permit released", () -> modelCalls.getInFlightCalls() == 0);
+
+        Response rejected = (Response) send(id, "three");
+
+        assertEquals(429, rejected.getStatus());
+        assertEquals(4, conversations.find(id).getMessageCount());
+        TestBeans.inject(resource, "servletRequest", requestFrom("10.0.0.2"));
+        ModelCallExecutorTest.awaitCondition("permit released", () -> modelCalls.getInFlightCalls() == 0);
+        assertInstanceOf(Map.class, send(id, "from elsewhere"));
+    }
+
+    static final class EchoProvider implements ChatModelProvider {
+
+        @Override
+        public String generateResponse(List<ChatMessage> messages) {
+            return "You said: " + messages.get(messages.size() - 1).getText();
+        }
+
+        @Override
+        public String streamResponse(List<ChatMessage> messages, Consumer<String> onChunk) {
+            String text = generateResponse(messages);
+            onChunk.accept(text);
+            return text;
+        }
+
+        @Override
+        public String getModelName() {
+            return "echo";
+        }
+
+        @Override
+        public boolean isDemoMode() {
+            return false;
+        }
+    }
+}
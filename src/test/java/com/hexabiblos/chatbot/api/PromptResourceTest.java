@@ -0,0 +1,193 @@
+package com.hexabiblos.chatbot.api;
+
+import com.hexabiblos.chatbot.TestBeans;
+import com.hexabiblos.chatbot.metrics.MetricsRegistry;
+import com.hexabiblos.chatbot.service.AdmissionControl;
+import com.hexabiblos.chatbot.service.CachingModelProvider;
+import com.hexabiblos.chatbot.service.ModelCallExecutor;
+import com.hexabiblos.chatbot.service.ModelCallExecutorTest;
+import com.hexabiblos.chatbot.service.ResponseCache;
+import jakarta.ws.rs.core.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PromptResourceTest {
+
+    private final MetricsRegistry metrics = TestBeans.metrics();
+    private ModelCallExecutor modelCalls;
+    private PromptResource resource;
+
+    @BeforeEach
+    void setUp() {
+        System.setProperty("MODEL_MAX_CONCURRENT_CALLS", "2");
+        System.setProperty("MODEL_MAX_QUEUED_CALLS", "0");
+        System.setProperty("API_MAX_BATCH", "3");
+        System.setProperty("API_CLIENT_BURST", "2");
+        modelCalls = TestBeans.inject(new ModelCallExecutor(), "metrics", metrics);
+        modelCalls.init();
+        AdmissionControl admission = new AdmissionControl();
+        TestBeans.inject(admission, "modelCalls", modelCalls);
+        TestBeans.inject(admission, "metrics", metrics);
+        admission.init();
+
+        resource = new PromptResource();
+        TestBeans.inject(resource, "modelProvider", new ConversationResourceTest.EchoProvider());
+        TestBeans.inject(resource, "modelCalls", modelCalls);
+        TestBeans.inject(resource, "admission", admission);
+    }
+
+    @AfterEach
+    void tearDown() {
+        modelCalls.shutdown();
+        System.clearProperty("MODEL_MAX_CONCURRENT_CALLS");
+        System.clearProperty("MODEL_MAX_QUEUED_CALLS");
+        System.clearProperty("API_MAX_BATCH");
+        System.clearProperty("API_CLIENT_BURST");
+    }
+
+    private static PromptBatch batch(String... texts) {
+        PromptBatch batch = new PromptBatch();
+        batch.prompts = new ArrayList<>();
+        for (String text : texts) {
+            PromptBatch.Prompt prompt = new PromptBatch.Prompt();
+            prompt.text = text;
+            batch.prompts.add(prompt);
+        }
+        return batch;
+    }
+
+    private Object run(PromptBatch batch) throws Exception {
+        SuspendedResponse response = new SuspendedResponse();
+        resource.run(batch, response.async);
+        return response.await();
+    }
+
+    private List<PromptBatch.Result> results(PromptBatch batch) throws Exception {
+        return ((PromptBatch.Results) run(batch)).results;
+    }
+
+    @Test
+    void answersEachPromptInRequestOrder() throws Exception {
+        List<PromptBatch.Result> results = results(batch("one", "two", "three"));
+
+        assertEquals(3, results.size());
+        assertEquals("You said: one", results.get(0).text);
+        assertEquals("You said: two", results.get(1).text);
+        assertEquals("You said: three", results.get(2).text);
+        assertNull(results.get(0).error);
+    }
+
+    @Test
+    void answersAPromptWithEarlierTurns() throws Exception {
+        PromptBatch batch = batch("and on sundays?");
+        ApiMessage earlier = new ApiMessage();
+        earlier.role = "user";
+        earlier.text = "opening hours?";
+        batch.prompts.get(0).messages = List.of(earlier);
+
+        assertEquals("You said: and on sundays?", results(batch).get(0).text);
+    }
+
+    @Test
+    void rejectsEmptyAndOversizedBatches() throws Exception {
+        assertEquals(400, ((Response) run(new PromptBatch())).getStatus());
+        assertEquals(400, ((Response) run(batch("a", "b", "c", "d"))).getStatus());
+    }
+
+    @Test
+    void failsInvalidPromptsWhileTheRestRun() throws Exception {
+        List<PromptBatch.Result> results = results(batch("  ", "x".repeat(2001), "fine"));
+
+        assertEquals("Prompt text is required", results.get(0).error);
+        assertNotNull(results.get(1).error);
+        assertEquals("You said: fine", results.get(2).text);
+    }
+
+    /**
+     * Occupies every model-call permit until the returned latch is released.
+     */
+    private CountDownLatch saturate(List<CompletableFuture<String>> busy) throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 2; i++) {
+            busy.add(modelCalls.submit(() -> {
+                started.countDown();
+                release.await();
+                return "done";
+            }));
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        return release;
+    }
+
+    @Test
+    void turnedAwayPromptsCarryRetryAfter() throws Exception {
+        List<CompletableFuture<String>> busy = new ArrayList<>();
+        CountDownLatch release = saturate(busy);
+        List<PromptBatch.Result> results;
+        try {
+            results = results(batch("one", "two"));
+        } finally {
+            release.countDown();
+        }
+        busy.forEach(CompletableFuture::join);
+
+        for (PromptBatch.Result result : results) {
+            assertNull(result.text);
+            assertNotNull(result.error);
+            assertNotNull(result.retryAfter);
+        }
+    }
+
+    @Test
+    void chargesEachPromptToTheClient() throws Exception {
+        TestBeans.inject(resource, "servletRequest", ConversationResourceTest.requestFrom("10.0.0.1"));
+
+        List<PromptBatch.Result> results = results(batch("one", "two", "three"));
+
+        assertEquals("You said: one", results.get(0).text);
+        assertEquals("You said: two", results.get(1).text);
+        assertNull(results.get(2).text);
+        assertNotNull(results.get(2).retryAfter);
+        ModelCallExecutorTest.awaitCondition("permits released", () -> modelCalls.getInFlightCalls() == 0);
+        TestBeans.inject(resource, "servletRequest", ConversationResourceTest.requestFrom("10.0.0.2"));
+        assertEquals("You said: four", results(batch("four")).get(0).text);
+    }
+
+    @Test
+    void answersCachedPromptsWithoutAPermit() throws Exception {
+        ResponseCache cache = TestBeans.inject(new ResponseCache(), "metrics", metrics);
+        cache.init();
+        TestBeans.inject(resource, "modelProvider",
+            new CachingModelProvider(new ConversationResourceTest.EchoProvider(), cache, null));
+        assertEquals("You said: hours?", results(batch("hours?")).get(0).text);
+        ModelCallExecutorTest.awaitCondition("permit released", () -> modelCalls.getInFlightCalls() == 0);
+
+        List<CompletableFuture<String>> busy = new ArrayList<>();
+        CountDownLatch release = saturate(busy);
+        List<PromptBatch.Result> results;
+        try {
+            results = results(batch("Hours?", "other"));
+        } finally {
+            release.countDown();
+        }
+        busy.forEach(CompletableFuture::join);
+
+        assertEquals("You said: hours?", results.get(0).text);
+        assertNotNull(results.get(1).retryAfter);
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+}
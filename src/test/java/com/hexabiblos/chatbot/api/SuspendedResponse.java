@@ -0,0 +1,39 @@
+package com.hexabiblos.chatbot.api;
+
+import jakarta.ws.rs.container.AsyncResponse;
+import jakarta.ws.rs.core.Response;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stands in for the container's {@link AsyncResponse} and captures what the resource resumes it with.
+ */
+final class SuspendedResponse {
+
+    private final CompletableFuture<Object> resumed = new CompletableFuture<>();
+
+    final AsyncResponse async = (AsyncResponse) Proxy.newProxyInstance(AsyncResponse.class.getClassLoader(),
+        new Class<?>[] {AsyncResponse.class}, (proxy, method, args) -> {
+            if (method.getName().equals("resume") && args.length == 1) {
+                return resumed.complete(args[0]);
+            }
+            // Timeouts and callbacks are the container's business
+            return (method.getReturnType() == boolean.class) ? Boolean.TRUE : null;
+        });
+
+    /**
+     * The entity or response the resource resumed with, waiting up to five seconds for it.
+     */
+    Object await() throws Exception {
+        return resumed.get(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * The error response the resource resumed with.
+     */
+    Response awaitResponse() throws Exception {
+        return (Response) await();
+    }
+}
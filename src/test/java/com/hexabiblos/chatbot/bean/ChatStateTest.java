@@ -0,0 +1,128 @@
+package com.hexabiblos.chatbot.bean;
+
+import com.hexabiblos.chatbot.TestBeans;
+import com.hexabiblos.chatbot.model.ChatMessage;
+import com.hexabiblos.chatbot.model.CompactIO;
+import com.hexabiblos.chatbot.model.ContextWindow;
+import com.hexabiblos.chatbot.model.ConversationHistory;
+import com.hexabiblos.chatbot.service.TokenBucket;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChatStateTest {
+
+    private interface Writer {
+        void write(ObjectOutputStream out) throws IOException;
+    }
+
+    private static ChatState roundTrip(ChatState state) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(state);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (ChatState) in.readObject();
+        }
+    }
+
+    /**
+     * Reads raw externalized state, as an older release wrote it.
+     */
+    private static ChatState readExternal(Writer writer) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            writer.write(out);
+        }
+        ChatState state = new ChatState();
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            state.readExternal(in);
+            assertEquals(-1, in.read(), "every byte read");
+        }
+        return state;
+    }
+
+    @Test
+    void roundTripsDetachedConversation() throws Exception {
+        ChatState state = new ChatState();
+        state.setMessages(List.of(
+            new ChatMessage(ChatMessage.Role.USER, "What are your hours?"),
+            new ChatMessage(ChatMessage.Role.ASSISTANT, "Nine to five, " + "every weekday ".repeat(40))));
+        state.setInputText("draft reply");
+        TestBeans.inject(state, "sendAllowance", new TokenBucket(5, 0));
+
+        ChatState copy = roundTrip(state);
+
+        assertEquals(state.getConversationId(), copy.getConversationId());
+        assertEquals("draft reply", copy.getInputText());
+        assertFalse(copy.isLoading());
+        assertFalse(copy.isAwaitingReply());
+        List<ChatMessage> expected = state.getMessages();
+        List<ChatMessage> actual = copy.getMessages();
+        assertEquals(2, actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertTrue(expected.get(i).sameAs(actual.get(i)), "message " + i);
+        }
+    }
+
+    @Test
+    void roundTripsIdThatIsNotUuid() throws Exception {
+        ChatState state = new ChatState();
+        TestBeans.inject(state, "conversationId", "legacy-cookie-id");
+
+        assertEquals("legacy-cookie-id", roundTrip(state).getConversationId());
+    }
+
+    @Test
+    void readsVersionOneSessions() throws IOException {
+        UUID id = UUID.randomUUID();
+        ConversationHistory history = new ConversationHistory(100, 50);
+        ContextWindow window = new ContextWindow(8000);
+        for (ChatMessage message : List.of(
+                new ChatMessage(ChatMessage.Role.ASSISTANT, "Welcome!"),
+                new ChatMessage(ChatMessage.Role.USER, "hi"))) {
+            history.add(message);
+            window.append(message);
+        }
+
+        ChatState state = readExternal(out -> {
+            out.writeByte(1);
+            out.writeBoolean(true);
+            out.writeLong(id.getMostSignificantBits());
+            out.writeLong(id.getLeastSignificantBits());
+            CompactIO.writeVarInt(out, 2);  // message count
+            CompactIO.writeVarInt(out, 3);  // generation
+            CompactIO.writeVarInt(out, 50); // visible count
+            out.writeByte(2 | 4);           // awaiting a reply, with a send allowance
+            CompactIO.writeString(out, "draft");
+            new TokenBucket(5, 1).writeTo(out);
+            history.writeTo(out);
+            window.writeTo(out, history);
+        });
+
+        assertEquals(id.toString(), state.getConversationId());
+        assertEquals("draft", state.getInputText());
+        assertTrue(state.isAwaitingReply());
+        // Version 1 kept the conversation in the session; it is looked up in the store again,
+        // and without a store the view starts over under the same id
+        assertEquals(1, state.getMessages().size());
+        assertEquals(id.toString(), state.getConversationId());
+    }
+
+    @Test
+    void rejectsNewerVersions() {
+        assertThrows(InvalidObjectException.class, () -> readExternal(out -> out.writeByte(3)));
+    }
+}
@@ -0,0 +1,120 @@
+package com.hexabiblos.chatbot.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CompactIOTest {
+
+    private interface Writer {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private static byte[] bytes(Writer writer) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writer.write(out);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static DataInputStream input(byte[] bytes) {
+        return new DataInputStream(new ByteArrayInputStream(bytes));
+    }
+
+    @Test
+    void varLongRoundTripsAndStaysShortForSmallValues() throws IOException {
+        long[] values = {0, 1, 127, 128, 16_383, 16_384, Integer.MAX_VALUE, 1_700_000_000_000L, Long.MAX_VALUE, -1};
+        int[] lengths = {1, 1, 1, 2, 2, 3, 5, 6, 9, 10};
+        for (int i = 0; i < values.length; i++) {
+            long value = values[i];
+            byte[] encoded = bytes(out -> CompactIO.writeVarLong(out, value));
+            assertEquals(lengths[i], encoded.length, "length of " + value);
+            assertEquals(value, CompactIO.readVarLong(input(encoded)));
+        }
+    }
+
+    @Test
+    void varIntKeepsNegativeValues() throws IOException {
+        for (int value : new int[] {0, 300, -1, Integer.MIN_VALUE, Integer.MAX_VALUE}) {
+            byte[] encoded = bytes(out -> CompactIO.writeVarInt(out, value));
+            assertEquals(value, CompactIO.readVarInt(input(encoded)));
+        }
+    }
+
+    @Test
+    void signedVarLongKeepsSmallMagnitudesShort() throws IOException {
+        long[] values = {0, -1, 1, -64, 63, -65, Long.MIN_VALUE, Long.MAX_VALUE};
+        for (long value : values) {
+            byte[] encoded = bytes(out -> CompactIO.writeSignedVarLong(out, value));
+            assertEquals(value, CompactIO.readSignedVarLong(input(encoded)));
+        }
+        assertEquals(1, bytes(out -> CompactIO.writeSignedVarLong(out, -64)).length);
+        assertEquals(2, bytes(out -> CompactIO.writeSignedVarLong(out, -65)).length);
+    }
+
+    @Test
+    void rejectsVarintWithoutEnd() {
+        byte[] endless = new byte[11];
+        Arrays.fill(endless, (byte) 0x80);
+
+        assertThrows(InvalidObjectException.class, () -> CompactIO.readVarLong(input(endless)));
+    }
+
+    @Test
+    void stringsRoundTripIncludingNullAndLongText() throws IOException {
+        String longText = "x".repeat(70_000); // past the 64 KB limit of writeUTF
+        String[] values = {null, "", "hello", "grüße, 你好 👋", longText};
+        byte[] encoded = bytes(out -> {
+            for (String value : values) {
+                CompactIO.writeString(out, value);
+            }
+        });
+
+        DataInputStream in = input(encoded);
+        for (String value : values) {
+            assertEquals(value, CompactIO.readString(in));
+        }
+        assertEquals(-1, in.read());
+        assertEquals(1, bytes(out -> CompactIO.writeString(out, null)).length);
+    }
+
+    @Test
+    void bytesRoundTrip() throws IOException {
+        byte[] value = {0, -1, 42};
+        byte[] encoded = bytes(out -> CompactIO.writeBytes(out, value));
+
+        assertArrayEquals(value, CompactIO.readBytes(input(encoded)));
+    }
+
+    @Test
+    void rejectsCorruptLengthsBeforeAllocating() throws IOException {
+        byte[] huge = bytes(out -> CompactIO.writeVarInt(out, Integer.MAX_VALUE));
+        byte[] negative = bytes(out -> CompactIO.writeVarInt(out, -5));
+
+        assertThrows(InvalidObjectException.class, () -> CompactIO.readString(input(huge)));
+        assertThrows(InvalidObjectException.class, () -> CompactIO.readBytes(input(negative)));
+        assertThrows(EOFException.class, () -> CompactIO.readString(input(new byte[] {10, 'a'})));
+    }
+
+    @Test
+    void acceptsOnlyKnownVersions() throws IOException {
+        assertEquals(2, CompactIO.readVersion(input(new byte[] {2}), 2, "Test"));
+        assertEquals(1, CompactIO.readVersion(input(new byte[] {1}), 2, "Test"));
+        assertThrows(InvalidObjectException.class, () -> CompactIO.readVersion(input(new byte[] {0}), 2, "Test"));
+        assertThrows(InvalidObjectException.class, () -> CompactIO.readVersion(input(new byte[] {3}), 2, "Test"));
+        assertNull(CompactIO.readString(input(new byte[] {0})));
+    }
+}
@@ -0,0 +1,135 @@
+package com.hexabiblos.chatbot.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ContextWindowTest {
+
+    private static ChatMessage user(String text) {
+        return new ChatMessage(ChatMessage.Role.USER, text);
+    }
+
+    private static ChatMessage assistant(String text) {
+        return new ChatMessage(ChatMessage.Role.ASSISTANT, text);
+    }
+
+    private static String words(int tokens) {
+        // One 4-letter word is one token
+        return "word ".repeat(tokens).trim();
+    }
+
+    @Test
+    void dropsOldestTurnsOnceOverBudget() {
+        ContextWindow window = new ContextWindow(10);
+        ChatMessage first = user(words(4));
+        ChatMessage second = assistant(words(4));
+        ChatMessage third = user(words(4));
+
+        window.append(first);
+        window.append(second);
+        assertEquals(8, window.getTokenCount());
+        window.append(third);
+
+        assertEquals(List.of(second, third), window.getMessages());
+        assertEquals(8, window.getTokenCount());
+    }
+
+    @Test
+    void keepsNewestMessageEvenIfItAloneExceedsBudget() {
+        ContextWindow window = new ContextWindow(5);
+        window.append(user(words(2)));
+        ChatMessage huge = assistant(words(50));
+
+        window.append(huge);
+
+        assertEquals(List.of(huge), window.getMessages());
+        assertEquals(50, window.getTokenCount());
+    }
+
+    @Test
+    void systemMessagesNeverEnterTheWindow() {
+        ContextWindow window = new ContextWindow(100);
+        window.append(new ChatMessage(ChatMessage.Role.SYSTEM, "Chat cleared."));
+        window.append(null);
+
+        assertEquals(0, window.size());
+        assertEquals(0, window.getTokenCount());
+    }
+
+    @Test
+    void clearEmptiesTheWindow() {
+        ContextWindow window = new ContextWindow(100);
+        window.append(user("hello there"));
+
+        window.clear();
+
+        assertTrue(window.getMessages().isEmpty());
+        assertEquals(0, window.getTokenCount());
+        assertEquals(100, window.getTokenBudget());
+    }
+
+    private static ContextWindow windowOf(ChatMessage... turns) {
+        ContextWindow window = new ContextWindow(1000);
+        for (ChatMessage turn : turns) {
+            window.append(turn);
+        }
+        return window;
+    }
+
+    @Test
+    void compactionIsDueOnlyAboveTheTrigger() {
+        ContextWindow window = windowOf(user("a"), assistant("b"), user("c"));
+
+        assertNull(window.beginCompaction(3, 1000, 1));
+        assertNull(window.beginCompaction(10, 1, 3), "nothing older than the kept turns");
+        assertEquals(2, window.beginCompaction(2, 1000, 1).size());
+    }
+
+    @Test
+    void onlyOneCompactionRunsAtATime() {
+        ContextWindow window = windowOf(user("a"), assistant("b"), user("c"));
+
+        assertEquals(List.of(window.getMessages().get(0)), window.beginCompaction(2, 1000, 2));
+        assertNull(window.beginCompaction(2, 1000, 2));
+
+        window.abortCompaction();
+        assertEquals(1, window.beginCompaction(2, 1000, 2).size());
+    }
+
+    @Test
+    void summaryReplacesCompactedTurnsAndLeadsTheWindow() {
+        ChatMessage newest = user("and on sundays");
+        ContextWindow window = windowOf(user("opening hours"), assistant("nine to five"), newest);
+        List<ChatMessage> oldest = window.beginCompaction(2, 1000, 1);
+
+        assertTrue(window.applySummary(oldest, "They open nine to five."));
+
+        List<ChatMessage> messages = window.getMessages();
+        assertEquals(2, messages.size());
+        assertEquals(ContextWindow.SUMMARY_PREFIX + "They open nine to five.", messages.get(0).getText());
+        assertEquals(newest, messages.get(1));
+        assertEquals("They open nine to five.", window.getSummary());
+        assertEquals(1, window.size());
+        assertEquals(TokenEstimator.estimate(messages.get(0).getText()) + TokenEstimator.estimate(newest.getText()),
+            window.getTokenCount());
+    }
+
+    @Test
+    void staleSummaryIsDiscarded() {
+        ContextWindow window = windowOf(user("a"), assistant("b"), user("c"));
+        List<ChatMessage> oldest = window.beginCompaction(2, 1000, 1);
+
+        window.clear();
+        window.append(user("fresh start"));
+
+        assertFalse(window.applySummary(oldest, "Old summary."));
+        assertNull(window.getSummary());
+        assertEquals(1, window.getMessages().size());
+    }
+}
@@ -0,0 +1,155 @@
+package com.hexabiblos.chatbot.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConversationHistoryTest {
+
+    private static final long T0 = 1_700_000_000_000L;
+
+    private static ChatMessage message(ChatMessage.Role role, String text, long timestamp) {
+        return new ChatMessage((role == null) ? (byte) -1 : (byte) role.ordinal(), text, timestamp);
+    }
+
+    private static List<ChatMessage> sample() {
+        List<ChatMessage> messages = new ArrayList<>();
+        messages.add(message(ChatMessage.Role.ASSISTANT, "Welcome!", T0));
+        messages.add(message(ChatMessage.Role.USER, "A long question " + "lorem ipsum ".repeat(60), T0 + 1_500));
+        // Clocks can step back; gaps are written signed
+        messages.add(message(ChatMessage.Role.ASSISTANT, "A long answer " + "dolor sit amet ".repeat(60), T0 + 900));
+        messages.add(message(ChatMessage.Role.SYSTEM, "Chat cleared.", T0 + 60_000));
+        messages.add(message(null, null, 0));
+        messages.add(message(ChatMessage.Role.USER, "grüße 👋", T0 + 61_000));
+        return messages;
+    }
+
+    private static void assertSameMessages(List<ChatMessage> expected, List<ChatMessage> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertTrue(expected.get(i).sameAs(actual.get(i)), "message " + i);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T roundTrip(T value) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (T) in.readObject();
+        }
+    }
+
+    @Test
+    void roundTripsCompressedAndPlainMessages() throws Exception {
+        // An uncompressed tail of 1 deflates the long texts once newer messages arrive
+        ConversationHistory history = new ConversationHistory(10, 1);
+        sample().forEach(history::add);
+
+        ConversationHistory copy = roundTrip(history);
+
+        assertEquals(10, copy.getMaxMessages());
+        assertSameMessages(sample(), copy.tail(10));
+    }
+
+    @Test
+    void keepsOnlyNewestMessagesAndEvictionCount() throws Exception {
+        ConversationHistory history = new ConversationHistory(4, 2);
+        sample().forEach(history::add);
+
+        ConversationHistory copy = roundTrip(history);
+
+        assertEquals(4, copy.size());
+        assertEquals(2, copy.getEvictedCount());
+        assertSameMessages(sample().subList(2, 6), copy.tail(4));
+        // The ring buffer keeps working after a read, which starts it at slot 0
+        copy.add(message(ChatMessage.Role.ASSISTANT, "next", T0 + 62_000));
+        assertEquals("next", copy.get(3).getText());
+        assertEquals(3, copy.getEvictedCount());
+    }
+
+    @Test
+    void rejectsMoreMessagesThanCapacity() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeByte(1);
+            CompactIO.writeVarInt(out, 2); // capacity
+            CompactIO.writeVarInt(out, 1);
+            CompactIO.writeVarLong(out, 0);
+            CompactIO.writeVarInt(out, 3); // messages
+        }
+
+        ConversationHistory history = new ConversationHistory();
+        assertThrows(InvalidObjectException.class,
+            () -> history.readExternal(new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+    }
+
+    @Test
+    void windowWrittenWithItsHistoryRefersToIt() throws Exception {
+        ConversationHistory history = new ConversationHistory(10, 5);
+        ContextWindow window = new ContextWindow(8000);
+        for (ChatMessage message : sample()) {
+            history.add(message);
+            window.append(message);
+        }
+
+        ByteArrayOutputStream historyOnly = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(historyOnly)) {
+            history.writeExternal(out);
+        }
+        ByteArrayOutputStream withHistory = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(withHistory)) {
+            history.writeExternal(out);
+            window.writeTo(out, history);
+        }
+        ByteArrayOutputStream alone = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(alone)) {
+            window.writeTo(out, null);
+        }
+
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(withHistory.toByteArray()));
+        ConversationHistory historyCopy = new ConversationHistory();
+        historyCopy.readExternal(in);
+        ContextWindow windowCopy = new ContextWindow();
+        windowCopy.readFrom(in, historyCopy);
+
+        assertEquals(-1, in.read());
+        assertSameMessages(window.getMessages(), windowCopy.getMessages());
+        assertEquals(window.getTokenCount(), windowCopy.getTokenCount());
+        assertEquals(8000, windowCopy.getTokenBudget());
+        // Only the span is written, not the messages a second time
+        assertTrue(withHistory.size() - historyOnly.size() < 32);
+        assertTrue(alone.size() > 1_000);
+    }
+
+    @Test
+    void windowWrittenAloneCarriesItsMessages() throws Exception {
+        ContextWindow window = new ContextWindow(8000);
+        sample().forEach(window::append);
+
+        ContextWindow copy = roundTrip(window);
+
+        assertSameMessages(window.getMessages(), copy.getMessages());
+        assertEquals(window.getTokenCount(), copy.getTokenCount());
+    }
+
+    @Test
+    void messageRoundTrips() throws Exception {
+        for (ChatMessage message : sample()) {
+            assertTrue(message.sameAs(roundTrip(message)));
+        }
+    }
+}
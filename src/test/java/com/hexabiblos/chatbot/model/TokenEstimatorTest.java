@@ -0,0 +1,35 @@
+package com.hexabiblos.chatbot.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TokenEstimatorTest {
+
+    @Test
+    void emptyTextIsFree() {
+        assertEquals(0, TokenEstimator.estimate(null));
+        assertEquals(0, TokenEstimator.estimate(""));
+        assertEquals(0, TokenEstimator.estimate("  \n\t "));
+    }
+
+    @Test
+    void asciiWordsCostOneTokenPerStartedFourCharacters() {
+        assertEquals(1, TokenEstimator.estimate("hi"));
+        assertEquals(1, TokenEstimator.estimate("help"));
+        assertEquals(2, TokenEstimator.estimate("hello"));
+        assertEquals(5, TokenEstimator.estimate("the opening hours"));
+    }
+
+    @Test
+    void nonAsciiWordsCostOneTokenPerStartedTwoCharacters() {
+        assertEquals(3, TokenEstimator.estimate("καλημέρα".substring(0, 5)));
+        assertEquals(4, TokenEstimator.estimate("καλημέρα"));
+    }
+
+    @Test
+    void everySymbolCostsOneToken() {
+        assertEquals(3, TokenEstimator.estimate("hi?!"));
+        assertEquals(5, TokenEstimator.estimate("a+b=c"));
+    }
+}
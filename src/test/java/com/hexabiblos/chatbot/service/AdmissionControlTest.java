@@ -0,0 +1,116 @@
+package com.hexabiblos.chatbot.service;
+
+import com.hexabiblos.chatbot.TestBeans;
+import com.hexabiblos.chatbot.metrics.MetricsRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdmissionControlTest {
+
+    private final MetricsRegistry metrics = TestBeans.metrics();
+    private ModelCallExecutor modelCalls;
+
+    @AfterEach
+    void shutdown() {
+        if (modelCalls != null) {
+            modelCalls.shutdown();
+        }
+        System.clearProperty("MODEL_MAX_CONCURRENT_CALLS");
+        System.clearProperty("MODEL_MAX_QUEUED_CALLS");
+        System.clearProperty("SESSION_RATE_PER_MINUTE");
+        System.clearProperty("SESSION_BURST");
+        System.clearProperty("API_CLIENT_BURST");
+    }
+
+    private AdmissionControl admission(int maxConcurrent, int maxQueued, double ratePerMinute, double burst) {
+        System.setProperty("MODEL_MAX_CONCURRENT_CALLS", String.valueOf(maxConcurrent));
+        System.setProperty("MODEL_MAX_QUEUED_CALLS", String.valueOf(maxQueued));
+        System.setProperty("SESSION_RATE_PER_MINUTE", String.valueOf(ratePerMinute));
+        System.setProperty("SESSION_BURST", String.valueOf(burst));
+        modelCalls = TestBeans.inject(new ModelCallExecutor(), "metrics", metrics);
+        modelCalls.init();
+        AdmissionControl admission = new AdmissionControl();
+        TestBeans.inject(admission, "modelCalls", modelCalls);
+        TestBeans.inject(admission, "metrics", metrics);
+        admission.init();
+        return admission;
+    }
+
+    private long count(String name, String... labels) {
+        return metrics.counter(name, "", labels).get();
+    }
+
+    @Test
+    void limitsEachSessionToItsBurst() {
+        AdmissionControl admission = admission(4, 4, 1, 2);
+        TokenBucket session = admission.newSessionBucket();
+        TokenBucket otherSession = admission.newSessionBucket();
+
+        assertNull(admission.admit(session));
+        assertNull(admission.admit(session));
+        String rejected = admission.admit(session);
+        assertNotNull(rejected);
+        assertTrue(rejected.endsWith("Please retry in 60 s."), rejected);
+        assertNull(admission.admit(otherSession));
+
+        assertEquals(3, count("chat_admission_admitted_total"));
+        assertEquals(1, count("chat_admission_rejected_total", "reason", "session_rate"));
+    }
+
+    @Test
+    void limitsEachApiClientToItsBurst() {
+        System.setProperty("API_CLIENT_BURST", "2");
+        AdmissionControl admission = admission(4, 4, 1, 5);
+
+        assertNull(admission.admitClient("addr:10.0.0.1"));
+        assertNull(admission.admitClient("addr:10.0.0.1"));
+        String rejected = admission.admitClient("addr:10.0.0.1");
+        assertNotNull(rejected);
+        assertTrue(rejected.endsWith("Please retry in 60 s."), rejected);
+        assertNull(admission.admitClient("addr:10.0.0.2"));
+        assertNull(admission.admitClient(null), "no client to charge");
+
+        assertEquals(1, count("chat_admission_rejected_total", "reason", "client_rate"));
+    }
+
+    @Test
+    void zeroRateDisablesSessionLimit() {
+        AdmissionControl admission = admission(4, 4, 0, 2);
+
+        assertNull(admission.newSessionBucket());
+        for (int i = 0; i < 10; i++) {
+            assertNull(admission.admit(null));
+            assertNull(admission.admitClient("addr:10.0.0.1"), "the client rate follows the session rate");
+        }
+    }
+
+    @Test
+    void rejectsWhenModelCallsAreSaturatedWithoutSpendingTokens() throws Exception {
+        AdmissionControl admission = admission(1, 0, 1, 1);
+        TokenBucket session = admission.newSessionBucket();
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Boolean> call = modelCalls.submit(() -> release.await(5, TimeUnit.SECONDS));
+        ModelCallExecutorTest.awaitCondition("permit taken", () -> modelCalls.getInFlightCalls() == 1);
+
+        String busy = admission.admit(session);
+
+        assertTrue(ChatModelProvider.isBusyResponse(busy), busy);
+        assertEquals(1, count("chat_admission_rejected_total", "reason", "queue_full"));
+
+        release.countDown();
+        assertTrue(call.get(5, TimeUnit.SECONDS));
+        // The permit is released just after the result is handed over
+        ModelCallExecutorTest.awaitCondition("permit released", () -> modelCalls.getInFlightCalls() == 0);
+        // The global rejection left the session's only token in place
+        assertNull(admission.admit(session));
+    }
+}
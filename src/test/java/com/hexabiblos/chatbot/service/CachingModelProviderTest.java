@@ -0,0 +1,145 @@
+package com.hexabiblos.chatbot.service;
+
+import com.hexabiblos.chatbot.TestBeans;
+import com.hexabiblos.chatbot.model.ChatMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class CachingModelProviderTest {
+
+    private ResponseCache cache;
+
+    @BeforeEach
+    void createCache() {
+        cache = TestBeans.inject(new ResponseCache(), "metrics", TestBeans.metrics());
+        cache.init();
+    }
+
+    @AfterEach
+    void clearCache() {
+        cache.clear();
+    }
+
+    private static List<ChatMessage> ask(String text) {
+        return List.of(new ChatMessage(ChatMessage.Role.USER, text));
+    }
+
+    @Test
+    void answersRepeatedPromptFromCache() {
+        ScriptedProvider backend = new ScriptedProvider("Nine to five.");
+        CachingModelProvider provider = new CachingModelProvider(backend, cache, null);
+
+        assertEquals("Nine to five.", provider.generateResponse(ask("Hours?")));
+        List<String> chunks = new ArrayList<>();
+        assertEquals("Nine to five.", provider.streamResponse(ask("hours?"), chunks::add));
+
+        assertEquals(1, backend.calls);
+        assertEquals(List.of("Nine to five."), chunks);
+    }
+
+    @Test
+    void exposesHitsBeforeTheCall() {
+        ScriptedProvider backend = new ScriptedProvider("Nine to five.");
+        CachingModelProvider provider = new CachingModelProvider(backend, cache, null);
+
+        assertNull(provider.cachedResponse(ask("Hours?")));
+        assertEquals(0, cache.getMisses());
+        provider.generateResponse(ask("Hours?"));
+
+        assertEquals("Nine to five.", provider.cachedResponse(ask("hours?")));
+        assertEquals(1, backend.calls);
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void callsAgainAfterFailure() {
+        ScriptedProvider backend = new ScriptedProvider(ChatModelProvider.TIMEOUT_RESPONSE);
+        CachingModelProvider provider = new CachingModelProvider(backend, cache, null);
+
+        provider.generateResponse(ask("Hours?"));
+        backend.reply = "Nine to five.";
+
+        assertEquals("Nine to five.", provider.generateResponse(ask("Hours?")));
+        assertEquals(2, backend.calls);
+    }
+
+    @Test
+    void neverCachesDemoReplies() {
+        ScriptedProvider backend = new ScriptedProvider("placeholder");
+        backend.demo = true;
+        CachingModelProvider provider = new CachingModelProvider(backend, cache, null);
+
+        provider.generateResponse(ask("Hours?"));
+        provider.generateResponse(ask("Hours?"));
+
+        assertEquals(2, backend.calls);
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    void storesOnlyRepliesFromThePrimaryModel() {
+        ScriptedProvider primary = new ScriptedProvider(ChatModelProvider.ERROR_RESPONSE);
+        ScriptedProvider fallback = new ScriptedProvider("From the fallback.");
+        ResilientModelProvider resilient = new ResilientModelProvider(primary, fallback, null, TestBeans.metrics());
+        CachingModelProvider provider = new CachingModelProvider(resilient, cache, resilient);
+        try {
+            assertEquals("From the fallback.", provider.generateResponse(ask("Hours?")));
+            assertEquals(0, cache.getSize());
+
+            primary.reply = "Nine to five.";
+            assertEquals("Nine to five.", provider.generateResponse(ask("Hours?")));
+            assertEquals("Nine to five.", provider.generateResponse(ask("Hours?")));
+
+            assertEquals(1, cache.getSize());
+            assertEquals(2, primary.calls);
+        } finally {
+            resilient.shutdown();
+        }
+    }
+
+    /**
+     * Backend that returns a fixed reply and counts its calls.
+     */
+    private static final class ScriptedProvider implements ChatModelProvider {
+
+        String reply;
+        boolean demo;
+        int calls;
+
+        ScriptedProvider(String reply) {
+            this.reply = reply;
+        }
+
+        @Override
+        public String generateResponse(List<ChatMessage> messages) {
+            calls++;
+            return reply;
+        }
+
+        @Override
+        public String streamResponse(List<ChatMessage> messages, Consumer<String> onChunk) {
+            calls++;
+            onChunk.accept(reply);
+            return reply;
+        }
+
+        @Override
+        public String getModelName() {
+            return "scripted";
+        }
+
+        @Override
+        public boolean isDemoMode() {
+            return demo;
+        }
+    }
+}
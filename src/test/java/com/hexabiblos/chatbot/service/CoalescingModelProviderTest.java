@@ -0,0 +1,190 @@
+package com.hexabiblos.chatbot.service;
+
+import com.hexabiblos.chatbot.TestBeans;
+import com.hexabiblos.chatbot.metrics.MetricsRegistry;
+import com.hexabiblos.chatbot.model.ChatMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CoalescingModelProviderTest {
+
+    private static final int CALLERS = 8;
+
+    private final MetricsRegistry metrics = TestBeans.metrics();
+    private final ExecutorService callers = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void shutdown() {
+        callers.shutdownNow();
+    }
+
+    private static List<ChatMessage> ask(String text) {
+        return List.of(new ChatMessage(ChatMessage.Role.USER, text));
+    }
+
+    private long coalesced() {
+        return metrics.counter("chat_model_calls_coalesced_total", "").get();
+    }
+
+    private CompletableFuture<String> stream(ChatModelProvider provider, String prompt, List<String> chunks) {
+        return CompletableFuture.supplyAsync(() -> provider.streamResponse(ask(prompt), chunk -> {
+            synchronized (chunks) {
+                chunks.add(chunk);
+            }
+        }), callers);
+    }
+
+    @Test
+    void identicalConcurrentPromptsShareOneUpstreamCall() throws Exception {
+        GatedProvider backend = new GatedProvider();
+        CoalescingModelProvider provider = new CoalescingModelProvider(backend, metrics);
+        List<List<String>> received = new ArrayList<>();
+        List<CompletableFuture<String>> calls = new ArrayList<>();
+
+        for (int i = 0; i < CALLERS; i++) {
+            List<String> chunks = new ArrayList<>();
+            received.add(chunks);
+            calls.add(stream(provider, "What are your hours?", chunks));
+            if (i == 0) {
+                // The leader has streamed its first chunk before anyone joins
+                assertTrue(backend.started.await(5, TimeUnit.SECONDS));
+            }
+        }
+        ModelCallExecutorTest.awaitCondition("followers joined", () -> coalesced() == CALLERS - 1);
+        backend.release.countDown();
+
+        for (int i = 0; i < CALLERS; i++) {
+            assertEquals("Hello!", calls.get(i).get(5, TimeUnit.SECONDS));
+            synchronized (received.get(i)) {
+                assertEquals(List.of("Hel", "lo!"), received.get(i), "chunks of caller " + i);
+            }
+        }
+        assertEquals(1, backend.calls.get());
+    }
+
+    @Test
+    void followersDoNotHoldModelCallPermits() throws Exception {
+        System.setProperty("MODEL_MAX_CONCURRENT_CALLS", "2");
+        System.setProperty("MODEL_MAX_QUEUED_CALLS", "0");
+        ModelCallExecutor modelCalls = TestBeans.inject(new ModelCallExecutor(), "metrics", metrics);
+        try {
+            modelCalls.init();
+            GatedProvider backend = new GatedProvider();
+            CoalescingModelProvider provider = new CoalescingModelProvider(backend, metrics);
+            List<CompletableFuture<String>> calls = new ArrayList<>();
+
+            for (int i = 0; i < CALLERS; i++) {
+                calls.add(modelCalls.submit(() -> provider.streamResponse(ask("What are your hours?"), chunk -> { })));
+                int joined = i;
+                if (i == 0) {
+                    assertTrue(backend.started.await(5, TimeUnit.SECONDS));
+                }
+                // Each follower is back to waiting without a permit before the next one is submitted
+                ModelCallExecutorTest.awaitCondition("follower " + i + " joined",
+                    () -> coalesced() == joined && modelCalls.getInFlightCalls() == 1);
+            }
+            assertFalse(modelCalls.isSaturated());
+            assertEquals("other", modelCalls.submit(() -> "other").get(5, TimeUnit.SECONDS));
+            backend.release.countDown();
+
+            for (CompletableFuture<String> call : calls) {
+                assertEquals("Hello!", call.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, backend.calls.get());
+        } finally {
+            modelCalls.shutdown();
+            System.clearProperty("MODEL_MAX_CONCURRENT_CALLS");
+            System.clearProperty("MODEL_MAX_QUEUED_CALLS");
+        }
+    }
+
+    @Test
+    void differentPromptsAndLaterCallsGoUpstream() throws Exception {
+        GatedProvider backend = new GatedProvider();
+        backend.release.countDown();
+        CoalescingModelProvider provider = new CoalescingModelProvider(backend, metrics);
+
+        provider.generateResponse(ask("hours?"));
+        provider.generateResponse(ask("hours?"));
+        provider.generateResponse(ask("Hours?"));
+
+        assertEquals(3, backend.calls.get());
+        assertEquals(0, coalesced());
+    }
+
+    @Test
+    void followersGetErrorWhenLeaderFails() throws Exception {
+        GatedProvider backend = new GatedProvider();
+        backend.failure = new IllegalStateException("backend down");
+        CoalescingModelProvider provider = new CoalescingModelProvider(backend, metrics);
+
+        CompletableFuture<String> leader = stream(provider, "hours?", new ArrayList<>());
+        assertTrue(backend.started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<String> follower = stream(provider, "hours?", new ArrayList<>());
+        ModelCallExecutorTest.awaitCondition("follower joined", () -> coalesced() == 1);
+        backend.release.countDown();
+
+        assertEquals(ChatModelProvider.ERROR_RESPONSE, follower.get(5, TimeUnit.SECONDS));
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS));
+        assertEquals(IllegalStateException.class, failure.getCause().getClass());
+    }
+
+    /**
+     * Backend that streams one chunk, waits to be released, then finishes the reply.
+     */
+    private static final class GatedProvider implements ChatModelProvider {
+
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        volatile RuntimeException failure;
+
+        @Override
+        public String generateResponse(List<ChatMessage> messages) {
+            return streamResponse(messages, chunk -> { });
+        }
+
+        @Override
+        public String streamResponse(List<ChatMessage> messages, Consumer<String> onChunk) {
+            calls.incrementAndGet();
+            onChunk.accept("Hel");
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            onChunk.accept("lo!");
+            return "Hello!";
+        }
+
+        @Override
+        public String getModelName() {
+            return "gated";
+        }
+
+        @Override
+        public boolean isDemoMode() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.hexabiblos.chatbot.service;
+
+import com.hexabiblos.chatbot.TestBeans;
+import com.hexabiblos.chatbot.metrics.MetricsRegistry;
+import com.hexabiblos.chatbot.model.ChatMessage;
+import com.hexabiblos.chatbot.model.ContextWindow;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConversationSummarizerTest {
+
+    private final MetricsRegistry metrics = TestBeans.metrics();
+    private final SummaryProvider provider = new SummaryProvider();
+    private ModelCallExecutor modelCalls;
+    private ConversationSummarizer summarizer;
+
+    @BeforeEach
+    void setUp() {
+        System.setProperty("SUMMARY_TRIGGER_MESSAGES", "4");
+        System.setProperty("SUMMARY_KEEP_RECENT", "2");
+        System.setProperty("MODEL_MAX_CONCURRENT_CALLS", "1");
+        System.setProperty("MODEL_MAX_QUEUED_CALLS", "0");
+        modelCalls = TestBeans.inject(new ModelCallExecutor(), "metrics", metrics);
+        modelCalls.init();
+        summarizer = new ConversationSummarizer();
+        TestBeans.inject(summarizer, "modelProvider", provider);
+        TestBeans.inject(summarizer, "modelCalls", modelCalls);
+        TestBeans.inject(summarizer, "metrics", metrics);
+        summarizer.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        summarizer.shutdown();
+        modelCalls.shutdown();
+        System.clearProperty("SUMMARY_TRIGGER_MESSAGES");
+        System.clearProperty("SUMMARY_KEEP_RECENT");
+        System.clearProperty("MODEL_MAX_CONCURRENT_CALLS");
+        System.clearProperty("MODEL_MAX_QUEUED_CALLS");
+    }
+
+    private static ContextWindow windowOf(int turns) {
+        ContextWindow window = new ContextWindow(ContextWindow.DEFAULT_TOKEN_BUDGET);
+        for (int i = 1; i <= turns; i++) {
+            window.append(new ChatMessage((i % 2 == 1) ? ChatMessage.Role.USER : ChatMessage.Role.ASSISTANT,
+                "turn " + i));
+        }
+        return window;
+    }
+
+    private long count(String outcome) {
+        return metrics.counter("chat_context_compactions_total", "", "outcome", outcome).get();
+    }
+
+    @Test
+    void summarizesOlderTurnsInTheBackground() throws InterruptedException {
+        ContextWindow window = windowOf(5);
+
+        summarizer.compactIfDue(window);
+
+        ModelCallExecutorTest.awaitCondition("summary", () -> window.getSummary() != null);
+        assertEquals("They talked about turns one to three.", window.getSummary());
+        assertEquals(2, window.size());
+        assertEquals("turn 4", window.getMessages().get(1).getText());
+        assertTrue(provider.lastPrompt.contains("User: turn 1\nAssistant: turn 2\nUser: turn 3\n"));
+        assertEquals(1, count("applied"));
+    }
+
+    @Test
+    void leavesShortWindowsAlone() {
+        ContextWindow window = windowOf(4);
+
+        summarizer.compactIfDue(window);
+
+        assertNull(provider.lastPrompt);
+        assertEquals(4, window.size());
+    }
+
+    @Test
+    void skipsCompactionWhileModelCallsAreSaturated() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> busy = modelCalls.submit(() -> {
+            release.await();
+            return "done";
+        });
+        ModelCallExecutorTest.awaitCondition("busy call", modelCalls::isSaturated);
+        ContextWindow window = windowOf(5);
+        try {
+            summarizer.compactIfDue(window);
+        } finally {
+            release.countDown();
+        }
+        busy.join();
+
+        assertEquals(1, count("skipped"));
+        assertNull(provider.lastPrompt);
+        assertNotNull(window.beginCompaction(4, Integer.MAX_VALUE, 2), "skipped compaction can start again");
+    }
+
+    @Test
+    void failedSummaryKeepsTheTurns() throws InterruptedException {
+        provider.reply = ChatModelProvider.ERROR_RESPONSE;
+        ContextWindow window = windowOf(5);
+
+        summarizer.compactIfDue(window);
+
+        ModelCallExecutorTest.awaitCondition("failed compaction", () -> count("failed") == 1);
+        assertNull(window.getSummary());
+        assertEquals(5, window.size());
+    }
+
+    private static final class SummaryProvider implements ChatModelProvider {
+
+        volatile String reply = "They talked about turns one to three.";
+        volatile String lastPrompt;
+
+        @Override
+        public String generateResponse(List<ChatMessage> messages) {
+            lastPrompt = messages.get(0).getText();
+            return reply;
+        }
+
+        @Override
+        public String streamResponse(List<ChatMessage> messages, Consumer<String> onChunk) {
+            String text = generateResponse(messages);
+            onChunk.accept(text);
+            return text;
+        }
+
+        @Override
+        public String getModelName() {
+            return "summary";
+        }
+
+        @Override
+        public boolean isDemoMode() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.hexabiblos.chatbot.service;
+
+import com.hexabiblos.chatbot.TestBeans;
+import com.hexabiblos.chatbot.metrics.MetricsRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ModelCallExecutorTest {
+
+    private final MetricsRegistry metrics = TestBeans.metrics();
+    private final List<ModelCallExecutor> executors = new ArrayList<>();
+
+    @AfterEach
+    void shutdown() {
+        executors.forEach(ModelCallExecutor::shutdown);
+        System.clearProperty("MODEL_MAX_CONCURRENT_CALLS");
+        System.clearProperty("MODEL_MAX_QUEUED_CALLS");
+    }
+
+    private ModelCallExecutor executor(int maxConcurrent, int maxQueued) {
+        System.setProperty("MODEL_MAX_CONCURRENT_CALLS", String.valueOf(maxConcurrent));
+        System.setProperty("MODEL_MAX_QUEUED_CALLS", String.valueOf(maxQueued));
+        ModelCallExecutor executor = TestBeans.inject(new ModelCallExecutor(), "metrics", metrics);
+        executor.init();
+        executors.add(executor);
+        return executor;
+    }
+
+    public static void awaitCondition(String what, BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("Timed out waiting for " + what);
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    void runsCallsAndReturnsTheirResults() throws Exception {
+        ModelCallExecutor executor = executor(2, 2);
+
+        assertEquals("done", executor.submit(() -> "done").get(5, TimeUnit.SECONDS));
+        CompletionException failure = assertThrows(CompletionException.class,
+            () -> executor.submit(() -> {
+                throw new IllegalStateException("backend down");
+            }).join());
+        assertTrue(failure.getCause() instanceof IllegalStateException);
+        assertTrue(!ModelCallExecutor.isTimeout(failure));
+    }
+
+    @Test
+    void rejectsWhenPermitsAndQueueAreTaken() throws Exception {
+        ModelCallExecutor executor = executor(1, 0);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Boolean> running = executor.submit(() -> release.await(5, TimeUnit.SECONDS));
+        awaitCondition("permit taken", () -> executor.getInFlightCalls() == 1);
+
+        assertTrue(executor.isSaturated());
+        assertThrows(RejectedExecutionException.class, () -> executor.submit(() -> true));
+        assertEquals(1, metrics.counter("chat_admission_rejected_total", "", "reason", "queue_full").get());
+        assertTrue(executor.retryAfterSeconds() >= 1);
+
+        release.countDown();
+        assertTrue(running.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void queuesUpToLimitThenRejects() throws Exception {
+        ModelCallExecutor executor = executor(2, 3);
+        CountDownLatch release = new CountDownLatch(1);
+        List<CompletableFuture<Integer>> calls = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            int n = i;
+            calls.add(executor.submit(() -> {
+                release.await();
+                return n;
+            }));
+        }
+        // A worker leaves the queue just after taking its permit
+        awaitCondition("two running, three waiting",
+            () -> executor.getInFlightCalls() == 2 && executor.getQueuedCalls() == 3);
+
+        assertTrue(executor.isSaturated());
+        for (int i = 0; i < 3; i++) {
+            assertThrows(RejectedExecutionException.class, () -> executor.submit(() -> 0));
+        }
+        assertEquals(3, metrics.counter("chat_admission_rejected_total", "", "reason", "queue_full").get());
+        assertEquals(3, executor.getQueuedCalls());
+
+        release.countDown();
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i, calls.get(i).get(5, TimeUnit.SECONDS));
+        }
+        awaitCondition("permits released", () -> executor.getInFlightCalls() == 0);
+        assertEquals(0, executor.getQueuedCalls());
+        assertFalse(executor.isSaturated());
+    }
+
+    @Test
+    void timedOutCallsLeaveTheQueue() throws Exception {
+        ModelCallExecutor executor = executor(1, 2);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Boolean> running = executor.submit(() -> release.await(5, TimeUnit.SECONDS));
+        awaitCondition("permit taken", () -> executor.getInFlightCalls() == 1);
+        AtomicInteger ran = new AtomicInteger();
+        CompletableFuture<Integer> waiting = executor.submit(ran::incrementAndGet, Duration.ofMillis(50));
+
+        CompletionException failure = assertThrows(CompletionException.class, waiting::join);
+        assertTrue(ModelCallExecutor.isTimeout(failure));
+        // The watchdog leaves the queue right after failing the call
+        awaitCondition("queue emptied", () -> executor.getQueuedCalls() == 0);
+
+        release.countDown();
+        assertTrue(running.get(5, TimeUnit.SECONDS));
+        assertEquals(0, ran.get(), "a call whose deadline passed in the queue never runs");
+    }
+
+    @Test
+    void cancelsRunningCallAtDeadline() throws InterruptedException {
+        ModelCallExecutor executor = executor(1, 1);
+        AtomicInteger closed = new AtomicInteger();
+        CompletableFuture<String> call = executor.submit(() -> {
+            ModelCallExecutor.closeOnCancel(closed::incrementAndGet);
+            Thread.sleep(5_000);
+            return "late";
+        }, Duration.ofMillis(50));
+
+        CompletionException failure = assertThrows(CompletionException.class, call::join);
+        assertTrue(ModelCallExecutor.isTimeout(failure));
+        // The watchdog closes registered resources right after failing the call
+        awaitCondition("registered resource closed", () -> closed.get() == 1);
+        awaitCondition("permit released", () -> executor.getInFlightCalls() == 0);
+    }
+
+    @Test
+    void cancellingTheResultStopsTheCall() throws InterruptedException {
+        ModelCallExecutor executor = executor(1, 1);
+        AtomicInteger closed = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CompletableFuture<String> call = executor.submit(() -> {
+            ModelCallExecutor.closeOnCancel(closed::incrementAndGet);
+            started.countDown();
+            Thread.sleep(5_000);
+            return "unwanted";
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        call.cancel(true);
+
+        awaitCondition("registered resource closed", () -> closed.get() == 1);
+        awaitCondition("permit released", () -> executor.getInFlightCalls() == 0);
+    }
+}
@@ -0,0 +1,227 @@
+package com.hexabiblos.chatbot.service;
+
+import com.hexabiblos.chatbot.TestBeans;
+import com.hexabiblos.chatbot.metrics.MetricsRegistry;
+import com.hexabiblos.chatbot.model.ChatMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class QuickReplyPrefetcherTest {
+
+    private static final List<ChatMessage> CONTEXT = List.of(
+        new ChatMessage(ChatMessage.Role.ASSISTANT, "Welcome! How can I help you today?"));
+
+    private final MetricsRegistry metrics = TestBeans.metrics();
+    private final AnswerProvider provider = new AnswerProvider();
+    private ModelCallExecutor modelCalls;
+    private QuickReplyPrefetcher prefetcher;
+
+    @BeforeEach
+    void setUp() {
+        System.setProperty("PREFETCH_ENABLED", "true");
+        System.setProperty("PREFETCH_QUICK_REPLIES", "Help|Show Features");
+        // Enough capacity that prefetches never count as busy in these tests
+        System.setProperty("MODEL_MAX_CONCURRENT_CALLS", "8");
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (prefetcher != null) {
+            prefetcher.shutdown();
+        }
+        if (modelCalls != null) {
+            modelCalls.shutdown();
+        }
+        System.clearProperty("PREFETCH_ENABLED");
+        System.clearProperty("PREFETCH_QUICK_REPLIES");
+        System.clearProperty("PREFETCH_PER_MINUTE");
+        System.clearProperty("PREFETCH_MAX_WAIT_MS");
+        System.clearProperty("MODEL_MAX_CONCURRENT_CALLS");
+    }
+
+    private QuickReplyPrefetcher prefetcher() {
+        modelCalls = TestBeans.inject(new ModelCallExecutor(), "metrics", metrics);
+        modelCalls.init();
+        prefetcher = new QuickReplyPrefetcher();
+        TestBeans.inject(prefetcher, "modelProvider", provider);
+        TestBeans.inject(prefetcher, "modelCalls", modelCalls);
+        TestBeans.inject(prefetcher, "metrics", metrics);
+        prefetcher.init();
+        return prefetcher;
+    }
+
+    private static List<ChatMessage> next(String text) {
+        List<ChatMessage> history = new ArrayList<>(CONTEXT);
+        history.add(new ChatMessage(ChatMessage.Role.USER, text));
+        return history;
+    }
+
+    private long count(String outcome) {
+        return metrics.counter("chat_prefetch_total", "", "outcome", outcome).get();
+    }
+
+    @Test
+    void answersQuickReplyFromThePrefetch() throws Exception {
+        QuickReplyPrefetcher prefetcher = prefetcher();
+        prefetcher.prefetch("c1", CONTEXT);
+
+        CompletableFuture<String> reply = prefetcher.take("c1", next("  show   features "));
+
+        assertNotNull(reply);
+        assertEquals("Answer to Show Features", reply.get(5, TimeUnit.SECONDS));
+        assertEquals(2, count("started"));
+        assertEquals(1, count("used"));
+        assertEquals(0, prefetcher.getPendingCount());
+        assertNull(prefetcher.take("c1", next("Help")), "a batch is taken once");
+    }
+
+    @Test
+    void otherMessagesDiscardTheBatch() throws Exception {
+        QuickReplyPrefetcher prefetcher = prefetcher();
+        prefetcher.prefetch("c1", CONTEXT);
+
+        assertNull(prefetcher.take("c1", next("What are your opening hours?")));
+        assertNull(prefetcher.take("c2", next("Help")), "nothing prefetched for that conversation");
+        assertEquals(0, prefetcher.getPendingCount());
+    }
+
+    @Test
+    void changedContextMissesTheBatch() {
+        QuickReplyPrefetcher prefetcher = prefetcher();
+        prefetcher.prefetch("c1", CONTEXT);
+        List<ChatMessage> history = List.of(
+            new ChatMessage(ChatMessage.Role.ASSISTANT, "Something else entirely."),
+            new ChatMessage(ChatMessage.Role.USER, "Help"));
+
+        assertNull(prefetcher.take("c1", history));
+    }
+
+    @Test
+    void matchesOnTheNewestTurnAfterOlderOnesWereCompacted() throws Exception {
+        QuickReplyPrefetcher prefetcher = prefetcher();
+        List<ChatMessage> context = List.of(
+            new ChatMessage(ChatMessage.Role.USER, "opening hours?"),
+            CONTEXT.get(0));
+        prefetcher.prefetch("c1", context);
+        List<ChatMessage> history = List.of(
+            new ChatMessage(ChatMessage.Role.USER, "Summary of our conversation so far: hours."),
+            CONTEXT.get(0),
+            new ChatMessage(ChatMessage.Role.USER, "Help"));
+
+        CompletableFuture<String> reply = prefetcher.take("c1", history);
+
+        assertNotNull(reply);
+        assertEquals("Answer to Help", reply.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void discardCancelsRunningPrefetches() throws Exception {
+        provider.block = new CountDownLatch(1);
+        QuickReplyPrefetcher prefetcher = prefetcher();
+        prefetcher.prefetch("c1", CONTEXT);
+        ModelCallExecutorTest.awaitCondition("prefetches running", () -> modelCalls.getInFlightCalls() == 2);
+
+        assertNull(prefetcher.take("c1", next("What are your opening hours?")));
+
+        ModelCallExecutorTest.awaitCondition("permits released", () -> modelCalls.getInFlightCalls() == 0);
+        assertEquals(2, count("discarded"));
+    }
+
+    @Test
+    void givesUpOnASlowPrefetchWellBeforeTheCallDeadline() throws Exception {
+        System.setProperty("PREFETCH_MAX_WAIT_MS", "100");
+        provider.block = new CountDownLatch(1);
+        QuickReplyPrefetcher prefetcher = prefetcher();
+        prefetcher.prefetch("c1", CONTEXT);
+        ModelCallExecutorTest.awaitCondition("prefetches running", () -> modelCalls.getInFlightCalls() == 2);
+
+        CompletableFuture<String> reply = prefetcher.take("c1", next("Help"));
+
+        assertNull(reply.get(5, TimeUnit.SECONDS), "null sends the stream to a live call");
+        ModelCallExecutorTest.awaitCondition("permits released", () -> modelCalls.getInFlightCalls() == 0);
+    }
+
+    @Test
+    void failedPrefetchIsNotUsed() throws Exception {
+        provider.reply = ChatModelProvider.ERROR_RESPONSE;
+        QuickReplyPrefetcher prefetcher = prefetcher();
+        prefetcher.prefetch("c1", CONTEXT);
+        ModelCallExecutorTest.awaitCondition("prefetches", () -> count("failed") == 2);
+
+        assertNull(prefetcher.take("c1", next("Help")));
+        assertEquals(0, count("used"));
+    }
+
+    @Test
+    void staysWithinTheBudget() {
+        System.setProperty("PREFETCH_PER_MINUTE", "4"); // burst of one
+        QuickReplyPrefetcher prefetcher = prefetcher();
+
+        prefetcher.prefetch("c1", CONTEXT);
+
+        assertEquals(1, count("started"));
+        assertEquals(1, count("skipped"));
+    }
+
+    @Test
+    void doesNothingWhenDisabled() {
+        System.setProperty("PREFETCH_ENABLED", "false");
+        QuickReplyPrefetcher prefetcher = prefetcher();
+
+        prefetcher.prefetch("c1", CONTEXT);
+
+        assertNull(prefetcher.take("c1", next("Help")));
+        assertEquals(0, provider.calls.get());
+    }
+
+    private static final class AnswerProvider implements ChatModelProvider {
+
+        final AtomicInteger calls = new AtomicInteger();
+        volatile String reply;
+        volatile CountDownLatch block; // holds every call until cancelled
+
+        @Override
+        public String generateResponse(List<ChatMessage> messages) {
+            calls.incrementAndGet();
+            if (block != null) {
+                try {
+                    block.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("cancelled", e);
+                }
+            }
+            return (reply != null) ? reply : "Answer to " + messages.get(messages.size() - 1).getText();
+        }
+
+        @Override
+        public String streamResponse(List<ChatMessage> messages, Consumer<String> onChunk) {
+            String text = generateResponse(messages);
+            onChunk.accept(text);
+            return text;
+        }
+
+        @Override
+        public String getModelName() {
+            return "answers";
+        }
+
+        @Override
+        public boolean isDemoMode() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.hexabiblos.chatbot.service;
+
+import com.hexabiblos.chatbot.TestBeans;
+import com.hexabiblos.chatbot.metrics.MetricsRegistry;
+import com.hexabiblos.chatbot.model.ChatMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResilientModelProviderTest {
+
+    private static final List<ChatMessage> PROMPT = List.of(new ChatMessage(ChatMessage.Role.USER, "hours?"));
+
+    private final MetricsRegistry metrics = TestBeans.metrics();
+    private final List<ResilientModelProvider> providers = new ArrayList<>();
+    private ModelCallExecutor modelCalls;
+
+    @BeforeEach
+    void createExecutor() {
+        System.setProperty("MODEL_MAX_CONCURRENT_CALLS", "2");
+        modelCalls = TestBeans.inject(new ModelCallExecutor(), "metrics", metrics);
+        modelCalls.init();
+    }
+
+    @AfterEach
+    void shutdown() {
+        providers.forEach(ResilientModelProvider::shutdown);
+        modelCalls.shutdown();
+        System.clearProperty("MODEL_MAX_CONCURRENT_CALLS");
+        System.clearProperty("CIRCUIT_FAILURE_THRESHOLD");
+        System.clearProperty("HEDGE_ENABLED");
+    }
+
+    private ResilientModelProvider resilient(ScriptedProvider primary, ScriptedProvider fallback) {
+        ResilientModelProvider provider = new ResilientModelProvider(primary, fallback, modelCalls, metrics);
+        providers.add(provider);
+        return provider;
+    }
+
+    private long count(String name, String... labels) {
+        return metrics.counter(name, "", labels).get();
+    }
+
+    @Test
+    void retriesFailedCallOnFallback() {
+        ScriptedProvider primary = new ScriptedProvider("primary", n -> ChatModelProvider.ERROR_RESPONSE);
+        ScriptedProvider fallback = new ScriptedProvider("fallback", n -> "From the fallback.");
+        ResilientModelProvider provider = resilient(primary, fallback);
+        List<String> chunks = new ArrayList<>();
+
+        assertEquals("From the fallback.", provider.streamResponse(PROMPT, chunks::add));
+
+        // The primary's failure was held back and replaced, not shown
+        assertEquals(List.of("From the fallback."), chunks);
+        assertEquals(1, count("chat_model_fallback_total", "reason", "retry"));
+    }
+
+    @Test
+    void opensCircuitAndRoutesToFallback() {
+        System.setProperty("CIRCUIT_FAILURE_THRESHOLD", "2");
+        ScriptedProvider primary = new ScriptedProvider("primary", n -> ChatModelProvider.ERROR_RESPONSE);
+        ScriptedProvider fallback = new ScriptedProvider("fallback", n -> "From the fallback.");
+        ResilientModelProvider provider = resilient(primary, fallback);
+
+        provider.generateResponse(PROMPT);
+        provider.generateResponse(PROMPT);
+        assertEquals(CircuitBreaker.State.OPEN, provider.getCircuitState());
+        assertEquals("fallback", provider.getActiveModelName());
+
+        assertEquals("From the fallback.", provider.generateResponse(PROMPT));
+        assertEquals(2, primary.calls.get());
+        assertEquals(1, count("chat_model_fallback_total", "reason", "circuit_open"));
+    }
+
+    @Test
+    void answersUnavailableWhenNoModelCanBeCalled() {
+        System.setProperty("CIRCUIT_FAILURE_THRESHOLD", "1");
+        ScriptedProvider primary = new ScriptedProvider("primary", n -> ChatModelProvider.ERROR_RESPONSE);
+        ResilientModelProvider provider = resilient(primary, null);
+
+        provider.generateResponse(PROMPT);
+
+        assertEquals(ChatModelProvider.UNAVAILABLE_RESPONSE, provider.generateResponse(PROMPT));
+        assertEquals(1, primary.calls.get());
+    }
+
+    @Test
+    void hedgeWinnerAnswersAndLoserIsCancelled() throws InterruptedException {
+        System.setProperty("HEDGE_ENABLED", "true");
+        CountDownLatch loserCancelled = new CountDownLatch(1);
+        ScriptedProvider primary = new ScriptedProvider("primary", n -> {
+            if (n != 21) {
+                // About 30 ms each, so the duplicate of call 21 starts well after it
+                sleep(30);
+                return "Fast reply " + n;
+            }
+            // The first attempt of call 21 hangs until cancelled
+            try {
+                Thread.sleep(10_000);
+                return "Too late";
+            } catch (InterruptedException e) {
+                loserCancelled.countDown();
+                return ChatModelProvider.TIMEOUT_RESPONSE;
+            }
+        });
+        ResilientModelProvider provider = resilient(primary, null);
+        // Enough latency history for the hedge delay
+        for (int i = 0; i < 20; i++) {
+            provider.generateResponse(PROMPT);
+        }
+
+        assertEquals("Fast reply 22", provider.generateResponse(PROMPT));
+
+        assertTrue(loserCancelled.await(5, TimeUnit.SECONDS), "losing attempt interrupted");
+        assertEquals(1, count("chat_model_hedges_total"));
+        assertEquals(1, count("chat_model_hedge_wins_total"));
+        assertEquals(CircuitBreaker.State.CLOSED, provider.getCircuitState());
+        // The duplicate's permit is back once the loser has unwound
+        ModelCallExecutorTest.awaitCondition("hedge permit released", () -> modelCalls.getInFlightCalls() == 0);
+    }
+
+    @Test
+    void noHedgeWithoutAFreePermit() throws Exception {
+        System.setProperty("HEDGE_ENABLED", "true");
+        ScriptedProvider primary = new ScriptedProvider("primary", n -> {
+            sleep((n == 21) ? 300 : 5);
+            return "Reply " + n;
+        });
+        ResilientModelProvider provider = resilient(primary, null);
+        for (int i = 0; i < 20; i++) {
+            provider.generateResponse(PROMPT);
+        }
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        List<CompletableFuture<Boolean>> busy = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            busy.add(modelCalls.submit(() -> {
+                started.countDown();
+                return release.await(5, TimeUnit.SECONDS);
+            }));
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        try {
+            assertEquals("Reply 21", provider.generateResponse(PROMPT));
+        } finally {
+            release.countDown();
+        }
+        busy.forEach(CompletableFuture::join);
+
+        assertEquals(21, primary.calls.get());
+        assertEquals(0, count("chat_model_hedges_total"));
+        assertEquals(1, count("chat_model_hedges_skipped_total"));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Backend whose n-th call (from 1) returns {@code script.apply(n)}.
+     */
+    private static final class ScriptedProvider implements ChatModelProvider {
+
+        final AtomicInteger calls = new AtomicInteger();
+        private final String name;
+        private final IntFunction<String> script;
+
+        ScriptedProvider(String name, IntFunction<String> script) {
+            this.name = name;
+            this.script = script;
+        }
+
+        @Override
+        public String generateResponse(List<ChatMessage> messages) {
+            return script.apply(calls.incrementAndGet());
+        }
+
+        @Override
+        public String streamResponse(List<ChatMessage> messages, Consumer<String> onChunk) {
+            String text = generateResponse(messages);
+            onChunk.accept(text);
+            return text;
+        }
+
+        @Override
+        public String getModelName() {
+            return name;
+        }
+
+        @Override
+        public boolean isDemoMode() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.hexabiblos.chatbot.service;
+
+import com.hexabiblos.chatbot.TestBeans;
+import com.hexabiblos.chatbot.model.ChatMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ResponseCacheTest {
+
+    private static final String MODEL = "gemini-test";
+    private static final String INSTRUCTION = "Be brief.";
+
+    @AfterEach
+    void clearSettings() {
+        System.clearProperty("RESPONSE_CACHE_MAX_ENTRIES");
+        System.clearProperty("RESPONSE_CACHE_TTL_SECONDS");
+        System.clearProperty("RESPONSE_CACHE_MAX_TURNS");
+    }
+
+    private static ResponseCache cache(int maxEntries, int ttlSeconds, int maxTurns) {
+        System.setProperty("RESPONSE_CACHE_MAX_ENTRIES", String.valueOf(maxEntries));
+        System.setProperty("RESPONSE_CACHE_TTL_SECONDS", String.valueOf(ttlSeconds));
+        System.setProperty("RESPONSE_CACHE_MAX_TURNS", String.valueOf(maxTurns));
+        ResponseCache cache = TestBeans.inject(new ResponseCache(), "metrics", TestBeans.metrics());
+        cache.init();
+        return cache;
+    }
+
+    private static List<ChatMessage> ask(String text) {
+        return List.of(new ChatMessage(ChatMessage.Role.USER, text));
+    }
+
+    @Test
+    void returnsStoredReplyForNormalizedPrompt() {
+        ResponseCache cache = cache(10, 600, 3);
+        cache.put(cache.keyFor(MODEL, INSTRUCTION, ask("What are your  hours?")), "Nine to five.");
+
+        assertEquals("Nine to five.", cache.get(cache.keyFor(MODEL, INSTRUCTION, ask(" what are your hours? "))));
+        assertNull(cache.get(cache.keyFor("other-model", INSTRUCTION, ask("What are your hours?"))));
+        assertEquals(0.5, cache.getHitRate());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedWhenFull() {
+        ResponseCache cache = cache(2, 600, 3);
+        String a = cache.keyFor(MODEL, INSTRUCTION, ask("a"));
+        String b = cache.keyFor(MODEL, INSTRUCTION, ask("b"));
+        String c = cache.keyFor(MODEL, INSTRUCTION, ask("c"));
+        cache.put(a, "A");
+        cache.put(b, "B");
+        // Touch a, so b becomes the least recently used
+        assertEquals("A", cache.get(a));
+        cache.put(c, "C");
+
+        assertEquals(2, cache.getSize());
+        assertEquals(1, cache.getEvictions());
+        assertNull(cache.get(b));
+        assertEquals("A", cache.get(a));
+        assertEquals("C", cache.get(c));
+    }
+
+    @Test
+    void expiresEntriesAfterTtl() throws InterruptedException {
+        ResponseCache cache = cache(10, 1, 3);
+        String key = cache.keyFor(MODEL, INSTRUCTION, ask("hello"));
+        cache.put(key, "Hi!");
+        assertEquals("Hi!", cache.get(key));
+
+        Thread.sleep(1100);
+
+        assertNull(cache.get(key));
+        assertEquals(0, cache.getSize());
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    void neverStoresFailureReplies() {
+        ResponseCache cache = cache(10, 600, 3);
+        String key = cache.keyFor(MODEL, INSTRUCTION, ask("hello"));
+
+        cache.put(key, ChatModelProvider.ERROR_RESPONSE);
+        cache.put(key, ChatModelProvider.TIMEOUT_RESPONSE);
+        cache.put(key, ChatModelProvider.BUSY_RESPONSE);
+        cache.put(key, "Nine to" + ChatModelProvider.INTERRUPTED_NOTICE);
+        cache.put(key, null);
+
+        assertEquals(0, cache.getSize());
+        assertNull(cache.get(key));
+    }
+
+    @Test
+    void onlyShortConversationsAreCacheable() {
+        ResponseCache cache = cache(10, 600, 2);
+        List<ChatMessage> twoTurns = List.of(
+            new ChatMessage(ChatMessage.Role.USER, "hi"),
+            new ChatMessage(ChatMessage.Role.ASSISTANT, "Hello!"));
+        List<ChatMessage> threeTurns = List.of(
+            new ChatMessage(ChatMessage.Role.USER, "hi"),
+            new ChatMessage(ChatMessage.Role.ASSISTANT, "Hello!"),
+            new ChatMessage(ChatMessage.Role.USER, "hours?"));
+
+        assertNotNull(cache.keyFor(MODEL, INSTRUCTION, twoTurns));
+        assertNull(cache.keyFor(MODEL, INSTRUCTION, threeTurns));
+        assertNull(cache.keyFor(MODEL, INSTRUCTION, List.of()));
+    }
+
+    @Test
+    void zeroCapacityDisablesCaching() {
+        ResponseCache cache = cache(0, 600, 3);
+
+        assertNull(cache.keyFor(MODEL, INSTRUCTION, ask("hello")));
+    }
+}
@@ -0,0 +1,67 @@
+package com.hexabiblos.chatbot.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenBucketTest {
+
+    @Test
+    void admitsBurstThenReportsWait() {
+        TokenBucket bucket = new TokenBucket(3, 1);
+
+        assertEquals(0, bucket.tryAcquire());
+        assertEquals(0, bucket.tryAcquire());
+        assertEquals(0, bucket.tryAcquire());
+        long wait = bucket.tryAcquire();
+        assertTrue(wait > 900 && wait <= 1000, "one token per second, just emptied: " + wait);
+    }
+
+    @Test
+    void refillsOverTime() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(1, 20);
+        assertEquals(0, bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire() > 0);
+
+        Thread.sleep(80);
+
+        assertEquals(0, bucket.tryAcquire());
+    }
+
+    @Test
+    void neverRefillsWithoutRate() {
+        TokenBucket bucket = new TokenBucket(1, 0);
+        assertEquals(0, bucket.tryAcquire());
+
+        assertEquals(Long.MAX_VALUE, bucket.tryAcquire());
+    }
+
+    @Test
+    void keepsStateAcrossSerialization() throws IOException, ClassNotFoundException {
+        TokenBucket bucket = new TokenBucket(2, 0);
+        assertEquals(0, bucket.tryAcquire());
+
+        TokenBucket copy = roundTrip(bucket);
+
+        // One token left, and no refill: the copy admits exactly one more
+        assertEquals(0, copy.tryAcquire());
+        assertEquals(Long.MAX_VALUE, copy.tryAcquire());
+    }
+
+    private static TokenBucket roundTrip(TokenBucket bucket) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(bucket);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (TokenBucket) in.readObject();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.hexabiblos.chatbot.store;
+
+import com.hexabiblos.chatbot.TestBeans;
+import com.hexabiblos.chatbot.model.ChatMessage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConversationTest {
+
+    private static Conversation conversation(String... texts) {
+        Conversation conversation = new Conversation("c1", null);
+        for (int i = 0; i < texts.length; i++) {
+            conversation.append(new ChatMessage((i % 2 == 0) ? ChatMessage.Role.USER : ChatMessage.Role.ASSISTANT,
+                texts[i]));
+        }
+        return conversation;
+    }
+
+    private static byte[] bytes(Conversation conversation, long baseCursor) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            if (baseCursor < 0) {
+                conversation.writeTo(out);
+            } else {
+                assertTrue(conversation.writeDelta(out, baseCursor));
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static DataInputStream input(byte[] bytes) {
+        return new DataInputStream(new ByteArrayInputStream(bytes));
+    }
+
+    private static List<String> texts(Conversation conversation) {
+        return conversation.read(0, 100).stream().map(ChatMessage::getText).toList();
+    }
+
+    @Test
+    void roundTripsWithItsContextWindow() throws IOException {
+        Conversation conversation = conversation("opening hours?", "nine to five", "and on sundays?");
+        List<ChatMessage> oldest = conversation.getWindow().beginCompaction(2, 1000, 1);
+        conversation.getWindow().applySummary(oldest, "They open nine to five.");
+
+        Conversation copy = Conversation.readFrom(input(bytes(conversation, -1)), null);
+
+        assertEquals("c1", copy.getId());
+        assertEquals(3, copy.getMessageCount());
+        assertEquals(texts(conversation), texts(copy));
+        assertEquals("They open nine to five.", copy.getWindow().getSummary());
+        assertEquals(conversation.getWindow().getTokenCount(), copy.getWindow().getTokenCount());
+    }
+
+    @Test
+    void deltaCarriesOnlyAppendedMessages() throws IOException {
+        Conversation conversation = conversation("opening hours?");
+        Conversation replica = Conversation.readFrom(input(bytes(conversation, -1)), null);
+        long base = replica.getReplicationCursor();
+        conversation.append(new ChatMessage(ChatMessage.Role.ASSISTANT, "Nine to five."));
+        conversation.append(new ChatMessage(ChatMessage.Role.USER, "thanks"));
+
+        byte[] delta = bytes(conversation, base);
+        assertTrue(replica.applyDelta(input(delta)));
+
+        assertEquals(conversation.getReplicationCursor(), replica.getReplicationCursor());
+        assertEquals(texts(conversation), texts(replica));
+        assertEquals(conversation.getWindow().getTokenCount(), replica.getWindow().getTokenCount());
+        // A copy that is not at the delta's base is left alone
+        assertFalse(replica.applyDelta(input(delta)));
+        assertEquals(3, replica.getMessageCount());
+    }
+
+    @Test
+    void deltaNeedsTheAppendedMessagesInMemory() throws IOException {
+        Conversation conversation = conversation("a", "b", "c");
+
+        assertFalse(conversation.writeDelta(new DataOutputStream(new ByteArrayOutputStream()), 5));
+    }
+
+    @Test
+    void allowsOneReplyAtATime() {
+        Conversation conversation = conversation();
+
+        assertTrue(conversation.startReply());
+        assertFalse(conversation.startReply());
+        assertTrue(conversation.isReplying());
+        conversation.endReply();
+        assertTrue(conversation.startReply());
+    }
+
+    @Test
+    void readsOnlyTheTailWithoutATranscript() {
+        System.setProperty("HISTORY_MAX_MESSAGES", "2");
+        try {
+            Conversation conversation = conversation("a", "b", "c");
+
+            assertEquals(3, conversation.getMessageCount());
+            assertEquals(2, conversation.getAvailableCount());
+            assertEquals(List.of("b", "c"), texts(conversation));
+            assertEquals(List.of("c"), conversation.read(2, 10).stream().map(ChatMessage::getText).toList());
+        } finally {
+            System.clearProperty("HISTORY_MAX_MESSAGES");
+        }
+    }
+
+    @Test
+    void readsAroundMessagesTheTranscriptNoLongerHolds(@TempDir Path directory) {
+        System.setProperty("HISTORY_MAX_MESSAGES", "2");
+        System.setProperty("TRANSCRIPT_DIR", directory.toString());
+        System.setProperty("TRANSCRIPT_SEGMENT_BYTES", "4096");
+        System.setProperty("TRANSCRIPT_MAX_SEGMENTS", "2");
+        TranscriptStore transcript = TestBeans.inject(new TranscriptStore(), "metrics", TestBeans.metrics());
+        try {
+            transcript.init();
+            Conversation conversation = new Conversation("c1", transcript);
+            // Two messages per segment, so only the last four outlive retention
+            for (int i = 0; i < 10; i++) {
+                conversation.append(new ChatMessage(ChatMessage.Role.USER, i + "x".repeat(1500)));
+            }
+
+            assertEquals(10, conversation.getMessageCount());
+            assertEquals(4, conversation.getAvailableCount());
+            assertEquals(List.of('6', '7', '8', '9'),
+                conversation.read(0, 10).stream().map(m -> m.getText().charAt(0)).toList());
+            assertEquals(List.of('7', '8'),
+                conversation.read(7, 2).stream().map(m -> m.getText().charAt(0)).toList());
+        } finally {
+            transcript.close();
+            System.clearProperty("HISTORY_MAX_MESSAGES");
+            System.clearProperty("TRANSCRIPT_DIR");
+            System.clearProperty("TRANSCRIPT_SEGMENT_BYTES");
+            System.clearProperty("TRANSCRIPT_MAX_SEGMENTS");
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.hexabiblos.chatbot.store;
+
+import com.hexabiblos.chatbot.TestBeans;
+import com.hexabiblos.chatbot.metrics.MetricsRegistry;
+import com.hexabiblos.chatbot.model.ChatMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileConversationStoreTest {
+
+    @TempDir
+    Path directory;
+
+    private final MetricsRegistry metrics = TestBeans.metrics();
+    private final List<FileConversationStore> stores = new ArrayList<>();
+
+    @BeforeEach
+    void configure() {
+        System.setProperty("CONVERSATION_IDLE_MINUTES", "0");
+    }
+
+    @AfterEach
+    void tearDown() {
+        stores.forEach(FileConversationStore::shutdown);
+        System.clearProperty("CONVERSATION_IDLE_MINUTES");
+        System.clearProperty("CONVERSATION_STORE_MAX");
+        System.clearProperty("CONVERSATION_STORE_STRIPES");
+        System.clearProperty("CONVERSATION_SNAPSHOT_INTERVAL_MS");
+    }
+
+    private FileConversationStore store() {
+        FileConversationStore store = new FileConversationStore(directory, null, metrics);
+        stores.add(store);
+        return store;
+    }
+
+    private static void append(ConversationStore store, Conversation conversation, String text) {
+        synchronized (conversation) {
+            conversation.append(new ChatMessage(ChatMessage.Role.USER, text));
+            store.save(conversation);
+        }
+    }
+
+    @Test
+    void savedConversationIsReadBackWithItsSummary() {
+        FileConversationStore store = store();
+        Conversation conversation = store.open("abc-123");
+        append(store, conversation, "opening hours?");
+        append(store, conversation, "and on sundays?");
+        append(store, conversation, "thanks");
+        List<ChatMessage> oldest = conversation.getWindow().beginCompaction(2, 1000, 1);
+        conversation.getWindow().applySummary(oldest, "They asked about opening hours.");
+        store.save(conversation);
+        store.writePending();
+
+        Conversation loaded = store().find("abc-123");
+
+        assertNotNull(loaded);
+        assertEquals(3, loaded.getMessageCount());
+        assertEquals("thanks", loaded.read(2, 1).get(0).getText());
+        assertEquals("They asked about opening hours.", loaded.getWindow().getSummary());
+        assertTrue(Files.exists(directory.resolve("ab").resolve("abc-123.conv")));
+    }
+
+    @Test
+    void writesSnapshotsInTheBackgroundAndServesUnwrittenOnesFromMemory() {
+        System.setProperty("CONVERSATION_STORE_MAX", "1");
+        System.setProperty("CONVERSATION_STORE_STRIPES", "1");
+        System.setProperty("CONVERSATION_SNAPSHOT_INTERVAL_MS", "3600000");
+        FileConversationStore store = store();
+        Conversation conversation = store.open("abc-123");
+        append(store, conversation, "opening hours?");
+        Path file = directory.resolve("ab").resolve("abc-123.conv");
+        assertFalse(Files.exists(file), "not written on the caller's thread");
+
+        store.open("def-456");
+
+        assertSame(conversation, store.find("abc-123"), "evicted before its snapshot, so still the newest copy");
+        store.writePending();
+        assertTrue(Files.exists(file));
+        assertEquals(1, store().find("abc-123").getMessageCount());
+    }
+
+    @Test
+    void writesPendingSnapshotsOnShutdown() {
+        System.setProperty("CONVERSATION_SNAPSHOT_INTERVAL_MS", "3600000");
+        FileConversationStore store = store();
+        append(store, store.open("abc-123"), "opening hours?");
+
+        store.shutdown();
+
+        assertEquals(1, store().find("abc-123").getMessageCount());
+    }
+
+    @Test
+    void unreadableSnapshotIsTreatedAsMissing() throws IOException {
+        Path file = directory.resolve("br").resolve("broken.conv");
+        Files.createDirectories(file.getParent());
+        Files.write(file, new byte[] {42, 1, 2});
+
+        assertNull(store().find("broken"));
+    }
+
+    @Test
+    void idsThatAreNotFileNamesStayInMemory() throws IOException {
+        FileConversationStore store = store();
+        Conversation conversation = store.open("../escape");
+        append(store, conversation, "hello");
+
+        assertEquals(1, store.find("../escape").getMessageCount());
+        assertNull(store().find("../escape"));
+        try (var files = Files.walk(directory)) {
+            assertEquals(1, files.count(), "nothing written");
+        }
+    }
+}
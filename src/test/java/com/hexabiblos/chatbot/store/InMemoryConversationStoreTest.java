@@ -0,0 +1,158 @@
+package com.hexabiblos.chatbot.store;
+
+import com.hexabiblos.chatbot.TestBeans;
+import com.hexabiblos.chatbot.metrics.MetricsRegistry;
+import com.hexabiblos.chatbot.model.ChatMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class InMemoryConversationStoreTest {
+
+    @TempDir
+    Path directory;
+
+    private final MetricsRegistry metrics = TestBeans.metrics();
+    private final List<InMemoryConversationStore> stores = new ArrayList<>();
+    private TranscriptStore transcripts;
+
+    @BeforeEach
+    void configure() {
+        System.setProperty("CONVERSATION_STORE_MAX", "1");
+        System.setProperty("CONVERSATION_STORE_STRIPES", "1");
+        System.setProperty("CONVERSATION_IDLE_MINUTES", "0");
+    }
+
+    @AfterEach
+    void tearDown() {
+        stores.forEach(InMemoryConversationStore::shutdown);
+        if (transcripts != null) {
+            transcripts.close();
+        }
+        System.clearProperty("CONVERSATION_STORE_MAX");
+        System.clearProperty("CONVERSATION_STORE_STRIPES");
+        System.clearProperty("CONVERSATION_IDLE_MINUTES");
+        System.clearProperty("TRANSCRIPT_DIR");
+    }
+
+    private InMemoryConversationStore store(TranscriptStore transcriptStore) {
+        InMemoryConversationStore store = new InMemoryConversationStore(transcriptStore, metrics);
+        stores.add(store);
+        return store;
+    }
+
+    private TranscriptStore transcripts() {
+        System.setProperty("TRANSCRIPT_DIR", directory.toString());
+        transcripts = TestBeans.inject(new TranscriptStore(), "metrics", metrics);
+        transcripts.init();
+        return transcripts;
+    }
+
+    @Test
+    void opensOnceAndFindsTheSameConversation() {
+        InMemoryConversationStore store = store(null);
+
+        assertNull(store.find("a"));
+        Conversation opened = store.open("a");
+
+        assertSame(opened, store.open("a"));
+        assertSame(opened, store.find("a"));
+        assertNull(store.find(""));
+        assertNull(store.find(null));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedOverCapacity() {
+        InMemoryConversationStore store = store(null);
+        store.open("a");
+
+        store.open("b");
+
+        assertEquals(1, store.size());
+        assertNull(store.find("a"), "gone without a transcript");
+        assertEquals(1, metrics.counter("chat_conversations_evicted_total", "", "reason", "capacity").get());
+    }
+
+    @Test
+    void keepsAConversationWhileItsReplyIsInProgress() {
+        InMemoryConversationStore store = store(null);
+        Conversation replying = store.open("a");
+        synchronized (replying) {
+            replying.startReply();
+        }
+
+        store.open("b");
+
+        assertSame(replying, store.find("a"), "the reply ends on the copy it started on");
+        assertEquals(2, store.size());
+        synchronized (replying) {
+            replying.endReply();
+        }
+        store.open("c");
+        assertEquals(1, store.size());
+        assertNull(store.find("a"));
+    }
+
+    @Test
+    void readmitsAConversationItDropped() {
+        InMemoryConversationStore store = store(null);
+        Conversation first = store.open("a");
+        first.append(new ChatMessage(ChatMessage.Role.USER, "opening hours?"));
+        store.open("b");
+        assertNull(store.find("a"));
+
+        assertSame(first, store.readmit(first));
+
+        assertSame(first, store.find("a"));
+        assertSame(first, store.readmit(new Conversation("a", null)), "the copy it holds wins");
+    }
+
+    @Test
+    void rebuildsEvictedConversationFromTranscript() {
+        InMemoryConversationStore store = store(transcripts());
+        Conversation first = store.open("a");
+        first.append(new ChatMessage(ChatMessage.Role.USER, "opening hours?"));
+        first.append(new ChatMessage(ChatMessage.Role.ASSISTANT, "Nine to five."));
+        store.open("b");
+
+        Conversation rebuilt = store.find("a");
+
+        assertNotSame(first, rebuilt);
+        assertEquals(2, rebuilt.getMessageCount());
+        assertEquals("Nine to five.", rebuilt.read(1, 1).get(0).getText());
+        assertEquals(2, rebuilt.getWindow().size());
+        assertEquals(1, metrics.counter("chat_conversations_loaded_total", "").get());
+    }
+
+    @Test
+    void rebuildsEvictedConversationWithItsSummary() {
+        InMemoryConversationStore store = store(transcripts());
+        Conversation first = store.open("a");
+        for (int i = 1; i <= 4; i++) {
+            first.append(new ChatMessage((i % 2 == 1) ? ChatMessage.Role.USER : ChatMessage.Role.ASSISTANT, "turn " + i));
+        }
+        List<ChatMessage> oldest = first.getWindow().beginCompaction(2, Integer.MAX_VALUE, 2);
+        first.getWindow().applySummary(oldest, "They opened with turns one and two.");
+        first.persistSummary();
+        first.append(new ChatMessage(ChatMessage.Role.USER, "turn 5"));
+        store.open("b");
+
+        Conversation rebuilt = store.find("a");
+
+        assertEquals(5, rebuilt.getMessageCount());
+        assertEquals("They opened with turns one and two.", rebuilt.getWindow().getSummary());
+        assertEquals(3, rebuilt.getWindow().size());
+        assertEquals("turn 3", rebuilt.getWindow().getMessages().get(1).getText());
+        assertEquals("turn 1", rebuilt.read(0, 1).get(0).getText());
+    }
+}
@@ -0,0 +1,277 @@
+package com.hexabiblos.chatbot.store;
+
+import com.hexabiblos.chatbot.TestBeans;
+import com.hexabiblos.chatbot.model.ChatMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TranscriptStoreTest {
+
+    private static final String CONVERSATION = "c1";
+    private static final int TEXT_CHARS = 1000;
+    // int length + int crc + short idLength + id + long timestamp + byte role + int textLength + text
+    private static final int RECORD_BYTES = 8 + 2 + CONVERSATION.length() + 8 + 1 + 4 + TEXT_CHARS;
+    // Smallest segment size the store accepts: three records fit, a fourth starts the next segment
+    private static final int SEGMENT_BYTES = 4096;
+
+    @TempDir
+    Path directory;
+
+    private final List<TranscriptStore> opened = new ArrayList<>();
+
+    @BeforeEach
+    void configure() {
+        System.setProperty("TRANSCRIPT_DIR", directory.toString());
+        System.setProperty("TRANSCRIPT_SEGMENT_BYTES", String.valueOf(SEGMENT_BYTES));
+    }
+
+    @AfterEach
+    void closeStores() {
+        opened.forEach(TranscriptStore::close);
+        System.clearProperty("TRANSCRIPT_DIR");
+        System.clearProperty("TRANSCRIPT_SEGMENT_BYTES");
+        System.clearProperty("TRANSCRIPT_MAX_SEGMENTS");
+    }
+
+    private TranscriptStore open() {
+        TranscriptStore store = TestBeans.inject(new TranscriptStore(), "metrics", TestBeans.metrics());
+        store.init();
+        opened.add(store);
+        assertTrue(store.isEnabled());
+        return store;
+    }
+
+    private void close(TranscriptStore store) {
+        store.close();
+        opened.remove(store);
+    }
+
+    private static String text(int n) {
+        StringBuilder text = new StringBuilder(TEXT_CHARS).append("message ").append(n).append(' ');
+        while (text.length() < TEXT_CHARS) {
+            text.append('x');
+        }
+        return text.toString();
+    }
+
+    private static void appendMessages(TranscriptStore store, int count) {
+        for (int i = 0; i < count; i++) {
+            store.append(CONVERSATION, new ChatMessage(
+                (i % 2 == 0) ? ChatMessage.Role.USER : ChatMessage.Role.ASSISTANT, text(i))).join();
+        }
+    }
+
+    private static List<String> texts(List<ChatMessage> messages) {
+        List<String> texts = new ArrayList<>();
+        for (ChatMessage message : messages) {
+            texts.add(message.getText());
+        }
+        return texts;
+    }
+
+    private Path segment(int id) {
+        return directory.resolve(String.format("transcript-%06d.log", id));
+    }
+
+    private static void flipByte(Path file, long offset) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(offset);
+            int b = raf.read();
+            raf.seek(offset);
+            raf.write(b ^ 0x7f);
+        }
+    }
+
+    @Test
+    void readsBackAcrossSegments() {
+        TranscriptStore store = open();
+        appendMessages(store, 7);
+
+        assertTrue(Files.exists(segment(3)), "7 records of this size span three segments");
+        assertEquals(7, store.count(CONVERSATION));
+        assertEquals(List.of(text(0), text(1), text(2), text(3), text(4), text(5), text(6)),
+            texts(store.read(CONVERSATION, 0, 7)));
+        assertEquals(List.of(text(5), text(6)), texts(store.tail(CONVERSATION, 2)));
+        assertEquals(ChatMessage.Role.USER, store.read(CONVERSATION, 0, 1).get(0).getRole());
+        assertEquals(ChatMessage.Role.ASSISTANT, store.read(CONVERSATION, 1, 1).get(0).getRole());
+    }
+
+    @Test
+    void readsRecordsAppendedAfterEarlierReads() {
+        TranscriptStore store = open();
+        appendMessages(store, 1);
+        assertEquals(List.of(text(0)), texts(store.tail(CONVERSATION, 1)));
+
+        store.append(CONVERSATION, new ChatMessage(ChatMessage.Role.ASSISTANT, "later")).join();
+
+        assertEquals(List.of(text(0), "later"), texts(store.read(CONVERSATION, 0, 5)));
+        assertEquals(0, store.count("unknown"));
+        assertTrue(store.read("unknown", 0, 5).isEmpty());
+    }
+
+    @Test
+    void rebuildsIndexOnRestart() {
+        TranscriptStore store = open();
+        appendMessages(store, 7);
+        store.append("c2", new ChatMessage(ChatMessage.Role.USER, "other")).join();
+        close(store);
+
+        TranscriptStore reopened = open();
+
+        assertEquals(7, reopened.count(CONVERSATION));
+        assertEquals(1, reopened.count("c2"));
+        assertEquals(List.of(text(2), text(3), text(4)), texts(reopened.read(CONVERSATION, 2, 3)));
+        assertEquals("other", reopened.tail("c2", 1).get(0).getText());
+    }
+
+    @Test
+    void keepsTheNewestSummaryApartFromTheMessages() {
+        TranscriptStore store = open();
+        appendMessages(store, 2);
+        store.appendSummary(CONVERSATION, "first summary", 1).join();
+        store.appendSummary(CONVERSATION, "second summary", 2).join();
+        store.append(CONVERSATION, new ChatMessage(ChatMessage.Role.USER, "after")).join();
+        close(store);
+
+        TranscriptStore reopened = open();
+
+        assertEquals(3, reopened.count(CONVERSATION));
+        assertEquals(List.of(text(0), text(1), "after"), texts(reopened.read(CONVERSATION, 0, 5)));
+        TranscriptStore.Summary summary = reopened.summary(CONVERSATION);
+        assertEquals("second summary", summary.getText());
+        assertEquals(3, summary.getVerbatimMessages(), "the two it left verbatim and the one since");
+        assertNull(reopened.summary("c2"));
+    }
+
+    @Test
+    void truncatesTornTailOfLastSegment() throws IOException {
+        TranscriptStore store = open();
+        appendMessages(store, 4);
+        close(store);
+        // A crash mid-append: a header promising a full body, and only part of it
+        byte[] torn = new byte[200];
+        torn[2] = (byte) (RECORD_BYTES >> 8);
+        torn[3] = (byte) RECORD_BYTES;
+        Files.write(segment(2), torn, StandardOpenOption.APPEND);
+
+        TranscriptStore reopened = open();
+
+        assertEquals(RECORD_BYTES, Files.size(segment(2)));
+        assertEquals(4, reopened.count(CONVERSATION));
+        // Appends continue right after the last intact record
+        appendMessages(reopened, 1);
+        assertEquals(2 * RECORD_BYTES, Files.size(segment(2)));
+        assertEquals(List.of(text(3), text(0)), texts(reopened.tail(CONVERSATION, 2)));
+    }
+
+    @Test
+    void skipsCorruptRecordInLastSegmentWithoutTruncating() throws IOException {
+        TranscriptStore store = open();
+        appendMessages(store, 5);
+        close(store);
+        // Segment 2 holds records 3 and 4; damage record 3
+        flipByte(segment(2), 100);
+
+        TranscriptStore reopened = open();
+
+        assertEquals(2 * RECORD_BYTES, Files.size(segment(2)));
+        assertEquals(List.of(text(0), text(1), text(2), text(4)), texts(reopened.read(CONVERSATION, 0, 5)));
+    }
+
+    @Test
+    void truncatesFinalRecordThatFailsItsChecksum() throws IOException {
+        TranscriptStore store = open();
+        appendMessages(store, 5);
+        close(store);
+        // Record 4 ends the segment: its pages were only partly written
+        flipByte(segment(2), RECORD_BYTES + 100);
+
+        TranscriptStore reopened = open();
+
+        assertEquals(RECORD_BYTES, Files.size(segment(2)));
+        assertEquals(List.of(text(0), text(1), text(2), text(3)), texts(reopened.read(CONVERSATION, 0, 5)));
+    }
+
+    @Test
+    void keepsUnparseableLastSegmentAndAppendsToANewOne() throws IOException {
+        TranscriptStore store = open();
+        appendMessages(store, 5);
+        close(store);
+        // Record 3's length turns negative, so record 4 cannot be found
+        try (RandomAccessFile raf = new RandomAccessFile(segment(2).toFile(), "rw")) {
+            raf.writeInt(-1);
+        }
+
+        TranscriptStore reopened = open();
+        appendMessages(reopened, 1);
+
+        assertEquals(2 * RECORD_BYTES, Files.size(segment(2)));
+        assertEquals(RECORD_BYTES, Files.size(segment(3)));
+        assertEquals(List.of(text(0), text(1), text(2), text(0)), texts(reopened.read(CONVERSATION, 0, 5)));
+    }
+
+    @Test
+    void deletesOldestSegmentsPastRetention() throws IOException {
+        System.setProperty("TRANSCRIPT_MAX_SEGMENTS", "2");
+        TranscriptStore store = open();
+        store.append("c2", new ChatMessage(ChatMessage.Role.USER, "other")).join();
+        appendMessages(store, 7);
+
+        // Segment 1 held c2 and records 0 to 2; it went when segment 3 was started
+        assertTrue(Files.notExists(segment(1)));
+        assertEquals(0, store.count("c2"));
+        assertEquals(List.of(text(3), text(4), text(5), text(6)), texts(store.read(CONVERSATION, 0, 7)));
+
+        close(store);
+        System.setProperty("TRANSCRIPT_MAX_SEGMENTS", "1");
+        TranscriptStore reopened = open();
+
+        assertTrue(Files.notExists(segment(2)));
+        assertEquals(List.of(text(6)), texts(reopened.read(CONVERSATION, 0, 7)));
+    }
+
+    @Test
+    void skipsCorruptRecordInOlderSegmentWithoutTruncating() throws IOException {
+        TranscriptStore store = open();
+        appendMessages(store, 7);
+        close(store);
+        long sealedSize = Files.size(segment(1));
+        // Damage the text of record 1, in the middle of sealed segment 1
+        flipByte(segment(1), RECORD_BYTES + 100);
+
+        TranscriptStore reopened = open();
+
+        assertEquals(sealedSize, Files.size(segment(1)));
+        assertEquals(6, reopened.count(CONVERSATION));
+        assertEquals(List.of(text(0), text(2), text(3), text(4), text(5), text(6)),
+            texts(reopened.read(CONVERSATION, 0, 7)));
+    }
+
+    @Test
+    void stopsScanOfOlderSegmentAtUntrustworthyLength() throws IOException {
+        TranscriptStore store = open();
+        appendMessages(store, 7);
+        close(store);
+        // Record 1's length now points past the end of segment 1
+        flipByte(segment(1), RECORD_BYTES);
+
+        TranscriptStore reopened = open();
+
+        assertEquals(List.of(text(0), text(3), text(4), text(5), text(6)),
+            texts(reopened.read(CONVERSATION, 0, 7)));
+    }
+}
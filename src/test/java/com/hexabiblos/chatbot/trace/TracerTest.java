@@ -0,0 +1,124 @@
+package com.hexabiblos.chatbot.trace;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TracerTest {
+
+    @AfterEach
+    void noSpanLeftCurrent() {
+        assertNull(Tracer.current());
+    }
+
+    /**
+     * Exported spans of one trace, in the order they ended.
+     */
+    private static List<Span> exported(String traceId) {
+        return ((InMemorySpanExporter) Tracer.getExporter()).getSpans().stream()
+            .filter(span -> traceId.equals(span.getTraceId()))
+            .collect(Collectors.toList());
+    }
+
+    @Test
+    void nestedSpansFormOneTrace() {
+        Span root = Tracer.start("request", "path", "/chat");
+        try (Span child = Tracer.start("gemini.build_contents", "messages", 4)) {
+            assertSame(child, Tracer.current());
+            assertEquals(root.getTraceId(), child.getTraceId());
+            assertEquals(root.getSpanId(), child.getParentSpanId());
+        }
+        assertSame(root, Tracer.current());
+        root.end();
+
+        List<Span> spans = exported(root.getTraceId());
+        assertEquals(List.of("gemini.build_contents", "request"),
+            spans.stream().map(Span::getName).collect(Collectors.toList()));
+        assertEquals(4, spans.get(0).getAttributes().get("messages"));
+        assertNull(root.getParentSpanId());
+        assertTrue(root.getDurationNanos() >= 0);
+    }
+
+    @Test
+    void wrappedTaskJoinsTheTraceOnAnotherThread() throws Exception {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        Span root = Tracer.start("request");
+        try {
+            Span child = pool.submit(Tracer.wrap(() -> {
+                try (Span span = Tracer.start("model.call")) {
+                    return span;
+                }
+            })).get();
+
+            assertEquals(root.getTraceId(), child.getTraceId());
+            assertEquals(root.getSpanId(), child.getParentSpanId());
+            assertNull(pool.submit(Tracer::current).get(), "worker thread left clean");
+        } finally {
+            root.end();
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void startTraceIgnoresTheCurrentSpan() {
+        try (Span request = Tracer.start("request")) {
+            try (Span background = Tracer.startTrace("summary")) {
+                assertNotEquals(request.getTraceId(), background.getTraceId());
+                assertNull(background.getParentSpanId());
+            }
+            assertSame(request, Tracer.current());
+        }
+    }
+
+    @Test
+    void endingTwiceExportsOnce() {
+        Span span = Tracer.start("request");
+        span.addToAttribute("phase_ms", 2).addToAttribute("phase_ms", 3);
+        span.recordError(new IllegalStateException("broken"));
+
+        span.end();
+        span.end();
+
+        List<Span> spans = exported(span.getTraceId());
+        assertEquals(1, spans.size());
+        assertEquals(5L, spans.get(0).getAttributes().get("phase_ms"));
+        assertEquals("java.lang.IllegalStateException: broken", spans.get(0).getError());
+    }
+
+    @Test
+    void writesSpanAsJson() {
+        Span span = Tracer.start("say \"hi\"", "ok", true, "text", "a\nb");
+        span.end();
+
+        StringBuilder json = new StringBuilder();
+        span.appendJson(json);
+
+        assertTrue(json.toString().startsWith("{\"traceId\":\"" + span.getTraceId() + "\",\"spanId\":\""));
+        assertTrue(json.toString().contains("\"name\":\"say \\\"hi\\\"\""));
+        assertTrue(json.toString().endsWith("\"attributes\":{\"ok\":true,\"text\":\"a\\nb\"}}"));
+    }
+
+    @Test
+    void memoryExporterKeepsTheNewestSpans() {
+        InMemorySpanExporter exporter = new InMemorySpanExporter(2);
+        Span first = new Span("t", "1", null, "first", null);
+        Span second = new Span("t", "2", null, "second", null);
+        Span third = new Span("t", "3", null, "third", null);
+
+        exporter.export(first);
+        exporter.export(second);
+        exporter.export(third);
+
+        assertEquals(List.of(second, third), exporter.getSpans());
+    }
+}
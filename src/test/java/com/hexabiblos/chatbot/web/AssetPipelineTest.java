@@ -0,0 +1,74 @@
+package com.hexabiblos.chatbot.web;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AssetPipelineTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void fingerprintDependsOnlyOnContent() {
+        byte[] content = "body{margin:0}".getBytes(StandardCharsets.UTF_8);
+
+        String name = AssetPipeline.fingerprint("css/chat.css", content);
+
+        assertTrue(name.matches("css/chat\\.[0-9a-f]{10}\\.css"), name);
+        assertEquals(name, AssetPipeline.fingerprint("css/chat.css", content.clone()));
+        assertNotEquals(name, AssetPipeline.fingerprint("css/chat.css", "body{margin:1px}".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void cssLosesCommentsAndOptionalWhitespace() {
+        // The space before ":hover" changes the selector, so it stays
+        String css = "/* layout */\n.chat .log  {\n    margin: 0 auto;\n    content: \"a  /* b */\";\n}\n\na > b , c :hover { color: red ; }\n";
+
+        assertEquals(".chat .log{margin:0 auto;content:\"a  /* b */\"}a>b,c :hover{color:red}", AssetPipeline.minifyCss(css));
+    }
+
+    @Test
+    void jsKeepsLineBreaksButLosesCommentsAndIndentation() {
+        String js = "/**\n * Chat page.\n */\nfunction send() {\n    // post it\n    var a = 1\n    return a /* inline stays */\n}\r\n";
+
+        assertEquals("function send() {\nvar a = 1\nreturn a /* inline stays */\n}\n", AssetPipeline.minifyJs(js));
+    }
+
+    @Test
+    void writesFingerprintedGzippedFilesAndManifest() throws IOException {
+        Path source = directory.resolve("resources");
+        Path output = directory.resolve("assets");
+        Files.createDirectories(source.resolve("css"));
+        Files.writeString(source.resolve("css/chat.css"), "body {\n  margin: 0;\n}\n");
+        Files.writeString(source.resolve("logo.svg"), "<svg/>");
+
+        AssetPipeline.main(new String[] {source.toString(), output.toString()});
+
+        Properties manifest = new Properties();
+        try (Reader in = Files.newBufferedReader(output.resolve(AssetPipeline.MANIFEST))) {
+            manifest.load(in);
+        }
+        assertEquals(1, manifest.size());
+        String fingerprinted = manifest.getProperty("css/chat.css");
+        byte[] minified = Files.readAllBytes(output.resolve(fingerprinted));
+        assertEquals("body{margin:0}", new String(minified, StandardCharsets.UTF_8));
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(
+                output.resolve(fingerprinted + AssetPipeline.GZIP_SUFFIX)))) {
+            assertArrayEquals(minified, in.readAllBytes());
+        }
+    }
+}
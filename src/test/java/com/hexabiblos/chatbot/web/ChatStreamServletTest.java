@@ -0,0 +1,54 @@
+package com.hexabiblos.chatbot.web;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChatStreamServletTest {
+
+    private final List<String> sent = new ArrayList<>();
+    private int liveCalls;
+
+    private CompletableFuture<String> live() {
+        liveCalls++;
+        return CompletableFuture.completedFuture("live reply");
+    }
+
+    @Test
+    void sendsAPrefetchedReplyWithoutALiveCall() throws Exception {
+        CompletableFuture<String> prefetched = new CompletableFuture<>();
+        CompletableFuture<String> reply = ChatStreamServlet.fromPrefetch(prefetched, sent::add, this::live);
+        prefetched.complete("prefetched reply");
+
+        assertEquals("prefetched reply", reply.get(5, TimeUnit.SECONDS));
+        assertEquals(List.of("prefetched reply"), sent);
+        assertEquals(0, liveCalls);
+    }
+
+    @Test
+    void givenUpPrefetchFallsThroughToALiveCall() throws Exception {
+        // What the prefetcher completes a failed or too slow prefetch with
+        CompletableFuture<String> reply = ChatStreamServlet.fromPrefetch(
+            CompletableFuture.completedFuture(null), sent::add, this::live);
+
+        assertEquals("live reply", reply.get(5, TimeUnit.SECONDS));
+        assertTrue(sent.isEmpty());
+        assertEquals(1, liveCalls);
+    }
+
+    @Test
+    void timedOutPrefetchFallsThroughToALiveCall() throws Exception {
+        CompletableFuture<String> reply = ChatStreamServlet.fromPrefetch(
+            CompletableFuture.failedFuture(new TimeoutException("prefetch")), sent::add, this::live);
+
+        assertEquals("live reply", reply.get(5, TimeUnit.SECONDS));
+        assertEquals(1, liveCalls);
+    }
+}